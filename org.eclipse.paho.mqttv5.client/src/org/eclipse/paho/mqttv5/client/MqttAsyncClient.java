@@ -767,6 +767,8 @@ public class MqttAsyncClient implements MqttClientInterface, IMqttAsyncClient {
 		this.mqttConnection.clearConnectionState();
 
 		this.mqttConnection.setIncomingTopicAliasMax(this.connOpts.getTopicAliasMaximum());
+		this.mqttConnection.setOutgoingTopicAliasLimit(this.connOpts.getOutgoingTopicAliasMaximum());
+		this.mqttConnection.setPayloadAllocator(this.connOpts.getPayloadAllocator());
 
 		comms.setNetworkModuleIndex(0);
 		connectActionListener.connect();
@@ -29,6 +29,7 @@ import javax.net.ssl.HostnameVerifier;
 import org.eclipse.paho.mqttv5.client.internal.NetworkModuleService;
 import org.eclipse.paho.mqttv5.client.util.Debug;
 import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttPayloadAllocator;
 import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
 import org.eclipse.paho.mqttv5.common.packet.UserProperty;
 import org.eclipse.paho.mqttv5.common.util.MqttTopicValidator;
@@ -116,6 +117,8 @@ public class MqttConnectionOptions {
 
 	// Client Operation Parameters
 	private int executorServiceTimeout = 1; // How long to wait in seconds when terminating the executor service.
+	private Integer outgoingTopicAliasMaximum = null; // The aliases for published topics, null uses the server maximum.
+	private MqttPayloadAllocator payloadAllocator = null; // The allocator of received payloads, null uses byte arrays.
 
 	/**
 	 * Returns the MQTT version.
@@ -614,6 +617,64 @@ public class MqttConnectionOptions {
 		this.topicAliasMaximum = topicAliasMaximum;
 	}
 
+	/**
+	 * Returns the maximum number of Topic Aliases, the client assigns to the topics
+	 * of its publishes. If <code>null</code>, the Topic Alias Maximum of the server
+	 * is used.
+	 * 
+	 * @return the outgoing Topic Alias Maximum.
+	 */
+	public Integer getOutgoingTopicAliasMaximum() {
+		return outgoingTopicAliasMaximum;
+	}
+
+	/**
+	 * Sets the maximum number of Topic Aliases, the client assigns to the topics of
+	 * its publishes. The client never uses more aliases than the Topic Alias
+	 * Maximum of the server. If all aliases are in use, the alias of the least
+	 * recently published topic is assigned to the new topic.
+	 * 
+	 * <ul>
+	 * <li>If set to <code>null</code>, the Topic Alias Maximum of the server is
+	 * used.</li>
+	 * <li>If set to 0, the client will not send any Topic Aliases</li>
+	 * <li>The Maximum value for this property is 65535.</li>
+	 * </ul>
+	 * 
+	 * @param outgoingTopicAliasMaximum
+	 *            the outgoing Topic Alias Maximum
+	 */
+	public void setOutgoingTopicAliasMaximum(Integer outgoingTopicAliasMaximum) {
+		if (outgoingTopicAliasMaximum != null && (outgoingTopicAliasMaximum < 0 || outgoingTopicAliasMaximum > 65535)) {
+			throw new IllegalArgumentException();
+		}
+		this.outgoingTopicAliasMaximum = outgoingTopicAliasMaximum;
+	}
+
+	/**
+	 * Returns the allocator of the received payloads. If <code>null</code>, the
+	 * payloads are decoded into byte arrays.
+	 * 
+	 * @return the payload allocator.
+	 */
+	public MqttPayloadAllocator getPayloadAllocator() {
+		return payloadAllocator;
+	}
+
+	/**
+	 * Sets the allocator of the received payloads, e.g. a pool. The payload of a
+	 * received publish is decoded straight into the allocated buffer and the
+	 * received {@link MqttMessage} carries the lease, see
+	 * {@link MqttMessage#getPayloadLease()}.
+	 * 
+	 * @param payloadAllocator
+	 *            the payload allocator, <code>null</code> to decode the payloads
+	 *            into byte arrays
+	 */
+	public void setPayloadAllocator(MqttPayloadAllocator payloadAllocator) {
+		this.payloadAllocator = payloadAllocator;
+	}
+
 	/**
 	 * Returns the Request Response Info flag. If <code>null</code>, the default
 	 * value is false.
@@ -3,6 +3,7 @@ package org.eclipse.paho.mqttv5.client;
 import java.util.ArrayList;
 
 import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttPayloadAllocator;
 import org.eclipse.paho.mqttv5.common.packet.UserProperty;
 
 public class MqttConnectionOptionsBuilder {
@@ -77,6 +78,16 @@ public class MqttConnectionOptionsBuilder {
 		return this;
 	}
 	
+	public MqttConnectionOptionsBuilder outgoingTopicAliasMaximum(Integer outgoingTopicAliasMaximum) {
+		mqttConnectionOptions.setOutgoingTopicAliasMaximum(outgoingTopicAliasMaximum);
+		return this;
+	}
+	
+	public MqttConnectionOptionsBuilder payloadAllocator(MqttPayloadAllocator payloadAllocator) {
+		mqttConnectionOptions.setPayloadAllocator(payloadAllocator);
+		return this;
+	}
+	
 	public MqttConnectionOptionsBuilder requestReponseInfo(Boolean requestResponseInfo) {
 		mqttConnectionOptions.setRequestResponseInfo(requestResponseInfo);
 		return this;
@@ -23,6 +23,7 @@
 package org.eclipse.paho.mqttv5.client.internal;
 
 import java.io.EOFException;
+import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Properties;
@@ -37,8 +38,10 @@ import org.eclipse.paho.mqttv5.client.MqttPingSender;
 import org.eclipse.paho.mqttv5.client.MqttToken;
 import org.eclipse.paho.mqttv5.client.logging.Logger;
 import org.eclipse.paho.mqttv5.client.logging.LoggerFactory;
+import org.eclipse.paho.mqttv5.client.wire.MqttOutputStream;
 import org.eclipse.paho.mqttv5.common.MqttException;
 import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttPayloadAllocator;
 import org.eclipse.paho.mqttv5.common.MqttPersistable;
 import org.eclipse.paho.mqttv5.common.MqttPersistenceException;
 import org.eclipse.paho.mqttv5.common.packet.MqttAck;
@@ -146,7 +149,7 @@ public class ClientState implements MqttState {
 	private MqttPingSender pingSender = null;
 
 	// Topic Alias Maps
-	private Hashtable<String, Integer> outgoingTopicAliases;
+	private TopicAliasCache outgoingTopicAliases;
 	private Hashtable<Integer, String> incomingTopicAliases;
 
 	private MqttConnectionState mqttConnection;
@@ -168,7 +171,7 @@ public class ClientState implements MqttState {
 		pingCommand = new MqttPingReq();
 		inFlightPubRels = 0;
 		actualInFlight = 0;
-		this.outgoingTopicAliases = new Hashtable<String, Integer>();
+		this.outgoingTopicAliases = new TopicAliasCache();
 		this.incomingTopicAliases = new Hashtable<Integer, String>();
 
 		this.persistence = persistence;
@@ -510,23 +513,7 @@ public class ClientState implements MqttState {
 		if (message.isMessageIdRequired() && (message.getMessageId() == 0)) {
 			message.setMessageId(getNextMessageId());
 		}
-		// Set Topic Alias if required
-		if (message instanceof MqttPublish && ((MqttPublish) message).getTopicName() != null 
-	        		&& this.mqttConnection != null && this.mqttConnection.getOutgoingTopicAliasMaximum() > 0) {
-                        String topic = ((MqttPublish) message).getTopicName();
-			if (outgoingTopicAliases.containsKey(topic)) {
-				// Existing Topic Alias, Assign it and remove the topic string
-				((MqttPublish) message).getProperties().setTopicAlias(outgoingTopicAliases.get(topic));
-				((MqttPublish) message).setTopicName(null);
-			} else {
-				int nextOutgoingTopicAlias = this.mqttConnection.getNextOutgoingTopicAlias();
-				if (nextOutgoingTopicAlias <= this.mqttConnection.getOutgoingTopicAliasMaximum()) {
-					// Create a new Topic Alias and increment the counter
-					((MqttPublish) message).getProperties().setTopicAlias(nextOutgoingTopicAlias);
-					outgoingTopicAliases.put(((MqttPublish) message).getTopicName(), nextOutgoingTopicAlias);
-				}
-			}
-		}
+		// Topic Aliases are assigned, when the publish is written, see writePublish
 
 		if (token != null) {
 			try {
@@ -1559,6 +1546,48 @@ public class ClientState implements MqttState {
 		return actualInFlight;
 	}
 	
+	/**
+	 * Writes a publish with the outgoing Topic Alias of this connection. The
+	 * aliases are assigned on the sender thread in the order of the network, so
+	 * that a reused alias is always mapped again before it is sent without topic.
+	 * The stored publish keeps its topic and no alias, so that it can be sent again
+	 * on a new connection.
+	 * 
+	 * @param out
+	 *            the network stream
+	 * @param publish
+	 *            the publish
+	 * @throws IOException
+	 *             if the publish cannot be written
+	 * @throws MqttException
+	 *             if the publish cannot be encoded
+	 */
+	protected void writePublish(MqttOutputStream out, MqttPublish publish) throws IOException, MqttException {
+		String topic = publish.getTopicName();
+		MqttProperties properties = publish.getProperties();
+		int maximum = this.mqttConnection == null ? 0 : this.mqttConnection.getOutgoingTopicAliasMaximum();
+		if (topic == null || properties.getTopicAlias() != null || maximum <= 0) {
+			// no aliases or an alias set by the application
+			out.write(publish);
+			return;
+		}
+		Integer alias = outgoingTopicAliases.get(topic);
+		try {
+			if (alias != null) {
+				// the server knows the alias, remove the topic string
+				properties.setTopicAlias(alias);
+				publish.setTopicName(null);
+			} else {
+				// a new alias is sent with the topic
+				properties.setTopicAlias(outgoingTopicAliases.assign(topic, maximum));
+			}
+			out.write(publish);
+		} finally {
+			properties.setTopicAlias(null);
+			publish.setTopicName(topic);
+		}
+	}
+
 	public Long getOutgoingMaximumPacketSize() {
 		return this.mqttConnection.getIncomingMaximumPacketSize();
 	}
@@ -1567,6 +1596,10 @@ public class ClientState implements MqttState {
 		return this.mqttConnection.getOutgoingMaximumPacketSize();
 	}
 
+	public MqttPayloadAllocator getPayloadAllocator() {
+		return this.mqttConnection.getPayloadAllocator();
+	}
+
 	/**
 	 * Tidy up - ensure that tokens are released as they are maintained over a
 	 * disconnect / connect cycle.
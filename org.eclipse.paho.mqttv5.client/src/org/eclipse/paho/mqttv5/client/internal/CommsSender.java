@@ -28,6 +28,7 @@ import org.eclipse.paho.mqttv5.client.wire.MqttOutputStream;
 import org.eclipse.paho.mqttv5.common.MqttException;
 import org.eclipse.paho.mqttv5.common.packet.MqttAck;
 import org.eclipse.paho.mqttv5.common.packet.MqttDisconnect;
+import org.eclipse.paho.mqttv5.common.packet.MqttPublish;
 import org.eclipse.paho.mqttv5.common.packet.MqttWireMessage;
 
 
@@ -142,7 +143,11 @@ public class CommsSender implements Runnable {
 							// while trying to send a message.
 							if (token != null) {
 								synchronized (token) {
-									out.write(message);
+									if (message instanceof MqttPublish) {
+										clientState.writePublish(out, (MqttPublish) message);
+									} else {
+										out.write(message);
+									}
 									try {
 										out.flush();
 									} catch (IOException ex) {
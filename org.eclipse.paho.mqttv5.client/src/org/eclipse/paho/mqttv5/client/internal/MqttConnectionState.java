@@ -2,6 +2,8 @@ package org.eclipse.paho.mqttv5.client.internal;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.paho.mqttv5.common.MqttPayloadAllocator;
+
 /**
  * This class is used as a store for client information that should be preserved
  * for a single connection. 
@@ -32,12 +34,14 @@ public class MqttConnectionState {
 	private Long outgoingMaximumPacketSize = null;
 	private Long incomingMaximumPacketSize = null;
 	private Integer outgoingTopicAliasMaximum = 0;
+	private Integer outgoingTopicAliasLimit = null;
 	private Integer incomingTopicAliasMax = 0;
 	private Boolean wildcardSubscriptionsAvailable = true;
 	private Boolean subscriptionIdentifiersAvailable = true;
 	private Boolean sharedSubscriptionsAvailable = true;
 	private boolean sendReasonMessages = false;
 	private long keepAlive = 60;
+	private MqttPayloadAllocator payloadAllocator = null;
         private String clientId = "";
 
 	// ******* Counters ******//
@@ -109,10 +113,51 @@ public class MqttConnectionState {
 	}
 
 
+	/**
+	 * Returns the number of Topic Aliases, the client may assign to its publishes:
+	 * the Topic Alias Maximum of the server, bounded by the limit of the client.
+	 * 
+	 * @return the outgoing Topic Alias Maximum
+	 */
 	public Integer getOutgoingTopicAliasMaximum() {
+		if (outgoingTopicAliasLimit != null) {
+			return Math.min(outgoingTopicAliasMaximum, outgoingTopicAliasLimit);
+		}
 		return outgoingTopicAliasMaximum;
 	}
 
+	/**
+	 * Sets the limit of the client for the outgoing Topic Aliases.
+	 * 
+	 * @param outgoingTopicAliasLimit
+	 *            the limit, <code>null</code> for the Topic Alias Maximum of the
+	 *            server
+	 */
+	public void setOutgoingTopicAliasLimit(Integer outgoingTopicAliasLimit) {
+		this.outgoingTopicAliasLimit = outgoingTopicAliasLimit;
+	}
+
+	/**
+	 * Returns the allocator of the received payloads.
+	 * 
+	 * @return the allocator, <code>null</code> if the payloads are decoded into
+	 *         byte arrays
+	 */
+	public MqttPayloadAllocator getPayloadAllocator() {
+		return payloadAllocator;
+	}
+
+	/**
+	 * Sets the allocator of the received payloads.
+	 * 
+	 * @param payloadAllocator
+	 *            the allocator, <code>null</code> to decode the payloads into
+	 *            byte arrays
+	 */
+	public void setPayloadAllocator(MqttPayloadAllocator payloadAllocator) {
+		this.payloadAllocator = payloadAllocator;
+	}
+
 	public void setOutgoingTopicAliasMaximum(Integer topicAliasMaximum) {
                 if (topicAliasMaximum != null)
 		    this.outgoingTopicAliasMaximum = topicAliasMaximum;
@@ -22,6 +22,7 @@ import java.util.Vector;
 import org.eclipse.paho.mqttv5.client.MqttActionListener;
 import org.eclipse.paho.mqttv5.client.MqttToken;
 import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttPayloadAllocator;
 import org.eclipse.paho.mqttv5.common.packet.MqttWireMessage;
 
 public interface MqttState {
@@ -111,4 +112,10 @@ public interface MqttState {
 
 	Long getIncomingMaximumPacketSize();
 
+	/**
+	 * @return the allocator of the received payloads, <code>null</code> if the
+	 *         payloads are decoded into byte arrays
+	 */
+	MqttPayloadAllocator getPayloadAllocator();
+
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.eclipse.paho.mqttv5.client.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The outgoing Topic Aliases of a connection. The aliases are kept in least
+ * recently used order: if all aliases are in use, the alias of the topic, that
+ * was not published for the longest time, is assigned to the new topic. The
+ * aliases must be assigned in the order the publishes are written to the
+ * network, so that the server always receives the new mapping of an alias
+ * before the alias is used without topic.
+ */
+public class TopicAliasCache {
+
+	// access ordered, the eldest entry is the least recently used topic
+	private final LinkedHashMap<String, Integer> aliases = new LinkedHashMap<String, Integer>(16, 0.75f, true);
+
+	/**
+	 * Returns the alias, the server knows for the topic, and marks it as used.
+	 *
+	 * @param topic
+	 *            the topic
+	 * @return the alias or <code>null</code>, if the topic has no alias
+	 */
+	public synchronized Integer get(String topic) {
+		return aliases.get(topic);
+	}
+
+	/**
+	 * Assigns an alias to a topic, that has none. The publish with the new alias
+	 * must carry the topic, so that the server learns the mapping.
+	 *
+	 * @param topic
+	 *            the topic
+	 * @param maximum
+	 *            the number of aliases, the client may use
+	 * @return the alias or <code>null</code>, if no aliases are allowed
+	 */
+	public synchronized Integer assign(String topic, int maximum) {
+		if (maximum <= 0) {
+			return null;
+		}
+		Integer alias;
+		if (aliases.size() < maximum) {
+			alias = Integer.valueOf(aliases.size() + 1);
+		} else {
+			// reuse the alias of the least recently published topic
+			Iterator<Map.Entry<String, Integer>> eldest = aliases.entrySet().iterator();
+			alias = eldest.next().getValue();
+			eldest.remove();
+		}
+		aliases.put(topic, alias);
+		return alias;
+	}
+
+	/**
+	 * Returns the number of assigned aliases.
+	 *
+	 * @return the number of aliases
+	 */
+	public synchronized int size() {
+		return aliases.size();
+	}
+
+	/**
+	 * Removes all aliases, e.g. when the connection is closed.
+	 */
+	public synchronized void clear() {
+		aliases.clear();
+	}
+
+}
@@ -128,7 +128,7 @@ public class MqttInputStream extends InputStream {
 				
 				byte[] header = bais.toByteArray();
 				System.arraycopy(header,0,packet,0, header.length);
-				message = MqttWireMessage.createWireMessage(packet);
+				message = MqttWireMessage.createWireMessage(packet, clientState.getPayloadAllocator());
 				// @TRACE 530= Received {0} 
 				log.fine(CLASS_NAME, methodName, "530",new Object[] {message});
 			}
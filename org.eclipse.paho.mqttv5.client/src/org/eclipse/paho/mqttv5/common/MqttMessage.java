@@ -16,6 +16,8 @@
  */
 package org.eclipse.paho.mqttv5.common;
 
+import java.nio.ByteBuffer;
+
 import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
 
 /**
@@ -32,6 +34,7 @@ public class MqttMessage {
 	private boolean dup = false;
 	private int messageId;
 	private MqttProperties properties;
+	private MqttPayloadAllocator.Lease payloadLease;
 
 	/**
 	 * Utility method to validate the supplied QoS value.
@@ -93,14 +96,55 @@ public class MqttMessage {
 	}
 
 	/**
-	 * Returns the payload as a byte array.
+	 * Contructs a received message, whose payload was decoded into a buffer of the
+	 * {@link MqttPayloadAllocator} of the client.
+	 * 
+	 * @param payloadLease
+	 *            The lease of the Message Payload.
+	 * @param qos
+	 *            The Message QoS.
+	 * @param retained
+	 *            If the message is retained.
+	 * @param properties
+	 *            The Message {@link MqttProperties}
+	 */
+	public MqttMessage(MqttPayloadAllocator.Lease payloadLease, int qos, boolean retained, MqttProperties properties) {
+		if (payloadLease == null) {
+			throw new NullPointerException();
+		}
+		this.payloadLease = payloadLease;
+		setQos(qos);
+		setRetained(retained);
+		setProperties(properties);
+	}
+
+	/**
+	 * Returns the payload as a byte array. If the payload was allocated by a
+	 * {@link MqttPayloadAllocator}, it is copied out of the leased buffer.
 	 *
 	 * @return the payload as a byte array.
 	 */
 	public byte[] getPayload() {
+		if (payload == null && payloadLease != null) {
+			ByteBuffer buffer = payloadLease.buffer().duplicate();
+			byte[] copy = new byte[buffer.remaining()];
+			buffer.get(copy);
+			payload = copy;
+		}
 		return payload;
 	}
 
+	/**
+	 * Returns the lease of the payload, if it was decoded into a buffer of the
+	 * {@link MqttPayloadAllocator} of the client. The receiver owns the lease and
+	 * releases it, when the payload is not used anymore.
+	 *
+	 * @return the lease or <code>null</code>, if the payload is a byte array
+	 */
+	public MqttPayloadAllocator.Lease getPayloadLease() {
+		return payloadLease;
+	}
+
 	/**
 	 * Clears the payload, resetting it to be empty.
 	 * 
@@ -287,11 +331,11 @@ public class MqttMessage {
 	 * @return a string representation of this message.
 	 */
 	public String toString() {
-		return new String(payload);
+		return new String(getPayload());
 	}
 
 	public String toDebugString() {
-		return "MqttMessage [mutable=" + mutable + ", payload=" + new String(payload) + ", qos=" + qos + ", retained="
+		return "MqttMessage [mutable=" + mutable + ", payload=" + new String(getPayload()) + ", qos=" + qos + ", retained="
 				+ retained + ", dup=" + dup + ", messageId=" + messageId + "]";
 	}
 
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.eclipse.paho.mqttv5.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Allocates the payloads of received publishes, e.g. from a pool. The payload
+ * is decoded from the received packet straight into the allocated buffer, see
+ * {@link MqttMessage#getPayloadLease()}.
+ */
+public interface MqttPayloadAllocator {
+
+	/**
+	 * An allocated payload buffer. The receiver of the message owns the lease
+	 * and releases it, when the payload is not used anymore.
+	 */
+	interface Lease {
+
+		/**
+		 * Returns the buffer of the payload. After the payload was decoded, the
+		 * buffer is ready to be read.
+		 *
+		 * @return the buffer
+		 */
+		ByteBuffer buffer();
+
+		/**
+		 * Gives the buffer back. After that the buffer must not be used anymore.
+		 */
+		void release();
+
+	}
+
+	/**
+	 * Allocates the buffer for a payload. The buffer has a position of 0 and at
+	 * least size bytes remaining.
+	 *
+	 * @param size
+	 *            the payload size in bytes
+	 * @return the lease of the buffer
+	 */
+	Lease allocate(int size);
+
+}
@@ -22,9 +22,11 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
 import org.eclipse.paho.mqttv5.common.MqttException;
 import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttPayloadAllocator;
 import org.eclipse.paho.mqttv5.common.packet.util.CountingInputStream;
 
 /**
@@ -42,6 +44,7 @@ public class MqttPublish extends MqttPersistableWireMessage {
 
 	// Fields
 	private byte[] payload;
+	private MqttPayloadAllocator.Lease payloadLease;
 	private int qos = 1;
 	private boolean retained = false;
 	private boolean dup = false;
@@ -61,6 +64,7 @@ public class MqttPublish extends MqttPersistableWireMessage {
 		super(MqttWireMessage.MESSAGE_TYPE_PUBLISH);
 		this.topicName = topic;
 		this.payload = message.getPayload();
+		this.payloadLease = null;
 		this.qos = message.getQos();
 		this.dup = message.isDuplicate();
 		this.retained = message.isRetained();
@@ -85,6 +89,26 @@ public class MqttPublish extends MqttPersistableWireMessage {
 	 *             - If an exception occurs decoding this packet
 	 */
 	public MqttPublish(byte info, byte[] data) throws MqttException, IOException {
+		this(info, data, null);
+	}
+
+	/**
+	 * Constructs a new MqttPublish message from a byte array. The payload is
+	 * decoded into a buffer of the allocator.
+	 *
+	 * @param info
+	 *            - Info Byte
+	 * @param data
+	 *            - The variable header and payload bytes.
+	 * @param allocator
+	 *            - The allocator of the payload, <code>null</code> to decode the
+	 *            payload into a byte array
+	 * @throws IOException
+	 *             - if an exception occurs when decoding an input stream
+	 * @throws MqttException
+	 *             - If an exception occurs decoding this packet
+	 */
+	public MqttPublish(byte info, byte[] data, MqttPayloadAllocator allocator) throws MqttException, IOException {
 		super(MqttWireMessage.MESSAGE_TYPE_PUBLISH);
 		this.properties = new MqttProperties(validProperties);
 		this.qos = (info >> 1) & 0x03;
@@ -105,8 +129,15 @@ public class MqttPublish extends MqttPersistableWireMessage {
 			msgId = dis.readUnsignedShort();
 		}
 		this.properties.decodeProperties(dis);
-		this.payload = new byte[data.length - counter.getCounter()];
-		dis.readFully(this.payload);
+		int offset = counter.getCounter();
+		if (allocator == null) {
+			this.payload = new byte[data.length - offset];
+			dis.readFully(this.payload);
+		} else {
+			this.payloadLease = allocator.allocate(data.length - offset);
+			ByteBuffer buffer = this.payloadLease.buffer();
+			buffer.put(data, offset, data.length - offset).flip();
+		}
 		dis.close();
 	}
 
@@ -150,6 +181,12 @@ public class MqttPublish extends MqttPersistableWireMessage {
 
 	@Override
 	public byte[] getPayload() {
+		if (this.payload == null && this.payloadLease != null) {
+			ByteBuffer buffer = this.payloadLease.buffer().duplicate();
+			byte[] copy = new byte[buffer.remaining()];
+			buffer.get(copy);
+			this.payload = copy;
+		}
 		return this.payload;
 	}
 
@@ -157,6 +194,8 @@ public class MqttPublish extends MqttPersistableWireMessage {
 	public int getPayloadLength() {
 		if (this.payload != null) {
 			return this.payload.length;
+		} else if (this.payloadLease != null) {
+			return this.payloadLease.buffer().remaining();
 		} else {
 			return 0;
 		}
@@ -170,12 +209,17 @@ public class MqttPublish extends MqttPersistableWireMessage {
 	}
 
 	public MqttMessage getMessage() {
+		if (payload == null && payloadLease != null) {
+			// the receiver takes over the lease
+			return new MqttMessage(payloadLease, qos, retained, properties);
+		}
 		MqttMessage message = new MqttMessage(payload, qos, retained, properties);
 		return message;
 	}
 
 	public void setMessage(MqttMessage message) {
 		this.payload = message.getPayload();
+		this.payloadLease = null;
 		this.qos = message.getQos();
 		this.dup = message.isDuplicate();
 		this.retained = message.isRetained();
@@ -200,6 +244,7 @@ public class MqttPublish extends MqttPersistableWireMessage {
 
 	@Override
 	public String toString() {
+		byte[] payload = getPayload();
 		// Convert the first few bytes of the payload into a hex string
 		StringBuilder hex = new StringBuilder();
 		int limit = Math.min(payload.length, 20);
@@ -25,6 +25,7 @@ import java.io.InputStream;
 
 import org.eclipse.paho.mqttv5.common.ExceptionHelper;
 import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttPayloadAllocator;
 import org.eclipse.paho.mqttv5.common.MqttPersistable;
 import org.eclipse.paho.mqttv5.common.packet.util.CountingInputStream;
 import org.eclipse.paho.mqttv5.common.packet.util.MultiByteArrayInputStream;
@@ -190,15 +191,31 @@ public abstract class MqttWireMessage {
 		}
 		MultiByteArrayInputStream mbais = new MultiByteArrayInputStream(data.getHeaderBytes(), data.getHeaderOffset(),
 				data.getHeaderLength(), payload, data.getPayloadOffset(), data.getPayloadLength());
-		return createWireMessage(mbais);
+		return createWireMessage(mbais, null);
 	}
 
 	public static MqttWireMessage createWireMessage(byte[] bytes) throws MqttException {
+		return createWireMessage(bytes, null);
+	}
+
+	/**
+	 * Creates the message of a received packet.
+	 * 
+	 * @param bytes
+	 *            the packet
+	 * @param allocator
+	 *            the allocator of the publish payloads, <code>null</code> to
+	 *            decode the payloads into byte arrays
+	 * @return the message
+	 * @throws MqttException
+	 *             if the packet is invalid
+	 */
+	public static MqttWireMessage createWireMessage(byte[] bytes, MqttPayloadAllocator allocator) throws MqttException {
 		ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-		return createWireMessage(bais);
+		return createWireMessage(bais, allocator);
 	}
 
-	private static MqttWireMessage createWireMessage(InputStream inputStream) throws MqttException {
+	private static MqttWireMessage createWireMessage(InputStream inputStream, MqttPayloadAllocator allocator) throws MqttException {
 		try {
 			CountingInputStream counter = new CountingInputStream(inputStream);
 			DataInputStream in = new DataInputStream(counter);
@@ -226,7 +243,7 @@ public abstract class MqttWireMessage {
 				result = new MqttConnAck(data);
 				break;
 			case MqttWireMessage.MESSAGE_TYPE_PUBLISH:
-				result = new MqttPublish(info, data);
+				result = new MqttPublish(info, data, allocator);
 				break;
 			case MqttWireMessage.MESSAGE_TYPE_PUBACK:
 				result = new MqttPubAck(data);
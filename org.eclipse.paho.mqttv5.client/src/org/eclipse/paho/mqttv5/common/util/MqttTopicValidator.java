@@ -31,6 +31,11 @@ public class MqttTopicValidator {
    */
   public static final String TOPIC_WILDCARDS = MULTI_LEVEL_WILDCARD + SINGLE_LEVEL_WILDCARD;
 
+  /**
+   * Prefix of shared subscriptions ($share/{ShareName}/{filter})
+   */
+  public static final String SHARED_SUBSCRIPTION_PREFIX = "$share/";
+
   // topic name and topic filter length range defined in the spec
   private static final int MIN_TOPIC_LEN = 1;
   private static final int MAX_TOPIC_LEN = 65535;
@@ -102,7 +107,7 @@ public class MqttTopicValidator {
     }
 
     // Validate Shared Subscriptions
-    if (!sharedSubAllowed && topicString.startsWith("$share/")) {
+    if (!sharedSubAllowed && topicString.startsWith(SHARED_SUBSCRIPTION_PREFIX)) {
       throw new IllegalArgumentException("Shared Subscriptions are not allowed.");
     }
 
@@ -149,14 +154,22 @@ public class MqttTopicValidator {
    *           if the topic name or filter is invalid
    */
   public static boolean isMatched(String topicFilter, String topicName) throws IllegalArgumentException {
+    MqttTopicValidator.validate(topicFilter, true, true);
+    MqttTopicValidator.validate(topicName, false, true);
+
+    // the messages of a shared subscription carry the topic name, match the filter without $share/{ShareName}/
+    if (topicFilter.startsWith(SHARED_SUBSCRIPTION_PREFIX)) {
+      int shareNameEnd = topicFilter.indexOf(TOPIC_LEVEL_SEPARATOR, SHARED_SUBSCRIPTION_PREFIX.length());
+      if (shareNameEnd > 0) {
+        topicFilter = topicFilter.substring(shareNameEnd + 1);
+      }
+    }
+
     int topicPos = 0;
     int filterPos = 0;
     int topicLen = topicName.length();
     int filterLen = topicFilter.length();
 
-    MqttTopicValidator.validate(topicFilter, true, true);
-    MqttTopicValidator.validate(topicName, false, true);
-
     if (topicFilter.equals(topicName)) {
       return true;
     }
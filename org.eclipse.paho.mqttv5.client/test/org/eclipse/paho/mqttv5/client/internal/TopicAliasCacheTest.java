@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.eclipse.paho.mqttv5.client.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the least recently used assignment of the outgoing Topic Aliases.
+ */
+public class TopicAliasCacheTest {
+
+	@Test
+	public void testAliasesAreAssignedInOrder() {
+		TopicAliasCache cache = new TopicAliasCache();
+		assertNull(cache.get("a"));
+		assertEquals(Integer.valueOf(1), cache.assign("a", 3));
+		assertEquals(Integer.valueOf(2), cache.assign("b", 3));
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		assertEquals(Integer.valueOf(2), cache.get("b"));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedAliasIsReused() {
+		TopicAliasCache cache = new TopicAliasCache();
+		cache.assign("a", 2);
+		cache.assign("b", 2);
+		// a publish on a makes b the least recently used topic
+		cache.get("a");
+		assertEquals(Integer.valueOf(2), cache.assign("c", 2));
+		assertNull(cache.get("b"));
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		assertEquals(Integer.valueOf(2), cache.get("c"));
+		assertEquals(Integer.valueOf(1), cache.assign("d", 2));
+		assertNull(cache.get("a"));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testNoAliasesAllowed() {
+		TopicAliasCache cache = new TopicAliasCache();
+		assertNull(cache.assign("a", 0));
+		assertEquals(0, cache.size());
+		cache.assign("a", 1);
+		cache.clear();
+		assertNull(cache.get("a"));
+		assertEquals(Integer.valueOf(1), cache.assign("b", 1));
+	}
+
+}
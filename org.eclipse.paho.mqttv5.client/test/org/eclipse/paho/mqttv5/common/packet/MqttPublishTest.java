@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.eclipse.paho.mqttv5.common.packet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttPayloadAllocator;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests decoding the payload of a received publish into an allocated buffer.
+ */
+public class MqttPublishTest {
+
+	@Test
+	public void testPayloadIsDecodedIntoAllocatedBuffer() throws Exception {
+		byte[] payload = "hello".getBytes(StandardCharsets.UTF_8);
+		List<Lease> leases = new ArrayList<Lease>();
+		MqttPayloadAllocator allocator = size -> {
+			Lease lease = new Lease(ByteBuffer.allocate(64));
+			lease.buffer.limit(size);
+			leases.add(lease);
+			return lease;
+		};
+
+		MqttPublish received = (MqttPublish) MqttWireMessage.createWireMessage(encode("test/topic", payload, 1), allocator);
+
+		assertEquals(1, leases.size());
+		assertEquals("test/topic", received.getTopicName());
+		assertEquals(payload.length, received.getPayloadLength());
+		MqttMessage message = received.getMessage();
+		assertSame(leases.get(0), message.getPayloadLease());
+		ByteBuffer buffer = message.getPayloadLease().buffer();
+		assertEquals(0, buffer.position());
+		assertEquals(payload.length, buffer.remaining());
+		assertArrayEquals(payload, message.getPayload());
+		// the copy does not consume the leased buffer
+		assertEquals(payload.length, buffer.remaining());
+		assertEquals(1, message.getQos());
+	}
+
+	@Test
+	public void testPayloadIsDecodedIntoArrayWithoutAllocator() throws Exception {
+		byte[] payload = "hello".getBytes(StandardCharsets.UTF_8);
+
+		MqttPublish received = (MqttPublish) MqttWireMessage.createWireMessage(encode("test/topic", payload, 0));
+
+		MqttMessage message = received.getMessage();
+		assertNull(message.getPayloadLease());
+		assertNotNull(message.getPayload());
+		assertArrayEquals(payload, message.getPayload());
+	}
+
+	private byte[] encode(String topic, byte[] payload, int qos) throws Exception {
+		MqttPublish publish = new MqttPublish(topic, new MqttMessage(payload, qos, false, new MqttProperties()), new MqttProperties());
+		publish.setMessageId(1);
+		byte[] header = publish.getHeader();
+		byte[] packet = new byte[header.length + payload.length];
+		System.arraycopy(header, 0, packet, 0, header.length);
+		System.arraycopy(payload, 0, packet, header.length, payload.length);
+		return packet;
+	}
+
+	private static final class Lease implements MqttPayloadAllocator.Lease {
+
+		private final ByteBuffer buffer;
+
+		Lease(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public ByteBuffer buffer() {
+			return buffer;
+		}
+
+		@Override
+		public void release() {
+		}
+
+	}
+
+}
@@ -31,6 +31,7 @@ import org.gecko.osgi.messaging.Message;
 //import org.gecko.osgi.messaging.MessagingConstants;
 import org.gecko.osgi.messaging.MessagingContext;
 import org.gecko.osgi.messaging.MessagingRPCService;
+import org.gecko.osgi.messaging.PayloadHelper;
 import org.osgi.annotation.bundle.Capability;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -114,7 +115,7 @@ public class AMQPRPCRequestService extends BasicAMQPService implements Messaging
 				ctx.setReplyAddress(replyQueueName);
 			}
 			BasicProperties properties = AMQPHelper.createMessageProperties(ctx);
-			byte[] message = content.array();
+			byte[] message = PayloadHelper.toByteArray(content);
 			AMQPRPCConsumer consumer = new AMQPRPCConsumer(channel, ctx.getCorrelationId());
 			// we auto-acknowledging here, because we only expect one answers
 			final String ctag = channel.basicConsume(ctx.getReplyAddress(), true, consumer);
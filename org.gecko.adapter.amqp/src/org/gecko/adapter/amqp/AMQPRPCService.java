@@ -34,6 +34,7 @@ import org.gecko.osgi.messaging.Message;
 //import org.gecko.osgi.messaging.MessagingConstants;
 import org.gecko.osgi.messaging.MessagingContext;
 import org.gecko.osgi.messaging.MessagingRPCService;
+import org.gecko.osgi.messaging.PayloadHelper;
 import org.gecko.util.common.PropertyHelper;
 import org.osgi.annotation.bundle.Capability;
 import org.osgi.service.cm.ConfigurationException;
@@ -149,7 +150,7 @@ public class AMQPRPCService implements MessagingRPCService, AutoCloseable {
 			}
 			BasicProperties properties = AMQPHelper.createMessageProperties(ctx);
 			if (channel.isOpen()) {
-				byte[] message = content.array();
+				byte[] message = PayloadHelper.toByteArray(content);
 				AMQPRPCConsumer consumer = new AMQPRPCConsumer(channel, ctx.getCorrelationId());
 				// we auto-acknowledging here, because we only expect one answers
 				final String ctag = channel.basicConsume(ctx.getReplyAddress(), true, consumer);
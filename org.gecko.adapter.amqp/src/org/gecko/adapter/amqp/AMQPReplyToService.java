@@ -34,6 +34,7 @@ import org.gecko.osgi.messaging.Message;
 //import org.gecko.osgi.messaging.MessagingConstants;
 import org.gecko.osgi.messaging.MessagingContext;
 import org.gecko.osgi.messaging.MessagingReplyToService;
+import org.gecko.osgi.messaging.PayloadHelper;
 import org.gecko.osgi.messaging.ReplyToPolicy;
 import org.gecko.util.common.PropertyHelper;
 import org.gecko.util.pushstream.PushStreamHelper;
@@ -152,7 +153,7 @@ public class AMQPReplyToService implements MessagingReplyToService, AutoCloseabl
 			}
 			BasicProperties properties = AMQPHelper.createMessageProperties(ctx);
 			if (channel.isOpen()) {
-				byte[] message = content.array();
+				byte[] message = PayloadHelper.toByteArray(content);
 				AMQPRPCConsumer consumer = new AMQPRPCConsumer(channel, ctx.getCorrelationId());
 
 				if (ctx.isExchangeMode()) {
@@ -212,7 +213,7 @@ public class AMQPReplyToService implements MessagingReplyToService, AutoCloseabl
 			BasicProperties properties = AMQPHelper.createMessageProperties(ctx);
 			if (channel.isOpen()) {
 				AMQPReplyToConsumer consumer = new AMQPReplyToConsumer(channel, ctx.getReplyAddress(), ctx.getAcknowledgeFilter(), esContext, ctx.getCorrelationId());
-				byte[] message = content.array();
+				byte[] message = PayloadHelper.toByteArray(content);
 				// Note to set autoAck to false, because the consumer is acknowledge consumer in this use-case
 				channel.basicConsume(ctx.getReplyAddress(), false, consumer);
 				if (ctx.isExchangeMode()) {
@@ -14,12 +14,18 @@
 package org.gecko.adapter.amqp;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.management.ManagementFactory;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
@@ -34,12 +40,22 @@ import org.gecko.adapter.amqp.client.AMQPContext;
 import org.gecko.adapter.amqp.client.AMQPContextBuilder;
 import org.gecko.adapter.amqp.consumer.AMQPAcknowledgingConsumer;
 import org.gecko.adapter.amqp.consumer.AMQPHelper;
+import org.gecko.adapter.amqp.consumer.AMQPPublisherConfirms;
+import org.gecko.adapter.amqp.consumer.AMQPPublisherConfirms.PublishAction;
 import org.gecko.adapter.amqp.jmx.AMQPConsumerMetric;
 import org.gecko.adapter.amqp.jmx.AMQPServiceMetric;
+import org.gecko.osgi.messaging.BatchPolicy;
+import org.gecko.osgi.messaging.CreditFlow;
 import org.gecko.osgi.messaging.Message;
 //import org.gecko.osgi.messaging.MessagingConstants;
 import org.gecko.osgi.messaging.MessagingContext;
 import org.gecko.osgi.messaging.MessagingService;
+import org.gecko.osgi.messaging.PublishOutbox;
+import org.gecko.osgi.messaging.SubscriptionRegistry;
+import org.gecko.osgi.messaging.codec.PayloadCodecs;
+import org.gecko.osgi.messaging.metrics.MessagingMetrics;
+import org.gecko.osgi.messaging.metrics.MessagingMetricsRegistry;
+import org.gecko.osgi.messaging.metrics.TopicMetrics;
 import org.gecko.util.common.PropertyHelper;
 import org.gecko.util.pushstream.PushStreamHelper;
 import org.gecko.util.pushstream.SimplePushEventSourceContext;
@@ -50,6 +66,8 @@ import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
 import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.Promises;
 import org.osgi.util.pushstream.PushStream;
 
 import com.rabbitmq.client.AMQP;
@@ -71,13 +89,22 @@ import com.rabbitmq.client.Envelope;
 public class AMQPService implements MessagingService, AutoCloseable {
 
 	private static final Logger logger = Logger.getLogger("o.g.a.amqpService");
-	private Map<String, AMQPAcknowledgingConsumer> consumerMap = new ConcurrentHashMap<>();
+	private static final long OUTBOX_CONFIRM_TIMEOUT_MS = 30000;
+	// one broker consumer per queue or binding and acknowledge mode, shared by all streams on it
+	private final SubscriptionRegistry<String, AMQPAcknowledgingConsumer> consumers = new SubscriptionRegistry<>(this::closeConsumer);
 	private AtomicReference<Connection> connectionRef = new AtomicReference<Connection>();
 	private Map<String, Channel> channelMap = new ConcurrentHashMap<String, Channel>();
+	// the confirm channel of the asynchronous publishes per connection
+	private Map<Connection, AMQPPublisherConfirms> confirmsMap = new ConcurrentHashMap<>();
+	// the channels of the consumers, that do not consume on the shared channel of their queue
+	private final Set<Channel> ownChannels = ConcurrentHashMap.newKeySet();
 	private ConnectionFactory connectionFactory;
 	private SimplePushEventSourceContext<Message> esContext;
 	private AMQPServiceMetric jmxService;
 	private MBeanServer mbeanServer;
+	private PublishOutbox outbox;
+	// only used by the drain thread of the outbox
+	private Channel outboxChannel;
 
 	@ObjectClassDefinition
 	@interface AMQPConfig {
@@ -90,15 +117,37 @@ public class AMQPService implements MessagingService, AutoCloseable {
 		boolean autoRecovery() default false;
 		boolean jmx() default false;
 		String brokerUrl();
+		String outboxPath() default "";
+		long outboxMaxSize() default 67108864L;
 
 	}		
 
+	/**
+	 * Creates a new instance.
+	 */
+	public AMQPService() {
+		this(null);
+	}
+
+	/**
+	 * Creates a new instance, that connects with the given factory instead of the configured one, e.g. to a stand-in broker.
+	 * @param connectionFactory the connection factory, <code>null</code> to create it from the configuration
+	 */
+	AMQPService(ConnectionFactory connectionFactory) {
+		this.connectionFactory = connectionFactory;
+	}
+
 	@Activate	
 	void activate(AMQPConfig config, Map<String, Object> properties) throws Exception {
 		try {
-			connectionFactory = configureConnectionFactory(config, properties);
+			if (connectionFactory == null) {
+				connectionFactory = configureConnectionFactory(config, properties);
+			}
 			connect();
 			esContext = PushStreamHelper.getEventSourceContext(properties);
+			if (!config.outboxPath().isEmpty()) {
+				outbox = new PublishOutbox(MessagingMetrics.ADAPTER_AMQP, Paths.get(config.outboxPath()), config.outboxMaxSize(), this::publishOutbox);
+			}
 			updateServiceJMX(config, properties);
 		} catch(Exception e){
 			logger.log(Level.SEVERE, "Error creating AMQP connection", e);
@@ -120,6 +169,11 @@ public class AMQPService implements MessagingService, AutoCloseable {
 	 */
 	@Override
 	public void close() throws Exception {
+		if (outbox != null) {
+			outbox.close();
+			outbox = null;
+		}
+		consumers.closeAll();
 		channelMap.keySet().forEach((k)->{
 			try {
 				disconnectChannel(k);
@@ -128,6 +182,8 @@ public class AMQPService implements MessagingService, AutoCloseable {
 			}
 		});
 		channelMap.clear();
+		confirmsMap.values().forEach(AMQPPublisherConfirms::close);
+		confirmsMap.clear();
 		Connection connection = connectionRef.get();
 		if (connection != null) {
 			try {
@@ -154,34 +210,315 @@ public class AMQPService implements MessagingService, AutoCloseable {
 	 */
 	@Override
 	public void publish(String topic, ByteBuffer content, MessagingContext context) throws Exception {
-		Channel channel = null;
 		if (context != null && context instanceof AMQPContext) {
+			TopicMetrics metrics = getMetrics(topic);
 			AMQPContext ctx = (AMQPContext) context;
-			ctx.setQueueName(topic);
-			channel = ctx.isExchangeMode() ? connectExchange(ctx, false) : connectQueue(ctx);
-			/*
-			 * Add RPC specific settings
-			 */
-			if (ctx.isRpc()) {
-				if (ctx.getReplyAddress() == null) {
-					String replyQueueName = channel.queueDeclare().getQueue();
-					ctx.setReplyAddress(replyQueueName);
+			byte[] message;
+			try {
+				message = PayloadCodecs.getDefault().encode(content, ctx.getContentEncoding());
+				// a message, whose publish fails, is appended to the outbox
+				checkOutboxSize(topic, ctx, message);
+			} catch (Exception e) {
+				metrics.error();
+				throw e;
+			}
+			try {
+				if (isBuffering(ctx)) {
+					appendToOutbox(topic, ctx, message);
+					return;
+				}
+				Channel channel = connectPublishChannel(topic, ctx);
+				BasicProperties properties = AMQPHelper.createMessageProperties(ctx);
+				if (channel.isOpen()) {
+					basicPublish(channel, ctx, properties, message);
+					metrics.published(message.length);
+				} else if (canBuffer(ctx)) {
+					appendToOutbox(topic, ctx, message);
 				}
-				if (ctx.getCorrelationId() == null) {
-					String uuid = UUID.randomUUID().toString();
-					ctx.setCorrelationId(uuid);
+			} catch (Exception e) {
+				if (canBuffer(ctx)) {
+					appendToOutbox(topic, ctx, message);
+					return;
 				}
+				metrics.error();
+				throw e;
+			}
+		}
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publishAsync(java.lang.String, java.nio.ByteBuffer)
+	 */
+	@Override
+	public Promise<Void> publishAsync(String topic, ByteBuffer content) {
+		MessagingContext context = new AMQPContextBuilder().topic().durable().queue(topic).build();
+		return publishAsync(topic, content, context);
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publishAsync(java.lang.String, java.nio.ByteBuffer, org.gecko.osgi.messaging.MessagingContext)
+	 */
+	@Override
+	public Promise<Void> publishAsync(String topic, ByteBuffer content, MessagingContext context) {
+		if (context == null || !(context instanceof AMQPContext)) {
+			return Promises.failed(new IllegalArgumentException("The message context is not of type AMQPContext"));
+		}
+		TopicMetrics metrics = getMetrics(topic);
+		try {
+			AMQPContext ctx = (AMQPContext) context;
+			byte[] message = PayloadCodecs.getDefault().encode(content, ctx.getContentEncoding());
+			checkOutboxSize(topic, ctx, message);
+			if (isBuffering(ctx)) {
+				// resolves, when the message is stored in the outbox
+				appendToOutbox(topic, ctx, message);
+				return Promises.resolved(null);
 			}
+			// declares the queue or exchange
+			connectPublishChannel(topic, ctx);
 			BasicProperties properties = AMQPHelper.createMessageProperties(ctx);
-			if (channel.isOpen()) {
-				byte[] message = content.array();
-				if (ctx.isExchangeMode()) {
-					channel.basicPublish(ctx.getExchangeName(), ctx.getRoutingKey(), properties, message);
-				} else {
-					channel.basicPublish("", ctx.getQueueName(), properties, message);
-				}
+			AMQPPublisherConfirms confirms = getPublisherConfirms();
+			if (!confirms.isOpen()) {
+				metrics.error();
+				return Promises.failed(new IllegalStateException("The channel to publish is not open"));
+			}
+			return confirms.publish(channel -> basicPublish(channel, ctx, properties, message))
+					.onSuccess(v -> metrics.published(message.length))
+					.onFailure(t -> metrics.error());
+		} catch (Exception e) {
+			metrics.error();
+			logger.log(Level.SEVERE, e, () -> String.format("[%s] Error publishing message", topic));
+			return Promises.failed(e);
+		}
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publishBatch(java.lang.String, java.util.Collection)
+	 */
+	@Override
+	public Promise<Void> publishBatch(String topic, Collection<ByteBuffer> contents) throws Exception {
+		MessagingContext context = new AMQPContextBuilder().topic().durable().queue(topic).build();
+		return publishBatch(topic, contents, context);
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publishBatch(java.lang.String, java.util.Collection, org.gecko.osgi.messaging.MessagingContext)
+	 */
+	@Override
+	public Promise<Void> publishBatch(String topic, Collection<ByteBuffer> contents, MessagingContext context) throws Exception {
+		if (context == null || !(context instanceof AMQPContext)) {
+			throw new IllegalArgumentException("The message context is not of type AMQPContext");
+		}
+		AMQPContext ctx = (AMQPContext) context;
+		List<byte[]> messages = new ArrayList<>(contents.size());
+		for (ByteBuffer content : contents) {
+			byte[] message = PayloadCodecs.getDefault().encode(content, ctx.getContentEncoding());
+			// the whole batch is checked, before a message of it is appended to the outbox
+			checkOutboxSize(topic, ctx, message);
+			messages.add(message);
+		}
+		if (isBuffering(ctx)) {
+			for (byte[] message : messages) {
+				appendToOutbox(topic, ctx, message);
+			}
+			return Promises.resolved(null);
+		}
+		TopicMetrics metrics = getMetrics(topic);
+		try {
+			// declares the queue or exchange
+			connectPublishChannel(topic, ctx);
+			BasicProperties properties = AMQPHelper.createMessageProperties(ctx);
+			AMQPPublisherConfirms confirms = getPublisherConfirms();
+			if (!confirms.isOpen()) {
+				metrics.error();
+				return Promises.failed(new IllegalStateException("The channel to publish the batch is not open"));
+			}
+			/*
+			 * Publish the whole batch on the confirm channel and resolve, when the broker confirmed all of it,
+			 * instead of a round-trip per message. Other publishers only wait, while the batch is written.
+			 */
+			List<PublishAction> actions = new ArrayList<>(messages.size());
+			messages.forEach(m -> actions.add(channel -> basicPublish(channel, ctx, properties, m)));
+			return confirms.publishAll(actions)
+					.onSuccess(v -> messages.forEach(m -> metrics.published(m.length)))
+					.onFailure(t -> {
+						metrics.error();
+						logger.log(Level.SEVERE, t, () -> String.format("[%s] Error publishing batch of %s messages", topic, contents.size()));
+					});
+		} catch (IOException | TimeoutException e) {
+			metrics.error();
+			logger.log(Level.SEVERE, e, () -> String.format("[%s] Error publishing batch of %s messages", topic, contents.size()));
+			return Promises.failed(e);
+		}
+	}
+
+	/**
+	 * Returns <code>true</code>, if the message can be written to the outbox. RPC messages need a live reply queue.
+	 * @param ctx the context
+	 * @return <code>true</code>, if the message can be published through the outbox
+	 */
+	private boolean canBuffer(AMQPContext ctx) {
+		return outbox != null && !ctx.isRpc();
+	}
+
+	/**
+	 * Returns <code>true</code>, if the message has to be written to the outbox, because the connection is down
+	 * or older messages were not published yet
+	 * @param ctx the context
+	 * @return <code>true</code>, if the message is published through the outbox
+	 */
+	private boolean isBuffering(AMQPContext ctx) {
+		if (!canBuffer(ctx)) {
+			return false;
+		}
+		Connection connection = connectionRef.get();
+		return connection == null || !connection.isOpen() || !outbox.isEmpty();
+	}
+
+	/**
+	 * Writes the message with its target and properties to the outbox
+	 * @param topic the topic
+	 * @param ctx the context
+	 * @param message the encoded message
+	 * @throws IOException thrown, if the message cannot be written
+	 */
+	private void appendToOutbox(String topic, AMQPContext ctx, byte[] message) throws IOException {
+		outbox.append(topic, getOutboxAttributes(topic, ctx), message);
+	}
+
+	/**
+	 * Checks, if the message fits into the outbox, so that it can be appended, if its publish fails
+	 * @param topic the topic
+	 * @param ctx the context
+	 * @param message the encoded message
+	 * @throws IllegalArgumentException thrown, if the message is larger than a record of the outbox
+	 */
+	private void checkOutboxSize(String topic, AMQPContext ctx, byte[] message) {
+		if (canBuffer(ctx)) {
+			outbox.checkSize(topic, getOutboxAttributes(topic, ctx), message);
+		}
+	}
+
+	/**
+	 * Returns the target and the properties, that are stored with a message in the outbox
+	 * @param topic the topic
+	 * @param ctx the context
+	 * @return the attributes
+	 */
+	private Map<String, String> getOutboxAttributes(String topic, AMQPContext ctx) {
+		BasicProperties properties = AMQPHelper.createMessageProperties(ctx);
+		return ctx.isExchangeMode() ? 
+				AMQPHelper.toOutboxAttributes(ctx.getExchangeName(), ctx.getRoutingKey(), properties) : 
+				AMQPHelper.toOutboxAttributes("", topic, properties);
+	}
+
+	/**
+	 * Publishes the messages of the outbox on an own channel in confirm mode and waits once for the confirms of the batch.
+	 * The exchanges and queues are expected to exist.
+	 * @param entries the messages
+	 * @throws Exception thrown, if the broker is not reachable or did not confirm the batch
+	 */
+	private void publishOutbox(List<PublishOutbox.Entry> entries) throws Exception {
+		connect();
+		Channel channel = outboxChannel;
+		if (channel == null || !channel.isOpen()) {
+			channel = connectionRef.get().createChannel();
+			channel.confirmSelect();
+			outboxChannel = channel;
+		}
+		for (PublishOutbox.Entry entry : entries) {
+			Map<String, String> attributes = entry.getAttributes();
+			channel.basicPublish(attributes.get(AMQPHelper.OUTBOX_EXCHANGE), attributes.get(AMQPHelper.OUTBOX_ROUTING_KEY), 
+					AMQPHelper.fromOutboxAttributes(attributes), entry.getPayload());
+		}
+		channel.waitForConfirmsOrDie(OUTBOX_CONFIRM_TIMEOUT_MS);
+		entries.forEach(e -> getMetrics(e.getTopic()).published(e.getPayload().length));
+	}
+
+	/**
+	 * Returns the metrics of the topic
+	 * @param topic the topic
+	 * @return the topic metrics
+	 */
+	private TopicMetrics getMetrics(String topic) {
+		return MessagingMetricsRegistry.getDefault().getTopicMetrics(MessagingMetrics.ADAPTER_AMQP, topic);
+	}
+
+	/**
+	 * Connects the channel for publishing and adds RPC specific settings to the context
+	 * @param topic the topic to publish on
+	 * @param ctx the context
+	 * @return the channel instance
+	 * @throws IOException
+	 * @throws TimeoutException
+	 */
+	private Channel connectPublishChannel(String topic, AMQPContext ctx) throws IOException, TimeoutException {
+		ctx.setQueueName(topic);
+		Channel channel = ctx.isExchangeMode() ? connectExchange(ctx, false) : connectQueue(ctx);
+		/*
+		 * Add RPC specific settings
+		 */
+		if (ctx.isRpc()) {
+			if (ctx.getReplyAddress() == null) {
+				String replyQueueName = channel.queueDeclare().getQueue();
+				ctx.setReplyAddress(replyQueueName);
+			}
+			if (ctx.getCorrelationId() == null) {
+				String uuid = UUID.randomUUID().toString();
+				ctx.setCorrelationId(uuid);
 			}
 		}
+		return channel;
+	}
+
+	/**
+	 * Returns the publisher confirm tracker of the connection. It publishes on a confirm channel of its own, 
+	 * because the sequence numbers of a channel only match, if no other publisher uses it.
+	 * The tracker is removed, when its channel shuts down.
+	 * @return the publisher confirm tracker instance
+	 * @throws IOException
+	 * @throws TimeoutException
+	 */
+	private AMQPPublisherConfirms getPublisherConfirms() throws IOException, TimeoutException {
+		connect();
+		Connection connection = connectionRef.get();
+		AMQPPublisherConfirms confirms = confirmsMap.get(connection);
+		if (confirms != null && confirms.isOpen()) {
+			return confirms;
+		}
+		synchronized (confirmsMap) {
+			confirms = confirmsMap.get(connection);
+			if (confirms == null || !confirms.isOpen()) {
+				Channel channel = connection.createChannel();
+				AMQPPublisherConfirms created = new AMQPPublisherConfirms(channel);
+				channel.addShutdownListener(cause -> confirmsMap.remove(connection, created));
+				confirmsMap.put(connection, created);
+				confirms = created;
+			}
+		}
+		return confirms;
+	}
+
+	/**
+	 * Publishes the message either to the exchange or the queue of the context
+	 * @param channel the channel to publish on
+	 * @param ctx the context
+	 * @param properties the message properties
+	 * @param message the message content
+	 * @throws IOException
+	 */
+	private void basicPublish(Channel channel, AMQPContext ctx, BasicProperties properties, byte[] message) throws IOException {
+		if (ctx.isLatencyStamping()) {
+			properties = AMQPHelper.stampLatency(properties);
+		}
+		if (ctx.isExchangeMode()) {
+			channel.basicPublish(ctx.getExchangeName(), ctx.getRoutingKey(), properties, message);
+		} else {
+			channel.basicPublish("", ctx.getQueueName(), properties, message);
+		}
 	}
 
 	/* 
@@ -202,33 +539,190 @@ public class AMQPService implements MessagingService, AutoCloseable {
 	public PushStream<Message> subscribe(String topic, MessagingContext context) throws Exception {
 		if (context != null && context instanceof AMQPContext) {
 			AMQPContext ctx = (AMQPContext) context;
-			String consumerKey = AMQPHelper.getKey(ctx);
-			AMQPAcknowledgingConsumer consumer = consumerMap.get(consumerKey); 
-			String consumerTag = "ma_" + topic;
-			Channel channel = ctx.isExchangeMode() ? connectExchange(ctx, true) : connectQueue(ctx);
-			if (channel.isOpen()) {
-				if (consumer == null) {
-					consumer = new AMQPAcknowledgingConsumer(channel, topic, ctx.getAcknowledgeFilter(), esContext);
-					if (mbeanServer != null) {
-						AMQPConsumerMetric jmxConsumer = createJMXConsumer(ctx, consumerKey);
-						consumer.setMBean(jmxConsumer);
-						mbeanServer.registerMBean(jmxConsumer, jmxConsumer.getObjectName());
-					}
-					consumerMap.put(consumerKey, consumer);
-					channel.basicConsume(ctx.getQueueName(), ctx.isAutoAcknowledge(), consumerTag, consumer);
-				} 
-				return consumer.createPushstream(context);
-			} else {
-				AMQPAcknowledgingConsumer c = consumerMap.remove(consumerKey);
-				c.close();
-				channel.close();
-				throw new IllegalStateException("The channel to connect is not open");
+			String ackMode = ctx.isAutoAcknowledge() ? "" : "_ack";
+			String consumerKey = AMQPHelper.getKey(ctx) + ackMode;
+			String consumerTag = "ma_" + topic + ackMode;
+			Channel channel = connectConsumerChannel(ctx, consumerKey);
+			return consumers.open(consumerKey, 
+					k -> createConsumer(channel, ctx, topic, consumerKey, consumerTag, false), 
+					c -> c.createPushstream(context));
+		} else {
+			throw new IllegalArgumentException("The message context is not of type AMQPContext");
+		}
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#subscribeBatched(java.lang.String, org.gecko.osgi.messaging.BatchPolicy, org.gecko.osgi.messaging.MessagingContext)
+	 */
+	@Override
+	public PushStream<List<Message>> subscribeBatched(String topic, BatchPolicy policy, MessagingContext context) throws Exception {
+		if (context != null && context instanceof AMQPContext) {
+			AMQPContext ctx = (AMQPContext) context;
+			// batches are acknowledged as a whole on an own channel, so they need their own consumer
+			String ackMode = ctx.isAutoAcknowledge() ? "_batch" : "_ack_batch";
+			String consumerKey = AMQPHelper.getKey(ctx) + ackMode;
+			String consumerTag = "ma_" + topic + ackMode;
+			Channel channel = connectConsumerChannel(ctx, consumerKey);
+			AMQPAcknowledgingConsumer consumer = consumers.acquire(consumerKey, 
+					k -> createConsumer(channel, ctx, topic, consumerKey, consumerTag, !ctx.isAutoAcknowledge()));
+			try {
+				return consumer.createBatchedPushstream(policy, context).onClose(() -> consumers.release(consumerKey, consumer));
+			} catch (Exception e) {
+				consumers.release(consumerKey, consumer);
+				throw e;
 			}
 		} else {
 			throw new IllegalArgumentException("The message context is not of type AMQPContext");
 		}
 	}
+
+	/**
+	 * Connects the channel to consume from. If it is not open, the consumer of the key is removed.
+	 * @param ctx the context
+	 * @param consumerKey the consumer key
+	 * @return the open channel
+	 * @throws IOException
+	 * @throws TimeoutException
+	 */
+	private Channel connectConsumerChannel(AMQPContext ctx, String consumerKey) throws IOException, TimeoutException {
+		Channel channel = ctx.isExchangeMode() ? connectExchange(ctx, true) : connectQueue(ctx);
+		if (!channel.isOpen()) {
+			AMQPAcknowledgingConsumer c = consumers.remove(consumerKey);
+			if (c != null) {
+				c.close();
+			}
+			channel.close();
+			throw new IllegalStateException("The channel to connect is not open");
+		}
+		return channel;
+	}
 	
+	/**
+	 * Creates the consumer and registers it at the channel. A consumer with a credit flow or batch acknowledges gets an own channel.
+	 * @param channel the channel of the queue
+	 * @param ctx the context
+	 * @param topic the topic
+	 * @param consumerKey the consumer key
+	 * @param consumerTag the consumer tag
+	 * @param batchAcknowledge <code>true</code>, to acknowledge whole batches instead of single messages
+	 * @return the consumer
+	 */
+	private AMQPAcknowledgingConsumer createConsumer(Channel channel, AMQPContext ctx, String topic, String consumerKey, String consumerTag, boolean batchAcknowledge) {
+		Channel consumerChannel = channel;
+		if (ctx.getCredits() > 0 || batchAcknowledge) {
+			// the credit flow changes the prefetch and cancels the consumer and a multiple acknowledge covers all 
+			// deliveries of the channel, that must not affect the publishers and the other consumers of the queue
+			try {
+				consumerChannel = connectionRef.get().createChannel();
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot create the channel to consume from the queue " + ctx.getQueueName(), e);
+			}
+			ownChannels.add(consumerChannel);
+		}
+		AMQPAcknowledgingConsumer consumer = new AMQPAcknowledgingConsumer(consumerChannel, topic, ctx.getAcknowledgeFilter(), esContext);
+		consumer.setBatchAcknowledge(batchAcknowledge);
+		consumer.setAutoAcknowledge(ctx.isAutoAcknowledge());
+		try {
+			if (ctx.isExchangeMode()) {
+				bindConsumerQueue(consumerChannel, ctx);
+			}
+			if (mbeanServer != null) {
+				AMQPConsumerMetric jmxConsumer = createJMXConsumer(ctx, consumerKey);
+				consumer.setMBean(jmxConsumer);
+				mbeanServer.registerMBean(jmxConsumer, jmxConsumer.getObjectName());
+			}
+			if (ctx.getCredits() > 0) {
+				configureCreditFlow(consumerChannel, ctx, consumerTag, consumer);
+			}
+			consumerChannel.basicConsume(ctx.getQueueName(), ctx.isAutoAcknowledge(), consumerTag, consumer);
+			return consumer;
+		} catch (Exception e) {
+			closeConsumer(consumer);
+			throw new IllegalStateException("Cannot consume from the queue " + ctx.getQueueName(), e);
+		}
+	}
+
+	/**
+	 * Declares an exclusive queue for a consumer of an exchange and binds it with the routing key of the context.
+	 * Every consumer of a binding, e.g. the one of the streams and the one of the batched streams, gets an own queue, 
+	 * otherwise they would compete for the messages. The server named queue is deleted, when the consumer is cancelled.
+	 * @param channel the channel of the consumer
+	 * @param ctx the context, gets the name of the queue
+	 * @throws IOException
+	 */
+	private void bindConsumerQueue(Channel channel, AMQPContext ctx) throws IOException {
+		String queueName = channel.queueDeclare().getQueue();
+		channel.queueBind(queueName, ctx.getExchangeName(), ctx.getRoutingKey());
+		ctx.setQueueName(queueName);
+	}
+
+	/**
+	 * Cancels the consumer at the broker, after its last stream was closed
+	 * @param consumer the consumer
+	 */
+	private void closeConsumer(AMQPAcknowledgingConsumer consumer) {
+		String consumerTag = consumer.getConsumerTag();
+		Channel channel = consumer.getChannel();
+		try {
+			if (consumerTag != null && channel.isOpen()) {
+				channel.basicCancel(consumerTag);
+			}
+		} catch (IOException e) {
+			logger.log(Level.FINE, e, () -> "Cannot cancel the consumer " + consumerTag);
+		}
+		AMQPConsumerMetric jmxConsumer = consumer.getMBean();
+		if (mbeanServer != null && jmxConsumer != null) {
+			try {
+				mbeanServer.unregisterMBean(jmxConsumer.getObjectName());
+			} catch (Exception e) {
+				logger.log(Level.FINE, e, () -> "Cannot unregister the consumer mbean " + consumerTag);
+			}
+		}
+		consumer.close();
+		if (ownChannels.remove(channel) && channel.isOpen()) {
+			try {
+				channel.close();
+			} catch (Exception e) {
+				logger.log(Level.FINE, e, () -> "Cannot close the channel of the consumer " + consumerTag);
+			}
+		}
+	}
+
+	/**
+	 * Binds the delivery of the consumer to the demand of its stream. The consumer is cancelled, when all credits
+	 * are taken by messages in the stream buffer and consumes again, when half of them were taken by the subscriber.
+	 * Without auto acknowledge the prefetch is limited to the credits as well.
+	 * @param channel the channel
+	 * @param ctx the context
+	 * @param consumerTag the consumer tag
+	 * @param consumer the consumer
+	 * @throws IOException
+	 */
+	private void configureCreditFlow(Channel channel, AMQPContext ctx, String consumerTag, AMQPAcknowledgingConsumer consumer) throws IOException {
+		String queueName = ctx.getQueueName();
+		boolean autoAck = ctx.isAutoAcknowledge();
+		if (!autoAck) {
+			channel.basicQos(ctx.getCredits());
+		}
+		CreditFlow creditFlow = new CreditFlow(ctx.getCredits(), () -> {
+			try {
+				channel.basicCancel(consumerTag);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, () -> {
+			try {
+				if (channel.isOpen()) {
+					channel.basicConsume(queueName, autoAck, consumerTag, consumer);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		consumer.setCreditFlow(creditFlow);
+	}
+
 	/**
 	 * Configures the {@link ConnectionFactory}
 	 * @param config the configuration admin configuration
@@ -323,15 +817,16 @@ public class AMQPService implements MessagingService, AutoCloseable {
 	}
 
 	/**
-	 * Connects using an exchange and routing key to a routing type
+	 * Connects using an exchange and routing key to a routing type. The queues of the subscriptions are
+	 * declared per consumer, see {@link #bindConsumerQueue(Channel, AMQPContext)}.
 	 * @param context the context object
+	 * @param subscribe <code>true</code>, if the channel is used to subscribe
 	 * @return the channel instance
 	 * @throws IOException
 	 * @throws TimeoutException
 	 */
 	private Channel connectExchange(AMQPContext context, boolean subscribe) throws IOException, TimeoutException {
 		String exchange = context.getExchangeName();
-		String routingKey = context.getRoutingKey();
 		String routingType = context.getRoutingType();
 		String key = AMQPHelper.getKey(context);
 		if (subscribe) {
@@ -347,11 +842,6 @@ public class AMQPService implements MessagingService, AutoCloseable {
 			jmxService.addChannel(key);
 		}
 		channel.exchangeDeclare(exchange, routingType, context.isDurable(), context.isAutoDelete(), null);
-		if (subscribe) {
-			String queueName = channel.queueDeclare().getQueue();
-			context.setQueueName(queueName);
-			channel.queueBind(queueName, exchange, routingKey);
-		}
 		channelMap.put(key, channel);
 		logger.log(Level.FINE, "[{0}] Created channel", key);
 		return channel;
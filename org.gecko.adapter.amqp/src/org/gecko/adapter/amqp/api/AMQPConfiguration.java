@@ -40,5 +40,6 @@ public @interface AMQPConfiguration {
 	boolean autoRecovery() default true;
 	String brokerUrl();
 	boolean immediateChannel() default false;
+	boolean virtualThreads() default false;
 
 }
@@ -34,6 +34,7 @@ import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
@@ -46,6 +47,7 @@ import javax.net.ssl.TrustManagerFactory;
 import org.gecko.adapter.amqp.client.AMQPContext;
 import org.gecko.adapter.amqp.client.AMQPContext.RoutingType;
 import org.gecko.adapter.amqp.consumer.AMQPHelper;
+import org.gecko.osgi.messaging.MessagingExecutors;
 import org.gecko.util.common.PropertyHelper;
 import org.gecko.util.common.concurrent.NamedThreadFactory;
 import org.osgi.service.cm.ConfigurationException;
@@ -83,7 +85,10 @@ public abstract class BasicAMQPService {
 		amqpProps = converter.convert(properties).to(AMQPProperties.class);
 		this.properties = properties;
 		this.configuration = config;
-		ExecutorService es = Executors.newSingleThreadExecutor(NamedThreadFactory.newNamedFactory("AMQPService-" + config.name()));
+		ThreadFactory tf = config.virtualThreads() ? 
+				MessagingExecutors.newVirtualThreadFactory("AMQPService-" + config.name()) : 
+				NamedThreadFactory.newNamedFactory("AMQPService-" + config.name());
+		ExecutorService es = Executors.newSingleThreadExecutor(tf);
 		PromiseFactory pf = new PromiseFactory(es);
 		connectionPromise = pf.submit(this::configureConnectionFactory).
 				map(this::doConnect).
@@ -16,6 +16,7 @@ package org.gecko.adapter.amqp.api;
 import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
@@ -25,6 +26,7 @@ import java.util.logging.Logger;
 import org.gecko.adapter.amqp.api.BasicReSubscribeConsumerFactory.ConsumerFactoryContext;
 import org.gecko.adapter.amqp.client.AMQPContext;
 import org.gecko.adapter.amqp.client.AMQPContextBuilder;
+import org.gecko.osgi.messaging.MessagingExecutors;
 import org.gecko.util.common.concurrent.NamedThreadFactory;
 import org.osgi.util.promise.Deferred;
 import org.osgi.util.promise.Promise;
@@ -43,6 +45,18 @@ public abstract class BasicReSubscriber<T> extends BasicAMQPService {
 	protected PromiseFactory pf = new PromiseFactory(Executors.newCachedThreadPool(NamedThreadFactory.newNamedFactory("AMQPRe-Subscriber")));
 	private BasicReSubscribeConsumerFactory<T> consumerFactory;
 
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.adapter.amqp.api.BasicAMQPService#activate(org.gecko.adapter.amqp.api.AMQPConfiguration, java.util.Map)
+	 */
+	@Override
+	protected void activate(AMQPConfiguration config, Map<String, Object> properties) throws Exception {
+		if (config.virtualThreads()) {
+			pf = new PromiseFactory(MessagingExecutors.newVirtualThreadExecutor("AMQPRe-Subscriber"));
+		}
+		super.activate(config, properties);
+	}
+
 	/**
 	 * subscribes to a topic and returns the subscription promise
 	 * @param topic the topic to subscribe upon
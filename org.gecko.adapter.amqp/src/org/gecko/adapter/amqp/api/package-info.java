@@ -15,5 +15,5 @@
  * @since 26.02.2024
  */
 @org.osgi.annotation.bundle.Export
-@org.osgi.annotation.versioning.Version("1.0.0")
+@org.osgi.annotation.versioning.Version("1.1.0")
 package org.gecko.adapter.amqp.api;
\ No newline at end of file
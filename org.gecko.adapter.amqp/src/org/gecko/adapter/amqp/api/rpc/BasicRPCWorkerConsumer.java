@@ -31,6 +31,7 @@ import org.gecko.adapter.amqp.api.WorkerFunction;
 import org.gecko.adapter.amqp.client.AMQPContext;
 import org.gecko.adapter.amqp.client.AMQPMessage;
 import org.gecko.adapter.amqp.consumer.AMQPMessageImpl;
+import org.gecko.osgi.messaging.PayloadHelper;
 import org.gecko.util.common.concurrent.NamedThreadFactory;
 import org.osgi.service.component.ComponentServiceObjects;
 import org.osgi.util.promise.Promise;
@@ -170,7 +171,7 @@ public class BasicRPCWorkerConsumer extends BasicReSubscribeConsumer<Void> {
 				.messageId(messageId)
 				.timestamp(new Date())
 				.build();
-		byte[] content = response.payload().array();
+		byte[] content = PayloadHelper.toByteArray(response.payload());
 		Channel channel = getChannel();
 		if (channel.isOpen()) {
 			channel.basicPublish("", replyTo, replyProps, content);
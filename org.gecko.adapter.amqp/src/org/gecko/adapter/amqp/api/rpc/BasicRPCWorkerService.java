@@ -15,13 +15,13 @@ package org.gecko.adapter.amqp.api.rpc;
 
 import java.util.Map;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 
 import org.gecko.adapter.amqp.api.AMQPConfiguration;
 import org.gecko.adapter.amqp.api.BasicReSubscribeConsumer;
 import org.gecko.adapter.amqp.api.BasicReSubscriber;
 import org.gecko.adapter.amqp.api.WorkerFunction;
 import org.gecko.adapter.amqp.client.AMQPContext;
+import org.gecko.osgi.messaging.MessagingExecutors;
 import org.gecko.util.common.concurrent.NamedThreadFactory;
 import org.osgi.service.component.ComponentServiceObjects;
 import org.osgi.util.promise.PromiseFactory;
@@ -38,8 +38,10 @@ public abstract class BasicRPCWorkerService extends BasicReSubscriber<Void> impl
 
 	public void activate(AMQPConfiguration config, Map<String, Object> properties) throws Exception {
 		super.activate(config, properties);
-		ThreadFactory tf = NamedThreadFactory.newNamedFactory(String.format("RPCWorker-%s", config.name()));
-		pf = new PromiseFactory(Executors.newCachedThreadPool(tf));
+		String name = String.format("RPCWorker-%s", config.name());
+		pf = new PromiseFactory(config.virtualThreads() ? 
+				MessagingExecutors.newVirtualThreadExecutor(name) : 
+				Executors.newCachedThreadPool(NamedThreadFactory.newNamedFactory(name)));
 	}
 	
 	/* 
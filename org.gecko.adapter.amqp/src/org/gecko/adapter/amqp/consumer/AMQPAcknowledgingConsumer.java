@@ -16,14 +16,29 @@ package org.gecko.adapter.amqp.consumer;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.gecko.adapter.amqp.client.AMQPMessage;
 import org.gecko.adapter.amqp.jmx.AMQPConsumerMetric;
+import org.gecko.osgi.messaging.BatchPolicy;
+import org.gecko.osgi.messaging.ConflatingBlockingQueue;
+import org.gecko.osgi.messaging.CreditFlow;
+import org.gecko.osgi.messaging.Deduplication;
 import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.MessageBatcher;
+import org.gecko.osgi.messaging.MessageFanOut;
 import org.gecko.osgi.messaging.MessagingContext;
+import org.gecko.osgi.messaging.PartitionedDispatch;
+import org.gecko.osgi.messaging.codec.PayloadCodecs;
+import org.gecko.osgi.messaging.codec.PayloadTooLargeException;
+import org.gecko.osgi.messaging.metrics.LatencyStamp;
+import org.gecko.osgi.messaging.metrics.MessagingMetrics;
+import org.gecko.osgi.messaging.metrics.MessagingMetricsRegistry;
+import org.gecko.osgi.messaging.metrics.StreamMetrics;
+import org.gecko.osgi.messaging.metrics.TopicMetrics;
 import org.gecko.util.pushstream.PushStreamHelper;
 import org.gecko.util.pushstream.SimplePushEventSourceContext;
 import org.gecko.util.pushstream.source.AcknowledgingEventSource;
@@ -48,8 +63,16 @@ public class AMQPAcknowledgingConsumer extends DefaultConsumer {
 
 	private static final Logger logger = Logger.getLogger(AMQPAcknowledgingConsumer.class.getName());
 	protected final AcknowledgingEventSource<Message> eventSource;
+	// the acknowledging source sees one consumer, every stream gets an own instance of the messages
+	private final MessageFanOut streams;
 	protected final String topic;
 	protected AMQPConsumerMetric mbean;
+	protected final TopicMetrics metrics;
+	private volatile boolean latencyStamping = false;
+	private volatile CreditFlow creditFlow;
+	private boolean batchTracked = false;
+	private volatile boolean batchAcknowledge = false;
+	private volatile boolean autoAcknowledge = false;
 	
 	/**
 	 * Creates a new instance.
@@ -62,7 +85,9 @@ public class AMQPAcknowledgingConsumer extends DefaultConsumer {
 		this.eventSource = PushStreamHelper
 				.fromSimpleEventSource(spes, null).acknowledgeFilter(ackFilter)
 				.acknowledge(this::acknowledgeMessage).negativeAcknowledge(this::rejectMessage);
+		this.streams = new MessageFanOut(eventSource);
 		this.topic = topic;
+		this.metrics = MessagingMetricsRegistry.getDefault().getTopicMetrics(MessagingMetrics.ADAPTER_AMQP, topic);
 	}
 
 	/**
@@ -75,13 +100,72 @@ public class AMQPAcknowledgingConsumer extends DefaultConsumer {
 		this.eventSource = PushStreamHelper
 				.fromSimpleEventSource(eventSource, null).acknowledgeFilter(ackFilter)
 				.acknowledge(this::acknowledgeMessage).negativeAcknowledge(this::rejectMessage);
+		this.streams = new MessageFanOut(eventSource);
 		this.topic = topic;
+		this.metrics = MessagingMetricsRegistry.getDefault().getTopicMetrics(MessagingMetrics.ADAPTER_AMQP, topic);
 	}
 
 	public PushStream<Message> createPushstream(MessagingContext context) {
 		PushStreamBuilder<Message, BlockingQueue<PushEvent<? extends Message>>> buildStream = PushStreamHelper
-				.configurePushStreamBuilder(eventSource, context);
-		return buildStream.build();
+				.configurePushStreamBuilder(streams, context);
+		ConflatingBlockingQueue.configure(buildStream, context);
+		boolean measured = context != null && context.isLatencyStamping();
+		StreamMetrics.instrument(buildStream, StreamMetrics.getPushbackPolicy(context), measured ? metrics : null);
+		PushStream<Message> stream = PartitionedDispatch.build(buildStream, context);
+		if (measured) {
+			latencyStamping = true;
+			stream = StreamMetrics.measureQueueTime(stream, metrics);
+		}
+		return Deduplication.deduplicate(trackCredits(stream), context, metrics);
+	}
+
+	/**
+	 * Creates a stream of batches, see {@link MessageBatcher}. If the consumer acknowledges batches, the first stream
+	 * acknowledges all messages of a batch with one multiple acknowledge, when the batch is taken from the buffer.
+	 * The prefetch should not be smaller than the maximum batch size, otherwise the batches are emitted after the maximum delay only.
+	 * @param policy the batch limits
+	 * @param context the messaging context
+	 * @return the stream of batches
+	 */
+	public PushStream<List<Message>> createBatchedPushstream(BatchPolicy policy, MessagingContext context) {
+		return trackBatches(MessageBatcher.createStream(streams, policy, context));
+	}
+
+	/**
+	 * The batches are acknowledged by the first stream only, when another stream is closed, the next one takes over. 
+	 * The credits are returned by every stream, see {@link #trackCredits(PushStream)}.
+	 * @param stream the stream of batches
+	 * @return the tracking stream or the given stream
+	 */
+	private PushStream<List<Message>> trackBatches(PushStream<List<Message>> stream) {
+		if (creditFlow != null) {
+			stream = CreditFlow.trackingBatches(stream);
+		}
+		synchronized (this) {
+			if (!batchAcknowledge || batchTracked) {
+				return stream;
+			}
+			batchTracked = true;
+		}
+		return stream.onClose(this::batchTrackingClosed).map(batch -> {
+			acknowledgeBatch(batch);
+			return batch;
+		});
+	}
+
+	private synchronized void batchTrackingClosed() {
+		// the next stream takes over
+		batchTracked = false;
+	}
+
+	/**
+	 * Every stream tracks the credits, the first stream, that takes a message, returns its credit, 
+	 * see {@link Message#consumed()}
+	 * @param stream the stream
+	 * @return the tracking stream or the given stream
+	 */
+	private PushStream<Message> trackCredits(PushStream<Message> stream) {
+		return creditFlow == null ? stream : CreditFlow.tracking(stream);
 	}
 
 	/*
@@ -101,29 +185,101 @@ public class AMQPAcknowledgingConsumer extends DefaultConsumer {
 		// for RPC
 		String correlationId = properties.getCorrelationId();
 		String replyTo = properties.getReplyTo();
-		logger.log(Level.FINE, "Received message: '" + new String(body) + "' with routingKey: " + routingKey
+		logger.log(Level.FINE, () -> "Received message: '" + new String(body) + "' with routingKey: " + routingKey
 				+ ", contentType: " + contentType + ", deliveryTag: " + deliveryTag);
-		AMQPMessageImpl msg = new AMQPMessageImpl(topic, ByteBuffer.wrap(body));
+		AMQPMessageImpl msg;
+		try {
+			msg = createMessage(body, properties.getContentEncoding());
+		} catch (PayloadTooLargeException e) {
+			// a decompression bomb must not be redelivered, it goes to the dead letter exchange, if there is one
+			logger.log(Level.WARNING, e, () -> "Rejecting message with deliveryTag " + deliveryTag + " on " + topic);
+			metrics.error();
+			if (!autoAcknowledge) {
+				getChannel().basicReject(deliveryTag, false);
+			}
+			return;
+		}
 		msg.setDeliveryTag(deliveryTag);
+		msg.setMessageId(properties.getMessageId());
 		msg.setExchange(exchange);
 		msg.setRoutingKey(routingKey);
 		msg.setContentType(contentType);
 		msg.setReplyTo(replyTo);
 		msg.setCorrelationId(correlationId);
+		LatencyStamp.recordLatency(metrics, AMQPHelper.getSendTime(properties));
+		if (latencyStamping) {
+			msg.setReceiveTime(System.nanoTime());
+		}
 		if (eventSource.isConnected()) {
+			CreditFlow credits = creditFlow;
 			try {
+				if (credits != null) {
+					credits.received();
+					msg.setOnConsumed(credits::consumed);
+				}
 				eventSource.publish(msg);
+				metrics.delivered(body.length);
 				if (mbean != null) {
 					mbean.setLastMessageTime(new Date());
 				}
 			} catch (Exception ex) {
+				msg.consumed();
+				metrics.error();
 				logger.log(Level.SEVERE, "Detected error on AMQP receive", ex);
 			}
 			
 		}
 	}
 
+	/**
+	 * Creates the message for the body. A body with a known content encoding is decoded into a pooled buffer, 
+	 * other bodies are wrapped, the client already allocated them.
+	 * @param body the message body
+	 * @param contentEncoding the content encoding, can be <code>null</code>
+	 * @return the message
+	 * @throws PayloadTooLargeException thrown, if the decoded body exceeds the maximum decoded size
+	 */
+	private AMQPMessageImpl createMessage(byte[] body, String contentEncoding) throws PayloadTooLargeException {
+		PayloadCodecs codecs = PayloadCodecs.getDefault();
+		if (codecs.getCodec(contentEncoding) != null) {
+			try {
+				return new AMQPMessageImpl(topic, codecs.decode(ByteBuffer.wrap(body), contentEncoding));
+			} catch (PayloadTooLargeException e) {
+				throw e;
+			} catch (IOException e) {
+				logger.log(Level.WARNING, e, () -> "Cannot decode the " + contentEncoding + " payload of a message on " + topic + ", delivering it as it is");
+			}
+		}
+		return new AMQPMessageImpl(topic, ByteBuffer.wrap(body));
+	}
+
+	/**
+	 * Acknowledges all messages up to the highest delivery tag of the batch. The multiple acknowledge covers all 
+	 * deliveries of the channel, so a batch consumer needs an own channel.
+	 * @param batch the batch
+	 */
+	protected void acknowledgeBatch(List<Message> batch) {
+		if (!batchAcknowledge || batch.isEmpty()) {
+			return;
+		}
+		long deliveryTag = 0L;
+		for (Message message : batch) {
+			deliveryTag = Math.max(deliveryTag, ((AMQPMessage) message).getDeliveryTag());
+		}
+		long lastTag = deliveryTag;
+		logger.log(Level.FINEST, () -> "Acknowledge " + batch.size() + " messages up to deliveryTag: " + lastTag);
+		try {
+			getChannel().basicAck(deliveryTag, true);
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Detected error on acknowledging the batch ", e);
+		}
+	}
+
 	protected void acknowledgeMessage(Message message) {
+		if (batchAcknowledge) {
+			// acknowledged with the batch, when it is taken from the buffer
+			return;
+		}
 		AMQPMessage am = (AMQPMessage) message;
 		long deliveryTag = am.getDeliveryTag();
 		logger.log(Level.FINEST, "Acknowledge message with deliveryTag: " + deliveryTag);
@@ -165,4 +321,30 @@ public class AMQPAcknowledgingConsumer extends DefaultConsumer {
 		this.mbean = mbean;
 	}
 
+	/**
+	 * Sets the credit flow, that pauses the delivery, while the stream buffer is full of unconsumed messages.
+	 * Must be set, before the consumer is registered at the channel.
+	 * @param creditFlow the credit flow, can be <code>null</code>
+	 */
+	public void setCreditFlow(CreditFlow creditFlow) {
+		this.creditFlow = creditFlow;
+	}
+
+	/**
+	 * Sets, if the messages are acknowledged in batches, see {@link #createBatchedPushstream(BatchPolicy, MessagingContext)}.
+	 * Must be set, before the consumer is registered at the channel.
+	 * @param batchAcknowledge <code>true</code>, to acknowledge whole batches
+	 */
+	public void setBatchAcknowledge(boolean batchAcknowledge) {
+		this.batchAcknowledge = batchAcknowledge;
+	}
+
+	/**
+	 * Sets, if the broker acknowledges the messages on delivery. Must be set, before the consumer is registered at the channel.
+	 * @param autoAcknowledge <code>true</code>, if the consumer is registered with auto acknowledge
+	 */
+	public void setAutoAcknowledge(boolean autoAcknowledge) {
+		this.autoAcknowledge = autoAcknowledge;
+	}
+
 }
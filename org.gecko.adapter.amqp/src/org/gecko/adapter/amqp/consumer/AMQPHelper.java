@@ -18,10 +18,14 @@ import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
 import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.gecko.adapter.amqp.api.AMQPConfiguration;
 import org.gecko.adapter.amqp.client.AMQPContext;
 import org.gecko.adapter.amqp.client.AMQPMessage;
+import org.gecko.osgi.messaging.metrics.LatencyStamp;
 
 import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.AMQP.BasicProperties;
@@ -33,6 +37,10 @@ import com.rabbitmq.client.AMQP.BasicProperties;
  */
 public class AMQPHelper {
 
+	public static final String OUTBOX_EXCHANGE = "exchange";
+	public static final String OUTBOX_ROUTING_KEY = "routingKey";
+	private static final String OUTBOX_HEADER = "header.";
+
 	/**
 	 * Returns a key from the given context. This key can be used for channels, consumers
 	 * @param context the {@link AMQPContext} instance, must not be <code>null</code>
@@ -115,6 +123,107 @@ public class AMQPHelper {
 		return builder.build();
 	}
 
+	/**
+	 * Converts the target and the properties of a message into the attributes of the publish outbox.
+	 * The header values are kept as strings.
+	 * @param exchange the exchange, empty for the default exchange
+	 * @param routingKey the routing key or queue name
+	 * @param properties the message properties, must not be <code>null</code>
+	 * @return the attributes
+	 * @see #fromOutboxAttributes(Map)
+	 */
+	public static Map<String, String> toOutboxAttributes(String exchange, String routingKey, BasicProperties properties) {
+		Map<String, String> attributes = new HashMap<>();
+		attributes.put(OUTBOX_EXCHANGE, exchange);
+		attributes.put(OUTBOX_ROUTING_KEY, routingKey);
+		putIfSet(attributes, "correlationId", properties.getCorrelationId());
+		putIfSet(attributes, "replyTo", properties.getReplyTo());
+		putIfSet(attributes, "appId", properties.getAppId());
+		putIfSet(attributes, "clusterId", properties.getClusterId());
+		putIfSet(attributes, "contentEncoding", properties.getContentEncoding());
+		putIfSet(attributes, "contentType", properties.getContentType());
+		putIfSet(attributes, "deliveryMode", properties.getDeliveryMode());
+		putIfSet(attributes, "priority", properties.getPriority());
+		putIfSet(attributes, "expiration", properties.getExpiration());
+		putIfSet(attributes, "messageId", properties.getMessageId());
+		putIfSet(attributes, "timestamp", properties.getTimestamp() == null ? null : properties.getTimestamp().getTime());
+		putIfSet(attributes, "userId", properties.getUserId());
+		if (properties.getHeaders() != null) {
+			properties.getHeaders().forEach((k, v) -> putIfSet(attributes, OUTBOX_HEADER + k, v));
+		}
+		return attributes;
+	}
+
+	/**
+	 * Creates the message properties from the attributes of the publish outbox
+	 * @param attributes the attributes
+	 * @return the properties instance
+	 * @see #toOutboxAttributes(String, String, BasicProperties)
+	 */
+	public static BasicProperties fromOutboxAttributes(Map<String, String> attributes) {
+		BasicProperties.Builder builder = new BasicProperties.Builder()
+				.correlationId(attributes.get("correlationId"))
+				.replyTo(attributes.get("replyTo"))
+				.appId(attributes.get("appId"))
+				.clusterId(attributes.get("clusterId"))
+				.contentEncoding(attributes.get("contentEncoding"))
+				.contentType(attributes.get("contentType"))
+				.expiration(attributes.get("expiration"))
+				.messageId(attributes.get("messageId"))
+				.userId(attributes.get("userId"));
+		if (attributes.containsKey("deliveryMode")) {
+			builder.deliveryMode(Integer.valueOf(attributes.get("deliveryMode")));
+		}
+		if (attributes.containsKey("priority")) {
+			builder.priority(Integer.valueOf(attributes.get("priority")));
+		}
+		if (attributes.containsKey("timestamp")) {
+			builder.timestamp(new Date(Long.parseLong(attributes.get("timestamp"))));
+		}
+		Map<String, Object> headers = new HashMap<>();
+		attributes.forEach((k, v) -> {
+			if (k.startsWith(OUTBOX_HEADER)) {
+				headers.put(k.substring(OUTBOX_HEADER.length()), v);
+			}
+		});
+		if (!headers.isEmpty()) {
+			builder.headers(headers);
+		}
+		return builder.build();
+	}
+
+	private static void putIfSet(Map<String, String> attributes, String key, Object value) {
+		if (nonNull(value)) {
+			attributes.put(key, value.toString());
+		}
+	}
+
+	/**
+	 * Returns a copy of the properties, whose headers carry the send time and origin for the latency measurement
+	 * @param properties the message properties, must not be <code>null</code>
+	 * @return the stamped properties
+	 * @see LatencyStamp
+	 */
+	public static BasicProperties stampLatency(BasicProperties properties) {
+		Map<String, Object> headers = properties.getHeaders() == null ? new HashMap<>(4) : new HashMap<>(properties.getHeaders());
+		headers.put(LatencyStamp.SEND_TIME, LatencyStamp.now());
+		headers.put(LatencyStamp.ORIGIN, LatencyStamp.getOrigin());
+		return properties.builder().headers(headers).build();
+	}
+
+	/**
+	 * Returns the send time from the latency headers of the message
+	 * @param properties the message properties, can be <code>null</code>
+	 * @return the send time or <code>0</code>, if the message was not stamped
+	 * @see LatencyStamp
+	 */
+	public static long getSendTime(BasicProperties properties) {
+		if (properties == null || properties.getHeaders() == null) {
+			return 0L;
+		}
+		return LatencyStamp.parseSendTime(properties.getHeaders().get(LatencyStamp.SEND_TIME));
+	}
+
 	/**
 	 * Verifies if a exchange and routing key is provided in the configuration. This is at least needed for
 	 * exchange mode 
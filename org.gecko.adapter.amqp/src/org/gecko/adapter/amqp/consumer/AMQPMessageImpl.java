@@ -16,6 +16,8 @@ package org.gecko.adapter.amqp.consumer;
 import java.nio.ByteBuffer;
 
 import org.gecko.adapter.amqp.client.AMQPMessage;
+import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.PooledByteBuffer;
 import org.gecko.osgi.messaging.SimpleMessage;
 import org.gecko.osgi.messaging.SimpleMessagingContext;
 
@@ -31,7 +33,6 @@ public class AMQPMessageImpl extends SimpleMessage implements AMQPMessage {
 	private String contentType;
 	private String replyTo;
 	private String correlationId;
-	private String messageId;
 	private long deliveryTag;
 	
 	/**
@@ -48,23 +49,27 @@ public class AMQPMessageImpl extends SimpleMessage implements AMQPMessage {
 		super(topic, content, context);
 	}
 	
-	/* 
-	 * (non-Javadoc)
-	 * @see org.gecko.adapter.amqp.client.AMQPMessage#getMessageId()
+	/**
+	 * Creates a new instance with a payload leased from a buffer pool.
 	 */
-	@Override
-	public String getMessageId() {
-		return messageId;
+	public AMQPMessageImpl(String topic, PooledByteBuffer content) {
+		super(topic, content, SimpleMessagingContext.getDefault());
 	}
 	
 	/**
-	 * Sets the messageId.
-	 * @param messageId the messageId to set
-	 */
-	public void setMessageId(String messageId) {
-		this.messageId = messageId;
+	 * Creates another instance of the given message for an additional consumer
+	 * @param message the message to share the payload with
+	 */
+	protected AMQPMessageImpl(AMQPMessageImpl message) {
+		super(message);
+		this.exchange = message.exchange;
+		this.routingKey = message.routingKey;
+		this.contentType = message.contentType;
+		this.replyTo = message.replyTo;
+		this.correlationId = message.correlationId;
+		this.deliveryTag = message.deliveryTag;
 	}
-
+	
 	/* 
 	 * (non-Javadoc)
 	 * @see org.gecko.adapter.amqp.client.AMQPMessage#getExchange()
@@ -170,4 +175,13 @@ public class AMQPMessageImpl extends SimpleMessage implements AMQPMessage {
 		return getCorrelationId() != null && getReplyTo() != null;
 	}
 
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.SimpleMessage#retain()
+	 */
+	@Override
+	public Message retain() {
+		return new AMQPMessageImpl(this);
+	}
+
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+
+package org.gecko.adapter.amqp.consumer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.Promises;
+
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * Tracks the publisher confirms of a channel. Each published message gets a {@link Promise},
+ * that is resolved on the broker ack and failed on a nack or when the channel shuts down.
+ * The sequence numbers only match the messages, if nobody else publishes on the channel, 
+ * so the tracker needs a channel of its own.
+ * @author agent
+ * @since 2.2.2
+ */
+public class AMQPPublisherConfirms implements ConfirmListener, ShutdownListener {
+
+	/**
+	 * Publish action, that is executed with the sequence number reserved
+	 */
+	@FunctionalInterface
+	public interface PublishAction {
+
+		void publish(Channel channel) throws IOException;
+
+	}
+
+	private final ConcurrentNavigableMap<Long, Deferred<Void>> pending = new ConcurrentSkipListMap<>();
+	private final Channel channel;
+
+	/**
+	 * Creates a new instance and puts the channel into confirm mode.
+	 * @param channel the channel, that is only used by this tracker, must not be <code>null</code>
+	 * @throws IOException thrown on errors enabling the confirm mode
+	 */
+	public AMQPPublisherConfirms(Channel channel) throws IOException {
+		if (channel == null) {
+			throw new IllegalArgumentException("Cannot track publisher confirms without a channel");
+		}
+		this.channel = channel;
+		channel.confirmSelect();
+		channel.addConfirmListener(this);
+		channel.addShutdownListener(this);
+	}
+
+	/**
+	 * Executes the publish action on the channel and returns the promise for its publisher confirm.
+	 * The channel is locked, so that the sequence number matches the published message.
+	 * @param action the publish action
+	 * @return the promise that resolves on the broker ack
+	 */
+	public Promise<Void> publish(PublishAction action) {
+		synchronized (channel) {
+			try {
+				return publishLocked(action);
+			} catch (Exception e) {
+				return Promises.failed(e);
+			}
+		}
+	}
+
+	/**
+	 * Executes the publish actions in their order and returns the promise for the publisher confirms of all of them.
+	 * The channel is only locked, while the messages are written, the confirms are not awaited. 
+	 * If a publish action fails, the following ones are not executed.
+	 * @param actions the publish actions
+	 * @return the promise that resolves, when the broker acked all messages
+	 */
+	public Promise<Void> publishAll(Collection<? extends PublishAction> actions) {
+		List<Promise<Void>> confirms = new ArrayList<>(actions.size());
+		synchronized (channel) {
+			for (PublishAction action : actions) {
+				try {
+					confirms.add(publishLocked(action));
+				} catch (Exception e) {
+					confirms.add(Promises.failed(e));
+					break;
+				}
+			}
+		}
+		return Promises.all(confirms).map(l -> null);
+	}
+
+	/**
+	 * Registers the pending confirm for the next sequence number and executes the action. 
+	 * It has to be called, holding the channel lock.
+	 * @param action the publish action
+	 * @return the promise that resolves on the broker ack
+	 * @throws Exception thrown, if the message cannot be published
+	 */
+	private Promise<Void> publishLocked(PublishAction action) throws Exception {
+		Deferred<Void> deferred = new Deferred<>();
+		long seqNo = channel.getNextPublishSeqNo();
+		pending.put(seqNo, deferred);
+		try {
+			action.publish(channel);
+		} catch (Exception e) {
+			pending.remove(seqNo);
+			throw e;
+		}
+		return deferred.getPromise();
+	}
+
+	/**
+	 * Returns <code>true</code>, if the channel is open
+	 * @return <code>true</code>, if messages can be published
+	 */
+	public boolean isOpen() {
+		return channel.isOpen();
+	}
+
+	/**
+	 * Closes the channel. The messages, that wait for a confirm, fail.
+	 */
+	public void close() {
+		if (!channel.isOpen()) {
+			return;
+		}
+		try {
+			channel.close();
+		} catch (IOException | TimeoutException | AlreadyClosedException e) {
+			// the shutdown listener fails the pending messages
+		}
+	}
+
+	/**
+	 * Returns the number of messages, that wait for a confirm
+	 * @return the number of unconfirmed messages
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.rabbitmq.client.ConfirmListener#handleAck(long, boolean)
+	 */
+	@Override
+	public void handleAck(long deliveryTag, boolean multiple) throws IOException {
+		complete(deliveryTag, multiple, d -> d.resolve(null));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.rabbitmq.client.ConfirmListener#handleNack(long, boolean)
+	 */
+	@Override
+	public void handleNack(long deliveryTag, boolean multiple) throws IOException {
+		IOException nack = new IOException("Message was not acknowledged by the broker");
+		complete(deliveryTag, multiple, d -> d.fail(nack));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.rabbitmq.client.ShutdownListener#shutdownCompleted(com.rabbitmq.client.ShutdownSignalException)
+	 */
+	@Override
+	public void shutdownCompleted(ShutdownSignalException cause) {
+		complete(Long.MAX_VALUE, true, d -> d.fail(cause));
+	}
+
+	/**
+	 * Completes the deferred for the delivery tag or all up to the tag, when multiple is set
+	 * @param deliveryTag the delivery tag
+	 * @param multiple <code>true</code>, if all messages up to the tag are confirmed
+	 * @param completion the completion action
+	 */
+	private void complete(long deliveryTag, boolean multiple, Consumer<Deferred<Void>> completion) {
+		if (multiple) {
+			Map<Long, Deferred<Void>> confirmed = pending.headMap(deliveryTag, true);
+			confirmed.values().forEach(completion);
+			confirmed.clear();
+		} else {
+			Deferred<Void> deferred = pending.remove(deliveryTag);
+			if (deferred != null) {
+				completion.accept(deferred);
+			}
+		}
+	}
+
+}
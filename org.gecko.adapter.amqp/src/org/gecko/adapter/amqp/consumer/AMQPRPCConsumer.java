@@ -75,7 +75,7 @@ public class AMQPRPCConsumer extends DefaultConsumer {
 			return;
 		}
 		String replyTo = properties.getReplyTo();
-		logger.log(Level.FINE, "Received message: '" + new String(body) + "' with routingKey: " + routingKey + ", contentType: " + contentType + ", deliveryTag: " + deliveryTag);
+		logger.log(Level.FINE, () -> "Received message: '" + new String(body) + "' with routingKey: " + routingKey + ", contentType: " + contentType + ", deliveryTag: " + deliveryTag);
 		try {
 			AMQPMessageImpl msg = new AMQPMessageImpl(exchange == null ? "" : exchange, ByteBuffer.wrap(body));
 			msg.setDeliveryTag(deliveryTag);
@@ -22,6 +22,7 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -31,6 +32,7 @@ import org.gecko.adapter.amqp.api.WorkerFunction;
 import org.gecko.adapter.amqp.client.AMQPContext.RoutingType;
 import org.gecko.adapter.amqp.client.AMQPMessage;
 import org.gecko.adapter.amqp.pubsub.consumer.AMQPPubOnSubConsumer;
+import org.gecko.osgi.messaging.MessagingExecutors;
 import org.gecko.osgi.messaging.MessagingRPCPubOnSub;
 import org.gecko.util.common.PropertyHelper;
 import org.gecko.util.common.concurrent.NamedThreadFactory;
@@ -76,7 +78,10 @@ public class AMQPubOnSubService implements MessagingRPCPubOnSub {
 		}
 		this.configuration = config;
 		// configure publish on subscribe worker
-		ExecutorService es = Executors.newSingleThreadExecutor(NamedThreadFactory.newNamedFactory("PublishOnSubscribe-" + config.name()));
+		ThreadFactory tf = config.virtualThreads() ? 
+				MessagingExecutors.newVirtualThreadFactory("PublishOnSubscribe-" + config.name()) : 
+				NamedThreadFactory.newNamedFactory("PublishOnSubscribe-" + config.name());
+		ExecutorService es = Executors.newSingleThreadExecutor(tf);
 		PromiseFactory pf = new PromiseFactory(es);
 		connectionPromise = pf.submit(this::configureConnectionFactory).
 				map(this::configureConnection).
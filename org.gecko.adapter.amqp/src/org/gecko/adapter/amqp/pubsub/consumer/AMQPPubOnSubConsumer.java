@@ -22,6 +22,7 @@ import java.util.logging.Logger;
 import org.gecko.adapter.amqp.api.WorkerFunction;
 import org.gecko.adapter.amqp.client.AMQPMessage;
 import org.gecko.adapter.amqp.consumer.AMQPMessageImpl;
+import org.gecko.osgi.messaging.PayloadHelper;
 import org.gecko.util.pushstream.PushStreamContext;
 import org.gecko.util.pushstream.PushStreamHelper;
 import org.osgi.util.pushstream.PushStream;
@@ -106,7 +107,7 @@ public class AMQPPubOnSubConsumer extends DefaultConsumer {
 		byte[] content = new byte[0];
 		try {
 			ByteBuffer response = function.apply(message);
-			content = response.array();
+			content = PayloadHelper.toByteArray(response);
 		} catch (Exception e) {
 			logger.log(Level.SEVERE, "Error executing function for correlation id " + correlationId, e);
 		} finally {
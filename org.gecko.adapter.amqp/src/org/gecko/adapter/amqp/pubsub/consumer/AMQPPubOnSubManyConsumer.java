@@ -21,6 +21,7 @@ import java.util.logging.Logger;
 
 import org.gecko.adapter.amqp.client.AMQPMessage;
 import org.gecko.adapter.amqp.consumer.AMQPMessageImpl;
+import org.gecko.osgi.messaging.PayloadHelper;
 import org.gecko.osgi.messaging.ReplyToPolicy;
 import org.gecko.osgi.messaging.SimpleMessagingContext;
 import org.gecko.util.pushstream.PushStreamContext;
@@ -62,7 +63,7 @@ public class AMQPPubOnSubManyConsumer extends DefaultConsumer {
 		}
 		
 		public byte[] getContent() {
-			return buffer == null ? new byte[0] : buffer.array();
+			return PayloadHelper.toByteArray(buffer);
 		}
 		
 		public String getReplyTo() {
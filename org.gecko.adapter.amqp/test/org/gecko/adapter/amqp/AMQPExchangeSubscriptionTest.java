@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.adapter.amqp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gecko.adapter.amqp.client.AMQPContextBuilder;
+import org.gecko.osgi.messaging.BatchPolicy;
+import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.MessagingContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.util.pushstream.PushStream;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+
+/**
+ * Tests the queues of the subscriptions to an exchange against a stand-in broker, that routes the messages
+ * of an exchange to all queues bound with the routing key.
+ * @author agent
+ * @since 2.2.2
+ */
+public class AMQPExchangeSubscriptionTest {
+
+	private static final String EXCHANGE = "test.exchange";
+	private static final String ROUTING_KEY = "test.key";
+
+	private final StandInBroker broker = new StandInBroker();
+	private AMQPService service;
+
+	@BeforeEach
+	public void before() throws Exception {
+		service = new AMQPService(broker);
+		service.activate(createConfig(), Collections.emptyMap());
+	}
+
+	@AfterEach
+	public void after() throws Exception {
+		service.close();
+	}
+
+	@Test
+	public void testRegularAndBatchedSubscriptionGetOwnQueues() throws Exception {
+		CountDownLatch messages = new CountDownLatch(1);
+		CountDownLatch batches = new CountDownLatch(1);
+		PushStream<Message> stream = service.subscribe(EXCHANGE, createContext());
+		stream.forEach(m -> messages.countDown());
+		PushStream<List<Message>> batched = service.subscribeBatched(EXCHANGE, BatchPolicy.of(10, 0, 50), createContext());
+		batched.forEach(b -> batches.countDown());
+
+		assertEquals(2, broker.consumers.size());
+		List<String> queues = broker.bindings.get(EXCHANGE + "/" + ROUTING_KEY);
+		assertEquals(2, queues.size());
+		assertNotEquals(queues.get(0), queues.get(1));
+		assertTrue(broker.consumers.keySet().containsAll(queues));
+
+		broker.route(EXCHANGE, ROUTING_KEY, "hello".getBytes(StandardCharsets.UTF_8));
+
+		assertTrue(messages.await(2, TimeUnit.SECONDS), "The regular subscription did not get the message");
+		assertTrue(batches.await(2, TimeUnit.SECONDS), "The batched subscription did not get the message");
+		stream.close();
+		batched.close();
+	}
+
+	private MessagingContext createContext() {
+		return new AMQPContextBuilder().direct().exchange(EXCHANGE, ROUTING_KEY).autoAcknowledge().build();
+	}
+
+	private AMQPService.AMQPConfig createConfig() {
+		return (AMQPService.AMQPConfig) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { AMQPService.AMQPConfig.class }, (proxy, method, args) -> method.getDefaultValue());
+	}
+
+	/**
+	 * Connection factory, whose connections route the messages of an exchange in memory
+	 */
+	private static class StandInBroker extends ConnectionFactory {
+
+		private final Map<String, List<String>> bindings = new ConcurrentHashMap<>();
+		private final Map<String, Consumer> consumers = new ConcurrentHashMap<>();
+		private final AtomicInteger queueCount = new AtomicInteger();
+		private final AtomicInteger deliveryTag = new AtomicInteger();
+
+		/*
+		 * (non-Javadoc)
+		 * @see com.rabbitmq.client.ConnectionFactory#newConnection()
+		 */
+		@Override
+		public Connection newConnection() {
+			return proxy(Connection.class, (proxy, method, args) -> {
+				switch (method.getName()) {
+				case "createChannel":
+					return proxy(Channel.class, this::invokeChannel);
+				case "isOpen":
+					return Boolean.TRUE;
+				default:
+					return defaultValue(proxy, method, args);
+				}
+			});
+		}
+
+		void route(String exchange, String routingKey, byte[] body) throws Exception {
+			for (String queue : bindings.getOrDefault(exchange + "/" + routingKey, Collections.emptyList())) {
+				Consumer consumer = consumers.get(queue);
+				if (consumer != null) {
+					consumer.handleDelivery(queue, new Envelope(deliveryTag.incrementAndGet(), false, exchange, routingKey),
+							new AMQP.BasicProperties(), body);
+				}
+			}
+		}
+
+		private Object invokeChannel(Object proxy, Method method, Object[] args) throws Exception {
+			switch (method.getName()) {
+			case "isOpen":
+				return Boolean.TRUE;
+			case "queueDeclare":
+				String queue = args == null ? "amq.gen-" + queueCount.incrementAndGet() : (String) args[0];
+				return proxy(AMQP.Queue.DeclareOk.class, (p, m, a) -> "getQueue".equals(m.getName()) ? queue : defaultValue(p, m, a));
+			case "queueBind":
+				bindings.computeIfAbsent(args[1] + "/" + args[2], k -> new java.util.concurrent.CopyOnWriteArrayList<>()).add((String) args[0]);
+				return null;
+			case "basicConsume":
+				if (args.length == 4 && args[3] instanceof Consumer) {
+					Consumer consumer = (Consumer) args[3];
+					consumers.put((String) args[0], consumer);
+					consumer.handleConsumeOk((String) args[2]);
+					return args[2];
+				}
+				throw new UnsupportedOperationException(method.toString());
+			case "basicCancel":
+				consumers.values().removeIf(c -> args[0].equals(c.toString()));
+				return null;
+			default:
+				return defaultValue(proxy, method, args);
+			}
+		}
+
+		private static Object defaultValue(Object proxy, Method method, Object[] args) {
+			switch (method.getName()) {
+			case "equals":
+				return Boolean.valueOf(proxy == args[0]);
+			case "hashCode":
+				return Integer.valueOf(System.identityHashCode(proxy));
+			case "toString":
+				return "StandIn" + method.getDeclaringClass().getSimpleName();
+			default:
+				break;
+			}
+			Class<?> type = method.getReturnType();
+			if (type == boolean.class) {
+				return Boolean.FALSE;
+			} else if (type == int.class) {
+				return Integer.valueOf(0);
+			} else if (type == long.class) {
+				return Long.valueOf(0L);
+			}
+			return null;
+		}
+
+		private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+			return type.cast(Proxy.newProxyInstance(StandInBroker.class.getClassLoader(), new Class<?>[] { type }, handler));
+		}
+
+	}
+
+}
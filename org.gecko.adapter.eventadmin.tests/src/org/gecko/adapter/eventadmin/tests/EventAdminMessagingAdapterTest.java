@@ -20,7 +20,11 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -31,6 +35,7 @@ import org.gecko.adapter.eventadmin.context.EventAdminMessagingContextBuilder;
 import org.gecko.osgi.messaging.Message;
 import org.gecko.osgi.messaging.MessagingContext;
 import org.gecko.osgi.messaging.MessagingService;
+import org.gecko.osgi.messaging.PartitionedDispatch;
 import org.gecko.osgi.messaging.SimpleMessagingContextBuilder;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -42,6 +47,7 @@ import org.osgi.test.common.annotation.InjectService;
 import org.osgi.test.common.service.ServiceAware;
 import org.osgi.test.junit5.context.BundleContextExtension;
 import org.osgi.test.junit5.service.ServiceExtension;
+import org.osgi.util.promise.Promise;
 import org.osgi.util.pushstream.PushStream;
 
 @ExtendWith(MockitoExtension.class)
@@ -351,4 +357,92 @@ public class EventAdminMessagingAdapterTest {
 //		assertEquals(0, ehAware.getTrackingCount());
 	}
 
+	@Test
+	public void batchTestSendViaMessageAdapter(@InjectService ServiceAware<MessagingService> msAware) throws Exception {
+		assertFalse(msAware.isEmpty());
+		MessagingService messagingService = msAware.getService();
+		
+		PushStream<Message> subscribe = messagingService.subscribe("test/batch");
+		
+		int messages = 100;
+		
+		CountDownLatch latch = new CountDownLatch(messages);
+		
+		subscribe.forEach(m -> {
+			String message = new String(m.payload().array());
+			assertTrue(message.startsWith("test"));
+			latch.countDown();
+		});
+		
+		List<ByteBuffer> contents = new ArrayList<>(messages);
+		for(int i = 0; i < messages; i++) {
+			contents.add(ByteBuffer.wrap(("test" + i).getBytes()));
+		}
+		MessagingContext context = EventAdminMessagingContextBuilder.builder().contentType("text/plain").build();
+		Promise<Void> result = messagingService.publishBatch("test/batch", contents, context);
+		
+		assertNull(result.getFailure());
+		assertTrue(latch.await(10, TimeUnit.SECONDS), "Not all messages have been processed. Current count " + latch.getCount());
+		
+		subscribe.close();
+	}
+
+	@Test
+	public void asyncTestSendViaMessageAdapter(@InjectService ServiceAware<MessagingService> msAware) throws Exception {
+		assertFalse(msAware.isEmpty());
+		MessagingService messagingService = msAware.getService();
+		
+		PushStream<Message> subscribe = messagingService.subscribe("test/async");
+		
+		CountDownLatch latch = new CountDownLatch(1);
+		
+		subscribe.forEach(m -> {
+			String message = new String(m.payload().array());
+			assertEquals("test", message);
+			latch.countDown();
+		});
+		
+		Promise<Void> result = messagingService.publishAsync("test/async", ByteBuffer.wrap("test".getBytes()));
+		
+		assertNull(result.getFailure());
+		assertTrue(latch.await(10, TimeUnit.SECONDS), "Message has not been processed");
+		
+		subscribe.close();
+	}
+
+	@Test
+	public void partitionedTestSendViaMessageAdapter(@InjectService ServiceAware<MessagingService> msAware) throws Exception {
+		assertFalse(msAware.isEmpty());
+		MessagingService messagingService = msAware.getService();
+		
+		MessagingContext subscribeContext = new SimpleMessagingContextBuilder()
+				.withPartitioning(4, PartitionedDispatch.byTopicSuffix())
+				.build();
+		PushStream<Message> subscribe = messagingService.subscribe("test/partition/*", subscribeContext);
+		
+		int devices = 8;
+		int messages = 400;
+		CountDownLatch latch = new CountDownLatch(messages);
+		Map<String, Integer> lastSequence = new ConcurrentHashMap<>();
+		List<String> outOfOrder = Collections.synchronizedList(new ArrayList<>());
+		
+		subscribe.forEach(m -> {
+			int sequence = Integer.parseInt(new String(m.payload().array()));
+			Integer last = lastSequence.put(m.topic(), sequence);
+			if (last != null && last > sequence) {
+				outOfOrder.add(m.topic() + ": " + last + " > " + sequence);
+			}
+			latch.countDown();
+		});
+		
+		for (int i = 0; i < messages; i++) {
+			messagingService.publish("test/partition/device" + (i % devices), ByteBuffer.wrap(Integer.toString(i).getBytes()));
+		}
+		
+		assertTrue(latch.await(10, TimeUnit.SECONDS), "Not all messages have been processed. Current count " + latch.getCount());
+		assertTrue(outOfOrder.isEmpty(), "Messages out of order " + outOfOrder);
+		
+		subscribe.close();
+	}
+
 }
\ No newline at end of file
@@ -14,6 +14,7 @@
 package org.gecko.adapter.eventadmin;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -21,6 +22,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -32,6 +34,10 @@ import org.gecko.osgi.messaging.MessagingConstants;
 import org.gecko.osgi.messaging.MessagingContext;
 import org.gecko.osgi.messaging.MessagingService;
 import org.gecko.osgi.messaging.SimpleMessagingContextBuilder;
+import org.gecko.osgi.messaging.metrics.LatencyStamp;
+import org.gecko.osgi.messaging.metrics.MessagingMetrics;
+import org.gecko.osgi.messaging.metrics.MessagingMetricsRegistry;
+import org.gecko.osgi.messaging.metrics.TopicMetrics;
 import org.osgi.annotation.bundle.Capability;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.component.ComponentContext;
@@ -41,6 +47,8 @@ import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.Promises;
 import org.osgi.util.pushstream.PushStream;
 
 @Capability(namespace=MessagingConstants.CAPABILITY_NAMESPACE, name=MessagingConstants.EVENTADMIN_ADAPTER, version=MessagingConstants.EVENTADMIN_ADAPTER_VERSION, attribute= {"vendor=Gecko.io", "implementation=Eventadmin"})
@@ -93,13 +101,16 @@ public class EventAdminMessageService implements MessagingService{
 	public PushStream<Message> subscribe(String topic, MessagingContext context) throws Exception {
 		
 		final String key = generateKey(topic, context);
-		TopicEventHandler newSub = new TopicEventHandler(topic, bundleContext, () -> subscribtions.remove(key), context);
+		AtomicReference<TopicEventHandler> handler = new AtomicReference<>();
+		// only remove this handler, a newer one may already be registered for the key
+		TopicEventHandler newSub = new TopicEventHandler(topic, bundleContext, () -> subscribtions.remove(key, handler.get()), context);
+		handler.set(newSub);
 		TopicEventHandler sub = subscribtions.putIfAbsent(key, newSub);
 		if(sub == null) {
 			logger.info("Adding subsciption to " + key);
 			sub = newSub;
 		}
-		PushStream<Message> stream = sub.registerPushStream();
+		PushStream<Message> stream = sub.registerPushStream(context);
 		if(stream == null) {
 			return subscribe(topic, context);
 		}
@@ -121,7 +132,7 @@ public class EventAdminMessageService implements MessagingService{
 	@Override
 	public void publish(String topic, ByteBuffer content) throws Exception {
 		Event event = new Event(topic, Collections.singletonMap(CONTENT, content));
-		eventAdmin.postEvent(event);
+		postEvent(event, content);
 	}
 
 	/* 
@@ -140,7 +151,92 @@ public class EventAdminMessageService implements MessagingService{
 		props.put(CONTENT, content);		
 		
 		Event event = new Event(topic, props);
-		eventAdmin.postEvent(event);
+		postEvent(event, content);
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publishAsync(java.lang.String, java.nio.ByteBuffer)
+	 */
+	@Override
+	public Promise<Void> publishAsync(String topic, ByteBuffer content) {
+		try {
+			publish(topic, content);
+			return Promises.resolved(null);
+		} catch (Exception e) {
+			return Promises.failed(e);
+		}
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publishAsync(java.lang.String, java.nio.ByteBuffer, org.gecko.osgi.messaging.MessagingContext)
+	 */
+	@Override
+	public Promise<Void> publishAsync(String topic, ByteBuffer content, MessagingContext context) {
+		try {
+			// postEvent is already asynchronous, the promise resolves on dispatch
+			publish(topic, content, context);
+			return Promises.resolved(null);
+		} catch (Exception e) {
+			return Promises.failed(e);
+		}
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publishBatch(java.lang.String, java.util.Collection)
+	 */
+	@Override
+	public Promise<Void> publishBatch(String topic, Collection<ByteBuffer> contents) throws Exception {
+		Map<String, Object> props = new HashMap<String, Object>(2);
+		postBatch(topic, contents, props);
+		return Promises.resolved(null);
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publishBatch(java.lang.String, java.util.Collection, org.gecko.osgi.messaging.MessagingContext)
+	 */
+	@Override
+	public Promise<Void> publishBatch(String topic, Collection<ByteBuffer> contents, MessagingContext context) throws Exception {
+		Map<String, Object> props = new HashMap<String, Object>();
+		translateContextIntoMap(context, props);
+		postBatch(topic, contents, props);
+		return Promises.resolved(null);
+	}
+
+	/**
+	 * Posts an event for each content. The context properties are translated only once and
+	 * reused for all events, because the {@link Event} copies the given properties.
+	 * @param topic the topic
+	 * @param contents the contents to post
+	 * @param props the translated context properties
+	 */
+	private void postBatch(String topic, Collection<ByteBuffer> contents, Map<String, Object> props) {
+		for (ByteBuffer content : contents) {
+			props.put(CONTENT, content);
+			if (props.containsKey(LatencyStamp.SEND_TIME)) {
+				props.put(LatencyStamp.SEND_TIME, LatencyStamp.now());
+			}
+			postEvent(new Event(topic, props), content);
+		}
+	}
+
+	/**
+	 * Posts the event and reports it into the topic metrics
+	 * @param event the event
+	 * @param content the content of the event
+	 */
+	private void postEvent(Event event, ByteBuffer content) {
+		TopicMetrics metrics = MessagingMetricsRegistry.getDefault().getTopicMetrics(MessagingMetrics.ADAPTER_EVENTADMIN, event.getTopic());
+		try {
+			eventAdmin.postEvent(event);
+			metrics.published(content == null ? 0 : content.remaining());
+		} catch (RuntimeException e) {
+			metrics.error();
+			throw e;
+		}
 	}
 
 	/**
@@ -157,6 +253,10 @@ public class EventAdminMessageService implements MessagingService{
 		if(context instanceof EventAdminMessagingContext) {
 			props.put(HEADERS_PREFIX, ((EventAdminMessagingContext) context).getHeaders());
 		}
+		if (context.isLatencyStamping()) {
+			props.put(LatencyStamp.SEND_TIME, LatencyStamp.now());
+			props.put(LatencyStamp.ORIGIN, LatencyStamp.getOrigin());
+		}
 	}
 	
 	/**
@@ -14,9 +14,7 @@
 package org.gecko.adapter.eventadmin;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 import java.util.Dictionary;
-import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -26,9 +24,18 @@ import java.util.logging.Logger;
 
 import org.gecko.adapter.eventadmin.context.EventAdminMessagingContext;
 import org.gecko.adapter.eventadmin.context.EventAdminMessagingContextBuilder;
+import org.gecko.osgi.messaging.ConflatingBlockingQueue;
+import org.gecko.osgi.messaging.Deduplication;
+import org.gecko.osgi.messaging.LazyContextMessage;
 import org.gecko.osgi.messaging.Message;
 import org.gecko.osgi.messaging.MessagingContext;
-import org.gecko.osgi.messaging.SimpleMessage;
+import org.gecko.osgi.messaging.PartitionedDispatch;
+import org.gecko.osgi.messaging.codec.MessageCodecs;
+import org.gecko.osgi.messaging.metrics.LatencyStamp;
+import org.gecko.osgi.messaging.metrics.MessagingMetrics;
+import org.gecko.osgi.messaging.metrics.MessagingMetricsRegistry;
+import org.gecko.osgi.messaging.metrics.StreamMetrics;
+import org.gecko.osgi.messaging.metrics.TopicMetrics;
 import org.gecko.util.pushstream.PushStreamContext;
 import org.gecko.util.pushstream.PushStreamHelper;
 import org.gecko.util.pushstream.source.CallBackEventSource;
@@ -53,6 +60,7 @@ import org.osgi.util.pushstream.PushEventConsumer;
 import org.osgi.util.pushstream.PushStream;
 import org.osgi.util.pushstream.PushStreamBuilder;
 import org.osgi.util.pushstream.PushStreamProvider;
+import org.osgi.util.pushstream.PushbackPolicy;
 import org.osgi.util.pushstream.PushbackPolicyOption;
 import org.osgi.util.pushstream.QueuePolicyOption;
 import org.osgi.util.pushstream.SimplePushEventSource;
@@ -98,6 +106,8 @@ public class TopicEventHandler implements PrototypeServiceFactory<PushStream<Mes
 
 	private ServiceRegistration<?> pushStreamFactoryServiceRegistration;
 
+	private TopicMetrics metrics;
+
 	
 	@ObjectClassDefinition
 	@interface Config {
@@ -114,6 +124,7 @@ public class TopicEventHandler implements PrototypeServiceFactory<PushStream<Mes
 		this.ctx = bundleContext;
 		this.doAfterClose = doAfterClose;
 		this.messagingContext = messagingContext;
+		this.metrics = MessagingMetricsRegistry.getDefault().getTopicMetrics(MessagingMetrics.ADAPTER_EVENTADMIN, topic);
 		SimplePushEventSource<Message> source = provider.buildSimpleEventSource(Message.class).withQueuePolicy(QueuePolicyOption.BLOCK).build();
 		eventSource = new CallBackEventSource<Message>(source, 
 				this::openAndConnectIfNecessary, 
@@ -130,6 +141,7 @@ public class TopicEventHandler implements PrototypeServiceFactory<PushStream<Mes
 		this.topic = config.topic();
 		this.ctx = componentContext.getBundleContext();
 		this.messagingContext = PushStreamHelper.getPushStreamContext(properties);
+		this.metrics = MessagingMetricsRegistry.getDefault().getTopicMetrics(MessagingMetrics.ADAPTER_EVENTADMIN, topic);
 		SimplePushEventSource<Message> source = provider.buildSimpleEventSource(Message.class).withQueuePolicy(QueuePolicyOption.BLOCK).build();
 		eventSource = new CallBackEventSource<Message>(source, 
 				this::openAndConnectIfNecessary, null, null);
@@ -160,18 +172,21 @@ public class TopicEventHandler implements PrototypeServiceFactory<PushStream<Mes
 	 * @see org.osgi.service.event.EventHandler#handleEvent(org.osgi.service.event.Event)
 	 */
 	public void handle(Event event) {
-		logger.fine("Handle incomming event " + event.toString());
+		logger.fine(() -> "Handle incomming event " + event.toString());
 		String topic = event.getTopic();
 		ByteBuffer content = (ByteBuffer) event.getProperty(EventAdminMessageService.CONTENT);
 		assert eventSource != null;
 		
-		Map<String, Object> props = new HashMap<String, Object>();
-		Arrays.asList(event.getPropertyNames()).stream().filter(k -> !EventAdminMessageService.CONTENT.equals(k)).forEach(k -> props.put(k, event.getProperty(k)));
-		
-		EventAdminMessagingContext context = translateMapIntoContext(event);		
-		eventSource.publish(new SimpleMessage(topic, content, context));
+		// the context is only translated, if a consumer asks for it
+		metrics.delivered(content == null ? 0 : content.remaining());
+		LatencyStamp.recordLatency(metrics, LatencyStamp.parseSendTime(event.getProperty(LatencyStamp.SEND_TIME)));
+		LazyContextMessage message = new LazyContextMessage(topic, content, () -> translateMapIntoContext(event));
+		if (isLatencyStamping()) {
+			message.setReceiveTime(System.nanoTime());
+		}
+		eventSource.publish(message);
 		
-		logger.fine("finished Handing of incomming event " + event.toString());
+		logger.fine(() -> "finished Handing of incomming event " + event.toString());
 	}
 	
 	public void openAndConnectIfNecessary(CallBackEventSource<Message> source, PushEventConsumer<? super Message> consumer) {
@@ -200,16 +215,41 @@ public class TopicEventHandler implements PrototypeServiceFactory<PushStream<Mes
 	}
 	
 	public PushStream<Message> registerPushStream(){
+		return registerPushStream(messagingContext);
+	}
+	
+	/**
+	 * Registers a stream with its own buffer and backpressure, that are configured by the given context. 
+	 * All streams share the event handler, that is unregistered, when the last stream is closed.
+	 * @param streamContext the context of the stream, the context of the handler is used, if <code>null</code>
+	 * @return the stream or <code>null</code>, if the handler was already closed
+	 */
+	public PushStream<Message> registerPushStream(PushStreamContext<Message> streamContext){
+		PushStreamContext<Message> context = streamContext == null ? messagingContext : streamContext;
 		lock.lock();
 		try {
 			if(state == State.CLOSED || state == State.DISPOSED) {
 				return null;
 			} 
 			PushStreamBuilder<Message, BlockingQueue<PushEvent<? extends Message>>> buildStream = PushStreamHelper
-	                .configurePushStreamBuilder(eventSource, messagingContext)
-	                .withPushbackPolicy(PushbackPolicyOption.ON_FULL_FIXED, 10);
-			if(messagingContext.getBufferQueue() == null) {
-				buildStream.withBuffer(new ArrayBlockingQueue<PushEvent<? extends Message>>(messagingContext.getBufferSize() > 0 ? messagingContext.getBufferSize() : 1000));
+	                .configurePushStreamBuilder(MessageCodecs.getDefault().decoding(eventSource, getPayloadType(context)), context);
+			PushbackPolicy<Message, BlockingQueue<PushEvent<? extends Message>>> pushbackPolicy = StreamMetrics.getPushbackPolicy(context);
+			if (pushbackPolicy == null) {
+				// keep the former fixed pushback, if the context does not configure one
+				pushbackPolicy = PushbackPolicyOption.ON_FULL_FIXED.getPolicy(10);
+				buildStream.withPushbackPolicy(pushbackPolicy);
+			}
+			StreamMetrics.instrument(buildStream, pushbackPolicy, isLatencyStamping() ? metrics : null);
+			if(context.getBufferQueue() == null) {
+				buildStream.withBuffer(new ArrayBlockingQueue<PushEvent<? extends Message>>(context.getBufferSize() > 0 ? context.getBufferSize() : 1000));
+			}
+			if (context instanceof MessagingContext) {
+				ConflatingBlockingQueue.configure(buildStream, (MessagingContext) context);
+				PushStream<Message> stream = PartitionedDispatch.build(buildStream, (MessagingContext) context);
+				if (isLatencyStamping()) {
+					stream = StreamMetrics.measureQueueTime(stream, metrics);
+				}
+				return Deduplication.deduplicate(stream, (MessagingContext) context, metrics);
 			}
 			return buildStream.build();
 		} finally {
@@ -217,6 +257,14 @@ public class TopicEventHandler implements PrototypeServiceFactory<PushStream<Mes
 		}
 	}
 	
+	private Class<?> getPayloadType(PushStreamContext<Message> context) {
+		return context instanceof MessagingContext ? ((MessagingContext) context).getPayloadType() : null;
+	}
+	
+	private boolean isLatencyStamping() {
+		return messagingContext instanceof MessagingContext && ((MessagingContext) messagingContext).isLatencyStamping();
+	}
+	
 	private void consumerClosed(CallBackEventSource<Message> eventSource, PushEventConsumer<? super Message> consumer) {
 		logger.fine("closing event Source");
 		lock.lock();
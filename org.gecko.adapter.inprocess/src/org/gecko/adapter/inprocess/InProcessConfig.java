@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.adapter.inprocess;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Configuration of the in-process messaging service
+ * @author agent
+ * @since 1.0.0
+ */
+@ObjectClassDefinition
+public @interface InProcessConfig {
+
+	@AttributeDefinition(description = "Number of preallocated ring buffer slots, rounded up to the next power of two")
+	int ringSize() default 8192;
+
+	@AttributeDefinition(description = "Maximum number of messages, the dispatcher routes in one go")
+	int dispatchBatchSize() default 256;
+
+	@AttributeDefinition(description = "Run the dispatcher on a virtual thread, if the runtime supports them")
+	boolean virtualThreads() default false;
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.adapter.inprocess;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.MessagingConstants;
+import org.gecko.osgi.messaging.MessagingContext;
+import org.gecko.osgi.messaging.MessagingExecutors;
+import org.gecko.osgi.messaging.MessagingService;
+import org.gecko.osgi.messaging.SimpleMessage;
+import org.gecko.osgi.messaging.SimpleMessagingContext;
+import org.gecko.osgi.messaging.SimpleMessagingContextBuilder;
+import org.gecko.osgi.messaging.metrics.MessagingMetrics;
+import org.gecko.osgi.messaging.metrics.MessagingMetricsRegistry;
+import org.gecko.osgi.messaging.metrics.TopicMetrics;
+import org.osgi.annotation.bundle.Capability;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.Promises;
+import org.osgi.util.pushstream.PushStream;
+
+/**
+ * Broker-less {@link MessagingService} for the decoupling inside one JVM. Publishers write into a preallocated
+ * multi producer {@link RingBuffer}. A single dispatcher thread drains it and routes each message over a
+ * {@link TopicTrie} to the matching subscriptions. 
+ * 
+ * If a subscriber cannot keep up, its event source blocks the dispatcher according to the queue policy of
+ * the subscriber context. The ring buffer fills up and the publishers wait in {@link #publish(String, ByteBuffer)}.
+ * {@link #publishAsync(String, ByteBuffer)} does not wait, it fails with a {@link RejectedExecutionException}, when the ring is full.
+ * 
+ * @author agent
+ * @since 1.0.0
+ */
+@Capability(namespace=MessagingConstants.CAPABILITY_NAMESPACE, name=MessagingConstants.INPROCESS_ADAPTER, version=MessagingConstants.INPROCESS_ADAPTER_VERSION, attribute= {"vendor=Gecko.io", "implementation=InProcess"})
+@Designate(ocd = InProcessConfig.class)
+@Component(service = MessagingService.class, name = "InProcessMessagingService")
+public class InProcessMessageService implements MessagingService {
+
+	private static final Logger logger = Logger.getLogger(InProcessMessageService.class.getName());
+	private static final long DISPATCHER_PARK_MILLIS = 10;
+
+	private final TopicTrie<InProcessSubscription> router = new TopicTrie<>();
+	private final Set<InProcessSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+	private RingBuffer<MessageSlot> ring;
+	private Thread dispatcher;
+	private int dispatchBatchSize;
+
+	@Activate
+	public void activate(InProcessConfig config) {
+		ring = new RingBuffer<>(config.ringSize(), MessageSlot::new);
+		dispatchBatchSize = Math.max(1, config.dispatchBatchSize());
+		ThreadFactory factory = config.virtualThreads() ? 
+				MessagingExecutors.newVirtualThreadFactory("inprocess-dispatcher") :
+				MessagingExecutors.newPlatformThreadFactory("inprocess-dispatcher");
+		dispatcher = factory.newThread(this::dispatchLoop);
+		dispatcher.start();
+		logger.fine(() -> "Started in-process messaging with a ring buffer of " + ring.capacity() + " slots");
+	}
+
+	@Deactivate
+	public void deactivate() {
+		ring.close();
+		try {
+			dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		subscriptions.forEach(InProcessSubscription::close);
+		subscriptions.clear();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#subscribe(java.lang.String)
+	 */
+	@Override
+	public PushStream<Message> subscribe(String topic) throws Exception {
+		return subscribe(topic, new SimpleMessagingContextBuilder().build());
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#subscribe(java.lang.String, org.gecko.osgi.messaging.MessagingContext)
+	 */
+	@Override
+	public PushStream<Message> subscribe(String topic, MessagingContext context) throws Exception {
+		InProcessSubscription subscription = new InProcessSubscription(topic, context, this::unsubscribe);
+		subscriptions.add(subscription);
+		router.add(topic, subscription);
+		logger.fine(() -> "Adding subscription to " + topic);
+		return subscription.createPushStream();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publish(java.lang.String, java.nio.ByteBuffer)
+	 */
+	@Override
+	public void publish(String topic, ByteBuffer content) throws Exception {
+		publish(topic, content, SimpleMessagingContext.getDefault());
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publish(java.lang.String, java.nio.ByteBuffer, org.gecko.osgi.messaging.MessagingContext)
+	 */
+	@Override
+	public void publish(String topic, ByteBuffer content, MessagingContext context) throws Exception {
+		TopicMetrics metrics = getMetrics(topic);
+		try {
+			long sequence = ring.claim();
+			ring.get(sequence).set(topic, content, context);
+			ring.publish(sequence);
+			metrics.published(content == null ? 0 : content.remaining());
+		} catch (Exception e) {
+			metrics.error();
+			throw e;
+		}
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publishAsync(java.lang.String, java.nio.ByteBuffer)
+	 */
+	@Override
+	public Promise<Void> publishAsync(String topic, ByteBuffer content) {
+		return publishAsync(topic, content, SimpleMessagingContext.getDefault());
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publishAsync(java.lang.String, java.nio.ByteBuffer, org.gecko.osgi.messaging.MessagingContext)
+	 */
+	@Override
+	public Promise<Void> publishAsync(String topic, ByteBuffer content, MessagingContext context) {
+		TopicMetrics metrics = getMetrics(topic);
+		try {
+			long sequence = ring.tryClaim();
+			if (sequence < 0) {
+				metrics.error();
+				return Promises.failed(new RejectedExecutionException("The ring buffer is full, cannot publish to " + topic));
+			}
+			ring.get(sequence).set(topic, content, context);
+			ring.publish(sequence);
+			metrics.published(content == null ? 0 : content.remaining());
+			return Promises.resolved(null);
+		} catch (Exception e) {
+			metrics.error();
+			return Promises.failed(e);
+		}
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publishBatch(java.lang.String, java.util.Collection)
+	 */
+	@Override
+	public Promise<Void> publishBatch(String topic, Collection<ByteBuffer> contents) throws Exception {
+		return publishBatch(topic, contents, SimpleMessagingContext.getDefault());
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#publishBatch(java.lang.String, java.util.Collection, org.gecko.osgi.messaging.MessagingContext)
+	 */
+	@Override
+	public Promise<Void> publishBatch(String topic, Collection<ByteBuffer> contents, MessagingContext context) throws Exception {
+		for (ByteBuffer content : contents) {
+			publish(topic, content, context);
+		}
+		return Promises.resolved(null);
+	}
+
+	private TopicMetrics getMetrics(String topic) {
+		return MessagingMetricsRegistry.getDefault().getTopicMetrics(MessagingMetrics.ADAPTER_INPROCESS, topic);
+	}
+
+	/**
+	 * Removes the subscription from the router, when its last consumer closed
+	 * @param subscription the subscription
+	 */
+	private void unsubscribe(InProcessSubscription subscription) {
+		if (subscriptions.remove(subscription)) {
+			router.remove(subscription.getFilter(), subscription);
+			logger.fine(() -> "Removed subscription to " + subscription.getFilter());
+		}
+	}
+
+	/**
+	 * Drains the ring buffer until it is closed and empty
+	 */
+	private void dispatchLoop() {
+		while (true) {
+			int drained;
+			try {
+				drained = ring.drain(this::dispatch, dispatchBatchSize);
+			} catch (Exception e) {
+				logger.log(Level.SEVERE, e, () -> "Error dispatching an in-process message");
+				continue;
+			}
+			if (drained == 0) {
+				if (ring.isClosed()) {
+					return;
+				}
+				ring.awaitPublished(DISPATCHER_PARK_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Routes the message of a slot to all matching subscriptions. Each subscription gets a duplicate
+	 * of the payload, so that the subscribers do not share the buffer position with each other or the publisher.
+	 * @param slot the ring buffer slot
+	 */
+	private void dispatch(MessageSlot slot) {
+		String topic = slot.topic;
+		ByteBuffer content = slot.content;
+		MessagingContext context = slot.context;
+		long sendTime = slot.sendTime;
+		slot.clear();
+		router.match(topic, subscription -> 
+			subscription.publish(new SimpleMessage(topic, content == null ? null : content.duplicate(), context), sendTime));
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.adapter.inprocess;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+import org.gecko.osgi.messaging.ConflatingBlockingQueue;
+import org.gecko.osgi.messaging.Deduplication;
+import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.MessagingContext;
+import org.gecko.osgi.messaging.PartitionedDispatch;
+import org.gecko.osgi.messaging.SimpleMessage;
+import org.gecko.osgi.messaging.codec.MessageCodecs;
+import org.gecko.osgi.messaging.metrics.LatencyStamp;
+import org.gecko.osgi.messaging.metrics.MessagingMetrics;
+import org.gecko.osgi.messaging.metrics.MessagingMetricsRegistry;
+import org.gecko.osgi.messaging.metrics.StreamMetrics;
+import org.gecko.osgi.messaging.metrics.TopicMetrics;
+import org.gecko.util.pushstream.PushStreamHelper;
+import org.gecko.util.pushstream.source.CallBackEventSource;
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushStream;
+import org.osgi.util.pushstream.PushStreamBuilder;
+import org.osgi.util.pushstream.SimplePushEventSource;
+
+/**
+ * A subscription of the in-process messaging service. It owns the event source, the dispatcher publishes
+ * the routed messages to. The buffer, parallelism and pushback of the stream are taken from the {@link MessagingContext}.
+ * @author agent
+ * @since 1.0.0
+ */
+class InProcessSubscription {
+
+	private static final int DEFAULT_BUFFER_SIZE = 1000;
+
+	private final String filter;
+	private final MessagingContext context;
+	private final SimplePushEventSource<Message> eventSource;
+	private final TopicMetrics metrics;
+
+	/**
+	 * Creates a new instance.
+	 * @param filter the topic filter
+	 * @param context the messaging context of the subscriber
+	 * @param onClose called, when the last consumer of the subscription closed
+	 */
+	InProcessSubscription(String filter, MessagingContext context, Consumer<InProcessSubscription> onClose) {
+		this.filter = filter;
+		this.context = context;
+		this.metrics = MessagingMetricsRegistry.getDefault().getTopicMetrics(MessagingMetrics.ADAPTER_INPROCESS, filter);
+		SimplePushEventSource<Message> source = PushStreamHelper.createSimpleEventSource(Message.class, context);
+		this.eventSource = new CallBackEventSource<Message>(source, null, null, 
+				(s, c) -> {
+					if (!s.isConnected()) {
+						onClose.accept(this);
+					}
+				});
+	}
+
+	/**
+	 * Returns the topic filter
+	 * @return the topic filter
+	 */
+	String getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Creates the push stream of the subscription
+	 * @return the push stream
+	 */
+	PushStream<Message> createPushStream() {
+		PushStreamBuilder<Message, BlockingQueue<PushEvent<? extends Message>>> buildStream = PushStreamHelper
+				.configurePushStreamBuilder(MessageCodecs.getDefault().decoding(eventSource, context.getPayloadType()), context);
+		if (context.getBufferQueue() == null) {
+			buildStream.withBuffer(new ArrayBlockingQueue<PushEvent<? extends Message>>(context.getBufferSize() > 0 ? context.getBufferSize() : DEFAULT_BUFFER_SIZE));
+		}
+		ConflatingBlockingQueue.configure(buildStream, context);
+		StreamMetrics.instrument(buildStream, StreamMetrics.getPushbackPolicy(context), context.isLatencyStamping() ? metrics : null);
+		PushStream<Message> stream = PartitionedDispatch.build(buildStream, context);
+		if (context.isLatencyStamping()) {
+			stream = StreamMetrics.measureQueueTime(stream, metrics);
+		}
+		return Deduplication.deduplicate(stream, context, metrics);
+	}
+
+	/**
+	 * Hands a routed message to the consumers. Messages are dropped, as long as no consumer is connected.
+	 * @param message the message
+	 * @param sendTime the send time stamp in epoch nanoseconds or <code>0</code>, see {@link LatencyStamp}
+	 */
+	void publish(SimpleMessage message, long sendTime) {
+		if (eventSource.isConnected()) {
+			metrics.delivered(message.payload() == null ? 0 : message.payload().remaining());
+			LatencyStamp.recordLatency(metrics, sendTime);
+			if (context.isLatencyStamping()) {
+				message.setReceiveTime(System.nanoTime());
+			}
+			eventSource.publish(message);
+		}
+	}
+
+	/**
+	 * Closes the event source and with it all streams of the subscription
+	 */
+	void close() {
+		eventSource.close();
+	}
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.adapter.inprocess;
+
+import java.nio.ByteBuffer;
+
+import org.gecko.osgi.messaging.MessagingContext;
+import org.gecko.osgi.messaging.metrics.LatencyStamp;
+
+/**
+ * Preallocated, reusable slot of the {@link RingBuffer}. Producers fill it in place, the dispatcher clears
+ * it after routing, so that the payload does not stay reachable from the ring.
+ * @author agent
+ * @since 1.0.0
+ */
+final class MessageSlot {
+
+	String topic;
+	ByteBuffer content;
+	MessagingContext context;
+	long sendTime;
+
+	void set(String topic, ByteBuffer content, MessagingContext context) {
+		this.topic = topic;
+		this.content = content;
+		this.context = context;
+		this.sendTime = context != null && context.isLatencyStamping() ? LatencyStamp.now() : 0L;
+	}
+
+	void clear() {
+		topic = null;
+		content = null;
+		context = null;
+		sendTime = 0L;
+	}
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+
+package org.gecko.adapter.inprocess;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded multi producer, single consumer ring buffer with preallocated entries.
+ * A producer claims a sequence, fills the entry in place and publishes the sequence. Each slot
+ * carries its own sequence number, so producers only compete for the claim and never lock.
+ * The consumer drains the published entries in sequence order and hands the slots back to the producers.
+ * 
+ * @param <E> the entry type
+ * @author agent
+ * @since 1.0.0
+ */
+public class RingBuffer<E> {
+
+	private static final long MAX_PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+	private static final int SPIN_TRIES = 64;
+
+	private final Object[] entries;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	/* only touched by the consumer thread */
+	private long head;
+	private volatile Thread waitingConsumer;
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a new instance. The capacity is rounded up to the next power of two.
+	 * @param capacity the minimum capacity, must be greater than 0
+	 * @param factory the factory for the preallocated entries
+	 */
+	public RingBuffer(int capacity, Supplier<E> factory) {
+		if (capacity <= 0 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("The ring buffer capacity must be between 1 and 2^30, but was " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.mask = size - 1;
+		this.entries = new Object[size];
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			entries[i] = factory.get();
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Returns the number of slots
+	 * @return the capacity
+	 */
+	public int capacity() {
+		return entries.length;
+	}
+
+	/**
+	 * Returns the number of claimed, but not yet consumed slots. The value is only an estimate under concurrency.
+	 * @return the number of used slots
+	 */
+	public int size() {
+		long used = tail.get() - head;
+		return (int) Math.max(0, Math.min(used, entries.length));
+	}
+
+	/**
+	 * Claims the next slot without waiting
+	 * @return the claimed sequence or <code>-1</code>, if the ring buffer is full
+	 * @throws IllegalStateException if the ring buffer was closed
+	 */
+	public long tryClaim() {
+		while (true) {
+			checkOpen();
+			long sequence = tail.get();
+			long slotSequence = sequences.get(index(sequence));
+			long diff = slotSequence - sequence;
+			if (diff == 0) {
+				if (tail.compareAndSet(sequence, sequence + 1)) {
+					return sequence;
+				}
+			} else if (diff < 0) {
+				// the slot was not consumed yet, the ring is full
+				return -1;
+			}
+			// another producer claimed the sequence, retry with the new tail
+		}
+	}
+
+	/**
+	 * Claims the next slot and waits, as long as the ring buffer is full. Waiting producers
+	 * are the pushback of the ring buffer: they are slowed down to the speed of the consumer.
+	 * @return the claimed sequence
+	 * @throws InterruptedException if the producer was interrupted while waiting
+	 * @throws IllegalStateException if the ring buffer was closed
+	 */
+	public long claim() throws InterruptedException {
+		int tries = 0;
+		long parkNanos = 1000;
+		while (true) {
+			long sequence = tryClaim();
+			if (sequence >= 0) {
+				return sequence;
+			}
+			if (Thread.interrupted()) {
+				throw new InterruptedException("Interrupted while waiting for a free ring buffer slot");
+			}
+			if (tries++ < SPIN_TRIES) {
+				Thread.onSpinWait();
+			} else {
+				LockSupport.parkNanos(this, parkNanos);
+				parkNanos = Math.min(parkNanos << 1, MAX_PRODUCER_PARK_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Returns the entry of a claimed sequence, to fill it in place
+	 * @param sequence the claimed sequence
+	 * @return the preallocated entry
+	 */
+	@SuppressWarnings("unchecked")
+	public E get(long sequence) {
+		return (E) entries[index(sequence)];
+	}
+
+	/**
+	 * Publishes a claimed and filled sequence to the consumer
+	 * @param sequence the claimed sequence
+	 */
+	public void publish(long sequence) {
+		sequences.set(index(sequence), sequence + 1);
+		Thread consumer = waitingConsumer;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+	}
+
+	/**
+	 * Hands up to limit published entries in sequence order to the handler. The slot is released
+	 * after the handler returned, even if it failed. Must only be called from one consumer thread.
+	 * @param handler the entry handler
+	 * @param limit the maximum number of entries to drain
+	 * @return the number of drained entries
+	 */
+	public int drain(Consumer<? super E> handler, int limit) {
+		int count = 0;
+		while (count < limit) {
+			long sequence = head;
+			int index = index(sequence);
+			if (sequences.get(index) != sequence + 1) {
+				break;
+			}
+			try {
+				handler.accept(get(sequence));
+			} finally {
+				head = sequence + 1;
+				sequences.set(index, sequence + entries.length);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Parks the consumer thread, until an entry was published or the timeout elapsed.
+	 * Must only be called from the consumer thread.
+	 * @param timeout the maximum time to wait
+	 * @param unit the time unit
+	 */
+	public void awaitPublished(long timeout, TimeUnit unit) {
+		waitingConsumer = Thread.currentThread();
+		try {
+			// re-check after announcing the wait, to not miss a publish in between
+			if (sequences.get(index(head)) != head + 1 && !closed) {
+				LockSupport.parkNanos(this, unit.toNanos(timeout));
+			}
+		} finally {
+			waitingConsumer = null;
+		}
+	}
+
+	/**
+	 * Closes the ring buffer. Further claims fail, entries already published can still be drained.
+	 */
+	public void close() {
+		closed = true;
+		Thread consumer = waitingConsumer;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+	}
+
+	/**
+	 * Returns <code>true</code>, if the ring buffer was closed
+	 * @return <code>true</code>, if closed
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	private int index(long sequence) {
+		return (int) (sequence & mask);
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("The ring buffer is already closed");
+		}
+	}
+
+}
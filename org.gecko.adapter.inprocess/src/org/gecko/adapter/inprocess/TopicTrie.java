@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+
+package org.gecko.adapter.inprocess;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Routes topics to the values of all matching topic filters. Topics and filters are split into levels at <code>/</code>.
+ * A <code>+</code> level matches exactly one level, a <code>#</code> or <code>*</code> as last level matches
+ * all remaining levels, including none. Matching does not lock, modifications are serialized.
+ * 
+ * @param <V> the value type
+ * @author agent
+ * @since 1.0.0
+ */
+public class TopicTrie<V> {
+
+	static final String SINGLE_LEVEL = "+";
+	static final String MULTI_LEVEL = "#";
+
+	private final Node<V> root = new Node<>();
+
+	/**
+	 * Adds a value for the given topic filter
+	 * @param filter the topic filter
+	 * @param value the value
+	 */
+	public synchronized void add(String filter, V value) {
+		Node<V> node = root;
+		for (String level : levels(filter)) {
+			node = node.children.computeIfAbsent(level, l -> new Node<>());
+		}
+		node.values.add(value);
+	}
+
+	/**
+	 * Removes a value of the given topic filter. Nodes without values and children are pruned.
+	 * @param filter the topic filter
+	 * @param value the value
+	 * @return <code>true</code>, if the value was removed
+	 */
+	public synchronized boolean remove(String filter, V value) {
+		return remove(root, levels(filter), 0, value);
+	}
+
+	/**
+	 * Hands the values of all filters matching the topic to the consumer
+	 * @param topic the topic
+	 * @param consumer the consumer for the matching values
+	 */
+	public void match(String topic, Consumer<? super V> consumer) {
+		match(root, topic, 0, consumer);
+	}
+
+	/**
+	 * Returns <code>true</code>, if there is no value in the trie
+	 * @return <code>true</code>, if empty
+	 */
+	public boolean isEmpty() {
+		return root.isEmpty();
+	}
+
+	private void match(Node<V> node, String topic, int start, Consumer<? super V> consumer) {
+		Node<V> multi = node.children.get(MULTI_LEVEL);
+		if (multi != null) {
+			multi.values.forEach(consumer);
+		}
+		if (start > topic.length()) {
+			node.values.forEach(consumer);
+			return;
+		}
+		int end = topic.indexOf('/', start);
+		if (end < 0) {
+			end = topic.length();
+		}
+		Node<V> literal = node.children.get(topic.substring(start, end));
+		if (literal != null) {
+			match(literal, topic, end + 1, consumer);
+		}
+		Node<V> single = node.children.get(SINGLE_LEVEL);
+		if (single != null) {
+			match(single, topic, end + 1, consumer);
+		}
+	}
+
+	private boolean remove(Node<V> node, String[] levels, int depth, V value) {
+		if (depth == levels.length) {
+			return node.values.remove(value);
+		}
+		Node<V> child = node.children.get(levels[depth]);
+		if (child == null) {
+			return false;
+		}
+		boolean removed = remove(child, levels, depth + 1, value);
+		if (child.isEmpty()) {
+			node.children.remove(levels[depth], child);
+		}
+		return removed;
+	}
+
+	/**
+	 * Splits the filter into its levels. A trailing <code>*</code> is the same as <code>#</code>.
+	 * @param filter the topic filter
+	 * @return the levels
+	 */
+	static String[] levels(String filter) {
+		if (filter == null) {
+			throw new IllegalArgumentException("The topic filter must not be null");
+		}
+		String[] levels = filter.split("/", -1);
+		int last = levels.length - 1;
+		for (int i = 0; i < last; i++) {
+			if (MULTI_LEVEL.equals(levels[i]) || "*".equals(levels[i])) {
+				throw new IllegalArgumentException("A multi level wildcard is only allowed as last level: " + filter);
+			}
+		}
+		if ("*".equals(levels[last])) {
+			levels[last] = MULTI_LEVEL;
+		}
+		return levels;
+	}
+
+	private static final class Node<V> {
+
+		private final Map<String, Node<V>> children = new ConcurrentHashMap<>();
+		private final List<V> values = new CopyOnWriteArrayList<>();
+
+		private boolean isEmpty() {
+			return values.isEmpty() && children.isEmpty();
+		}
+	}
+
+}
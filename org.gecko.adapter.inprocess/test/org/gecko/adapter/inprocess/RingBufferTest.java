@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.adapter.inprocess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 
+ * @author agent
+ * @since 1.0.0
+ */
+public class RingBufferTest {
+
+	private static class Entry {
+		long value;
+	}
+
+	@Test
+	public void testCapacityPowerOfTwo() {
+		assertEquals(8, new RingBuffer<>(5, Entry::new).capacity());
+		assertEquals(8, new RingBuffer<>(8, Entry::new).capacity());
+		assertEquals(1, new RingBuffer<>(1, Entry::new).capacity());
+		assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(0, Entry::new));
+	}
+
+	@Test
+	public void testFullAndDrain() {
+		RingBuffer<Entry> ring = new RingBuffer<>(4, Entry::new);
+		for (int i = 0; i < 4; i++) {
+			long seq = ring.tryClaim();
+			assertEquals(i, seq);
+			ring.get(seq).value = i;
+			ring.publish(seq);
+		}
+		assertEquals(-1, ring.tryClaim());
+		assertEquals(4, ring.size());
+
+		List<Long> values = new ArrayList<>();
+		assertEquals(2, ring.drain(e -> values.add(e.value), 2));
+		assertEquals(2, ring.drain(e -> values.add(e.value), 10));
+		assertEquals(List.of(0L, 1L, 2L, 3L), values);
+		assertEquals(0, ring.drain(e -> values.add(e.value), 10));
+
+		// the slots are reused after the drain
+		long seq = ring.tryClaim();
+		assertEquals(4, seq);
+	}
+
+	@Test
+	public void testDrainStopsAtUnpublished() {
+		RingBuffer<Entry> ring = new RingBuffer<>(4, Entry::new);
+		long first = ring.tryClaim();
+		long second = ring.tryClaim();
+		ring.publish(second);
+		assertEquals(0, ring.drain(e -> {}, 10));
+		ring.publish(first);
+		assertEquals(2, ring.drain(e -> {}, 10));
+	}
+
+	@Test
+	public void testClosed() {
+		RingBuffer<Entry> ring = new RingBuffer<>(4, Entry::new);
+		ring.close();
+		assertTrue(ring.isClosed());
+		assertThrows(IllegalStateException.class, ring::tryClaim);
+	}
+
+	@Test
+	public void testMultipleProducers() throws InterruptedException {
+		int producers = 4;
+		int perProducer = 10000;
+		RingBuffer<Entry> ring = new RingBuffer<>(64, Entry::new);
+		CountDownLatch done = new CountDownLatch(producers);
+		for (int p = 0; p < producers; p++) {
+			Thread t = new Thread(() -> {
+				try {
+					for (int i = 1; i <= perProducer; i++) {
+						long seq = ring.claim();
+						ring.get(seq).value = i;
+						ring.publish(seq);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			});
+			t.start();
+		}
+		AtomicLong sum = new AtomicLong();
+		AtomicLong count = new AtomicLong();
+		while (count.get() < producers * perProducer) {
+			if (ring.drain(e -> {
+				sum.addAndGet(e.value);
+				count.incrementAndGet();
+			}, 32) == 0) {
+				ring.awaitPublished(1, TimeUnit.MILLISECONDS);
+			}
+		}
+		done.await();
+		assertEquals((long) producers * perProducer * (perProducer + 1) / 2, sum.get());
+	}
+
+}
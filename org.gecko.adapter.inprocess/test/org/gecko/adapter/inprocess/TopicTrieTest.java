@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.adapter.inprocess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 
+ * @author agent
+ * @since 1.0.0
+ */
+public class TopicTrieTest {
+
+	private List<String> match(TopicTrie<String> trie, String topic) {
+		List<String> result = new ArrayList<>();
+		trie.match(topic, result::add);
+		Collections.sort(result);
+		return result;
+	}
+
+	@Test
+	public void testLiteral() {
+		TopicTrie<String> trie = new TopicTrie<>();
+		trie.add("a/b", "ab");
+		trie.add("a/c", "ac");
+		assertEquals(List.of("ab"), match(trie, "a/b"));
+		assertEquals(List.of(), match(trie, "a"));
+		assertEquals(List.of(), match(trie, "a/b/c"));
+	}
+
+	@Test
+	public void testWildcards() {
+		TopicTrie<String> trie = new TopicTrie<>();
+		trie.add("a/+/c", "single");
+		trie.add("a/#", "multi");
+		trie.add("a/*", "star");
+		trie.add("#", "all");
+		assertEquals(List.of("all", "multi", "single", "star"), match(trie, "a/b/c"));
+		assertEquals(List.of("all", "multi", "star"), match(trie, "a"));
+		assertEquals(List.of("all", "multi", "star"), match(trie, "a/b"));
+		assertEquals(List.of("all"), match(trie, "b"));
+	}
+
+	@Test
+	public void testRemove() {
+		TopicTrie<String> trie = new TopicTrie<>();
+		trie.add("a/+", "one");
+		trie.add("a/+", "two");
+		assertTrue(trie.remove("a/+", "one"));
+		assertFalse(trie.remove("a/+", "one"));
+		assertEquals(List.of("two"), match(trie, "a/x"));
+		assertTrue(trie.remove("a/+", "two"));
+		assertTrue(trie.isEmpty());
+	}
+
+	@Test
+	public void testInvalidFilter() {
+		TopicTrie<String> trie = new TopicTrie<>();
+		assertThrows(IllegalArgumentException.class, () -> trie.add("a/#/b", "x"));
+	}
+
+}
@@ -22,14 +22,45 @@ import org.gecko.osgi.messaging.SimpleMessagingContext;
  */
 public class MQTTContext extends SimpleMessagingContext {
 	
+	private static final MQTTContext[] SHARED = new MQTTContext[QoS.values().length * 2];
+	
+	static {
+		for (QoS qos : QoS.values()) {
+			for (boolean retained : new boolean[] {false, true}) {
+				MQTTContext ctx = new MQTTContext();
+				ctx.setQoS(qos);
+				ctx.setRetained(retained);
+				ctx.freeze();
+				SHARED[sharedIndex(qos, retained)] = ctx;
+			}
+		}
+	}
+	
 	private QoS qos;
 	private boolean retained = false;
+	private String shareGroup;
+	
+	/**
+	 * Returns the shared, immutable context for the given combination. Inbound messages only 
+	 * carry these two properties, so there is no need to create a context per message. 
+	 * @param qos the quality of service, <code>null</code> defaults to 'at least one'
+	 * @param retained the retained flag
+	 * @return the shared context instance
+	 */
+	public static MQTTContext shared(QoS qos, boolean retained) {
+		return SHARED[sharedIndex(qos == null ? QoS.AT_LEAST_ONE : qos, retained)];
+	}
+	
+	private static int sharedIndex(QoS qos, boolean retained) {
+		return qos.ordinal() * 2 + (retained ? 1 : 0);
+	}
 	
 	public QoS getQoS() {
 		return qos;
 	}
 	
 	public void setQoS(QoS qos) {
+		checkMutable();
 		this.qos = qos;
 	}
 	
@@ -38,7 +69,21 @@ public class MQTTContext extends SimpleMessagingContext {
 	}
 	
 	public void setRetained(boolean retained) {
+		checkMutable();
 		this.retained = retained;
 	}
+	
+	/**
+	 * Returns the share group of a subscription. The consumers of a group receive every message only once.
+	 * @return the share group, <code>null</code> for the share group of the configuration
+	 */
+	public String getShareGroup() {
+		return shareGroup;
+	}
+	
+	public void setShareGroup(String shareGroup) {
+		checkMutable();
+		this.shareGroup = shareGroup;
+	}
 
 }
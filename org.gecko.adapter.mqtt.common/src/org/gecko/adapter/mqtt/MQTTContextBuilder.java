@@ -58,6 +58,19 @@ public class MQTTContextBuilder extends SimpleMessagingContextBuilder {
 		return this;
 	}
 
+	/**
+	 * Subscribes as shared subscription <code>$share/{group}/{filter}</code>. The broker delivers every message
+	 * to only one subscriber of the group, so that the instances of a service divide the messages.
+	 * 
+	 * @param group the share group, <code>null</code> uses the share group of the configuration, empty subscribes
+	 *              without sharing
+	 * @return the builder instance
+	 */
+	public MQTTContextBuilder withShareGroup(String group) {
+		context.setShareGroup(group);
+		return this;
+	}
+
 	@Override
 	public MessagingContext build() {
 		return buildContext(context);
@@ -42,7 +42,43 @@ public @interface MqttConfig {
 	@AttributeDefinition(description = "Maximum count of threads")
 	int maxThreads() default 0;
 
-	@AttributeDefinition(description = "Maximum inflight messages for the broker")
+	@AttributeDefinition(description = "Maximum inflight messages for the broker. Synchronous publishers wait for a free slot, when the window is full, asynchronous publishes are queued.")
 	int maxInflight() default 10;
 
+	@AttributeDefinition(description = "Decode inbound payloads straight into buffers of a pool. Consumers have to release the messages. Only supported by the MQTT v5 client.")
+	boolean pooledPayload() default false;
+
+	@AttributeDefinition(description = "Run the client callbacks on virtual threads, if the runtime supports them")
+	boolean virtualThreads() default false;
+
+	@AttributeDefinition(description = "Stamp the send time into published messages and measure the latency of received messages. The send time stamp needs MQTT v5 user properties.")
+	boolean latencyStamping() default false;
+
+	@AttributeDefinition(description = "Credits for the demand driven flow control (MQTT v5 Receive Maximum). The broker sends at most this many QoS 1 and 2 messages, that are acknowledged, when the subscriber takes them from the stream buffer. 0 disables the manual acknowledges.")
+	int receiveMaximum() default 0;
+
+	@AttributeDefinition(description = "Name of the MQTT v5 user property, that carries the message id of received messages, e.g. for the deduplication")
+	String messageIdProperty() default "messageId";
+
+	@AttributeDefinition(description = "Directory of the disk backed publish outbox, that keeps the messages, while the broker is not reachable. Empty disables the outbox.")
+	String outboxPath() default "";
+
+	@AttributeDefinition(description = "Maximum size of the publish outbox in bytes. The oldest messages are deleted, if it is exceeded.")
+	long outboxMaxSize() default 67108864L;
+
+	@AttributeDefinition(description = "Use one connection for publishing and all subscriptions of this configuration. Streams on the same topic filter share the broker subscription with the QoS of the first subscription.")
+	boolean sharedConnection() default false;
+
+	@AttributeDefinition(description = "Upper bound of the first reconnect delay in milliseconds. Each failed attempt doubles the bound, the delay is a random value up to the bound.")
+	long reconnectBaseDelay() default 1000L;
+
+	@AttributeDefinition(description = "Maximum reconnect delay in milliseconds")
+	long reconnectMaxDelay() default 60000L;
+
+	@AttributeDefinition(description = "Maximum number of topic aliases for published messages (MQTT v5), bounded by the Topic Alias Maximum of the broker. If all aliases are used, the alias of the least recently published topic is reused. 0 disables the aliases.")
+	int outgoingTopicAliases() default 65535;
+
+	@AttributeDefinition(description = "Share group for all subscriptions, e.g. the service name. The broker delivers every message to only one instance of the group ($share/{group}/{filter}). A share group of the subscription context takes precedence. Empty disables the shared subscriptions.")
+	String shareGroup() default "";
+
 }
\ No newline at end of file
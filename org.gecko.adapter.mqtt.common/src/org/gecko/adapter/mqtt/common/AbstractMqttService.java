@@ -13,13 +13,16 @@
 
 package org.gecko.adapter.mqtt.common;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,16 +30,31 @@ import org.gecko.adapter.mqtt.MQTTContext;
 import org.gecko.adapter.mqtt.MQTTContextBuilder;
 import org.gecko.adapter.mqtt.MqttConfig;
 import org.gecko.adapter.mqtt.QoS;
+import org.gecko.osgi.messaging.BatchPolicy;
+import org.gecko.osgi.messaging.ConflatingBlockingQueue;
+import org.gecko.osgi.messaging.Deduplication;
 import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.MessageBatcher;
 import org.gecko.osgi.messaging.MessagingContext;
 import org.gecko.osgi.messaging.MessagingService;
+import org.gecko.osgi.messaging.PartitionedDispatch;
+import org.gecko.osgi.messaging.PublishOutbox;
+import org.gecko.osgi.messaging.SubscriptionRegistry;
+import org.gecko.osgi.messaging.codec.MessageCodecs;
+import org.gecko.osgi.messaging.codec.PayloadCodecs;
+import org.gecko.osgi.messaging.metrics.MessagingMetrics;
+import org.gecko.osgi.messaging.metrics.MessagingMetricsRegistry;
+import org.gecko.osgi.messaging.metrics.StreamMetrics;
+import org.gecko.osgi.messaging.metrics.TopicMetrics;
 import org.gecko.util.pushstream.PushStreamHelper;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.Promises;
 import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushEventSource;
 import org.osgi.util.pushstream.PushStream;
 import org.osgi.util.pushstream.PushStreamBuilder;
-import org.osgi.util.pushstream.SimplePushEventSource;
 
 /**
  * Abstract implementation for a MqttServices
@@ -47,23 +65,37 @@ import org.osgi.util.pushstream.SimplePushEventSource;
 public abstract class AbstractMqttService implements MessagingService, AutoCloseable {
 
 	private static final Logger logger = Logger.getLogger(AbstractMqttService.class.getName());
-	private static final int RECONNECT_DELAY_MS = 5000;
-	private Timer reconnectTimer;
+	private static final String OUTBOX_QOS = "qos";
+	private static final String OUTBOX_RETAINED = "retained";
 	protected GeckoMqttClient mqtt;
-	private Map<String, MqttPushEventSource> subscriptions = new ConcurrentHashMap<>();
+	// one broker subscription per filter and QoS, shared by all streams on it
+	private final SubscriptionRegistry<String, MqttPushEventSource> subscriptions = new SubscriptionRegistry<>(MqttPushEventSource::close);
 	private MqttConfig config;
+	private PublishOutbox outbox;
+	// the connection for publishing and all subscriptions, null if every subscription has its own client
+	private SharedMqttConnection sharedConnection;
+	// one scheduler for the reconnects of all connections of the service
+	private ReconnectScheduler reconnectScheduler;
+	private ReconnectScheduler.Reconnect publisherReconnect;
 
 	@Activate
-	public void doActivate(MqttConfig config) {
+	public void doActivate(MqttConfig config) throws IOException {
 		this.config = config;
+		reconnectScheduler = new ReconnectScheduler("mqtt-reconnect", config.reconnectBaseDelay(), config.reconnectMaxDelay(),
+				MessagingMetricsRegistry.getDefault().getReconnectMetrics(MessagingMetrics.ADAPTER_MQTT));
+		publisherReconnect = reconnectScheduler.newReconnect("publisher", this::reconnectPublisher);
+		if (config.sharedConnection()) {
+			sharedConnection = new SharedMqttConnection(config, this::createClient, reconnectScheduler, this::wakeUpOutbox);
+			mqtt = sharedConnection;
+		}
+		if (!config.outboxPath().isEmpty()) {
+			outbox = new PublishOutbox(MessagingMetrics.ADAPTER_MQTT, Paths.get(config.outboxPath()), config.outboxMaxSize(), this::publishOutbox);
+		}
 	}
 
 	@Deactivate
 	public void doDeactivate() throws Exception {
 		close();
-		if (reconnectTimer != null) {
-			reconnectTimer.cancel();
-		}
 	}
 
 	/**
@@ -75,15 +107,37 @@ public abstract class AbstractMqttService implements MessagingService, AutoClose
 	 */
 	protected abstract GeckoMqttClient createClient(MqttConfig config, String id);
 
+	/**
+	 * Returns <code>true</code>, if a client delivers the messages of a shared subscription only to this
+	 * subscription. Otherwise every shared subscription gets an own client instead of the shared connection,
+	 * because overlapping subscriptions of the connection would get the messages of the group twice or take them
+	 * away from the group.
+	 * 
+	 * @return <code>true</code>, if shared subscriptions can use the shared connection
+	 */
+	protected boolean isSharedSubscriptionRouted() {
+		return true;
+	}
+
 	@Override
 	public void close() throws Exception {
+		if (publisherReconnect != null) {
+			publisherReconnect.cancel();
+		}
+		if (outbox != null) {
+			outbox.close();
+			outbox = null;
+		}
 		if (mqtt != null) {
 			if (mqtt.isConnected()) {
 				mqtt.disconnect();
 			}
 			mqtt.close();
 		}
-		subscriptions.values().forEach(MqttPushEventSource::close);
+		subscriptions.closeAll();
+		if (reconnectScheduler != null) {
+			reconnectScheduler.close();
+		}
 	}
 
 	@Override
@@ -94,17 +148,100 @@ public abstract class AbstractMqttService implements MessagingService, AutoClose
 
 	@Override
 	public PushStream<Message> subscribe(String topic, MessagingContext context) throws Exception {
+		String filter = getSubscriptionFilter(topic, context);
+		String key = getSubscriptionKey(filter, context);
+		return subscriptions.open(key, k -> createSource(filter, context), source -> createStream(source, filter, context));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingService#subscribeBatched(java.lang.String, org.gecko.osgi.messaging.BatchPolicy, org.gecko.osgi.messaging.MessagingContext)
+	 */
+	@Override
+	public PushStream<List<Message>> subscribeBatched(String topic, BatchPolicy policy, MessagingContext context) throws Exception {
+		String filter = getSubscriptionFilter(topic, context);
+		String key = getSubscriptionKey(filter, context);
+		MqttPushEventSource source = subscriptions.acquire(key, k -> createSource(filter, context));
+		try {
+			// the batches are collected on the delivery thread, so that one buffer slot holds a whole batch
+			PushStream<List<Message>> stream = source.trackBatchCredits(MessageBatcher.createStream(decoding(source, context), policy, context))
+					.onClose(() -> subscriptions.release(key, source));
+			return PayloadCodecs.getDefault().decodingBatches(stream, context == null ? null : context.getContentEncoding());
+		} catch (Exception e) {
+			subscriptions.release(key, source);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the filter of the broker subscription. With a share group of the context or the configuration,
+	 * the filter is subscribed as shared subscription, so that the broker delivers every message to only one
+	 * instance of the group. A filter with the <code>$share</code> prefix is used as is.
+	 * @param topic the topic
+	 * @param context the context, can be <code>null</code>
+	 * @return the filter
+	 */
+	private String getSubscriptionFilter(String topic, MessagingContext context) {
+		String group = context instanceof MQTTContext ? ((MQTTContext) context).getShareGroup() : null;
+		return SharedSubscriptions.share(group == null ? config.shareGroup() : group, topic);
+	}
+
+	/**
+	 * Returns the key of the broker subscription. The shared connection has one subscription per filter,
+	 * because the broker keeps only one subscription per filter and client.
+	 * @param topic the topic
+	 * @param context the context, can be <code>null</code>
+	 * @return the key
+	 */
+	private String getSubscriptionKey(String topic, MessagingContext context) {
 		String filter = topic.replace('*', '#'); // replace MQTT # sign with * for filters
-		SimplePushEventSource<Message> source = subscriptions.get(filter);
-		if (source == null) {
-			synchronized (subscriptions) {
-				source = subscriptions.computeIfAbsent(filter,
-						k -> new MqttPushEventSource(topic, context, config, this::createClient));
-			}
+		return isOnSharedConnection(filter) ? filter : filter + "|" + MqttPushEventSource.getQoS(context);
+	}
+
+	private boolean isOnSharedConnection(String topic) {
+		return sharedConnection != null && (isSharedSubscriptionRouted() || !SharedSubscriptions.isShared(topic));
+	}
+
+	/**
+	 * Returns the source of a stream, that decodes the messages into the payload type of the context
+	 * @param source the subscription
+	 * @param context the context of the stream, can be <code>null</code>
+	 * @return the source of the stream
+	 */
+	private PushEventSource<Message> decoding(MqttPushEventSource source, MessagingContext context) {
+		// encoded payloads are decompressed after the buffer, so they cannot be decoded here
+		Class<?> type = context == null || context.getContentEncoding() != null ? null : context.getPayloadType();
+		return MessageCodecs.getDefault().decoding(source, type);
+	}
+
+	private MqttPushEventSource createSource(String topic, MessagingContext context) {
+		if (isOnSharedConnection(topic)) {
+			return new MqttPushEventSource(topic, context, config, sharedConnection);
 		}
+		return new MqttPushEventSource(topic, context, config, this::createClient, reconnectScheduler);
+	}
+
+	/**
+	 * Creates a stream with its own buffer on the shared subscription
+	 * @param source the subscription
+	 * @param topic the topic
+	 * @param context the context of the stream, can be <code>null</code>
+	 * @return the stream
+	 */
+	private PushStream<Message> createStream(MqttPushEventSource source, String topic, MessagingContext context) {
 		PushStreamBuilder<Message, BlockingQueue<PushEvent<? extends Message>>> buildStream = PushStreamHelper
-				.configurePushStreamBuilder(source, context);
-		return buildStream.build();
+				.configurePushStreamBuilder(decoding(source, context), context);
+		ConflatingBlockingQueue.configure(buildStream, context);
+		TopicMetrics metrics = getMetrics(topic);
+		boolean measured = config.latencyStamping() || (context != null && context.isLatencyStamping());
+		StreamMetrics.instrument(buildStream, StreamMetrics.getPushbackPolicy(context), measured ? metrics : null);
+		PushStream<Message> stream = source.trackCredits(PartitionedDispatch.build(buildStream, context));
+		if (measured) {
+			stream = StreamMetrics.measureQueueTime(stream, metrics);
+		}
+		stream = Deduplication.deduplicate(stream, context, metrics);
+		// MQTT v3 has no metadata for the encoding, so the subscription has to declare it
+		return PayloadCodecs.getDefault().decoding(stream, context == null ? null : context.getContentEncoding());
 	}
 
 	@Override
@@ -115,63 +252,316 @@ public abstract class AbstractMqttService implements MessagingService, AutoClose
 
 	@Override
 	public void publish(String topic, ByteBuffer content, MessagingContext context) throws Exception {
+		TopicMetrics metrics = getMetrics(topic);
+		byte[] payload;
+		try {
+			payload = encode(content, context);
+			if (outbox != null) {
+				// a message, whose publish fails, is appended to the outbox
+				outbox.checkSize(topic, getOutboxAttributes(context), payload);
+			}
+		} catch (Exception e) {
+			metrics.error();
+			throw e;
+		}
+		try {
+			if (isBuffering()) {
+				appendToOutbox(topic, payload, context);
+				return;
+			}
+			ensureClient();
+			mqtt.publish(topic, payload, getQoS(context).ordinal(), isRetained(context));
+			metrics.published(payload.length);
+		} catch (Exception e) {
+			if (outbox != null) {
+				appendToOutbox(topic, payload, context);
+				return;
+			}
+			metrics.error();
+			throw e;
+		}
+	}
+
+	@Override
+	public Promise<Void> publishAsync(String topic, ByteBuffer content) {
+		MessagingContext ctx = new MQTTContextBuilder().withQoS(QoS.AT_MOST_ONE).build();
+		return publishAsync(topic, content, ctx);
+	}
+
+	@Override
+	public Promise<Void> publishAsync(String topic, ByteBuffer content, MessagingContext context) {
+		TopicMetrics metrics = getMetrics(topic);
+		byte[] payload;
+		try {
+			payload = encode(content, context);
+			if (outbox != null) {
+				// a message, whose publish fails, is appended to the outbox
+				outbox.checkSize(topic, getOutboxAttributes(context), payload);
+			}
+		} catch (Exception e) {
+			metrics.error();
+			return Promises.failed(e);
+		}
+		try {
+			if (isBuffering()) {
+				// resolves, when the message is stored in the outbox
+				appendToOutbox(topic, payload, context);
+				return Promises.resolved(null);
+			}
+			ensureClient();
+			return mqtt.publishAsync(topic, payload, getQoS(context).ordinal(), isRetained(context))
+					.onSuccess(v -> metrics.published(payload.length))
+					.recoverWith(failed -> recoverPublish(topic, payload, context, failed.getFailure()));
+		} catch (Exception e) {
+			return recoverPublish(topic, payload, context, e);
+		}
+	}
+
+	/**
+	 * Appends a message, whose publish failed, to the outbox. Without an outbox, the publish fails.
+	 * @param topic the topic
+	 * @param payload the encoded payload
+	 * @param context the context, can be <code>null</code>
+	 * @param cause the failure of the publish
+	 * @return the promise of the publish, that fails, if the message cannot be written to the outbox
+	 */
+	private Promise<Void> recoverPublish(String topic, byte[] payload, MessagingContext context, Throwable cause) {
+		Throwable failure = cause;
+		if (outbox != null) {
+			try {
+				appendToOutbox(topic, payload, context);
+				return Promises.resolved(null);
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		getMetrics(topic).error();
+		return Promises.failed(failure);
+	}
+
+	@Override
+	public Promise<Void> publishBatch(String topic, Collection<ByteBuffer> contents) throws Exception {
+		MessagingContext ctx = new MQTTContextBuilder().withQoS(QoS.AT_MOST_ONE).build();
+		return publishBatch(topic, contents, ctx);
+	}
+
+	@Override
+	public Promise<Void> publishBatch(String topic, Collection<ByteBuffer> contents, MessagingContext context)
+			throws Exception {
+		TopicMetrics metrics = getMetrics(topic);
+		List<byte[]> payloads = new ArrayList<>(contents.size());
+		for (ByteBuffer content : contents) {
+			byte[] payload = encode(content, context);
+			if (outbox != null) {
+				// a batch, whose publish fails, is appended to the outbox
+				outbox.checkSize(topic, getOutboxAttributes(context), payload);
+			}
+			payloads.add(payload);
+		}
+		if (isBuffering()) {
+			for (byte[] payload : payloads) {
+				appendToOutbox(topic, payload, context);
+			}
+			return Promises.resolved(null);
+		}
+		ensureClient();
+		int qos = getQoS(context).ordinal();
+		boolean retained = isRetained(context);
+		// the client keeps the order of the queued publishes, the batch resolves, when all of them are delivered
+		List<Promise<Void>> delivered = new ArrayList<>(payloads.size());
+		for (byte[] payload : payloads) {
+			delivered.add(mqtt.publishAsync(topic, payload, qos, retained));
+		}
+		return Promises.all(delivered).<Void>map(l -> {
+			payloads.forEach(p -> metrics.published(p.length));
+			return null;
+		}).recoverWith(failed -> recoverBatch(topic, payloads, delivered, context));
+	}
+
+	/**
+	 * Appends the messages of a batch, that were not delivered, to the outbox. The delivered messages are not published again.
+	 * Without an outbox, the batch fails.
+	 * @param topic the topic
+	 * @param payloads the encoded payloads of the batch
+	 * @param delivered the completed delivery promises of the payloads
+	 * @param context the context, can be <code>null</code>
+	 * @return the promise of the batch
+	 * @throws Exception thrown, if the messages cannot be written to the outbox
+	 */
+	private Promise<Void> recoverBatch(String topic, List<byte[]> payloads, List<Promise<Void>> delivered, MessagingContext context) throws Exception {
+		TopicMetrics metrics = getMetrics(topic);
+		List<byte[]> unsent = new ArrayList<>();
+		Throwable cause = null;
+		for (int i = 0; i < payloads.size(); i++) {
+			Throwable failure = delivered.get(i).getFailure();
+			if (failure == null) {
+				metrics.published(payloads.get(i).length);
+			} else {
+				unsent.add(payloads.get(i));
+				cause = cause == null ? failure : cause;
+			}
+		}
+		if (outbox != null) {
+			for (byte[] payload : unsent) {
+				appendToOutbox(topic, payload, context);
+			}
+			return Promises.resolved(null);
+		}
+		metrics.error();
+		logger.log(Level.SEVERE, cause, () -> "Error publishing " + unsent.size() + " of a batch of " + payloads.size() + " messages to " + topic);
+		return Promises.failed(new BatchPublishException(cause, unsent));
+	}
+
+	/**
+	 * Returns <code>true</code>, if the messages have to be written to the outbox, because the client is not connected
+	 * or older messages were not published yet
+	 * @return <code>true</code>, if the messages are published through the outbox
+	 */
+	private boolean isBuffering() {
+		GeckoMqttClient client = mqtt;
+		return outbox != null && (client == null || !client.isConnected() || !outbox.isEmpty());
+	}
+
+	/**
+	 * Writes the message to the outbox
+	 * @param topic the topic
+	 * @param payload the encoded payload
+	 * @param context the context, can be <code>null</code>
+	 * @throws IOException thrown, if the message cannot be written
+	 */
+	private void appendToOutbox(String topic, byte[] payload, MessagingContext context) throws IOException {
+		outbox.append(topic, getOutboxAttributes(context), payload);
+	}
+
+	/**
+	 * Returns the publish settings, that are stored with a message in the outbox
+	 * @param context the context, can be <code>null</code>
+	 * @return the attributes
+	 */
+	private Map<String, String> getOutboxAttributes(MessagingContext context) {
+		Map<String, String> attributes = new HashMap<>(4);
+		attributes.put(OUTBOX_QOS, Integer.toString(getQoS(context).ordinal()));
+		attributes.put(OUTBOX_RETAINED, Boolean.toString(isRetained(context)));
+		return attributes;
+	}
+
+	/**
+	 * Publishes the messages of the outbox. Consecutive messages with the same topic and settings are published as batch.
+	 * @param entries the messages
+	 * @throws Exception thrown, if the client is not connected
+	 */
+	private void publishOutbox(List<PublishOutbox.Entry> entries) throws Exception {
+		ensureClient();
+		if (!mqtt.isConnected()) {
+			throw new IllegalStateException("The MQTT client is not connected to " + config.brokerUrl());
+		}
+		int start = 0;
+		while (start < entries.size()) {
+			PublishOutbox.Entry first = entries.get(start);
+			int end = start + 1;
+			while (end < entries.size() && first.getTopic().equals(entries.get(end).getTopic())
+					&& first.getAttributes().equals(entries.get(end).getAttributes())) {
+				end++;
+			}
+			int qos = Integer.parseInt(first.getAttributes().getOrDefault(OUTBOX_QOS, "0"));
+			boolean retained = Boolean.parseBoolean(first.getAttributes().get(OUTBOX_RETAINED));
+			List<byte[]> payloads = new ArrayList<>(end - start);
+			entries.subList(start, end).forEach(e -> payloads.add(e.getPayload()));
+			if (payloads.size() == 1) {
+				mqtt.publish(first.getTopic(), payloads.get(0), qos, retained);
+			} else {
+				mqtt.publishBatch(first.getTopic(), payloads, qos, retained);
+			}
+			TopicMetrics metrics = getMetrics(first.getTopic());
+			payloads.forEach(p -> metrics.published(p.length));
+			start = end;
+		}
+	}
+
+	/**
+	 * Creates the publishing client, if it does not exist yet
+	 * @throws Exception thrown on errors connecting the client
+	 */
+	private void ensureClient() throws Exception {
+		if (sharedConnection != null) {
+			// the shared connection reconnects itself
+			sharedConnection.open();
+			return;
+		}
 		if (mqtt == null) {
 			try {
 				mqtt = createClient(config, generateClientId());
-				mqtt.connectionLost(this::startReconnectTimer);
+				mqtt.connectionLost(publisherReconnect::connectionLost);
+				wakeUpOutbox();
 			} catch (Exception e) {
 				logger.log(Level.SEVERE, e, () -> "Error connecting to MQTT broker " + config.brokerUrl());
 				throw e;
 			}
 		}
+	}
 
-		QoS qos = QoS.AT_MOST_ONE;
-		boolean retained = false;
+	/**
+	 * Publishes the messages of the outbox immediately, after the client was connected
+	 */
+	private void wakeUpOutbox() {
+		PublishOutbox publishOutbox = outbox;
+		if (publishOutbox != null) {
+			publishOutbox.wakeUp();
+		}
+	}
+
+	/**
+	 * Encodes the payload with the codec for the content encoding of the context
+	 * @param content the payload
+	 * @param context the context, can be <code>null</code>
+	 * @return the payload bytes to publish
+	 * @throws IOException thrown on encoding errors
+	 */
+	private byte[] encode(ByteBuffer content, MessagingContext context) throws IOException {
+		return PayloadCodecs.getDefault().encode(content, context == null ? null : context.getContentEncoding());
+	}
+
+	private TopicMetrics getMetrics(String topic) {
+		return MessagingMetricsRegistry.getDefault().getTopicMetrics(MessagingMetrics.ADAPTER_MQTT, topic);
+	}
+
+	private QoS getQoS(MessagingContext context) {
 		if (context instanceof MQTTContext) {
 			MQTTContext ctx = (MQTTContext) context;
 			if (ctx.getQoS() != null) {
-				qos = ctx.getQoS();
+				return ctx.getQoS();
 			}
-			retained = ctx.isRetained();
 		}
-		mqtt.publish(topic, content.array(), qos.ordinal(), retained);
+		return QoS.AT_MOST_ONE;
+	}
+
+	private boolean isRetained(MessagingContext context) {
+		return context instanceof MQTTContext && ((MQTTContext) context).isRetained();
 	}
 
 	private String generateClientId() {
 		return "gecko-" + UUID.randomUUID().toString();
 	}
 
-	private void startReconnectTimer(Throwable exception) {
-		if (exception != null) {
-			logger.log(Level.INFO, exception, () -> "Connection to MQTT broker lost: " + exception.getMessage()
-					+ ". Waiting before reconnecting.");
-		}
-		if (reconnectTimer != null) {
-			reconnectTimer.cancel();
-			reconnectTimer = null;
-		}
-
-		reconnectTimer = new Timer();
-		reconnectTimer.schedule(new TimerTask() {
-			@Override
-			public void run() {
-				if (mqtt == null) {
-					logger.log(Level.SEVERE, "Trying to reconnect a null client.");
-					return;
-				}
-				if (!mqtt.isConnected()) {
-					logger.log(Level.INFO, "Create new client and reconnect");
-					mqtt.close();
-					try {
-						mqtt = createClient(config, generateClientId());
-						mqtt.connectionLost(AbstractMqttService.this::startReconnectTimer);
-					} catch (Exception e) {
-						logger.log(Level.SEVERE, e, () -> "Error trying to reconnect to MQTT broker.");
-						startReconnectTimer(exception);
-					}
-				}
-			}
-		}, RECONNECT_DELAY_MS);
+	/**
+	 * Replaces the lost publishing client
+	 * @return <code>true</code>, if the client is connected
+	 */
+	private boolean reconnectPublisher() {
+		GeckoMqttClient client = mqtt;
+		if (client == null || client.isConnected()) {
+			return true;
+		}
+		logger.log(Level.INFO, "Create new client and reconnect");
+		client.close();
+		GeckoMqttClient reconnected = createClient(config, generateClientId());
+		mqtt = reconnected;
+		reconnected.connectionLost(publisherReconnect::connectionLost);
+		if (!reconnected.isConnected()) {
+			return false;
+		}
+		wakeUpOutbox();
+		return true;
 	}
 
 	@Override
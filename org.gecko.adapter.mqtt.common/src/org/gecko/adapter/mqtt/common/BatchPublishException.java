@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.adapter.mqtt.common;
+
+import java.util.List;
+
+/**
+ * Thrown by {@link GeckoMqttClient#publishBatch(String, java.util.List, int, boolean)}, if not all messages of
+ * the batch were delivered. It carries the messages, that were not delivered, so that only they are published again.
+ * @author agent
+ * @since 1.1.1
+ */
+public class BatchPublishException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient List<byte[]> unsent;
+
+	/**
+	 * Creates a new instance.
+	 * @param cause the first failure of the batch
+	 * @param unsent the contents, that were not delivered, in the order of the batch
+	 */
+	public BatchPublishException(Throwable cause, List<byte[]> unsent) {
+		super(unsent.size() + " messages of the batch were not delivered", cause);
+		this.unsent = unsent;
+	}
+
+	/**
+	 * Returns the contents, that were not delivered
+	 * @return the contents in the order of the batch
+	 */
+	public List<byte[]> getUnsent() {
+		return unsent;
+	}
+
+}
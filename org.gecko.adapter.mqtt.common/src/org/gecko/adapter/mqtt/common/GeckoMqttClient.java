@@ -13,10 +13,12 @@
 
 package org.gecko.adapter.mqtt.common;
 
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.gecko.adapter.mqtt.MqttConfig;
+import org.osgi.util.promise.Promise;
 import org.osgi.util.pushstream.PushEventSource;
 
 /**
@@ -63,7 +65,15 @@ public interface GeckoMqttClient {
 	void subscribe(String topic, int qos, MqttPushEventSource src);
 
 	/**
-	 * Publish content to a broker  
+	 * Removes the subscription of a topic at the broker.
+	 * 
+	 * @param topic Topic, as it was subscribed
+	 */
+	void unsubscribe(String topic);
+
+	/**
+	 * Publish content to a broker and wait for the delivery. The publish is queued behind the pending 
+	 * asynchronous publishes, so that all publishes are sent in the order of the calls.
 	 * 
 	 * @param topic Topic 
 	 * @param content Content
@@ -73,6 +83,32 @@ public interface GeckoMqttClient {
 	 */
 	void publish(String topic, byte[] content, int qos, boolean retained) throws Exception;
 
+	/**
+	 * Publish content to a broker without waiting for the delivery. The caller does not wait for a free slot of
+	 * the inflight window either, the publish is queued then and sent in order, when a slot is free.
+	 * 
+	 * @param topic Topic 
+	 * @param content Content
+	 * @param qos Quality of service
+	 * @param retained <code>true</code> to add retrained flag to message.
+	 * @return promise that resolves, when the delivery is complete. For QoS 1 and 2 this is the
+	 * PUBACK or PUBCOMP of the broker, for QoS 0 when the message was written to the network.
+	 */
+	Promise<Void> publishAsync(String topic, byte[] content, int qos, boolean retained);
+
+	/**
+	 * Publish a batch of contents to the same topic. The publishes are pipelined up to the maximum 
+	 * inflight window of the client. The method returns, when all messages have been delivered.  
+	 * 
+	 * @param topic Topic 
+	 * @param contents Contents in the order to publish
+	 * @param qos Quality of service
+	 * @param retained <code>true</code> to add retrained flag to message.
+	 * @throws BatchPublishException thrown, if some messages were not delivered, it carries these messages
+	 * @throws Exception
+	 */
+	void publishBatch(String topic, List<byte[]> contents, int qos, boolean retained) throws Exception;
+
 	/**
 	 * Connection lost handling 
 	 * 
@@ -13,8 +13,7 @@
 
 package org.gecko.adapter.mqtt.common;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.List;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -22,63 +21,155 @@ import java.util.logging.Logger;
 import org.gecko.adapter.mqtt.MQTTContext;
 import org.gecko.adapter.mqtt.MqttConfig;
 import org.gecko.adapter.mqtt.QoS;
+import org.gecko.osgi.messaging.CreditFlow;
 import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.MessageFanOut;
 import org.gecko.osgi.messaging.MessagingContext;
+import org.gecko.osgi.messaging.metrics.LatencyStamp;
+import org.gecko.osgi.messaging.metrics.MessagingMetrics;
+import org.gecko.osgi.messaging.metrics.MessagingMetricsRegistry;
+import org.gecko.osgi.messaging.metrics.TopicMetrics;
 import org.gecko.util.pushstream.PushStreamHelper;
 import org.osgi.util.promise.Promise;
 import org.osgi.util.pushstream.PushEventConsumer;
+import org.osgi.util.pushstream.PushStream;
 import org.osgi.util.pushstream.SimplePushEventSource;
 
 public class MqttPushEventSource implements SimplePushEventSource<Message> {
 	private static final Logger logger = Logger.getLogger(MqttPushEventSource.class.getName());
-	private static final int RECONNECT_DELAY_MS = 5000;
-	
-	private Timer reconnectTimer;
 	private String topic;
 	private SimplePushEventSource<Message> source;
-	private GeckoMqttClient mqtt;
+	// every stream gets an own instance of the messages
+	private MessageFanOut streams;
+	private volatile GeckoMqttClient mqtt;
 	private int qos;
 	private MqttConfig config;
+	private final TopicMetrics metrics;
+	private final boolean latencyStamping;
+	private boolean closed = false;
 
 	private MqttClientFactory<GeckoMqttClient> clientFactory;
+	// the connection of all subscriptions, null if the source has its own client
+	private final SharedMqttConnection connection;
+	// the reconnects of the own client, null on the shared connection
+	private final ReconnectScheduler.Reconnect reconnect;
 
 	/**
 	 * Creates a new instance.
 	 */
 	MqttPushEventSource(String topic, MessagingContext context, MqttConfig config,
-			MqttClientFactory<GeckoMqttClient> clientFactory) {
+			MqttClientFactory<GeckoMqttClient> clientFactory, ReconnectScheduler scheduler) {
+		this(topic, context, config, clientFactory, scheduler, null);
+	}
+
+	/**
+	 * Creates a new instance, that subscribes on the shared connection. The connection handles the reconnects.
+	 */
+	MqttPushEventSource(String topic, MessagingContext context, MqttConfig config,
+			SharedMqttConnection connection) {
+		this(topic, context, config, null, null, connection);
+	}
+
+	private MqttPushEventSource(String topic, MessagingContext context, MqttConfig config,
+			MqttClientFactory<GeckoMqttClient> clientFactory, ReconnectScheduler scheduler, SharedMqttConnection connection) {
 		this.topic = topic;
 		this.config = config;
 		this.clientFactory = clientFactory;
+		this.connection = connection;
+		this.reconnect = scheduler == null ? null : scheduler.newReconnect(topic, this::reconnect);
+		this.metrics = MessagingMetricsRegistry.getDefault().getTopicMetrics(MessagingMetrics.ADAPTER_MQTT, topic);
+		this.latencyStamping = config.latencyStamping() || (context != null && context.isLatencyStamping());
 
-		QoS qos = QoS.AT_LEAST_ONE;
-		if (context instanceof MQTTContext) {
-			MQTTContext ctx = (MQTTContext) context;
-			if (ctx.getQoS() != null) {
-				qos = ctx.getQoS();
-			}
-		}
-		this.qos = qos.ordinal();
+		this.qos = getQoS(context);
 
 		source = PushStreamHelper.createSimpleEventSource(Message.class, context);
+		streams = new MessageFanOut(source);
 		source.connectPromise().onResolve(this::initMQTTClient);
 	}
 
 	@Override
 	public AutoCloseable open(PushEventConsumer<? super Message> aec) throws Exception {
-		return source.open(aec);
+		return streams.open(aec);
 	}
 
+	/**
+	 * Returns the QoS, the context subscribes with
+	 * @param context the context, can be <code>null</code>
+	 * @return the QoS, {@link QoS#AT_LEAST_ONE} by default
+	 */
+	static int getQoS(MessagingContext context) {
+		if (context instanceof MQTTContext && ((MQTTContext) context).getQoS() != null) {
+			return ((MQTTContext) context).getQoS().ordinal();
+		}
+		return QoS.AT_LEAST_ONE.ordinal();
+	}
+
+	/**
+	 * Closes the streams and the client of the subscription
+	 */
 	@Override
 	public void close() {
 		source.close();
+		synchronized (this) {
+			closed = true;
+		}
+		if (reconnect != null) {
+			reconnect.cancel();
+		}
+		if (connection != null) {
+			// the connection stays open for the other subscriptions
+			connection.unsubscribe(topic);
+			return;
+		}
+		GeckoMqttClient client = mqtt;
+		if (client != null) {
+			if (client.isConnected()) {
+				client.disconnect();
+			}
+			client.close();
+		}
 	}
 
 	@Override
 	public void publish(Message t) {
+		metrics.delivered(t.payload() == null ? 0 : t.payload().remaining());
+		if (latencyStamping) {
+			LatencyStamp.markReceived(t);
+		}
 		source.publish(t);
 	}
 
+	/**
+	 * Publishes a message, that carries a send time stamp, and records its delivery latency
+	 * @param t the message
+	 * @param sendTime the send time in epoch nanoseconds, see {@link LatencyStamp}
+	 */
+	public void publish(Message t, long sendTime) {
+		LatencyStamp.recordLatency(metrics, sendTime);
+		publish(t);
+	}
+
+	/**
+	 * Appends a stage, that acknowledges the messages at the client, when they are taken from the buffer, if the
+	 * client acknowledges manually. Every stream tracks, the first stream, that takes a message, acknowledges it,
+	 * see {@link Message#consumed()}.
+	 * @param stream the buffered stream
+	 * @return the acknowledging stream or the given stream
+	 */
+	public PushStream<Message> trackCredits(PushStream<Message> stream) {
+		return config.receiveMaximum() <= 0 ? stream : CreditFlow.tracking(stream);
+	}
+
+	/**
+	 * Appends a stage, that acknowledges all messages of a batch, when the batch is taken from the buffer,
+	 * see {@link #trackCredits(PushStream)}
+	 * @param stream the buffered stream of batches
+	 * @return the acknowledging stream or the given stream
+	 */
+	public PushStream<List<Message>> trackBatchCredits(PushStream<List<Message>> stream) {
+		return config.receiveMaximum() <= 0 ? stream : CreditFlow.trackingBatches(stream);
+	}
+
 	@Override
 	public void endOfStream() {
 		source.endOfStream();
@@ -86,6 +177,7 @@ public class MqttPushEventSource implements SimplePushEventSource<Message> {
 
 	@Override
 	public void error(Throwable t) {
+		metrics.error();
 		source.error(t);
 	}
 
@@ -100,41 +192,32 @@ public class MqttPushEventSource implements SimplePushEventSource<Message> {
 	}
 
 	private void initMQTTClient() {
+		if (connection != null) {
+			mqtt = connection;
+			connection.subscribe(this.topic, this.qos, this);
+			return;
+		}
 		mqtt = clientFactory.createClient(config, "gecko" + UUID.randomUUID() + "-" + topic);
 		mqtt.subscribe(this.topic, this.qos, this);
-		mqtt.connectionLost(this::startReconnectTimer);
+		mqtt.connectionLost(reconnect::connectionLost);
 	}
 
-	private void startReconnectTimer(Throwable exception) {
-		if (exception != null) {
-			logger.log(Level.INFO, exception, () -> "Connection to MQTT broker lost: " + exception.getMessage()
-					+ ". Waiting before reconnecting.");
-		}
-		if (reconnectTimer != null) {
-			reconnectTimer.cancel();
-			reconnectTimer = null;
-		}
-
-		reconnectTimer = new Timer();
-		reconnectTimer.schedule(new TimerTask() {
-			@Override
-			public void run() {
-				if (mqtt == null) {
-					logger.log(Level.SEVERE, "Trying to reconnect a null client.");
-					return;
-				}
-				if (!mqtt.isConnected()) {
-					logger.log(Level.INFO, "Create new client and subscribe to {0}", topic);
-					mqtt.close();
-					try {
-						initMQTTClient();
-					} catch (Exception e) {
-						logger.log(Level.SEVERE, e, () -> "Error trying to reconnect to MQTT broker.");
-						startReconnectTimer(exception);
-					}
-				}
+	/**
+	 * Replaces the lost client and subscribes again
+	 * @return <code>true</code>, if the client is connected
+	 */
+	private boolean reconnect() {
+		GeckoMqttClient client = mqtt;
+		synchronized (this) {
+			if (closed || client == null || client.isConnected()) {
+				return true;
 			}
-		}, RECONNECT_DELAY_MS);
+		}
+		logger.log(Level.INFO, "Create new client and subscribe to {0}", topic);
+		client.close();
+		initMQTTClient();
+		GeckoMqttClient reconnected = mqtt;
+		return reconnected != null && reconnected.isConnected();
 	}
 
 }
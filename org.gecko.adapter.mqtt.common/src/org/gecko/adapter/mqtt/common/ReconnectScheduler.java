@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+
+package org.gecko.adapter.mqtt.common;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.gecko.osgi.messaging.MessagingExecutors;
+import org.gecko.osgi.messaging.metrics.ReconnectMetrics;
+
+/**
+ * One scheduler for the reconnects of all connections of a service. Every connection retries with its own exponential
+ * backoff and full jitter: the delay of an attempt is a random value between 0 and the base delay doubled per failed
+ * attempt, up to the maximum delay. So the connections, that lost the broker at the same time, do not reconnect
+ * in lock-step. One thread schedules the attempts, the blocking connects run on a small pool, so that a connect,
+ * that waits for the broker, does not delay the attempts of the other connections.
+ *
+ * @author agent
+ * @since 1.1.1
+ */
+class ReconnectScheduler implements AutoCloseable {
+
+	private static final Logger logger = Logger.getLogger(ReconnectScheduler.class.getName());
+	private static final int CONNECT_THREADS = 4;
+	private static final long CONNECT_THREAD_KEEP_ALIVE = 30L;
+
+	private final ScheduledExecutorService executor;
+	private final ThreadPoolExecutor connector;
+	private final long baseDelay;
+	private final long maxDelay;
+	private final ReconnectMetrics metrics;
+
+	/**
+	 * Creates a new instance.
+	 * @param name the name of the scheduler thread, the connect threads get the suffix <code>-connect</code>
+	 * @param baseDelay the upper bound of the first delay in milliseconds
+	 * @param maxDelay the cap of the delays in milliseconds
+	 * @param metrics the metrics of the reconnects
+	 */
+	ReconnectScheduler(String name, long baseDelay, long maxDelay, ReconnectMetrics metrics) {
+		this.baseDelay = Math.max(1L, baseDelay);
+		this.maxDelay = Math.max(this.baseDelay, maxDelay);
+		this.metrics = metrics;
+		this.executor = Executors.newSingleThreadScheduledExecutor(MessagingExecutors.newPlatformThreadFactory(name));
+		this.connector = new ThreadPoolExecutor(CONNECT_THREADS, CONNECT_THREADS, CONNECT_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), MessagingExecutors.newPlatformThreadFactory(name + "-connect"));
+		// the threads only exist, while connections are reconnecting
+		connector.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Creates the reconnect state of a connection
+	 * @param name the name of the connection for the log
+	 * @param attempt reconnects the connection and returns <code>true</code>, if it is connected
+	 * @return the reconnect state
+	 */
+	Reconnect newReconnect(String name, Callable<Boolean> attempt) {
+		return new Reconnect(name, attempt);
+	}
+
+	/**
+	 * Returns the delay of a reconnect attempt
+	 * @param failures the number of failed attempts since the connection loss
+	 * @return the random delay in milliseconds
+	 */
+	long nextDelay(int failures) {
+		// no overflow of the shift, the cap is reached long before
+		long ceiling = failures >= 30 ? maxDelay : Math.min(maxDelay, baseDelay << failures);
+		return ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		connector.shutdownNow();
+	}
+
+	/**
+	 * The reconnect state of a connection
+	 */
+	final class Reconnect {
+
+		private final String name;
+		private final Callable<Boolean> attempt;
+		private int failures = 0;
+		// the connection loss, 0 if connected
+		private long lostAt = 0L;
+		private ScheduledFuture<?> pending;
+		private boolean running = false;
+		private boolean lostAgain = false;
+		private boolean cancelled = false;
+
+		private Reconnect(String name, Callable<Boolean> attempt) {
+			this.name = name;
+			this.attempt = attempt;
+		}
+
+		/**
+		 * Schedules a reconnect attempt, if none is scheduled or running
+		 * @param cause the cause of the connection loss, can be <code>null</code>
+		 */
+		synchronized void connectionLost(Throwable cause) {
+			if (cancelled) {
+				return;
+			}
+			if (lostAt == 0L) {
+				lostAt = System.nanoTime();
+				metrics.connectionLost();
+				if (cause != null) {
+					logger.log(Level.INFO, cause, () -> "Connection " + name + " to MQTT broker lost: " + cause.getMessage()
+							+ ". Waiting before reconnecting.");
+				}
+			}
+			if (running) {
+				// the running attempt may have connected before the loss
+				lostAgain = true;
+			} else if (pending == null) {
+				schedule();
+			}
+		}
+
+		/**
+		 * Stops the reconnects, e.g. when the connection is closed
+		 */
+		synchronized void cancel() {
+			if (cancelled) {
+				return;
+			}
+			cancelled = true;
+			if (pending != null) {
+				pending.cancel(false);
+				pending = null;
+			}
+			if (lostAt != 0L) {
+				metrics.abandoned();
+				lostAt = 0L;
+			}
+		}
+
+		private void schedule() {
+			long delay = nextDelay(failures);
+			metrics.scheduled(delay);
+			try {
+				pending = executor.schedule(this::submit, delay, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// the service is closed
+				pending = null;
+			}
+		}
+
+		/**
+		 * Hands the due attempt over to the connect pool, the scheduler thread does not block
+		 */
+		private void submit() {
+			try {
+				connector.execute(this::run);
+			} catch (RejectedExecutionException e) {
+				// the service is closed
+				synchronized (this) {
+					pending = null;
+				}
+			}
+		}
+
+		private void run() {
+			synchronized (this) {
+				pending = null;
+				if (cancelled) {
+					return;
+				}
+				running = true;
+				lostAgain = false;
+			}
+			metrics.attempt();
+			boolean connected;
+			try {
+				connected = Boolean.TRUE.equals(attempt.call());
+			} catch (Exception e) {
+				logger.log(Level.SEVERE, e, () -> "Error trying to reconnect " + name + " to MQTT broker.");
+				connected = false;
+			}
+			synchronized (this) {
+				running = false;
+				if (cancelled) {
+					return;
+				}
+				if (connected) {
+					metrics.recovered(System.nanoTime() - lostAt);
+					failures = 0;
+					lostAt = 0L;
+					if (lostAgain) {
+						lostAt = System.nanoTime();
+						metrics.connectionLost();
+						schedule();
+					}
+				} else {
+					metrics.failed();
+					failures++;
+					schedule();
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+
+package org.gecko.adapter.mqtt.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.gecko.adapter.mqtt.MqttConfig;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.Promises;
+
+/**
+ * One client connection for publishing and all subscriptions of a {@link MqttConfig}. The subscriptions are
+ * registered per topic filter and the client dispatches the messages locally to the {@link MqttPushEventSource}
+ * of the filter. If the connection is lost, a new client is created and all registered filters are subscribed again.
+ * Manual acknowledges, see {@link MqttConfig#receiveMaximum()}, are sent by the client, that received the message,
+ * for exactly this message, so that the broker window is bound to the consumption of all streams together.
+ *
+ * @author agent
+ * @since 1.1.1
+ */
+class SharedMqttConnection implements GeckoMqttClient {
+
+	private static final Logger logger = Logger.getLogger(SharedMqttConnection.class.getName());
+
+	private final MqttConfig config;
+	private final MqttClientFactory<GeckoMqttClient> clientFactory;
+	private final Runnable onReconnect;
+	private final ReconnectScheduler.Reconnect reconnect;
+	// subscribed topic and source per filter, in subscription order
+	private final Map<String, Subscription> subscriptions = new LinkedHashMap<>();
+	private final List<Consumer<Throwable>> lostConsumers = new CopyOnWriteArrayList<>();
+	private volatile GeckoMqttClient client;
+	// the client, that is currently created, guarded by this
+	private CompletableFuture<GeckoMqttClient> connecting;
+	private boolean closed = false;
+
+	/**
+	 * Creates a new instance. The client is connected on the first subscription or publish.
+	 * @param config the configuration
+	 * @param clientFactory creates the clients
+	 * @param scheduler schedules the reconnects
+	 * @param onReconnect executed, when a new client is connected after a connection loss
+	 */
+	SharedMqttConnection(MqttConfig config, MqttClientFactory<GeckoMqttClient> clientFactory, ReconnectScheduler scheduler, Runnable onReconnect) {
+		this.config = config;
+		this.clientFactory = clientFactory;
+		this.onReconnect = onReconnect;
+		this.reconnect = scheduler.newReconnect("shared " + config.brokerUrl(), this::reconnect);
+	}
+
+	/**
+	 * Connects the client and subscribes all registered filters, if the client does not exist yet. The client is 
+	 * connected without the lock, so that a slow broker does not block the subscriptions and the close. Concurrent 
+	 * callers wait for the client, that is connecting.
+	 * @return the client
+	 */
+	GeckoMqttClient open() {
+		CompletableFuture<GeckoMqttClient> pending;
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("The shared MQTT connection to " + config.brokerUrl() + " is closed");
+			}
+			if (client != null) {
+				return client;
+			}
+			if (connecting != null) {
+				pending = connecting;
+			} else {
+				connecting = new CompletableFuture<>();
+				pending = null;
+			}
+		}
+		if (pending != null) {
+			try {
+				return pending.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw e;
+			}
+		}
+		return connectClient();
+	}
+
+	/**
+	 * Creates the client and completes the connecting future, it must be called without the lock
+	 * @return the client
+	 */
+	private GeckoMqttClient connectClient() {
+		CompletableFuture<GeckoMqttClient> pending;
+		GeckoMqttClient newClient = null;
+		List<Subscription> registered;
+		boolean closedMeanwhile;
+		try {
+			newClient = clientFactory.createClient(config, "gecko-" + UUID.randomUUID());
+			newClient.connectionLost(this::lost);
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				pending = connecting;
+				connecting = null;
+			}
+			pending.completeExceptionally(e);
+			throw e;
+		}
+		synchronized (this) {
+			pending = connecting;
+			connecting = null;
+			closedMeanwhile = closed;
+			if (!closed) {
+				client = newClient;
+			}
+			registered = new ArrayList<>(subscriptions.values());
+		}
+		if (closedMeanwhile) {
+			newClient.close();
+			IllegalStateException e = new IllegalStateException("The shared MQTT connection to " + config.brokerUrl() + " is closed");
+			pending.completeExceptionally(e);
+			throw e;
+		}
+		pending.complete(newClient);
+		// the broker calls are made without the lock, because the client delivers on its own threads
+		GeckoMqttClient connected = newClient;
+		registered.forEach(s -> connected.subscribe(s.topic, s.qos, s.source));
+		return newClient;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.adapter.mqtt.common.GeckoMqttClient#connect(org.gecko.adapter.mqtt.MqttConfig, java.util.function.Function)
+	 */
+	@Override
+	public boolean connect(MqttConfig config, Function<Exception, Boolean> onException) {
+		try {
+			GeckoMqttClient current = open();
+			return current.isConnected() || current.connect(config, onException);
+		} catch (Exception e) {
+			return onException.apply(e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.adapter.mqtt.common.GeckoMqttClient#isConnected()
+	 */
+	@Override
+	public boolean isConnected() {
+		GeckoMqttClient current = client;
+		return current != null && current.isConnected();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.adapter.mqtt.common.GeckoMqttClient#disconnect()
+	 */
+	@Override
+	public void disconnect() {
+		GeckoMqttClient current = client;
+		if (current != null) {
+			current.disconnect();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.adapter.mqtt.common.GeckoMqttClient#close()
+	 */
+	@Override
+	public void close() {
+		GeckoMqttClient current;
+		synchronized (this) {
+			closed = true;
+			reconnect.cancel();
+			subscriptions.clear();
+			current = client;
+			client = null;
+		}
+		if (current != null) {
+			current.close();
+		}
+	}
+
+	/**
+	 * Registers the source for the topic filter and subscribes it, if the client is connected.
+	 * A source, that was registered for the filter before, is replaced.
+	 * @see org.gecko.adapter.mqtt.common.GeckoMqttClient#subscribe(java.lang.String, int, org.gecko.adapter.mqtt.common.MqttPushEventSource)
+	 */
+	@Override
+	public void subscribe(String topic, int qos, MqttPushEventSource src) {
+		GeckoMqttClient current;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			subscriptions.put(topic, new Subscription(topic, qos, src));
+			current = client;
+		}
+		if (current != null) {
+			current.subscribe(topic, qos, src);
+			return;
+		}
+		try {
+			// subscribes all registered filters
+			open();
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, e, () -> "Error connecting to MQTT broker " + config.brokerUrl() + " to subscribe " + topic);
+			reconnect.connectionLost(e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.adapter.mqtt.common.GeckoMqttClient#unsubscribe(java.lang.String)
+	 */
+	@Override
+	public void unsubscribe(String topic) {
+		GeckoMqttClient current;
+		synchronized (this) {
+			if (subscriptions.remove(topic) == null) {
+				return;
+			}
+			current = client;
+		}
+		if (current != null) {
+			current.unsubscribe(topic);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.adapter.mqtt.common.GeckoMqttClient#publish(java.lang.String, byte[], int, boolean)
+	 */
+	@Override
+	public void publish(String topic, byte[] content, int qos, boolean retained) throws Exception {
+		open().publish(topic, content, qos, retained);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.adapter.mqtt.common.GeckoMqttClient#publishAsync(java.lang.String, byte[], int, boolean)
+	 */
+	@Override
+	public Promise<Void> publishAsync(String topic, byte[] content, int qos, boolean retained) {
+		try {
+			return open().publishAsync(topic, content, qos, retained);
+		} catch (Exception e) {
+			return Promises.failed(e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.adapter.mqtt.common.GeckoMqttClient#publishBatch(java.lang.String, java.util.List, int, boolean)
+	 */
+	@Override
+	public void publishBatch(String topic, List<byte[]> contents, int qos, boolean retained) throws Exception {
+		open().publishBatch(topic, contents, qos, retained);
+	}
+
+	/**
+	 * Adds a consumer, that is notified about connection losses. The connection reconnects itself.
+	 * @see org.gecko.adapter.mqtt.common.GeckoMqttClient#connectionLost(java.util.function.Consumer)
+	 */
+	@Override
+	public void connectionLost(Consumer<Throwable> reconnectConsumer) {
+		lostConsumers.add(reconnectConsumer);
+	}
+
+	private void lost(Throwable exception) {
+		lostConsumers.forEach(c -> c.accept(exception));
+		reconnect.connectionLost(exception);
+	}
+
+	/**
+	 * Replaces the lost client and subscribes all registered filters again
+	 * @return <code>true</code>, if the connection is established
+	 */
+	private boolean reconnect() {
+		GeckoMqttClient lost;
+		synchronized (this) {
+			if (closed || (client != null && client.isConnected())) {
+				return true;
+			}
+			logger.log(Level.INFO, () -> "Create new client and subscribe to " + subscriptions.keySet());
+			lost = client;
+			client = null;
+		}
+		if (lost != null) {
+			lost.close();
+		}
+		open();
+		GeckoMqttClient reconnected = client;
+		if (reconnected == null || !reconnected.isConnected()) {
+			return false;
+		}
+		if (onReconnect != null) {
+			onReconnect.run();
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "shared " + client + " " + subscriptions.keySet();
+	}
+
+	private static final class Subscription {
+
+		private final String topic;
+		private final int qos;
+		private final MqttPushEventSource source;
+
+		private Subscription(String topic, int qos, MqttPushEventSource source) {
+			this.topic = topic;
+			this.qos = qos;
+			this.source = source;
+		}
+
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+
+package org.gecko.adapter.mqtt.common;
+
+/**
+ * Topic filters of shared subscriptions <code>$share/{group}/{filter}</code>. The broker delivers every message
+ * of a shared subscription to only one subscriber of the group, so that the consumers of a group divide the load.
+ * The messages carry the topic name and not the shared filter, so the clients have to match them against the
+ * filter without the prefix.
+ *
+ * @author agent
+ * @since 1.1.1
+ */
+public final class SharedSubscriptions {
+
+	public static final String PREFIX = "$share/";
+
+	private SharedSubscriptions() {
+	}
+
+	/**
+	 * Returns the filter of the shared subscription
+	 * @param group the share group, <code>null</code> or empty for a non shared subscription
+	 * @param filter the topic filter
+	 * @return the filter with the share prefix, or the given filter, if there is no group or it is shared already
+	 * @throws IllegalArgumentException if the group is no valid share name
+	 */
+	public static String share(String group, String filter) {
+		if (group == null || group.isEmpty() || isShared(filter)) {
+			return filter;
+		}
+		if (group.indexOf('/') >= 0 || group.indexOf('+') >= 0 || group.indexOf('#') >= 0) {
+			throw new IllegalArgumentException("The share group '" + group + "' must not contain '/', '+' or '#'");
+		}
+		return PREFIX + group + "/" + filter;
+	}
+
+	/**
+	 * Returns <code>true</code>, if the filter is a shared subscription
+	 * @param filter the topic filter
+	 * @return <code>true</code>, if the filter has the share prefix
+	 */
+	public static boolean isShared(String filter) {
+		return filter.startsWith(PREFIX);
+	}
+
+	/**
+	 * Returns the filter, the topics of the messages are matched against
+	 * @param filter the topic filter, can be shared
+	 * @return the filter without the share prefix
+	 */
+	public static String getTopicFilter(String filter) {
+		if (!isShared(filter)) {
+			return filter;
+		}
+		int end = filter.indexOf('/', PREFIX.length());
+		return end < 0 ? filter : filter.substring(end + 1);
+	}
+
+}
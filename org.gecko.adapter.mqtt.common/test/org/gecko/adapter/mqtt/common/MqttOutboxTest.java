@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.adapter.mqtt.common;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.gecko.adapter.mqtt.MqttConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.Promises;
+
+/**
+ * Tests the fallback of the asynchronous publish to the outbox
+ * @author agent
+ * @since 1.1.1
+ */
+public class MqttOutboxTest {
+
+	private static final String TOPIC = "test/outbox";
+
+	@TempDir
+	Path directory;
+
+	private final TestClient client = new TestClient();
+	private TestService service;
+
+	@BeforeEach
+	public void before() throws Exception {
+		service = new TestService(client);
+		service.doActivate((MqttConfig) Proxy.newProxyInstance(MqttConfig.class.getClassLoader(),
+				new Class<?>[] { MqttConfig.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "outboxPath":
+						return directory.toString();
+					case "outboxMaxSize":
+						return Long.valueOf(256 * 1024L);
+					default:
+						return method.getDefaultValue();
+					}
+				}));
+	}
+
+	@AfterEach
+	public void after() throws Exception {
+		service.close();
+	}
+
+	@Test
+	public void testFailedPublishAsyncIsAppendedToOutbox() throws Exception {
+		byte[] payload = "hello".getBytes(StandardCharsets.UTF_8);
+
+		Promise<Void> published = service.publishAsync(TOPIC, ByteBuffer.wrap(payload));
+
+		assertNull(published.getFailure());
+		assertTrue(client.drained.await(5, TimeUnit.SECONDS));
+		assertEquals(1, client.sent.size());
+		assertArrayEquals(payload, client.sent.get(0));
+	}
+
+	@Test
+	public void testPublishAsyncLargerThanOutboxFails() throws Exception {
+		Promise<Void> published = service.publishAsync(TOPIC, ByteBuffer.wrap(new byte[128 * 1024]));
+
+		assertInstanceOf(IllegalArgumentException.class, published.getFailure());
+		assertEquals(0, client.attempts);
+	}
+
+	private static final class TestService extends AbstractMqttService {
+
+		private final TestClient client;
+
+		TestService(TestClient client) {
+			this.client = client;
+		}
+
+		@Override
+		protected GeckoMqttClient createClient(MqttConfig config, String id) {
+			return client;
+		}
+
+	}
+
+	/**
+	 * Client, whose asynchronous publishes fail, but which publishes the messages of the outbox
+	 */
+	private static final class TestClient implements GeckoMqttClient {
+
+		private final List<byte[]> sent = new CopyOnWriteArrayList<>();
+		private final CountDownLatch drained = new CountDownLatch(1);
+		private volatile int attempts = 0;
+
+		@Override
+		public boolean connect(MqttConfig config, Function<Exception, Boolean> onException) {
+			return true;
+		}
+
+		@Override
+		public boolean isConnected() {
+			return true;
+		}
+
+		@Override
+		public void disconnect() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public void subscribe(String topic, int qos, MqttPushEventSource src) {
+		}
+
+		@Override
+		public void unsubscribe(String topic) {
+		}
+
+		@Override
+		public void publish(String topic, byte[] content, int qos, boolean retained) throws Exception {
+			sent.add(content);
+			drained.countDown();
+		}
+
+		@Override
+		public Promise<Void> publishAsync(String topic, byte[] content, int qos, boolean retained) {
+			attempts++;
+			return Promises.failed(new IllegalStateException("Not connected"));
+		}
+
+		@Override
+		public void publishBatch(String topic, List<byte[]> contents, int qos, boolean retained) throws Exception {
+			sent.addAll(contents);
+			drained.countDown();
+		}
+
+		@Override
+		public void connectionLost(Consumer<Throwable> reconnectConsumer) {
+		}
+
+	}
+
+}
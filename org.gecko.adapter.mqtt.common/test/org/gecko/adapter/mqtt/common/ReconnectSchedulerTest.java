@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.adapter.mqtt.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.gecko.osgi.messaging.metrics.ReconnectMetrics;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author agent
+ * @since 1.1.1
+ */
+public class ReconnectSchedulerTest {
+
+	@Test
+	public void testDelaysGrowUpToTheMaximum() {
+		try (ReconnectScheduler scheduler = new ReconnectScheduler("test-reconnect", 10, 100, new ReconnectMetrics("test"))) {
+			long max = 0;
+			for (int i = 0; i < 1000; i++) {
+				assertTrue(scheduler.nextDelay(0) <= 10);
+				assertTrue(scheduler.nextDelay(2) <= 40);
+				long delay = scheduler.nextDelay(63);
+				assertTrue(delay >= 0 && delay <= 100);
+				max = Math.max(max, delay);
+			}
+			// the delays are jittered over the whole range
+			assertTrue(max > 50);
+		}
+	}
+
+	@Test
+	public void testRetriesUntilConnected() throws Exception {
+		ReconnectMetrics metrics = new ReconnectMetrics("test");
+		AtomicInteger attempts = new AtomicInteger();
+		CountDownLatch connected = new CountDownLatch(1);
+		try (ReconnectScheduler scheduler = new ReconnectScheduler("test-reconnect", 10, 20, metrics)) {
+			ReconnectScheduler.Reconnect reconnect = scheduler.newReconnect("test", () -> {
+				if (attempts.incrementAndGet() < 3) {
+					return false;
+				}
+				connected.countDown();
+				return true;
+			});
+			reconnect.connectionLost(null);
+			// a second loss does not schedule another attempt
+			reconnect.connectionLost(null);
+			assertTrue(connected.await(5, TimeUnit.SECONDS));
+			Thread.sleep(100);
+			assertEquals(3, attempts.get());
+			assertEquals(1, metrics.getConnectionLostCount());
+			assertEquals(2, metrics.getFailureCount());
+			assertEquals(1, metrics.getRecoveryCount());
+		}
+	}
+
+	@Test
+	public void testLossDuringAnAttemptIsRetried() throws Exception {
+		AtomicInteger attempts = new AtomicInteger();
+		AtomicReference<ReconnectScheduler.Reconnect> reference = new AtomicReference<>();
+		CountDownLatch second = new CountDownLatch(1);
+		try (ReconnectScheduler scheduler = new ReconnectScheduler("test-reconnect", 10, 20, new ReconnectMetrics("test"))) {
+			reference.set(scheduler.newReconnect("test", () -> {
+				if (attempts.incrementAndGet() == 1) {
+					// the connection is lost again, before the attempt returns
+					reference.get().connectionLost(null);
+				} else {
+					second.countDown();
+				}
+				return true;
+			}));
+			reference.get().connectionLost(null);
+			assertTrue(second.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void testBlockingConnectDoesNotDelayOtherConnections() throws Exception {
+		CountDownLatch blocking = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch connected = new CountDownLatch(1);
+		try (ReconnectScheduler scheduler = new ReconnectScheduler("test-reconnect", 1, 5, new ReconnectMetrics("test"))) {
+			ReconnectScheduler.Reconnect slow = scheduler.newReconnect("slow", () -> {
+				blocking.countDown();
+				// waits for the broker like a blocking connect
+				release.await();
+				return true;
+			});
+			ReconnectScheduler.Reconnect fast = scheduler.newReconnect("fast", () -> {
+				connected.countDown();
+				return true;
+			});
+			slow.connectionLost(null);
+			assertTrue(blocking.await(5, TimeUnit.SECONDS));
+			fast.connectionLost(null);
+			assertTrue(connected.await(5, TimeUnit.SECONDS));
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testCancelStopsTheAttempts() throws Exception {
+		AtomicInteger attempts = new AtomicInteger();
+		AtomicReference<ReconnectScheduler.Reconnect> reference = new AtomicReference<>();
+		try (ReconnectScheduler scheduler = new ReconnectScheduler("test-reconnect", 1, 5, new ReconnectMetrics("test"))) {
+			reference.set(scheduler.newReconnect("test", () -> {
+				if (attempts.incrementAndGet() == 2) {
+					reference.get().cancel();
+				}
+				return false;
+			}));
+			reference.get().connectionLost(null);
+			Thread.sleep(200);
+			assertEquals(2, attempts.get());
+			// a cancelled reconnect ignores further losses
+			reference.get().connectionLost(null);
+			Thread.sleep(50);
+			assertEquals(2, attempts.get());
+		}
+	}
+
+}
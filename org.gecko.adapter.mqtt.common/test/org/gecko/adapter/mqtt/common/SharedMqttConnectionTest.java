@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.adapter.mqtt.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.gecko.adapter.mqtt.MqttConfig;
+import org.gecko.osgi.messaging.metrics.ReconnectMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.Promises;
+
+/**
+ *
+ * @author agent
+ * @since 1.1.1
+ */
+public class SharedMqttConnectionTest {
+
+	private final ReconnectScheduler scheduler = new ReconnectScheduler("test-reconnect", 10, 100, new ReconnectMetrics("test"));
+	private final MqttConfig config = (MqttConfig) Proxy.newProxyInstance(MqttConfig.class.getClassLoader(), 
+			new Class<?>[] { MqttConfig.class }, (proxy, method, args) -> method.getDefaultValue());
+
+	@AfterEach
+	public void after() {
+		scheduler.close();
+	}
+
+	@Test
+	public void testConnectDoesNotBlockTheConnection() throws Exception {
+		CountDownLatch connecting = new CountDownLatch(1);
+		CountDownLatch connected = new CountDownLatch(1);
+		List<TestClient> clients = new CopyOnWriteArrayList<>();
+		SharedMqttConnection connection = new SharedMqttConnection(config, (c, id) -> {
+			connecting.countDown();
+			try {
+				connected.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			TestClient client = new TestClient();
+			clients.add(client);
+			return client;
+		}, scheduler, null);
+
+		CompletableFuture<GeckoMqttClient> first = CompletableFuture.supplyAsync(connection::open);
+		assertTrue(connecting.await(5, TimeUnit.SECONDS));
+		// a second caller waits for the connecting client
+		CompletableFuture<GeckoMqttClient> second = CompletableFuture.supplyAsync(connection::open);
+		// the lock is not held, while the client connects
+		CompletableFuture.runAsync(() -> connection.unsubscribe("a/b")).get(1, TimeUnit.SECONDS);
+		connected.countDown();
+
+		assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+		assertEquals(1, clients.size());
+		connection.close();
+		assertTrue(clients.get(0).closed);
+	}
+
+	@Test
+	public void testCloseWhileConnecting() throws Exception {
+		CountDownLatch connecting = new CountDownLatch(1);
+		CountDownLatch connected = new CountDownLatch(1);
+		TestClient client = new TestClient();
+		SharedMqttConnection connection = new SharedMqttConnection(config, (c, id) -> {
+			connecting.countDown();
+			try {
+				connected.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return client;
+		}, scheduler, null);
+
+		CompletableFuture<GeckoMqttClient> open = CompletableFuture.supplyAsync(connection::open);
+		assertTrue(connecting.await(5, TimeUnit.SECONDS));
+		CompletableFuture.runAsync(connection::close).get(1, TimeUnit.SECONDS);
+		connected.countDown();
+
+		ExecutionException e = assertThrows(ExecutionException.class, () -> open.get(5, TimeUnit.SECONDS));
+		assertTrue(e.getCause() instanceof IllegalStateException);
+		assertTrue(client.closed);
+	}
+
+	@Test
+	public void testFailedConnectIsRetried() {
+		AtomicInteger attempts = new AtomicInteger();
+		SharedMqttConnection connection = new SharedMqttConnection(config, (c, id) -> {
+			if (attempts.incrementAndGet() == 1) {
+				throw new IllegalStateException("broker down");
+			}
+			return new TestClient();
+		}, scheduler, null);
+		assertThrows(IllegalStateException.class, connection::open);
+		assertTrue(connection.open().isConnected());
+		connection.close();
+	}
+
+	private static final class TestClient implements GeckoMqttClient {
+
+		private volatile boolean closed = false;
+
+		@Override
+		public boolean connect(MqttConfig config, Function<Exception, Boolean> onException) {
+			return true;
+		}
+
+		@Override
+		public boolean isConnected() {
+			return !closed;
+		}
+
+		@Override
+		public void disconnect() {
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+
+		@Override
+		public void subscribe(String topic, int qos, MqttPushEventSource src) {
+		}
+
+		@Override
+		public void unsubscribe(String topic) {
+		}
+
+		@Override
+		public void publish(String topic, byte[] content, int qos, boolean retained) throws Exception {
+		}
+
+		@Override
+		public Promise<Void> publishAsync(String topic, byte[] content, int qos, boolean retained) {
+			return Promises.resolved(null);
+		}
+
+		@Override
+		public void publishBatch(String topic, List<byte[]> contents, int qos, boolean retained) throws Exception {
+		}
+
+		@Override
+		public void connectionLost(Consumer<Throwable> reconnectConsumer) {
+		}
+
+	}
+
+}
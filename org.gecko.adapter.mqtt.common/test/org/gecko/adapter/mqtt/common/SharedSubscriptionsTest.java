@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.adapter.mqtt.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author agent
+ * @since 1.1.1
+ */
+public class SharedSubscriptionsTest {
+
+	@Test
+	public void testShare() {
+		assertEquals("$share/group/a/#", SharedSubscriptions.share("group", "a/#"));
+		assertEquals("a/#", SharedSubscriptions.share(null, "a/#"));
+		assertEquals("a/#", SharedSubscriptions.share("", "a/#"));
+		// a filter is shared only once
+		assertEquals("$share/other/a/#", SharedSubscriptions.share("group", "$share/other/a/#"));
+		assertThrows(IllegalArgumentException.class, () -> SharedSubscriptions.share("a/b", "a/#"));
+		assertThrows(IllegalArgumentException.class, () -> SharedSubscriptions.share("a+", "a/#"));
+		assertThrows(IllegalArgumentException.class, () -> SharedSubscriptions.share("a#", "a/#"));
+	}
+
+	@Test
+	public void testTopicFilter() {
+		assertTrue(SharedSubscriptions.isShared("$share/group/a/+"));
+		assertFalse(SharedSubscriptions.isShared("a/+"));
+		assertEquals("a/+", SharedSubscriptions.getTopicFilter("$share/group/a/+"));
+		assertEquals("a/+", SharedSubscriptions.getTopicFilter("a/+"));
+		// a share name without a filter is kept as it is
+		assertEquals("$share/group", SharedSubscriptions.getTopicFilter("$share/group"));
+	}
+
+}
@@ -14,17 +14,23 @@
 package org.gecko.adapter.mqtt.service;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.eclipse.paho.mqttv5.client.IMqttClient;
 import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttActionListener;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
 import org.eclipse.paho.mqttv5.client.MqttCallback;
-import org.eclipse.paho.mqttv5.client.MqttClient;
 import org.eclipse.paho.mqttv5.client.MqttClientPersistence;
 import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
 import org.eclipse.paho.mqttv5.client.MqttConnectionOptionsBuilder;
@@ -33,16 +39,25 @@ import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
 import org.eclipse.paho.mqttv5.client.persist.MqttDefaultFilePersistence;
 import org.eclipse.paho.mqttv5.common.MqttException;
 import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttPayloadAllocator;
+import org.eclipse.paho.mqttv5.common.MqttSubscription;
 import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
-import org.gecko.adapter.mqtt.MQTTContextBuilder;
+import org.eclipse.paho.mqttv5.common.packet.UserProperty;
+import org.gecko.adapter.mqtt.MQTTContext;
 import org.gecko.adapter.mqtt.MqttConfig;
 import org.gecko.adapter.mqtt.PersistenceType;
 import org.gecko.adapter.mqtt.QoS;
+import org.gecko.adapter.mqtt.common.BatchPublishException;
 import org.gecko.adapter.mqtt.common.GeckoMqttClient;
 import org.gecko.adapter.mqtt.common.MqttPushEventSource;
-import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.ByteBufferPool;
+import org.gecko.osgi.messaging.PooledByteBuffer;
 import org.gecko.osgi.messaging.MessagingContext;
+import org.gecko.osgi.messaging.MessagingExecutors;
 import org.gecko.osgi.messaging.SimpleMessage;
+import org.gecko.osgi.messaging.metrics.LatencyStamp;
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
 
 /**
  * Facade for Paho MQTT client Version 3
@@ -54,12 +69,25 @@ public class PahoV5Client implements GeckoMqttClient {
 
 	private static final Logger logger = Logger.getLogger(PahoV5Client.class.getName());
 
-	private IMqttClient client;
+	private MqttAsyncClient client;
+	// free slots of the inflight window, the queued publishes wait for a slot
+	private final Semaphore inflight;
+	// the publishes in the order of the calls, that wait for a slot
+	private final Queue<Runnable> queued = new ConcurrentLinkedQueue<>();
+	private final ByteBufferPool payloadPool;
+	private final boolean latencyStamping;
+	private final int receiveMaximum;
+	private final String messageIdProperty;
 
 	/**
 	 * Creates a new instance.
 	 */
 	public PahoV5Client(MqttConfig config, String id) {
+		this.inflight = new Semaphore(Math.max(1, config.maxInflight()));
+		this.payloadPool = config.pooledPayload() ? ByteBufferPool.getDefault() : null;
+		this.latencyStamping = config.latencyStamping();
+		this.messageIdProperty = config.messageIdProperty();
+		this.receiveMaximum = Math.min(65535, Math.max(0, config.receiveMaximum()));
 
 		MqttClientPersistence persistence = new MemoryPersistence();
 		if (PersistenceType.FILE.equals(config.inflightPersistence())) {
@@ -71,12 +99,15 @@ public class PahoV5Client implements GeckoMqttClient {
 		}
 		try {
 			if (config.maxThreads() > 0) {
-				ScheduledExecutorService ses = Executors.newScheduledThreadPool(config.maxThreads());
-				client = new MqttClient(config.brokerUrl(), id, persistence, ses);
+				ScheduledExecutorService ses = config.virtualThreads() ? 
+						Executors.newScheduledThreadPool(config.maxThreads(), MessagingExecutors.newVirtualThreadFactory("paho-" + id)) :
+						Executors.newScheduledThreadPool(config.maxThreads());
+				client = new MqttAsyncClient(config.brokerUrl(), id, persistence, null, ses);
 			} else {
-				client = new MqttClient(config.brokerUrl(), id, persistence);
+				client = new MqttAsyncClient(config.brokerUrl(), id, persistence);
 			}
-			client.connect(getConnectionOptions(config));
+			client.setManualAcks(receiveMaximum > 0);
+			client.connect(getConnectionOptions(config)).waitForCompletion();
 		} catch (MqttException e) {
 			logger.log(Level.SEVERE,e, () -> "Fatal error trying to initalize MQTT client in connetion " + id + ".");
 			throw new RuntimeException(e);
@@ -91,7 +122,7 @@ public class PahoV5Client implements GeckoMqttClient {
 	@Override
 	public void disconnect() {
 		try {
-			client.disconnect();
+			client.disconnect().waitForCompletion();
 		} catch (MqttException e) {
 			logger.log(Level.SEVERE, "Fatal error while disconnectiong connetion " + client.getClientId() + ".", e);
 		}
@@ -109,7 +140,7 @@ public class PahoV5Client implements GeckoMqttClient {
 	@Override
 	public boolean connect(MqttConfig config, Function<Exception, Boolean> onException) {
 		try {
-			client.connect(getConnectionOptions(config));
+			client.connect(getConnectionOptions(config)).waitForCompletion();
 			return true;
 		} catch (MqttException e) {
 			return onException.apply(e);
@@ -132,24 +163,47 @@ public class PahoV5Client implements GeckoMqttClient {
 			}
 		}
 		ob.automaticReconnect(true);
-		return ob.build();
+		MqttConnectionOptions options = ob.build();
+		if (receiveMaximum > 0) {
+			options.setReceiveMaximum(Integer.valueOf(receiveMaximum));
+		}
+		options.setOutgoingTopicAliasMaximum(Integer.valueOf(Math.min(65535, Math.max(0, config.outgoingTopicAliases()))));
+		if (payloadPool != null) {
+			// the client decodes the payloads straight into the pooled buffers
+			options.setPayloadAllocator(size -> new PooledPayload(payloadPool.acquire(size)));
+		}
+		return options;
 	}
 
 	@Override
 	public void subscribe(String topic, int qos, MqttPushEventSource source) {
 		try {
-			client.subscribe(topic, qos, (topic1, message) -> {
+			client.subscribe(new MqttSubscription(topic, qos), (topic1, message) -> {
 				if (source.isConnected()) {
+					SimpleMessage msg = null;
 					try {
-						Message msg = fromPahoMessage(message, topic1);
-						source.publish(msg);
+						msg = fromPahoMessage(message, topic1);
+						if (receiveMaximum > 0) {
+							// acknowledged on this client, when the first stream takes the message
+							int id = message.getId();
+							int messageQos = message.getQos();
+							msg.setOnConsumed(() -> acknowledge(id, messageQos));
+						}
+						source.publish(msg, getSendTime(message));
 					} catch (Exception e) {
+						if (msg == null) {
+							acknowledge(message.getId(), message.getQos());
+						} else {
+							msg.consumed();
+						}
 						source.error(e);
 						logger.log(Level.SEVERE, e, ()-> "Fatal error while publish to push event source in connetion "
 								+ client.getClientId() + ".");
 					}
+				} else {
+					acknowledge(message.getId(), message.getQos());
 				}
-			});
+			}).waitForCompletion();
 		} catch (MqttException e) {
 			logger.log(Level.SEVERE,
 					"Fatal error trying to subscribe to \"" + topic + "\" MQTT broker while reconnect.", e);
@@ -157,6 +211,41 @@ public class PahoV5Client implements GeckoMqttClient {
 
 	}
 
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.adapter.mqtt.common.GeckoMqttClient#unsubscribe(java.lang.String)
+	 */
+	@Override
+	public void unsubscribe(String topic) {
+		if (!client.isConnected()) {
+			// the broker drops the subscriptions of a clean session
+			return;
+		}
+		try {
+			client.unsubscribe(topic).waitForCompletion();
+		} catch (MqttException e) {
+			logger.log(Level.WARNING, e, () -> "Cannot unsubscribe from \"" + topic + "\" in connection " + client.getClientId() + ".");
+		}
+	}
+
+	/**
+	 * Completes the message at the broker and frees its slot in the Receive Maximum window. 
+	 * Without manual acknowledges the client has already done it. The messages of a lost connection cannot be 
+	 * completed anymore, the broker delivers them again on the new session.
+	 * @param id the message id
+	 * @param qos the QoS of the message
+	 */
+	private void acknowledge(int id, int qos) {
+		if (receiveMaximum <= 0 || qos == 0) {
+			return;
+		}
+		try {
+			client.messageArrivedComplete(id, qos);
+		} catch (MqttException e) {
+			logger.log(Level.WARNING, e, () -> "Cannot acknowledge message " + id + " in connection " + client.getClientId() + ".");
+		}
+	}
+
 	@Override
 	public void connectionLost(Consumer<Throwable> consumer) {
 		client.setCallback(new MqttCallback() {
@@ -196,7 +285,98 @@ public class PahoV5Client implements GeckoMqttClient {
 
 	@Override
 	public void publish(String topic, byte[] content, int qos, boolean retained) throws Exception {
-		client.publish(topic, content, qos, retained);
+		// queued behind the pending asynchronous publishes, so that it does not overtake them
+		Throwable failure = enqueue(topic, content, qos, retained).getFailure();
+		if (failure instanceof Exception) {
+			throw (Exception) failure;
+		} else if (failure != null) {
+			throw new MqttException(failure);
+		}
+	}
+
+	@Override
+	public Promise<Void> publishAsync(String topic, byte[] content, int qos, boolean retained) {
+		return enqueue(topic, content, qos, retained);
+	}
+
+	@Override
+	public void publishBatch(String topic, List<byte[]> contents, int qos, boolean retained) throws Exception {
+		// the publishes are pipelined up to the inflight window, the rest waits in the queue
+		List<Promise<Void>> delivered = new ArrayList<>(contents.size());
+		for (byte[] content : contents) {
+			delivered.add(enqueue(topic, content, qos, retained));
+		}
+		Throwable failure = null;
+		List<byte[]> unsent = new ArrayList<>();
+		for (int i = 0; i < contents.size(); i++) {
+			Throwable t = delivered.get(i).getFailure();
+			if (t != null) {
+				unsent.add(contents.get(i));
+				failure = failure == null ? t : failure;
+			}
+		}
+		if (failure != null) {
+			throw new BatchPublishException(failure, unsent);
+		}
+	}
+
+	/**
+	 * Queues a publish, until a slot of the inflight window is free. All publishes go through the queue,
+	 * so that they are sent in the order of the calls, whether the caller waits for the delivery or not.
+	 * @return the promise, that resolves, when the delivery is complete
+	 */
+	private Promise<Void> enqueue(String topic, byte[] content, int qos, boolean retained) {
+		Deferred<Void> deferred = new Deferred<>();
+		queued.add(() -> {
+			try {
+				publishInSlot(topic, content, qos, retained, deferred);
+			} catch (MqttException | RuntimeException e) {
+				deferred.fail(e);
+			}
+		});
+		publishQueued();
+		return deferred.getPromise();
+	}
+
+	/**
+	 * Publishes with a slot of the inflight window, that the caller has taken. The slot is freed, when the delivery 
+	 * completes or fails, and given to the next queued publish.
+	 * @param deferred resolved with the delivery
+	 */
+	private void publishInSlot(String topic, byte[] content, int qos, boolean retained, Deferred<Void> deferred) throws MqttException {
+		try {
+			client.publish(topic, toPahoMessage(content, qos, retained), null, new MqttActionListener() {
+
+				@Override
+				public void onSuccess(IMqttToken asyncActionToken) {
+					inflight.release();
+					publishQueued();
+					deferred.resolve(null);
+				}
+
+				@Override
+				public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+					inflight.release();
+					publishQueued();
+					deferred.fail(exception);
+				}
+			});
+		} catch (MqttException | RuntimeException e) {
+			inflight.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Publishes the queued publishes in their order, while slots of the inflight window are free. One thread
+	 * at a time takes and sends the publishes, so that two threads cannot swap the order of two publishes.
+	 */
+	private void publishQueued() {
+		synchronized (queued) {
+			while (!queued.isEmpty() && inflight.tryAcquire()) {
+				queued.poll().run();
+			}
+		}
 	}
 
 	@Override
@@ -204,10 +384,80 @@ public class PahoV5Client implements GeckoMqttClient {
 		return client.getClientId();
 	}
 
-	private static Message fromPahoMessage(MqttMessage msg, String topic) {
-		ByteBuffer content = ByteBuffer.wrap(msg.getPayload());
-		MessagingContext context = new MQTTContextBuilder().setRetained(msg.isRetained())
-				.withQoS(QoS.values()[msg.getQos()]).build();
-		return new SimpleMessage(topic, content, context);
+	private MqttMessage toPahoMessage(byte[] content, int qos, boolean retained) {
+		MqttProperties properties = new MqttProperties();
+		if (latencyStamping) {
+			properties.setUserProperties(Arrays.asList(
+					new UserProperty(LatencyStamp.SEND_TIME, Long.toString(LatencyStamp.now())),
+					new UserProperty(LatencyStamp.ORIGIN, LatencyStamp.getOrigin())));
+		}
+		return new MqttMessage(content, qos, retained, properties);
+	}
+
+	private String getMessageId(MqttMessage msg) {
+		MqttProperties properties = msg.getProperties();
+		if (messageIdProperty == null || messageIdProperty.isEmpty() || properties == null || properties.getUserProperties() == null) {
+			return null;
+		}
+		for (UserProperty property : properties.getUserProperties()) {
+			if (messageIdProperty.equals(property.getKey())) {
+				return property.getValue();
+			}
+		}
+		return null;
+	}
+
+	private long getSendTime(MqttMessage msg) {
+		MqttProperties properties = msg.getProperties();
+		if (properties == null || properties.getUserProperties() == null) {
+			return 0L;
+		}
+		for (UserProperty property : properties.getUserProperties()) {
+			if (LatencyStamp.SEND_TIME.equals(property.getKey())) {
+				return LatencyStamp.parseSendTime(property.getValue());
+			}
+		}
+		return 0L;
+	}
+
+	private SimpleMessage fromPahoMessage(MqttMessage msg, String topic) {
+		MessagingContext context = MQTTContext.shared(QoS.values()[msg.getQos()], msg.isRetained());
+		SimpleMessage message = msg.getPayloadLease() instanceof PooledPayload ? 
+				new SimpleMessage(topic, ((PooledPayload) msg.getPayloadLease()).pooled, context) :
+				new SimpleMessage(topic, ByteBuffer.wrap(msg.getPayload()), context);
+		message.setMessageId(getMessageId(msg));
+		return message;
+	}
+
+	/**
+	 * Lease of a received payload, that the client decoded into a buffer of the payload pool.
+	 * The message takes the lease over.
+	 */
+	private static final class PooledPayload implements MqttPayloadAllocator.Lease {
+
+		private final PooledByteBuffer pooled;
+
+		PooledPayload(PooledByteBuffer pooled) {
+			this.pooled = pooled;
+		}
+
+		/* 
+		 * (non-Javadoc)
+		 * @see org.eclipse.paho.mqttv5.common.MqttPayloadAllocator.Lease#buffer()
+		 */
+		@Override
+		public ByteBuffer buffer() {
+			return pooled.buffer();
+		}
+
+		/* 
+		 * (non-Javadoc)
+		 * @see org.eclipse.paho.mqttv5.common.MqttPayloadAllocator.Lease#release()
+		 */
+		@Override
+		public void release() {
+			pooled.release();
+		}
+
 	}
 }
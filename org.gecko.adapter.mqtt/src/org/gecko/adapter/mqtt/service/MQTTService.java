@@ -47,4 +47,14 @@ public class MQTTService extends AbstractMqttService {
 		return new PahoV3Client(config, id);
 	}
 
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.adapter.mqtt.common.AbstractMqttService#isSharedSubscriptionRouted()
+	 */
+	@Override
+	protected boolean isSharedSubscriptionRouted() {
+		// MQTT v3 messages do not tell the subscription, the callback of the client matches them by topic
+		return false;
+	}
+
 }
\ No newline at end of file
@@ -14,32 +14,48 @@
 package org.gecko.adapter.mqtt.service;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.eclipse.paho.client.mqttv3.IMqttClient;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
-import org.eclipse.paho.client.mqttv3.MqttClient;
 import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttTopic;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.ScheduledExecutorPingSender;
 import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
-import org.gecko.adapter.mqtt.MQTTContextBuilder;
+import org.gecko.adapter.mqtt.MQTTContext;
 import org.gecko.adapter.mqtt.MqttConfig;
 import org.gecko.adapter.mqtt.PersistenceType;
 import org.gecko.adapter.mqtt.QoS;
+import org.gecko.adapter.mqtt.common.BatchPublishException;
 import org.gecko.adapter.mqtt.common.GeckoMqttClient;
 import org.gecko.adapter.mqtt.common.MqttPushEventSource;
+import org.gecko.adapter.mqtt.common.SharedSubscriptions;
 import org.gecko.osgi.messaging.Message;
 import org.gecko.osgi.messaging.MessagingContext;
+import org.gecko.osgi.messaging.MessagingExecutors;
 import org.gecko.osgi.messaging.SimpleMessage;
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
 
 /**
  * Facade for Paho MQTT client Version 3
@@ -51,12 +67,20 @@ public class PahoV3Client implements GeckoMqttClient {
 
 	private static final Logger logger = Logger.getLogger(PahoV3Client.class.getName());
 
-	private IMqttClient client;
+	private MqttAsyncClient client;
+	// free slots of the inflight window, the queued publishes wait for a slot
+	private final Semaphore inflight;
+	// the publishes in the order of the calls, that wait for a slot
+	private final Queue<Runnable> queued = new ConcurrentLinkedQueue<>();
+	// listeners of the shared subscriptions by filter, Paho v3 does not match the shared filters with the topics.
+	// The messages do not tell their subscription, so a shared subscription gets a client of its own, see MQTTService
+	private final Map<String, IMqttMessageListener> sharedListeners = new ConcurrentHashMap<>();
 
 	/**
 	 * Creates a new instance.
 	 */
 	public PahoV3Client(MqttConfig config, String id) {
+		this.inflight = new Semaphore(Math.max(1, config.maxInflight()));
 
 		MqttClientPersistence persistence;
 		if (PersistenceType.FILE.equals(config.inflightPersistence())) {
@@ -70,12 +94,15 @@ public class PahoV3Client implements GeckoMqttClient {
 		}
 		try {
 			if (config.maxThreads() > 0) {
-				ScheduledExecutorService ses = Executors.newScheduledThreadPool(config.maxThreads());
-				client = new MqttClient(config.brokerUrl(), id, persistence, ses);
+				ScheduledExecutorService ses = config.virtualThreads() ? 
+						Executors.newScheduledThreadPool(config.maxThreads(), MessagingExecutors.newVirtualThreadFactory("paho-" + id)) :
+						Executors.newScheduledThreadPool(config.maxThreads());
+				client = new MqttAsyncClient(config.brokerUrl(), id, persistence, new ScheduledExecutorPingSender(ses), ses);
 			} else {
-				client = new MqttClient(config.brokerUrl(), id, persistence);
+				client = new MqttAsyncClient(config.brokerUrl(), id, persistence);
 			}
-			client.connect(getConnectionOptions(config));
+			client.setCallback(createCallback(null));
+			client.connect(getConnectionOptions(config)).waitForCompletion();
 		} catch (MqttException e) {
 			logger.log(Level.SEVERE, e, () -> "Fatal error trying to initalize MQTT client in connetion " + id + ".");
 			throw new RuntimeException(e);
@@ -90,7 +117,7 @@ public class PahoV3Client implements GeckoMqttClient {
 	@Override
 	public void disconnect() {
 		try {
-			client.disconnect();
+			client.disconnect().waitForCompletion();
 		} catch (MqttException e) {
 			logger.log(Level.SEVERE, e,
 					() -> "Fatal error while disconnectiong connetion " + client.getClientId() + ".");
@@ -109,7 +136,7 @@ public class PahoV3Client implements GeckoMqttClient {
 	@Override
 	public boolean connect(MqttConfig config, Function<Exception, Boolean> onException) {
 		try {
-			client.connect(getConnectionOptions(config));
+			client.connect(getConnectionOptions(config)).waitForCompletion();
 			return true;
 		} catch (MqttException e) {
 			return onException.apply(e);
@@ -138,21 +165,28 @@ public class PahoV3Client implements GeckoMqttClient {
 
 	@Override
 	public void subscribe(String topic, int qos, MqttPushEventSource source) {
-		try {
-			client.subscribe(topic, qos, (topic1, message) -> {
-				if (!source.isConnected()) {
-					source.close();
-				} else {
-					try {
-						Message msg = fromPahoMessage(message, topic1);
-						source.publish(msg);
-					} catch (Exception e) {
-						source.error(e);
-						logger.log(Level.SEVERE, e, () -> "Fatal error while publish to push event source in connetion "
-								+ client.getClientId() + ".");
-					}
+		IMqttMessageListener listener = (topic1, message) -> {
+			if (!source.isConnected()) {
+				source.close();
+			} else {
+				try {
+					Message msg = fromPahoMessage(message, topic1);
+					source.publish(msg);
+				} catch (Exception e) {
+					source.error(e);
+					logger.log(Level.SEVERE, e, () -> "Fatal error while publish to push event source in connetion "
+							+ client.getClientId() + ".");
 				}
-			});
+			}
+		};
+		try {
+			if (SharedSubscriptions.isShared(topic)) {
+				// the messages of the shared subscription are delivered by the callback
+				sharedListeners.put(topic, listener);
+				client.subscribe(topic, qos).waitForCompletion();
+			} else {
+				client.subscribe(topic, qos, listener).waitForCompletion();
+			}
 		} catch (MqttException e) {
 			logger.log(Level.SEVERE, e,
 					() -> "Fatal error trying to subscribe to \"" + topic + "\" MQTT broker while reconnect.");
@@ -160,12 +194,44 @@ public class PahoV3Client implements GeckoMqttClient {
 
 	}
 
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.adapter.mqtt.common.GeckoMqttClient#unsubscribe(java.lang.String)
+	 */
+	@Override
+	public void unsubscribe(String topic) {
+		sharedListeners.remove(topic);
+		if (!client.isConnected()) {
+			// the broker drops the subscriptions of a clean session
+			return;
+		}
+		try {
+			client.unsubscribe(topic).waitForCompletion();
+		} catch (MqttException e) {
+			logger.log(Level.WARNING, e, () -> "Cannot unsubscribe from \"" + topic + "\" in connection " + client.getClientId() + ".");
+		}
+	}
+
 	@Override
 	public void connectionLost(Consumer<Throwable> consumer) {
-		client.setCallback(new MqttCallback() {
+		client.setCallback(createCallback(consumer));
+	}
+
+	/**
+	 * Creates the callback of the client, that delivers the messages of the shared subscriptions
+	 * @param consumer notified about connection losses, can be <code>null</code>
+	 * @return the callback
+	 */
+	private MqttCallback createCallback(Consumer<Throwable> consumer) {
+		return new MqttCallback() {
 
 			@Override
 			public void messageArrived(String topic, MqttMessage message) throws Exception {
+				for (Map.Entry<String, IMqttMessageListener> entry : sharedListeners.entrySet()) {
+					if (MqttTopic.isMatched(SharedSubscriptions.getTopicFilter(entry.getKey()), topic)) {
+						entry.getValue().messageArrived(topic, message);
+					}
+				}
 			}
 
 			@Override
@@ -175,14 +241,107 @@ public class PahoV3Client implements GeckoMqttClient {
 
 			@Override
 			public void connectionLost(Throwable cause) {
-				consumer.accept(cause);
+				if (consumer != null) {
+					consumer.accept(cause);
+				}
 			}
-		});
+		};
 	}
 
 	@Override
 	public void publish(String topic, byte[] content, int qos, boolean retained) throws Exception {
-		client.publish(topic, content, qos, retained);
+		// queued behind the pending asynchronous publishes, so that it does not overtake them
+		Throwable failure = enqueue(topic, content, qos, retained).getFailure();
+		if (failure instanceof Exception) {
+			throw (Exception) failure;
+		} else if (failure != null) {
+			throw new MqttException(failure);
+		}
+	}
+
+	@Override
+	public Promise<Void> publishAsync(String topic, byte[] content, int qos, boolean retained) {
+		return enqueue(topic, content, qos, retained);
+	}
+
+	@Override
+	public void publishBatch(String topic, List<byte[]> contents, int qos, boolean retained) throws Exception {
+		// the publishes are pipelined up to the inflight window, the rest waits in the queue
+		List<Promise<Void>> delivered = new ArrayList<>(contents.size());
+		for (byte[] content : contents) {
+			delivered.add(enqueue(topic, content, qos, retained));
+		}
+		Throwable failure = null;
+		List<byte[]> unsent = new ArrayList<>();
+		for (int i = 0; i < contents.size(); i++) {
+			Throwable t = delivered.get(i).getFailure();
+			if (t != null) {
+				unsent.add(contents.get(i));
+				failure = failure == null ? t : failure;
+			}
+		}
+		if (failure != null) {
+			throw new BatchPublishException(failure, unsent);
+		}
+	}
+
+	/**
+	 * Queues a publish, until a slot of the inflight window is free. All publishes go through the queue,
+	 * so that they are sent in the order of the calls, whether the caller waits for the delivery or not.
+	 * @return the promise, that resolves, when the delivery is complete
+	 */
+	private Promise<Void> enqueue(String topic, byte[] content, int qos, boolean retained) {
+		Deferred<Void> deferred = new Deferred<>();
+		queued.add(() -> {
+			try {
+				publishInSlot(topic, content, qos, retained, deferred);
+			} catch (MqttException | RuntimeException e) {
+				deferred.fail(e);
+			}
+		});
+		publishQueued();
+		return deferred.getPromise();
+	}
+
+	/**
+	 * Publishes with a slot of the inflight window, that the caller has taken. The slot is freed, when the delivery 
+	 * completes or fails, and given to the next queued publish.
+	 * @param deferred resolved with the delivery
+	 */
+	private void publishInSlot(String topic, byte[] content, int qos, boolean retained, Deferred<Void> deferred) throws MqttException {
+		try {
+			client.publish(topic, content, qos, retained, null, new IMqttActionListener() {
+
+				@Override
+				public void onSuccess(IMqttToken asyncActionToken) {
+					inflight.release();
+					publishQueued();
+					deferred.resolve(null);
+				}
+
+				@Override
+				public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+					inflight.release();
+					publishQueued();
+					deferred.fail(exception);
+				}
+			});
+		} catch (MqttException | RuntimeException e) {
+			inflight.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Publishes the queued publishes in their order, while slots of the inflight window are free. One thread
+	 * at a time takes and sends the publishes, so that two threads cannot swap the order of two publishes.
+	 */
+	private void publishQueued() {
+		synchronized (queued) {
+			while (!queued.isEmpty() && inflight.tryAcquire()) {
+				queued.poll().run();
+			}
+		}
 	}
 
 	@Override
@@ -190,10 +349,9 @@ public class PahoV3Client implements GeckoMqttClient {
 		return client.getClientId();
 	}
 
-	private static Message fromPahoMessage(MqttMessage msg, String topic) {
+	private Message fromPahoMessage(MqttMessage msg, String topic) {
+		MessagingContext context = MQTTContext.shared(QoS.values()[msg.getQos()], msg.isRetained());
 		ByteBuffer content = ByteBuffer.wrap(msg.getPayload());
-		MessagingContext context = new MQTTContextBuilder().setRetained(msg.isRetained())
-				.withQoS(QoS.values()[msg.getQos()]).build();
 		return new SimpleMessage(topic, content, context);
 	}
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.messaging.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.MessagingContext;
+import org.gecko.osgi.messaging.MessagingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.util.pushstream.PushStream;
+
+/**
+ * The publish/subscribe suite, that runs against every adapter. The adapters only provide the
+ * {@link MessagingService} and the contexts.
+ * <ul>
+ * <li><code>publish</code> measures the publish throughput, without waiting for the delivery</li>
+ * <li><code>fanOut</code> publishes one message and waits, until every subscriber received it</li>
+ * <li><code>endToEnd</code> samples the time from the publish until the first subscriber received the message</li>
+ * </ul>
+ * Allocation is reported with the <code>gc</code> profiler, which is enabled by default in the bench.bndrun.
+ * @author agent
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public abstract class AbstractMessagingBenchmark {
+
+	private static final long DELIVERY_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	@Param({"64", "1024", "16384"})
+	public int payloadSize;
+
+	@Param({"1", "4"})
+	public int subscribers;
+
+	private final AtomicLong delivered = new AtomicLong();
+	private final List<PushStream<Message>> streams = new ArrayList<>();
+	private MessagingService service;
+	private String topic;
+	private ByteBuffer payload;
+	private long published;
+
+	/**
+	 * Returns the messaging service of the adapter under test. Brokers and configurations are created here.
+	 * @return the messaging service
+	 * @throws Exception thrown on setup errors
+	 */
+	protected abstract MessagingService createService() throws Exception;
+
+	/**
+	 * Releases the messaging service and everything created in {@link #createService()}
+	 * @throws Exception thrown on tear down errors
+	 */
+	protected abstract void releaseService() throws Exception;
+
+	/**
+	 * Returns the context for the subscriptions, <code>null</code> for the adapter default
+	 * @return the subscribe context or <code>null</code>
+	 */
+	protected MessagingContext getSubscribeContext() {
+		return null;
+	}
+
+	/**
+	 * Returns the context for the publish, <code>null</code> for the adapter default
+	 * @return the publish context or <code>null</code>
+	 */
+	protected MessagingContext getPublishContext() {
+		return null;
+	}
+
+	/**
+	 * Creates the topic for one trial. It must be valid for the adapter.
+	 * @return the topic
+	 */
+	protected String createTopic() {
+		return "bench/" + UUID.randomUUID();
+	}
+
+	@Setup(Level.Trial)
+	public void setupTrial() throws Exception {
+		service = createService();
+		topic = createTopic();
+		byte[] bytes = new byte[payloadSize];
+		ThreadLocalRandom.current().nextBytes(bytes);
+		payload = ByteBuffer.wrap(bytes);
+		MessagingContext context = getSubscribeContext();
+		for (int i = 0; i < subscribers; i++) {
+			PushStream<Message> stream = context == null ? service.subscribe(topic) : service.subscribe(topic, context);
+			stream.forEach(m -> {
+				delivered.incrementAndGet();
+				m.release();
+			});
+			streams.add(stream);
+		}
+		// the subscriptions of the brokers are established asynchronously
+		awaitWarmDelivery();
+	}
+
+	@TearDown(Level.Iteration)
+	public void drainIteration() throws Exception {
+		// publish does not wait for the delivery, do not let the backlog leak into the next iteration
+		awaitDelivered(published * subscribers);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDownTrial() throws Exception {
+		streams.forEach(PushStream::close);
+		streams.clear();
+		releaseService();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public void publish() throws Exception {
+		doPublish();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public void fanOut() throws Exception {
+		doPublish();
+		awaitDelivered(published * subscribers);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void endToEnd() throws Exception {
+		long before = delivered.get();
+		doPublish();
+		awaitDelivered(before + 1);
+		// the other subscribers must not count for the next sample
+		awaitDelivered(published * subscribers);
+	}
+
+	private void doPublish() throws Exception {
+		MessagingContext context = getPublishContext();
+		if (context == null) {
+			service.publish(topic, payload);
+		} else {
+			service.publish(topic, payload, context);
+		}
+		published++;
+	}
+
+	/**
+	 * Publishes messages, until the subscriptions deliver. Then the counters are reset.
+	 * @throws Exception thrown, if the subscriptions do not deliver in time
+	 */
+	private void awaitWarmDelivery() throws Exception {
+		long deadline = System.nanoTime() + DELIVERY_TIMEOUT_NANOS;
+		while (delivered.get() < subscribers) {
+			if (System.nanoTime() > deadline) {
+				throw new IllegalStateException("The subscriptions on " + topic + " did not deliver within the timeout");
+			}
+			doPublish();
+			Thread.sleep(10);
+		}
+		Thread.sleep(500);
+		delivered.set(0);
+		published = 0;
+	}
+
+	private void awaitDelivered(long expected) {
+		long deadline = System.nanoTime() + DELIVERY_TIMEOUT_NANOS;
+		while (delivered.get() < expected) {
+			if (System.nanoTime() > deadline) {
+				throw new IllegalStateException("Only " + delivered.get() + " of " + expected + " messages were delivered on " + topic);
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+}
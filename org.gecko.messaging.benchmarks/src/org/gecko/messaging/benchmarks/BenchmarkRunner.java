@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.messaging.benchmarks;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+
+/**
+ * Runs the JMH benchmarks, when the framework of the bench.bndrun has started. The JMH command line is
+ * taken from the <code>bench.jmh.args</code> framework property. The benchmarks run in the framework process,
+ * so forking is always disabled. When <code>bench.exit</code> is set, the framework is stopped afterwards.
+ * @author agent
+ * @since 1.0.0
+ */
+@Component(service = {}, immediate = true)
+public class BenchmarkRunner {
+
+	public static final String PROP_JMH_ARGS = "bench.jmh.args";
+	public static final String PROP_EXIT = "bench.exit";
+
+	private static final Logger logger = Logger.getLogger(BenchmarkRunner.class.getName());
+
+	@Activate
+	public void activate(BundleContext context) {
+		Thread runner = new Thread(() -> runBenchmarks(context), "jmh-runner");
+		runner.start();
+	}
+
+	private void runBenchmarks(BundleContext context) {
+		String args = context.getProperty(PROP_JMH_ARGS);
+		try {
+			CommandLineOptions commandLine = new CommandLineOptions(args == null || args.isBlank() ? new String[0] : args.trim().split("\\s+"));
+			Options options = new OptionsBuilder()
+					.parent(commandLine)
+					.forks(0)
+					.build();
+			new Runner(options).run();
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, e, () -> "Error running the benchmarks with arguments: " + args);
+		} finally {
+			if (Boolean.parseBoolean(context.getProperty(PROP_EXIT))) {
+				try {
+					context.getBundle(0).stop();
+				} catch (Exception e) {
+					logger.log(Level.SEVERE, "Error stopping the framework after the benchmarks", e);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.messaging.benchmarks;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * Access to the framework for the benchmark states. JMH creates the states itself, so they cannot
+ * get services injected and look them up here instead.
+ * @author agent
+ * @since 1.0.0
+ */
+public final class BenchmarkSupport {
+
+	static final long SERVICE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+	private BenchmarkSupport() {
+	}
+
+	/**
+	 * Returns the context of the benchmark bundle
+	 * @return the bundle context
+	 */
+	public static BundleContext getBundleContext() {
+		Bundle bundle = FrameworkUtil.getBundle(BenchmarkSupport.class);
+		if (bundle == null || bundle.getBundleContext() == null) {
+			throw new IllegalStateException("The benchmarks have to run inside the OSGi framework, use the bench.bndrun");
+		}
+		return bundle.getBundleContext();
+	}
+
+	/**
+	 * Returns a framework property
+	 * @param key the property key
+	 * @param defaultValue the value, if the property is not set
+	 * @return the property value
+	 */
+	public static String getProperty(String key, String defaultValue) {
+		String value = getBundleContext().getProperty(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Creates a factory configuration
+	 * @param factoryPid the factory pid
+	 * @param properties the configuration properties
+	 * @return the configuration, to delete it on tear down
+	 * @throws Exception thrown on errors creating the configuration
+	 */
+	public static Configuration createFactoryConfiguration(String factoryPid, Map<String, Object> properties) throws Exception {
+		ConfigurationAdmin configAdmin = waitForService(ConfigurationAdmin.class, null, null);
+		Configuration configuration = configAdmin.createFactoryConfiguration(factoryPid, "?");
+		Dictionary<String, Object> dictionary = new Hashtable<>(properties);
+		configuration.update(dictionary);
+		return configuration;
+	}
+
+	/**
+	 * Deletes the configuration, if it exists
+	 * @param configuration the configuration, can be <code>null</code>
+	 * @throws Exception thrown on errors deleting the configuration
+	 */
+	public static void deleteConfiguration(Configuration configuration) throws Exception {
+		if (configuration != null) {
+			configuration.delete();
+		}
+	}
+
+	/**
+	 * Waits for a service
+	 * @param <T> the service type
+	 * @param type the service type
+	 * @param filter an additional LDAP filter, can be <code>null</code>
+	 * @param bundleSymbolicName the bundle, that must have registered the service, can be <code>null</code>
+	 * @return the service
+	 * @throws Exception thrown, if the service did not show up in time
+	 */
+	public static <T> T waitForService(Class<T> type, String filter, String bundleSymbolicName) throws Exception {
+		BundleContext context = getBundleContext();
+		long deadline = System.currentTimeMillis() + SERVICE_TIMEOUT_MS;
+		ServiceTracker<T, T> tracker = new ServiceTracker<>(context, createFilter(context, type, filter), null);
+		tracker.open();
+		try {
+			while (System.currentTimeMillis() < deadline) {
+				ServiceReference<T>[] references = tracker.getServiceReferences();
+				if (references != null) {
+					for (ServiceReference<T> reference : references) {
+						if (bundleSymbolicName == null || bundleSymbolicName.equals(reference.getBundle().getSymbolicName())) {
+							return context.getService(reference);
+						}
+					}
+				}
+				tracker.waitForService(100);
+				Thread.sleep(50);
+			}
+		} finally {
+			tracker.close();
+		}
+		throw new IllegalStateException("No " + type.getName() + " service " + (filter == null ? "" : filter) + " showed up within " + SERVICE_TIMEOUT_MS + "ms");
+	}
+
+	private static Filter createFilter(BundleContext context, Class<?> type, String filter) throws InvalidSyntaxException {
+		String objectClass = "(objectClass=" + type.getName() + ")";
+		return context.createFilter(filter == null ? objectClass : "(&" + objectClass + filter + ")");
+	}
+
+}
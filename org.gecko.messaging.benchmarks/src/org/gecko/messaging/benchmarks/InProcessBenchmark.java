@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.messaging.benchmarks;
+
+import org.gecko.osgi.messaging.MessagingService;
+
+/**
+ * Runs the suite against the broker-less in-process ring buffer adapter. It is the baseline,
+ * that shows the cost of the messaging API and the push streams without any transport.
+ * @author agent
+ * @since 1.0.0
+ */
+public class InProcessBenchmark extends AbstractMessagingBenchmark {
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.messaging.benchmarks.AbstractMessagingBenchmark#createService()
+	 */
+	@Override
+	protected MessagingService createService() throws Exception {
+		return BenchmarkSupport.waitForService(MessagingService.class, "(component.name=InProcessMessagingService)", null);
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.messaging.benchmarks.AbstractMessagingBenchmark#releaseService()
+	 */
+	@Override
+	protected void releaseService() throws Exception {
+		// the service has no required configuration
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.messaging.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.gecko.adapter.mqtt.MQTTContextBuilder;
+import org.gecko.adapter.mqtt.QoS;
+import org.gecko.moquette.broker.MQTTBroker;
+import org.gecko.osgi.messaging.MessagingConstants;
+import org.gecko.osgi.messaging.MessagingContext;
+import org.gecko.osgi.messaging.MessagingService;
+import org.openjdk.jmh.annotations.Param;
+import org.osgi.service.cm.Configuration;
+
+/**
+ * Runs the suite against the <code>MQTTService</code> of the MQTT v3 and v5 adapters and the
+ * embedded Moquette broker. Both adapters use the same factory pid, the service is picked by its bundle.
+ * @author agent
+ * @since 1.0.0
+ */
+public class MqttBenchmark extends AbstractMessagingBenchmark {
+
+	@Param({"v3", "v5"})
+	public String mqttVersion;
+
+	@Param({"AT_LEAST_ONE"})
+	public QoS qos;
+
+	/** <code>true</code> decodes the inbound payloads into buffers of the pool instead of byte arrays, only the v5 client supports it */
+	@Param({"false", "true"})
+	public boolean pooledPayload;
+
+	private Configuration brokerConfig;
+	private Configuration serviceConfig;
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.messaging.benchmarks.AbstractMessagingBenchmark#createService()
+	 */
+	@Override
+	protected MessagingService createService() throws Exception {
+		String port = BenchmarkSupport.getProperty("bench.mqtt.port", "2183");
+		Map<String, Object> brokerProperties = new HashMap<>();
+		brokerProperties.put(MQTTBroker.HOST, "localhost");
+		brokerProperties.put(MQTTBroker.PORT, port);
+		brokerConfig = BenchmarkSupport.createFactoryConfiguration("MQTTBroker", brokerProperties);
+		BenchmarkSupport.waitForService(MQTTBroker.class, null, null);
+
+		Map<String, Object> serviceProperties = new HashMap<>();
+		serviceProperties.put(MessagingConstants.PROP_BROKER, "tcp://localhost:" + port);
+		serviceProperties.put("pooledPayload", Boolean.valueOf(pooledPayload));
+		serviceConfig = BenchmarkSupport.createFactoryConfiguration("MQTTService", serviceProperties);
+		String bundle = "v5".equals(mqttVersion) ? "org.gecko.adapter.mqtt.v5" : "org.gecko.adapter.mqtt";
+		return BenchmarkSupport.waitForService(MessagingService.class, "(component.name=MQTTService)", bundle);
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.messaging.benchmarks.AbstractMessagingBenchmark#releaseService()
+	 */
+	@Override
+	protected void releaseService() throws Exception {
+		BenchmarkSupport.deleteConfiguration(serviceConfig);
+		BenchmarkSupport.deleteConfiguration(brokerConfig);
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.messaging.benchmarks.AbstractMessagingBenchmark#getSubscribeContext()
+	 */
+	@Override
+	protected MessagingContext getSubscribeContext() {
+		return new MQTTContextBuilder().withQoS(qos).build();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.messaging.benchmarks.AbstractMessagingBenchmark#getPublishContext()
+	 */
+	@Override
+	protected MessagingContext getPublishContext() {
+		// QoS 0 may drop messages under load, which would stall the delivery based benchmarks
+		return new MQTTContextBuilder().withQoS(qos).build();
+	}
+
+}
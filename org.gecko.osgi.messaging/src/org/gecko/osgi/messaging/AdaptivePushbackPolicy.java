@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushbackPolicy;
+
+/**
+ * Pushback policy, that computes the delay from the observed consumer, like an AIMD controller.
+ * <p>
+ * The policy is asked for every event, that is buffered. From the buffer size between two calls it derives how many
+ * events the consumer took in the meantime, which gives the consumer processing time, and how fast the buffer fills.
+ * While the buffer is above the high watermark, or fills above the low watermark, the delay grows additively by one
+ * processing time, so that the producer slows down to the pace of the consumer. When the buffer falls below the low
+ * watermark, the delay is halved. Light load therefore gets no pushback, bursts get a pushback, that follows the consumer.
+ * <p>
+ * An instance keeps the observations of one stream. The adapters use a {@link #copy()} for every stream, when the
+ * policy is given in the {@link MessagingContext}. Unbounded buffers never fill, so they are never pushed back.
+ * @author agent
+ * @since 3.2.1
+ */
+public class AdaptivePushbackPolicy implements PushbackPolicy<Message, BlockingQueue<PushEvent<? extends Message>>> {
+
+	public static final long DEFAULT_MAX_DELAY = 1000L;
+	public static final double DEFAULT_LOW_WATERMARK = 0.25;
+	public static final double DEFAULT_HIGH_WATERMARK = 0.75;
+
+	private static final long MIN_STEP = TimeUnit.MILLISECONDS.toNanos(1);
+	// weight of a new observation in the moving averages
+	private static final double ALPHA = 0.2;
+
+	private final long maxDelay;
+	private final double lowWatermark;
+	private final double highWatermark;
+	private long delay = 0L;
+	private long lastTime = 0L;
+	private int lastSize = 0;
+	private double processingTime = 0.0;
+	private double fillRate = 0.0;
+
+	/**
+	 * Creates a new instance with a maximum delay of one second and watermarks at 25% and 75% of the buffer.
+	 */
+	public AdaptivePushbackPolicy() {
+		this(DEFAULT_MAX_DELAY, DEFAULT_LOW_WATERMARK, DEFAULT_HIGH_WATERMARK);
+	}
+
+	/**
+	 * Creates a new instance.
+	 * @param maxDelay the maximum delay in milliseconds
+	 * @param lowWatermark the buffer fill ratio, below which the delay is reduced
+	 * @param highWatermark the buffer fill ratio, above which the delay is always increased
+	 */
+	public AdaptivePushbackPolicy(long maxDelay, double lowWatermark, double highWatermark) {
+		if (maxDelay < 1) {
+			throw new IllegalArgumentException("The maximum delay must be positive");
+		}
+		if (lowWatermark < 0.0 || lowWatermark >= highWatermark || highWatermark > 1.0) {
+			throw new IllegalArgumentException("The watermarks must satisfy 0 <= low < high <= 1");
+		}
+		this.maxDelay = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+	}
+
+	/**
+	 * Returns a new policy with the same settings, but without observations
+	 * @return the new policy
+	 */
+	public AdaptivePushbackPolicy copy() {
+		return new AdaptivePushbackPolicy(TimeUnit.NANOSECONDS.toMillis(maxDelay), lowWatermark, highWatermark);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.osgi.util.pushstream.PushbackPolicy#pushback(java.util.concurrent.BlockingQueue)
+	 */
+	@Override
+	public long pushback(BlockingQueue<PushEvent<? extends Message>> queue) throws Exception {
+		int size = queue.size();
+		long capacity = (long) size + queue.remainingCapacity();
+		return TimeUnit.NANOSECONDS.toMillis(update(size, capacity, System.nanoTime()));
+	}
+
+	/**
+	 * Returns the current delay
+	 * @return the delay in milliseconds
+	 */
+	public synchronized long getDelay() {
+		return TimeUnit.NANOSECONDS.toMillis(delay);
+	}
+
+	/**
+	 * Returns the observed time, the consumer needs for one event
+	 * @return the processing time in nanoseconds
+	 */
+	public synchronized long getProcessingTime() {
+		return (long) processingTime;
+	}
+
+	/**
+	 * Returns the observed rate, the buffer fills with. Negative values mean, that the buffer drains.
+	 * @return the events per second
+	 */
+	public synchronized double getFillRate() {
+		return fillRate;
+	}
+
+	/**
+	 * Observes the buffer and adapts the delay
+	 * @param size the number of buffered events
+	 * @param capacity the capacity of the buffer
+	 * @param now the current time in nanoseconds
+	 * @return the delay in nanoseconds
+	 */
+	synchronized long update(int size, long capacity, long now) {
+		if (lastTime != 0L && now > lastTime) {
+			long elapsed = now - lastTime;
+			// the previous call was followed by one buffered event
+			int consumed = lastSize + 1 - size;
+			if (consumed > 0 && lastSize > 0) {
+				processingTime = average(processingTime, (double) elapsed / consumed);
+			}
+			fillRate = average(fillRate, (size - lastSize) * 1e9 / elapsed);
+		}
+		double fill = capacity <= 0 ? 0.0 : (double) size / capacity;
+		if (fill >= highWatermark || (fill > lowWatermark && size > lastSize)) {
+			delay = Math.min(maxDelay, delay + Math.max(MIN_STEP, (long) processingTime));
+		} else if (fill <= lowWatermark) {
+			delay = delay / 2;
+		}
+		lastTime = now;
+		lastSize = size;
+		return delay;
+	}
+
+	private static double average(double average, double value) {
+		return average == 0.0 ? value : average + ALPHA * (value - average);
+	}
+
+}
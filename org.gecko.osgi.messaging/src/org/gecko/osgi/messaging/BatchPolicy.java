@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+/**
+ * Limits of the batches of a batched subscription. A batch is emitted, when it reached the maximum number of messages
+ * or the maximum payload size, or when the maximum delay passed since its first message arrived, whatever comes first.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class BatchPolicy {
+
+	private final int maxCount;
+	private final long maxBytes;
+	private final long maxDelay;
+
+	private BatchPolicy(int maxCount, long maxBytes, long maxDelay) {
+		this.maxCount = maxCount;
+		this.maxBytes = maxBytes;
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * Creates a new policy
+	 * @param maxCount the maximum number of messages in a batch
+	 * @param maxBytes the maximum payload size of a batch in bytes, <code>0</code> for no limit
+	 * @param maxDelay the maximum time in milliseconds, the first message of a batch waits for the batch to be emitted
+	 * @return the policy
+	 */
+	public static BatchPolicy of(int maxCount, long maxBytes, long maxDelay) {
+		if (maxCount < 1) {
+			throw new IllegalArgumentException("The maximum number of messages must be positive");
+		}
+		if (maxBytes < 0 || maxDelay < 1) {
+			throw new IllegalArgumentException("The maximum size must not be negative and the maximum delay must be positive");
+		}
+		return new BatchPolicy(maxCount, maxBytes, maxDelay);
+	}
+
+	/**
+	 * Returns the maximum number of messages in a batch
+	 * @return the maximum number of messages
+	 */
+	public int getMaxCount() {
+		return maxCount;
+	}
+
+	/**
+	 * Returns the maximum payload size of a batch
+	 * @return the maximum size in bytes, <code>0</code> for no limit
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Returns the maximum time, the first message of a batch waits
+	 * @return the maximum delay in milliseconds
+	 */
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "BatchPolicy [maxCount=" + maxCount + ", maxBytes=" + maxBytes + ", maxDelay=" + maxDelay + "]";
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Size-classed pool of heap {@link ByteBuffer}s for inbound payloads. Buffers are grouped in power of two
+ * size classes from {@value #MIN_BUFFER_SIZE} bytes up to the maximum buffer size. Requests larger than
+ * the maximum are served with unpooled buffers. Each size class keeps a bounded number of free buffers, 
+ * so the pool never holds more memory than <code>maxBufferSize * 2 * buffersPerClass</code>.
+ * <p>
+ * A buffer, that is leased but never released, is not leaked, it is simply collected by the garbage collector.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class ByteBufferPool {
+
+	/** The smallest size class */
+	public static final int MIN_BUFFER_SIZE = 64;
+	/** The default largest size class */
+	public static final int DEFAULT_MAX_BUFFER_SIZE = 64 * 1024;
+	/** The default number of free buffers per size class */
+	public static final int DEFAULT_BUFFERS_PER_CLASS = 256;
+
+	private static final ByteBufferPool DEFAULT = new ByteBufferPool(DEFAULT_MAX_BUFFER_SIZE, DEFAULT_BUFFERS_PER_CLASS);
+
+	private final List<Queue<ByteBuffer>> freeBuffers;
+	private final int maxBufferSize;
+
+	/**
+	 * Creates a new instance.
+	 * @param maxBufferSize the largest pooled buffer size, is rounded up to the next power of two
+	 * @param buffersPerClass the maximum number of free buffers per size class
+	 */
+	public ByteBufferPool(int maxBufferSize, int buffersPerClass) {
+		if (maxBufferSize < MIN_BUFFER_SIZE || buffersPerClass < 1) {
+			throw new IllegalArgumentException("The maximum buffer size must be at least " + MIN_BUFFER_SIZE + " and the buffers per class at least 1");
+		}
+		int classes = sizeClass(maxBufferSize) + 1;
+		this.maxBufferSize = MIN_BUFFER_SIZE << (classes - 1);
+		this.freeBuffers = new ArrayList<>(classes);
+		for (int i = 0; i < classes; i++) {
+			freeBuffers.add(new ArrayBlockingQueue<>(buffersPerClass));
+		}
+	}
+
+	/**
+	 * Returns the default pool instance, that is shared by all adapters
+	 * @return the default pool instance
+	 */
+	public static ByteBufferPool getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Leases a buffer with at least the given capacity. The limit of the returned buffer is set to the size.
+	 * @param size the requested size in bytes
+	 * @return the leased buffer, never <code>null</code>
+	 */
+	public PooledByteBuffer acquire(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("The buffer size must not be negative");
+		}
+		if (size > maxBufferSize) {
+			return new PooledByteBuffer(null, -1, ByteBuffer.allocate(size));
+		}
+		int sizeClass = sizeClass(size);
+		ByteBuffer buffer = freeBuffers.get(sizeClass).poll();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocate(MIN_BUFFER_SIZE << sizeClass);
+		}
+		buffer.limit(size);
+		return new PooledByteBuffer(this, sizeClass, buffer);
+	}
+
+	/**
+	 * Leases a buffer and copies the given data into it. The buffer is ready to be read.
+	 * @param data the data to copy
+	 * @return the leased buffer, never <code>null</code>
+	 */
+	public PooledByteBuffer copyOf(byte[] data) {
+		PooledByteBuffer pooled = acquire(data.length);
+		pooled.buffer().put(data).flip();
+		return pooled;
+	}
+
+	/**
+	 * Returns the number of free buffers in the pool
+	 * @return the number of free buffers
+	 */
+	public int getFreeCount() {
+		int count = 0;
+		for (Queue<ByteBuffer> queue : freeBuffers) {
+			count += queue.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Gives a buffer back to its size class. If the size class is full, the buffer is dropped.
+	 * @param sizeClass the size class index
+	 * @param buffer the buffer
+	 */
+	void recycle(int sizeClass, ByteBuffer buffer) {
+		buffer.clear();
+		freeBuffers.get(sizeClass).offer(buffer);
+	}
+
+	/**
+	 * Returns the index of the smallest size class, that fits the given size
+	 * @param size the size
+	 * @return the size class index
+	 */
+	static int sizeClass(int size) {
+		if (size <= MIN_BUFFER_SIZE) {
+			return 0;
+		}
+		return (32 - Integer.numberOfLeadingZeros(size - 1)) - 6;
+	}
+
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushStreamBuilder;
+
+/**
+ * Stream buffer, that keeps only the newest message per key. A newer message replaces an older one with the same key,
+ * that was not taken yet, and keeps its place in the delivery order. The replaced message is marked as consumed,
+ * so that the adapter returns its credit or acknowledges it, see {@link Message#consumed()}, and is released.
+ * The capacity is the number of distinct keys, so that the memory does not grow with the message rate.
+ * When all keys are taken, messages with a new key are handled by the queue and pushback policies of the stream.
+ * Close and error events and messages without a key are never conflated.
+ * @author agent
+ * @since 3.2.1
+ */
+public class ConflatingBlockingQueue extends AbstractQueue<PushEvent<? extends Message>> implements BlockingQueue<PushEvent<? extends Message>> {
+
+	public static final int DEFAULT_MAX_KEYS = 1024;
+
+	// the insertion order of the map is the delivery order
+	private final Map<Object, PushEvent<? extends Message>> entries = new LinkedHashMap<>();
+	private final Function<Message, ?> keyExtractor;
+	private final int maxKeys;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final LongAdder conflated = new LongAdder();
+
+	/**
+	 * Creates a new instance.
+	 * @param keyExtractor the function, that extracts the key of a message
+	 * @param maxKeys the maximum number of distinct keys
+	 */
+	public ConflatingBlockingQueue(Function<Message, ?> keyExtractor, int maxKeys) {
+		if (maxKeys < 1) {
+			throw new IllegalArgumentException("The maximum number of keys must be positive");
+		}
+		this.keyExtractor = keyExtractor;
+		this.maxKeys = maxKeys;
+	}
+
+	/**
+	 * Uses a conflating buffer for the stream, if the context requests it
+	 * @param builder the stream builder
+	 * @param context the messaging context, can be <code>null</code>
+	 */
+	public static void configure(PushStreamBuilder<Message, BlockingQueue<PushEvent<? extends Message>>> builder, MessagingContext context) {
+		if (context == null || context.getConflationKey() == null) {
+			return;
+		}
+		int maxKeys = context.getConflationSize() > 0 ? context.getConflationSize() :
+			context.getBufferSize() > 0 ? context.getBufferSize() : DEFAULT_MAX_KEYS;
+		builder.withBuffer(new ConflatingBlockingQueue(context.getConflationKey(), maxKeys));
+	}
+
+	/**
+	 * Returns the number of messages, that were replaced by a newer message
+	 * @return the number of conflated messages
+	 */
+	public long getConflatedCount() {
+		return conflated.sum();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Queue#offer(java.lang.Object)
+	 */
+	@Override
+	public boolean offer(PushEvent<? extends Message> event) {
+		PushEvent<? extends Message> result;
+		lock.lock();
+		try {
+			result = insert(event);
+		} finally {
+			lock.unlock();
+		}
+		return inserted(event, result);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#offer(java.lang.Object, long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public boolean offer(PushEvent<? extends Message> event, long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		PushEvent<? extends Message> result;
+		lock.lockInterruptibly();
+		try {
+			while ((result = insert(event)) == null && nanos > 0L) {
+				nanos = notFull.awaitNanos(nanos);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return inserted(event, result);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#put(java.lang.Object)
+	 */
+	@Override
+	public void put(PushEvent<? extends Message> event) throws InterruptedException {
+		PushEvent<? extends Message> result;
+		lock.lockInterruptibly();
+		try {
+			while ((result = insert(event)) == null) {
+				notFull.await();
+			}
+		} finally {
+			lock.unlock();
+		}
+		inserted(event, result);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Queue#poll()
+	 */
+	@Override
+	public PushEvent<? extends Message> poll() {
+		lock.lock();
+		try {
+			return entries.isEmpty() ? null : removeFirst();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#poll(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public PushEvent<? extends Message> poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (entries.isEmpty()) {
+				if (nanos <= 0L) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return removeFirst();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#take()
+	 */
+	@Override
+	public PushEvent<? extends Message> take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (entries.isEmpty()) {
+				notEmpty.await();
+			}
+			return removeFirst();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Queue#peek()
+	 */
+	@Override
+	public PushEvent<? extends Message> peek() {
+		lock.lock();
+		try {
+			return entries.isEmpty() ? null : entries.values().iterator().next();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#remainingCapacity()
+	 */
+	@Override
+	public int remainingCapacity() {
+		lock.lock();
+		try {
+			return Math.max(0, maxKeys - entries.size());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection)
+	 */
+	@Override
+	public int drainTo(Collection<? super PushEvent<? extends Message>> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection, int)
+	 */
+	@Override
+	public int drainTo(Collection<? super PushEvent<? extends Message>> c, int maxElements) {
+		if (c == this) {
+			throw new IllegalArgumentException("Cannot drain a queue into itself");
+		}
+		lock.lock();
+		try {
+			int count = 0;
+			while (count < maxElements && !entries.isEmpty()) {
+				c.add(removeFirst());
+				count++;
+			}
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractCollection#iterator()
+	 */
+	@Override
+	public Iterator<PushEvent<? extends Message>> iterator() {
+		lock.lock();
+		try {
+			// a snapshot, the buffer is consumed by the stream only
+			return new ArrayList<>(entries.values()).iterator();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractQueue#clear()
+	 */
+	@Override
+	public void clear() {
+		List<PushEvent<? extends Message>> dropped;
+		lock.lock();
+		try {
+			dropped = new ArrayList<>(entries.values());
+			entries.clear();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		dropped.forEach(this::drop);
+	}
+
+	/**
+	 * Inserts or replaces the event, the lock must be held
+	 * @return the replaced event, the given event, if it was added, or <code>null</code>, if the event has a 
+	 * new key and all keys are taken
+	 */
+	private PushEvent<? extends Message> insert(PushEvent<? extends Message> event) {
+		Object key = getKey(event);
+		PushEvent<? extends Message> previous = entries.get(key);
+		if (previous != null) {
+			// the replacing message keeps the place of the replaced one
+			entries.put(key, event);
+			conflated.increment();
+			return previous;
+		}
+		if (entries.size() >= maxKeys) {
+			return null;
+		}
+		entries.put(key, event);
+		notEmpty.signal();
+		return event;
+	}
+
+	/**
+	 * Drops the replaced event outside of the lock, because its consumption can call the broker
+	 * @param event the inserted event
+	 * @param result the result of {@link #insert(PushEvent)}
+	 * @return <code>true</code>, if the event was inserted
+	 */
+	private boolean inserted(PushEvent<? extends Message> event, PushEvent<? extends Message> result) {
+		if (result == null) {
+			return false;
+		}
+		if (result != event) {
+			drop(result);
+		}
+		return true;
+	}
+
+	private void drop(PushEvent<? extends Message> event) {
+		if (!event.isTerminal()) {
+			event.getData().consumed();
+			event.getData().release();
+		}
+	}
+
+	private PushEvent<? extends Message> removeFirst() {
+		Iterator<PushEvent<? extends Message>> iterator = entries.values().iterator();
+		PushEvent<? extends Message> event = iterator.next();
+		iterator.remove();
+		notFull.signal();
+		return event;
+	}
+
+	private Object getKey(PushEvent<? extends Message> event) {
+		Object key = event.isTerminal() ? null : keyExtractor.apply(event.getData());
+		// a unique key is never replaced
+		return key == null ? new Object() : key;
+	}
+
+}
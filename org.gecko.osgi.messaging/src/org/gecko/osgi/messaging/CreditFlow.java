@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.util.pushstream.PushStream;
+
+/**
+ * Demand driven flow control between a push stream and the transport. Every message, that is received from the
+ * transport, takes a credit, that is returned, when the consumer takes the message from the buffer of the stream.
+ * If all credits are taken, the transport is paused and it is resumed, when half of the credits were returned.
+ * This way a slow consumer applies the backpressure up to the broker, instead of filling the heap.
+ * <p>
+ * The transports either pause and resume the delivery (e.g. cancel and re-consume) or acknowledge the messages,
+ * when they were consumed, so that the broker window is bound to the demand. A transport returns the credit of a
+ * message in its consumption callback, see {@link Message#consumed()} and {@link #tracking(PushStream)}. So every
+ * stream of a subscription can track the consumption and the first stream, that takes a message, returns its credit.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class CreditFlow {
+
+	private static final Logger logger = Logger.getLogger(CreditFlow.class.getName());
+
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final int credits;
+	private final int resumeThreshold;
+	private final Runnable pause;
+	private final Runnable resume;
+	private boolean paused = false;
+
+	/**
+	 * Creates a new instance.
+	 * @param credits the number of messages, that can be outstanding
+	 * @param pause the callback, that stops the delivery of the transport
+	 * @param resume the callback, that restarts the delivery of the transport
+	 */
+	public CreditFlow(int credits, Runnable pause, Runnable resume) {
+		if (credits < 1) {
+			throw new IllegalArgumentException("The number of credits must be positive");
+		}
+		this.credits = credits;
+		this.resumeThreshold = credits / 2;
+		this.pause = pause;
+		this.resume = resume;
+	}
+
+	/**
+	 * Returns the number of credits
+	 * @return the number of credits
+	 */
+	public int getCredits() {
+		return credits;
+	}
+
+	/**
+	 * Returns the number of messages, that were received, but not yet consumed
+	 * @return the number of outstanding messages
+	 */
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * Returns <code>true</code>, if the transport is currently paused
+	 * @return <code>true</code>, if the transport is paused
+	 */
+	public synchronized boolean isPaused() {
+		return paused;
+	}
+
+	/**
+	 * Takes a credit. Called by the transport for every received message, before it is published into the stream.
+	 */
+	public void received() {
+		if (outstanding.incrementAndGet() >= credits) {
+			update();
+		}
+	}
+
+	/**
+	 * Returns a credit. Called, when the message was taken from the buffer of the stream.
+	 */
+	public void consumed() {
+		if (outstanding.decrementAndGet() <= resumeThreshold) {
+			update();
+		}
+	}
+
+	/**
+	 * Returns all credits, e.g. after a reconnect, where the messages in flight are delivered again
+	 */
+	public void reset() {
+		outstanding.set(0);
+		update();
+	}
+
+	/**
+	 * Appends a stage, that marks every message as consumed, when the consumer takes it from the buffer, 
+	 * see {@link Message#consumed()}
+	 * @param stream the buffered stream
+	 * @return the tracking stream
+	 */
+	public static PushStream<Message> tracking(PushStream<Message> stream) {
+		return stream.map(message -> {
+			message.consumed();
+			return message;
+		});
+	}
+
+	/**
+	 * Appends a stage, that marks all messages of a batch as consumed, when the consumer takes the batch from the buffer
+	 * @param stream the buffered stream of batches
+	 * @return the tracking stream
+	 */
+	public static PushStream<List<Message>> trackingBatches(PushStream<List<Message>> stream) {
+		return stream.map(batch -> {
+			batch.forEach(Message::consumed);
+			return batch;
+		});
+	}
+
+	/**
+	 * Transitions are serialized, so that a resume never overtakes the pause, it belongs to
+	 */
+	private synchronized void update() {
+		int current = outstanding.get();
+		try {
+			if (!paused && current >= credits) {
+				paused = true;
+				logger.log(Level.FINE, () -> "Pausing the delivery with " + current + " outstanding messages");
+				if (pause != null) {
+					pause.run();
+				}
+			} else if (paused && current <= resumeThreshold) {
+				paused = false;
+				logger.log(Level.FINE, () -> "Resuming the delivery with " + current + " outstanding messages");
+				if (resume != null) {
+					resume.run();
+				}
+			}
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, e, () -> "Cannot change the delivery state of the transport");
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+import org.gecko.osgi.messaging.metrics.TopicMetrics;
+import org.osgi.util.pushstream.PushStream;
+
+/**
+ * Drops messages, that were delivered before, e.g. redeliveries after a reconnect or a requeue. The key of every
+ * message is hashed to 64 bit and looked up in a {@link DeduplicationCache}, that is created per stream. The stage
+ * runs after the buffer, so that the transport acknowledges and credits are handled for the duplicates as well.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class Deduplication {
+
+	public static final int DEFAULT_SIZE = 10000;
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private Deduplication() {
+	}
+
+	/**
+	 * Uses the message id, the transport delivered, like the AMQP message id or a MQTT v5 user property
+	 * @return the key extractor
+	 */
+	public static Function<Message, Object> byMessageId() {
+		return Message::getMessageId;
+	}
+
+	/**
+	 * Uses the correlation id of the message context
+	 * @return the key extractor
+	 */
+	public static Function<Message, Object> byCorrelationId() {
+		return m -> m.getContext() == null ? null : m.getContext().getCorrelationId();
+	}
+
+	/**
+	 * Uses a 64 bit hash of the payload
+	 * @return the key extractor
+	 */
+	public static Function<Message, Object> byPayloadHash() {
+		return m -> m.payload() == null ? null : Long.valueOf(hash(m.payload()));
+	}
+
+	/**
+	 * Uses the message id and falls back to the payload hash for messages without an id
+	 * @return the key extractor
+	 */
+	public static Function<Message, Object> byMessageIdOrPayloadHash() {
+		return m -> m.getMessageId() != null ? m.getMessageId() :
+			m.payload() == null ? null : Long.valueOf(hash(m.payload()));
+	}
+
+	/**
+	 * Appends the deduplication stage, if the context requests it. Dropped duplicates are released.
+	 * @param stream the buffered stream
+	 * @param context the messaging context, can be <code>null</code>
+	 * @param metrics the topic metrics for the hits and misses, can be <code>null</code>
+	 * @return the deduplicating stream or the given stream
+	 */
+	public static PushStream<Message> deduplicate(PushStream<Message> stream, MessagingContext context, TopicMetrics metrics) {
+		if (context == null || context.getDeduplicationKey() == null) {
+			return stream;
+		}
+		Function<Message, ?> keyExtractor = context.getDeduplicationKey();
+		int size = context.getDeduplicationSize() > 0 ? context.getDeduplicationSize() : DEFAULT_SIZE;
+		DeduplicationCache cache = new DeduplicationCache(size, context.getDeduplicationTtl());
+		return stream.filter(message -> {
+			Object key = keyExtractor.apply(message);
+			if (key == null) {
+				return true;
+			}
+			if (cache.add(toLong(key))) {
+				if (metrics != null) {
+					metrics.deduplicationMiss();
+				}
+				return true;
+			}
+			if (metrics != null) {
+				metrics.deduplicationHit();
+			}
+			message.release();
+			return false;
+		});
+	}
+
+	/**
+	 * Hashes a key to 64 bit. Numbers are used as they are, texts and byte arrays are hashed with FNV-1a,
+	 * other objects by their hash code.
+	 * @param key the key
+	 * @return the hash
+	 */
+	public static long toLong(Object key) {
+		if (key instanceof Long || key instanceof Integer) {
+			return ((Number) key).longValue();
+		}
+		if (key instanceof CharSequence) {
+			CharSequence text = (CharSequence) key;
+			long hash = FNV_OFFSET;
+			for (int i = 0; i < text.length(); i++) {
+				hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+			}
+			return hash;
+		}
+		if (key instanceof byte[]) {
+			return hash(ByteBuffer.wrap((byte[]) key));
+		}
+		if (key instanceof ByteBuffer) {
+			return hash((ByteBuffer) key);
+		}
+		return key.hashCode();
+	}
+
+	/**
+	 * Hashes the remaining bytes of the buffer with FNV-1a, without changing its position
+	 * @param buffer the buffer
+	 * @return the hash
+	 */
+	public static long hash(ByteBuffer buffer) {
+		long hash = FNV_OFFSET;
+		if (buffer.hasArray()) {
+			byte[] array = buffer.array();
+			int end = buffer.arrayOffset() + buffer.limit();
+			for (int i = buffer.arrayOffset() + buffer.position(); i < end; i++) {
+				hash = (hash ^ (array[i] & 0xff)) * FNV_PRIME;
+			}
+		} else {
+			for (int i = buffer.position(); i < buffer.limit(); i++) {
+				hash = (hash ^ (buffer.get(i) & 0xff)) * FNV_PRIME;
+			}
+		}
+		return hash;
+	}
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded set of 64 bit message keys, that remembers the keys seen recently. If the set is full, the oldest key is
+ * evicted, keys older than the time to live are evicted as well. The keys are kept in primitive arrays, an open
+ * addressing table and a ring in insertion order, so that the cache does not create objects per message and
+ * could be moved off heap as it is.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class DeduplicationCache {
+
+	// 0 marks a free slot, so the key 0 is stored as an unlikely substitute
+	private static final long FREE = 0L;
+	private static final long ZERO_KEY = 0x7fb5d329728ea185L;
+
+	private final long[] table;
+	private final int mask;
+	private final long[] ringKeys;
+	private final long[] ringTimes;
+	private final long ttl;
+	private int head = 0;
+	private int count = 0;
+
+	/**
+	 * Creates a new instance.
+	 * @param maxSize the maximum number of keys
+	 * @param ttl the time to live of a key in milliseconds, <code>0</code> to evict by size only
+	 */
+	public DeduplicationCache(int maxSize, long ttl) {
+		if (maxSize < 1 || maxSize > (1 << 29)) {
+			throw new IllegalArgumentException("The maximum size must be between 1 and 2^29");
+		}
+		// the table is at most half full, to keep the probe sequences short
+		int tableSize = Integer.highestOneBit(maxSize * 2 - 1) << 1;
+		this.table = new long[tableSize];
+		this.mask = tableSize - 1;
+		this.ringKeys = new long[maxSize];
+		this.ringTimes = new long[maxSize];
+		this.ttl = ttl > 0 ? TimeUnit.MILLISECONDS.toNanos(ttl) : 0L;
+	}
+
+	/**
+	 * Adds the key, if it was not seen before
+	 * @param key the key
+	 * @return <code>true</code>, if the key is new, <code>false</code>, if it is a duplicate
+	 */
+	public boolean add(long key) {
+		return add(key, System.nanoTime());
+	}
+
+	/**
+	 * Returns <code>true</code>, if the key was seen recently
+	 * @param key the key
+	 * @return <code>true</code>, if the key is in the cache
+	 */
+	public synchronized boolean contains(long key) {
+		evictExpired(System.nanoTime());
+		return table[find(normalize(key))] != FREE;
+	}
+
+	/**
+	 * Returns the number of keys in the cache
+	 * @return the number of keys
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * Removes all keys
+	 */
+	public synchronized void clear() {
+		Arrays.fill(table, FREE);
+		head = 0;
+		count = 0;
+	}
+
+	synchronized boolean add(long key, long now) {
+		evictExpired(now);
+		long k = normalize(key);
+		int slot = find(k);
+		if (table[slot] != FREE) {
+			return false;
+		}
+		if (count == ringKeys.length) {
+			evictOldest();
+			slot = find(k);
+		}
+		table[slot] = k;
+		int tail = (head + count) % ringKeys.length;
+		ringKeys[tail] = k;
+		ringTimes[tail] = now;
+		count++;
+		return true;
+	}
+
+	private void evictExpired(long now) {
+		if (ttl == 0L) {
+			return;
+		}
+		while (count > 0 && now - ringTimes[head] > ttl) {
+			evictOldest();
+		}
+	}
+
+	private void evictOldest() {
+		remove(ringKeys[head]);
+		head = (head + 1) % ringKeys.length;
+		count--;
+	}
+
+	/**
+	 * Returns the slot of the key or the free slot, where it belongs
+	 */
+	private int find(long key) {
+		int slot = slotOf(key);
+		while (table[slot] != FREE && table[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Removes the key and shifts the following keys of the probe sequence back, so that no tombstones are needed
+	 */
+	private void remove(long key) {
+		int free = find(key);
+		if (table[free] == FREE) {
+			return;
+		}
+		table[free] = FREE;
+		int slot = free;
+		while (true) {
+			slot = (slot + 1) & mask;
+			long current = table[slot];
+			if (current == FREE) {
+				return;
+			}
+			int home = slotOf(current);
+			// move the key back, if its home slot is not between the free slot and its current slot
+			boolean reachable = free <= slot ? (free < home && home <= slot) : (free < home || home <= slot);
+			if (!reachable) {
+				table[free] = current;
+				table[slot] = FREE;
+				free = slot;
+			}
+		}
+	}
+
+	private int slotOf(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	private static long normalize(long key) {
+		return key == FREE ? ZERO_KEY : key;
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
+/**
+ * Message implementation, that creates its {@link MessagingContext} only on the first call of {@link #getContext()}.
+ * Consumers, that only look at the payload, never pay for the context creation. The supplier must be side effect
+ * free, because concurrent first calls may invoke it more than once.
+ * @author agent
+ * @since 3.2.1
+ */
+public class LazyContextMessage implements Message {
+
+	private final String topic;
+	private final ByteBuffer payload;
+	private final Supplier<? extends MessagingContext> contextSupplier;
+	private volatile MessagingContext context;
+	private long receiveTime;
+
+	/**
+	 * Creates a new instance.
+	 * @param topic the topic
+	 * @param payload the payload
+	 * @param contextSupplier the supplier, that creates the context on demand
+	 */
+	public LazyContextMessage(String topic, ByteBuffer payload, Supplier<? extends MessagingContext> contextSupplier) {
+		this.topic = topic;
+		this.payload = payload;
+		this.contextSupplier = contextSupplier;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#topic()
+	 */
+	@Override
+	public String topic() {
+		return topic;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#payload()
+	 */
+	@Override
+	public ByteBuffer payload() {
+		return payload;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#getContext()
+	 */
+	@Override
+	public MessagingContext getContext() {
+		MessagingContext ctx = context;
+		if (ctx == null) {
+			ctx = contextSupplier == null ? null : contextSupplier.get();
+			if (ctx == null) {
+				ctx = SimpleMessagingContext.getDefault();
+			}
+			context = ctx;
+		}
+		return ctx;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#getReceiveTime()
+	 */
+	@Override
+	public long getReceiveTime() {
+		return receiveTime;
+	}
+
+	/**
+	 * Sets the receive time of the message
+	 * @param receiveTime the receive time in nanoseconds of {@link System#nanoTime()}
+	 */
+	public void setReceiveTime(long receiveTime) {
+		this.receiveTime = receiveTime;
+	}
+
+}
@@ -39,5 +39,56 @@ public interface Message {
 	 * @return the {@link MessagingContext} of this message
 	 */
 	public MessagingContext getContext();
+	
+	/**
+	 * Returns the time, the adapter received the message, in nanoseconds of {@link System#nanoTime()}.
+	 * The time is only recorded, if the subscription enabled the latency stamping.
+	 * @return the receive time or <code>0</code>, if it was not recorded
+	 */
+	public default long getReceiveTime() {
+		return 0L;
+	}
+	
+	/**
+	 * Returns the id of the message, if the transport delivered one, like the AMQP message id or a MQTT v5 user property
+	 * @return the message id or <code>null</code>
+	 */
+	public default String getMessageId() {
+		return null;
+	}
+	
+	/**
+	 * Releases resources bound to this message, like a pooled payload buffer. After the release, the 
+	 * payload must not be accessed anymore. Consumers, that receive messages from a pooled adapter, 
+	 * should call this method, when they are done with the message. The default implementation does nothing.
+	 * <p>
+	 * Every consumer owns the message instance it received and releases it once. An adapter, that delivers 
+	 * one received message to several streams, hands every stream an own instance created with {@link #retain()}. 
+	 * So each stream releases only its own instance and the payload goes back to the pool, after the last 
+	 * stream released it.
+	 */
+	public default void release() {
+	}
+	
+	/**
+	 * Returns another instance of this message for an additional consumer. The instance shares the payload content, 
+	 * but has an own position and limit and holds an own reference on a pooled payload. It has to be released 
+	 * on its own with {@link #release()}. The default implementation returns this instance, because it 
+	 * holds no resources.
+	 * @return the message instance for the additional consumer
+	 * @throws IllegalStateException, if the message was already released
+	 */
+	public default Message retain() {
+		return this;
+	}
+
+	/**
+	 * Marks the message as consumed, when a stream took it from its buffer or dropped it. Adapters, that bind the 
+	 * broker window to the consumption, acknowledge exactly this message at the connection, that received it, or 
+	 * return its credit then. All instances of the message, see {@link #retain()}, share the consumption, so only 
+	 * the first call has an effect. The default implementation does nothing.
+	 */
+	public default void consumed() {
+	}
 
 }
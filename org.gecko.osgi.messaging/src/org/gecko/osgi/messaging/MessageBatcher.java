@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushEventConsumer;
+import org.osgi.util.pushstream.PushEventSource;
+import org.osgi.util.pushstream.PushStream;
+import org.osgi.util.pushstream.PushStreamBuilder;
+import org.osgi.util.pushstream.PushStreamProvider;
+import org.osgi.util.pushstream.QueuePolicyOption;
+
+/**
+ * Event source, that collects the messages of an adapter event source into batches, see {@link BatchPolicy}.
+ * The messages are collected on the delivery thread of the adapter, so that the stream buffers one event per batch.
+ * The backpressure of the batch consumer is returned to the adapter source, when a batch is emitted.
+ * A batch, that reaches the maximum delay, is emitted on the executor of the stream, so that a slow consumer
+ * does not delay the batches of the other streams.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class MessageBatcher implements PushEventSource<List<Message>> {
+
+	private static final Logger logger = Logger.getLogger(MessageBatcher.class.getName());
+	private static final int DEFAULT_BUFFER_SIZE = 32;
+	private static final ScheduledExecutorService TIMER = createTimer();
+
+	private final PushEventSource<Message> source;
+	private final BatchPolicy policy;
+	private final Executor executor;
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * Creates a new instance.
+	 * @param source the source of the single messages
+	 * @param policy the batch limits
+	 */
+	public MessageBatcher(PushEventSource<Message> source, BatchPolicy policy) {
+		this(source, policy, null);
+	}
+
+	/**
+	 * Creates a new instance, that emits the batches on timeout with the executor of the context. Without an executor
+	 * in the context the shared executor, see {@link MessagingExecutors#getVirtualThreadExecutor()}, is used.
+	 * @param source the source of the single messages
+	 * @param policy the batch limits
+	 * @param context the messaging context, can be <code>null</code>
+	 */
+	public MessageBatcher(PushEventSource<Message> source, BatchPolicy policy, MessagingContext context) {
+		this.source = source;
+		this.policy = policy;
+		this.executor = context != null && context.getExecutor() != null ? context.getExecutor() : MessagingExecutors.getVirtualThreadExecutor();
+		this.scheduler = context != null && context.getScheduler() != null ? context.getScheduler() : TIMER;
+	}
+
+	/**
+	 * The timer only hands the timeouts off to the executors, its thread ends, when no batch is pending
+	 * @return the timer
+	 */
+	private static ScheduledExecutorService createTimer() {
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, MessagingExecutors.newPlatformThreadFactory("messaging-batch"));
+		timer.setKeepAliveTime(10, TimeUnit.SECONDS);
+		timer.allowCoreThreadTimeOut(true);
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	/**
+	 * Creates a buffered stream of batches. The buffer size, queue policy and executor are taken from the context,
+	 * the buffer holds 32 batches by default.
+	 * @param source the source of the single messages
+	 * @param policy the batch limits
+	 * @param context the messaging context, can be <code>null</code>
+	 * @return the stream of batches
+	 */
+	public static PushStream<List<Message>> createStream(PushEventSource<Message> source, BatchPolicy policy, MessagingContext context) {
+		int bufferSize = context != null && context.getBufferSize() > 0 ? context.getBufferSize() : DEFAULT_BUFFER_SIZE;
+		QueuePolicyOption queuePolicy = context != null && context.getQueuePolicyOption() != null ? context.getQueuePolicyOption() : QueuePolicyOption.BLOCK;
+		PushStreamBuilder<List<Message>, BlockingQueue<PushEvent<? extends List<Message>>>> builder = new PushStreamProvider()
+				.buildStream(new MessageBatcher(source, policy, context))
+				.withBuffer(new ArrayBlockingQueue<PushEvent<? extends List<Message>>>(bufferSize))
+				.withQueuePolicy(queuePolicy)
+				.withParallelism(1);
+		if (context != null && context.getExecutor() != null) {
+			builder.withExecutor(context.getExecutor());
+		}
+		if (context != null && context.getScheduler() != null) {
+			builder.withScheduler(context.getScheduler());
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Collects the messages of a stream into batches. This is the fallback for adapters, that cannot batch in their
+	 * delivery path, the messages are buffered once in the given stream and once as batch.
+	 * @param stream the stream of single messages
+	 * @param policy the batch limits
+	 * @param context the messaging context, can be <code>null</code>
+	 * @return the stream of batches
+	 */
+	public static PushStream<List<Message>> batch(PushStream<Message> stream, BatchPolicy policy, MessagingContext context) {
+		return createStream(consumer -> {
+			stream.forEachEvent(consumer);
+			return stream;
+		}, policy, context);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.osgi.util.pushstream.PushEventSource#open(org.osgi.util.pushstream.PushEventConsumer)
+	 */
+	@Override
+	public AutoCloseable open(PushEventConsumer<? super List<Message>> consumer) throws Exception {
+		Batch batch = new Batch(consumer);
+		AutoCloseable upstream = source.open(batch::accept);
+		return () -> {
+			batch.close();
+			upstream.close();
+		};
+	}
+
+	/**
+	 * The batch state of one consumer. The source thread and the timeout flushes are serialized, so that the consumer
+	 * never gets two batches at the same time.
+	 */
+	private final class Batch {
+
+		private final PushEventConsumer<? super List<Message>> consumer;
+		private List<Message> messages;
+		private long bytes = 0L;
+		private long generation = 0L;
+		private ScheduledFuture<?> timer;
+		private boolean closed = false;
+
+		private Batch(PushEventConsumer<? super List<Message>> consumer) {
+			this.consumer = consumer;
+			this.messages = newBatch();
+		}
+
+		private synchronized long accept(PushEvent<? extends Message> event) throws Exception {
+			if (closed) {
+				return PushEventConsumer.ABORT;
+			}
+			if (event.isTerminal()) {
+				flush();
+				closed = true;
+				consumer.accept(event.nodata());
+				return PushEventConsumer.ABORT;
+			}
+			Message message = event.getData();
+			if (messages.isEmpty()) {
+				long current = generation;
+				timer = scheduler.schedule(() -> timeout(current), policy.getMaxDelay(), TimeUnit.MILLISECONDS);
+			}
+			messages.add(message);
+			bytes += message.payload() == null ? 0 : message.payload().remaining();
+			if (messages.size() >= policy.getMaxCount() || (policy.getMaxBytes() > 0 && bytes >= policy.getMaxBytes())) {
+				return flush();
+			}
+			return 0;
+		}
+
+		private void timeout(long batchGeneration) {
+			try {
+				executor.execute(() -> flushOnTimeout(batchGeneration));
+			} catch (RejectedExecutionException e) {
+				logger.log(Level.WARNING, e, () -> "Cannot emit a batch on timeout, it is emitted with the next message");
+			}
+		}
+
+		private synchronized void flushOnTimeout(long batchGeneration) {
+			if (closed || batchGeneration != generation) {
+				return;
+			}
+			try {
+				if (flush() < 0) {
+					closed = true;
+				}
+			} catch (Exception e) {
+				logger.log(Level.SEVERE, e, () -> "Error delivering a batch");
+				closed = true;
+			}
+		}
+
+		private long flush() throws Exception {
+			if (timer != null) {
+				timer.cancel(false);
+				timer = null;
+			}
+			generation++;
+			if (messages.isEmpty()) {
+				return 0;
+			}
+			List<Message> batch = messages;
+			messages = newBatch();
+			bytes = 0L;
+			return consumer.accept(PushEvent.data(batch));
+		}
+
+		private synchronized void close() {
+			closed = true;
+			if (timer != null) {
+				timer.cancel(false);
+				timer = null;
+			}
+			messages.forEach(Message::release);
+			messages.clear();
+		}
+
+		private List<Message> newBatch() {
+			return new ArrayList<>(Math.min(policy.getMaxCount(), 1024));
+		}
+
+	}
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushEventConsumer;
+import org.osgi.util.pushstream.PushEventSource;
+
+/**
+ * Event source, that delivers every message of a subscription to all of its streams. The underlying source
+ * sees a single consumer, so that it acknowledges each message once. Every stream gets an own instance of the
+ * message, see {@link Message#retain()}, and releases it on its own. The first stream gets the received instance.
+ * <p>
+ * The backpressure of the slowest stream is returned to the underlying source.
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public final class MessageFanOut implements PushEventSource<Message> {
+
+	private static final Logger logger = Logger.getLogger(MessageFanOut.class.getName());
+
+	private final PushEventSource<? extends Message> source;
+	private final List<PushEventConsumer<? super Message>> consumers = new CopyOnWriteArrayList<>();
+	private Dispatcher dispatcher;
+
+	/**
+	 * Creates a new instance.
+	 * @param source the source of the subscription
+	 */
+	public MessageFanOut(PushEventSource<? extends Message> source) {
+		this.source = source;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.osgi.util.pushstream.PushEventSource#open(org.osgi.util.pushstream.PushEventConsumer)
+	 */
+	@Override
+	public synchronized AutoCloseable open(PushEventConsumer<? super Message> consumer) throws Exception {
+		consumers.add(consumer);
+		if (dispatcher == null) {
+			Dispatcher opened = new Dispatcher();
+			try {
+				opened.closeable = source.open(opened);
+			} catch (Exception e) {
+				consumers.remove(consumer);
+				throw e;
+			}
+			dispatcher = opened;
+		}
+		return () -> close(consumer);
+	}
+
+	/**
+	 * Returns the number of open streams
+	 * @return the number of open streams
+	 */
+	public int getStreamCount() {
+		return consumers.size();
+	}
+
+	private void close(PushEventConsumer<? super Message> consumer) {
+		Dispatcher closed = null;
+		synchronized (this) {
+			if (!consumers.remove(consumer)) {
+				return;
+			}
+			if (consumers.isEmpty() && dispatcher != null) {
+				closed = dispatcher;
+				closed.closed = true;
+				dispatcher = null;
+			}
+		}
+		if (closed != null) {
+			try {
+				closed.closeable.close();
+			} catch (Exception e) {
+				logger.log(Level.WARNING, e, () -> "Error closing the subscription of the last stream");
+			}
+		}
+		deliver(consumer, PushEvent.close());
+	}
+
+	private synchronized void terminated(Dispatcher terminated) {
+		if (dispatcher == terminated) {
+			dispatcher = null;
+		}
+	}
+
+	private static void drop(Message message) {
+		message.consumed();
+		message.release();
+	}
+
+	private long deliver(PushEventConsumer<? super Message> consumer, PushEvent<Message> event) {
+		try {
+			return consumer.accept(event);
+		} catch (Exception e) {
+			logger.log(Level.WARNING, e, () -> "Error delivering a " + event.getType() + " event to a stream");
+			return PushEventConsumer.ABORT;
+		}
+	}
+
+	/**
+	 * The single consumer of the underlying source
+	 */
+	private final class Dispatcher implements PushEventConsumer<Message> {
+
+		private volatile boolean closed = false;
+		private AutoCloseable closeable;
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.osgi.util.pushstream.PushEventConsumer#accept(org.osgi.util.pushstream.PushEvent)
+		 */
+		@Override
+		public long accept(PushEvent<? extends Message> event) throws Exception {
+			if (closed) {
+				// late events and the terminal event of the own close must not reach the streams of a new dispatcher
+				if (!event.isTerminal()) {
+					drop(event.getData());
+				}
+				return ABORT;
+			}
+			if (event.isTerminal()) {
+				terminated(this);
+				PushEvent<Message> terminal = event.getType() == PushEvent.EventType.ERROR ?
+						PushEvent.error(event.getFailure()) : PushEvent.close();
+				for (PushEventConsumer<? super Message> consumer : consumers) {
+					consumers.remove(consumer);
+					deliver(consumer, terminal);
+				}
+				return ABORT;
+			}
+			Message message = event.getData();
+			Object[] targets = consumers.toArray();
+			if (targets.length == 0) {
+				drop(message);
+				return CONTINUE;
+			}
+			// all instances are created before the delivery, because a stream can release its instance right away
+			Message[] instances = new Message[targets.length];
+			instances[0] = message;
+			for (int i = 1; i < targets.length; i++) {
+				instances[i] = message.retain();
+			}
+			long backpressure = CONTINUE;
+			for (int i = 0; i < targets.length; i++) {
+				@SuppressWarnings("unchecked")
+				PushEventConsumer<? super Message> consumer = (PushEventConsumer<? super Message>) targets[i];
+				long result = deliver(consumer, PushEvent.data(instances[i]));
+				if (result < 0) {
+					// the stream is closed, it gets no further events
+					close(consumer);
+				} else {
+					backpressure = Math.max(backpressure, result);
+				}
+			}
+			return backpressure;
+		}
+
+	}
+
+}
@@ -34,6 +34,9 @@ public interface MessagingConstants {
 	public static final String EVENTADMIN_ADAPTER = "eventadmin.adapter";
 	public static final String EVENTADMIN_ADAPTER_VERSION = "1.0.0";
 	
+	public static final String INPROCESS_ADAPTER = "inprocess.adapter";
+	public static final String INPROCESS_ADAPTER_VERSION = "1.0.0";
+	
 
 //	public static final String PROP_SUBSCRIBE_TOPICS = "message.subscribe.topics";
 //	
@@ -13,6 +13,8 @@
 
 package org.gecko.osgi.messaging;
 
+import java.util.function.Function;
+
 import org.gecko.util.pushstream.PushStreamContext;
 
 /**
@@ -66,6 +68,109 @@ public interface MessagingContext extends PushStreamContext<Message> {
 	 */
 	public ReplyToPolicy getReplyPolicy();
 	
+	/**
+	 * Returns <code>true</code>, if the subscription should deliver on virtual threads. 
+	 * In this case the executor of the context is a thread-per-task executor, so that blocking 
+	 * consumers only need to raise the parallelism instead of tuning a thread pool.
+	 * @return <code>true</code>, if virtual threads are used for the delivery
+	 */
+	public default boolean isVirtualThreads() {
+		return false;
+	}
+	
+	/**
+	 * Returns the number of lanes for a key partitioned dispatch. Values less than two disable the partitioning.
+	 * @return the number of lanes
+	 * @see PartitionedDispatch
+	 */
+	public default int getPartitions() {
+		return 0;
+	}
+	
+	/**
+	 * Returns the function, that extracts the partition key of a message for a partitioned dispatch
+	 * @return the key extractor or <code>null</code>
+	 * @see PartitionedDispatch
+	 */
+	public default Function<Message, ?> getPartitionKey() {
+		return null;
+	}
+	
+	/**
+	 * Returns the function, that extracts the key of a message to drop duplicate deliveries
+	 * @return the key extractor or <code>null</code>, if the messages are not deduplicated
+	 * @see Deduplication
+	 */
+	public default Function<Message, ?> getDeduplicationKey() {
+		return null;
+	}
+	
+	/**
+	 * Returns the maximum number of keys, that are remembered to detect duplicates
+	 * @return the maximum number of keys, values less than one use the default
+	 */
+	public default int getDeduplicationSize() {
+		return 0;
+	}
+	
+	/**
+	 * Returns the time, a key is remembered to detect duplicates
+	 * @return the time to live in milliseconds, <code>0</code> to evict by size only
+	 */
+	public default long getDeduplicationTtl() {
+		return 0L;
+	}
+	
+	/**
+	 * Returns the function, that extracts the key of a message for the last value conflation of the buffer
+	 * @return the key extractor or <code>null</code>, if the messages are not conflated
+	 * @see ConflatingBlockingQueue
+	 */
+	public default Function<Message, ?> getConflationKey() {
+		return null;
+	}
+	
+	/**
+	 * Returns the maximum number of distinct keys in the conflating buffer
+	 * @return the maximum number of keys, values less than one use the buffer size
+	 */
+	public default int getConflationSize() {
+		return 0;
+	}
+	
+	/**
+	 * Returns <code>true</code>, if the latency of the messages should be measured. On publish, the adapter
+	 * stamps the send time and origin into the transport metadata. On subscribe, the time the messages 
+	 * spend in the push stream buffer is recorded and the buffer depth and pushbacks of the stream are sampled.
+	 * @return <code>true</code>, if latency stamping is enabled
+	 * @see org.gecko.osgi.messaging.metrics.LatencyStamp
+	 */
+	public default boolean isLatencyStamping() {
+		return false;
+	}
+	
+	/**
+	 * Returns the number of credits for a demand driven flow control. The adapter stops the transport from 
+	 * delivering, when this many messages were received, but not yet taken from the push stream buffer by the consumer.
+	 * Values less than one disable the credit mode.
+	 * @return the number of credits
+	 * @see CreditFlow
+	 */
+	public default int getCredits() {
+		return 0;
+	}
+	
+	/**
+	 * Returns the type, the adapter decodes the payloads into on its delivery thread, before the messages 
+	 * are buffered. The typed {@link MessagingService#subscribe(String, Class, MessagingContext)} then only 
+	 * hands over the decoded objects.
+	 * @return the payload type or <code>null</code>, if the payloads are not decoded by the adapter
+	 * @see org.gecko.osgi.messaging.codec.MessageCodecs
+	 */
+	public default Class<?> getPayloadType() {
+		return null;
+	}
+	
 	public String getSoure();
 	
 	public String getId();
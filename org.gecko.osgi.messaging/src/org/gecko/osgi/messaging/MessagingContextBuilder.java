@@ -17,6 +17,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.gecko.util.pushstream.PushStreamContext;
 import org.osgi.util.function.Consumer;
@@ -45,6 +46,95 @@ public interface MessagingContextBuilder {
 	public MessagingContextBuilder withExecutor(ExecutorService executor);
 	
 	public MessagingContextBuilder withScheduler(ScheduledExecutorService scheduler);
+	
+	/**
+	 * Delivers the messages on virtual threads, if the runtime supports them. If no executor is given, 
+	 * the shared thread-per-task executor {@link MessagingExecutors#getVirtualThreadExecutor()} is used. Use {@link #withParallelism(int)} to set the number of 
+	 * concurrent handlers.
+	 * Builders, that do not support virtual threads, ignore the option.
+	 * @return the builder instance
+	 */
+	public default MessagingContextBuilder withVirtualThreads() {
+		return this;
+	}
+	
+	/**
+	 * Dispatches the messages on the given number of lanes. Messages with the same key are always 
+	 * delivered on the same lane, one after another, so that the order per key is preserved.
+	 * @param lanes the number of lanes
+	 * @param keyExtractor the function, that extracts the partition key, see {@link PartitionedDispatch} for common keys 
+	 * Builders, that do not support partitioning, ignore the option.
+	 * @return the builder instance
+	 */
+	public default MessagingContextBuilder withPartitioning(int lanes, Function<Message, ?> keyExtractor) {
+		return this;
+	}
+	
+	/**
+	 * Drops messages, whose key was seen recently, e.g. redeliveries after a reconnect or a requeue.
+	 * @param keyExtractor the function, that extracts the key, see {@link Deduplication} for common keys
+	 * @param maxSize the maximum number of keys, that are remembered
+	 * @param ttl the time in milliseconds, a key is remembered, <code>0</code> to evict by size only
+	 * Builders, that do not support deduplication, ignore the option.
+	 * @return the builder instance
+	 */
+	public default MessagingContextBuilder withDeduplication(Function<Message, ?> keyExtractor, int maxSize, long ttl) {
+		return this;
+	}
+	
+	/**
+	 * Buffers only the newest message per topic, see {@link #withConflation(Function, int)}
+	 * @return the builder instance
+	 */
+	public default MessagingContextBuilder withConflation() {
+		return withConflation(Message::topic, 0);
+	}
+	
+	/**
+	 * Buffers only the newest message per key, e.g. for state topics like a device status. A newer message 
+	 * replaces an older one with the same key, that was not delivered yet, and takes its place in the delivery order. 
+	 * The buffer is bound by the number of distinct keys, the queue and pushback policies apply, when it is full.
+	 * @param keyExtractor the function, that extracts the key, messages with a <code>null</code> key are not conflated
+	 * @param maxKeys the maximum number of distinct keys in the buffer, values less than one use the buffer size
+	 * Builders, that do not support conflation, ignore the option.
+	 * @return the builder instance
+	 */
+	public default MessagingContextBuilder withConflation(Function<Message, ?> keyExtractor, int maxKeys) {
+		return this;
+	}
+	
+	/**
+	 * Enables the latency measurement. Published messages get a send time stamp, subscriptions record
+	 * the delivery latency, the time, the messages wait in the push stream buffer, and its depth and pushbacks.
+	 * Builders, that do not support the latency measurement, ignore the option.
+	 * @return the builder instance
+	 */
+	public default MessagingContextBuilder withLatencyStamping() {
+		return this;
+	}
+	
+	/**
+	 * Enables the demand driven flow control. At most the given number of messages are received from the transport,
+	 * that were not yet taken from the push stream buffer. The buffer should be at least this large. The MQTT adapter
+	 * takes the window from its configuration, because the Receive Maximum is a property of the connection.
+	 * @param credits the number of credits
+	 * Builders, that do not support the flow control, ignore the option.
+	 * @return the builder instance
+	 */
+	public default MessagingContextBuilder withCredits(int credits) {
+		return this;
+	}
+	
+	/**
+	 * Lets the adapter decode the payloads into the given type on its delivery thread, before the messages are 
+	 * buffered. A {@link org.gecko.osgi.messaging.codec.MessageCodec} for the type must be registered.
+	 * @param type the payload type
+	 * Builders, that do not support payload types, ignore the option and the payloads are decoded per stream.
+	 * @return the builder instance
+	 */
+	public default MessagingContextBuilder withPayloadType(Class<?> type) {
+		return this;
+	}
 
 	public MessagingContextBuilder acknowledgeErrorFunction(BiConsumer<Throwable, Message> ackErrorFunction);
 
@@ -68,6 +158,15 @@ public interface MessagingContextBuilder {
 
 	public MessagingContextBuilder withPushbackPolicy(PushbackPolicy<Message, BlockingQueue<PushEvent<? extends Message>>> pushbackPolicy);
 	
+	/**
+	 * Uses an {@link AdaptivePushbackPolicy} with the default settings, that computes the pushback from 
+	 * the observed consumer of every stream
+	 * @return the builder instance
+	 */
+	public default MessagingContextBuilder withAdaptivePushback() {
+		return withPushbackPolicy(new AdaptivePushbackPolicy());
+	}
+	
 	public MessagingContextBuilder withPushstreamContext(PushStreamContext<Message> context);
 	
 	public MessagingContextBuilder source(String source);
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Factory for the executors of the messaging adapters. Virtual threads are used, when the
+ * runtime supports them (Java 21+). The API is looked up reflectively, so that the bundle still runs on
+ * the Java 11 baseline. There, the virtual thread methods fall back to platform daemon threads.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class MessagingExecutors {
+
+	private static final Logger logger = Logger.getLogger(MessagingExecutors.class.getName());
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_FACTORY;
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+	static {
+		Method ofVirtual = null;
+		Method builderName = null;
+		Method builderFactory = null;
+		Method perTaskExecutor = null;
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			builderName = builderClass.getMethod("name", String.class, long.class);
+			builderFactory = builderClass.getMethod("factory");
+			perTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+		} catch (ClassNotFoundException | NoSuchMethodException e) {
+			logger.log(Level.FINE, "Virtual threads are not supported by this runtime, using platform threads");
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = builderName;
+		BUILDER_FACTORY = builderFactory;
+		NEW_THREAD_PER_TASK_EXECUTOR = perTaskExecutor;
+	}
+
+	private MessagingExecutors() {
+	}
+
+	/**
+	 * Returns <code>true</code>, if the runtime supports virtual threads
+	 * @return <code>true</code>, if virtual threads are supported
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Creates a thread factory for virtual threads, named with the given prefix and a counter.
+	 * Without virtual thread support, a factory for platform daemon threads is returned.
+	 * @param prefix the thread name prefix
+	 * @return the thread factory
+	 */
+	public static ThreadFactory newVirtualThreadFactory(String prefix) {
+		if (isVirtualThreadSupported()) {
+			try {
+				Object builder = OF_VIRTUAL.invoke(null);
+				builder = BUILDER_NAME.invoke(builder, prefix + "-", 0L);
+				return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+			} catch (ReflectiveOperationException e) {
+				logger.log(Level.WARNING, e, () -> "Cannot create virtual thread factory for " + prefix + ", using platform threads");
+			}
+		}
+		return newPlatformThreadFactory(prefix);
+	}
+
+	/**
+	 * Creates an executor, that starts a new virtual thread for each task. Blocking tasks do not occupy a
+	 * platform thread, so there is no need to size a pool. Without virtual thread support, a cached
+	 * thread pool is returned.
+	 * @param prefix the thread name prefix
+	 * @return the executor
+	 */
+	public static ExecutorService newVirtualThreadExecutor(String prefix) {
+		ThreadFactory factory = newVirtualThreadFactory(prefix);
+		if (isVirtualThreadSupported()) {
+			try {
+				return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+			} catch (ReflectiveOperationException e) {
+				logger.log(Level.WARNING, e, () -> "Cannot create virtual thread executor for " + prefix + ", using platform threads");
+			}
+		}
+		return Executors.newCachedThreadPool(factory);
+	}
+
+	/**
+	 * Returns the executor, that is shared by all streams, that use virtual threads. It starts a new virtual 
+	 * thread for each task and keeps no idle threads, so it lives as long as the bundle and must not be shut down.
+	 * Without virtual thread support, it is a cached pool of platform daemon threads, whose idle threads expire.
+	 * @return the shared executor
+	 */
+	public static ExecutorService getVirtualThreadExecutor() {
+		return SharedExecutor.INSTANCE;
+	}
+
+	/**
+	 * Creates a thread factory for named platform daemon threads
+	 * @param prefix the thread name prefix
+	 * @return the thread factory
+	 */
+	public static ThreadFactory newPlatformThreadFactory(String prefix) {
+		AtomicLong counter = new AtomicLong();
+		return r -> {
+			Thread t = new Thread(r, prefix + "-" + counter.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	/**
+	 * Holder of the shared executor, that is created on first use
+	 */
+	private static final class SharedExecutor {
+
+		static final ExecutorService INSTANCE = newVirtualThreadExecutor("messaging");
+
+	}
+
+}
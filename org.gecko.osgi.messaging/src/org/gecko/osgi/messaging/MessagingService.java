@@ -14,8 +14,13 @@
 package org.gecko.osgi.messaging;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
 
+import org.gecko.osgi.messaging.codec.MessageCodec;
+import org.gecko.osgi.messaging.codec.MessageCodecs;
 import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.util.promise.Promise;
 import org.osgi.util.pushstream.PushStream;
 
 /**
@@ -43,8 +48,105 @@ public interface MessagingService extends MessagingConstants {
 	 */
 	public PushStream<Message> subscribe(String topic, MessagingContext context) throws Exception;
 	
+	/**
+	 * Subscribes to the given topic and delivers the payloads decoded into the given type. The {@link MessageCodec}
+	 * is looked up once per type. If the context has the same payload type, see {@link MessagingContextBuilder#withPayloadType(Class)},
+	 * the adapter decodes the payloads on its delivery thread, before they are buffered. Otherwise they are 
+	 * decoded on the thread, that takes them from the buffer. The messages are released after decoding.
+	 * @param <T> the payload type
+	 * @param topic the message topic to subscribe
+	 * @param type the payload type
+	 * @param context the optional properties in the context
+	 * @return a {@link PushStream} of the decoded payloads
+	 * @throws Exception thrown on errors, e.g. if there is no codec for the type
+	 */
+	public default <T> PushStream<T> subscribe(String topic, Class<T> type, MessagingContext context) throws Exception {
+		MessageCodecs codecs = MessageCodecs.getDefault();
+		// fail early, if there is no codec for the type
+		codecs.getCodec(type);
+		return subscribe(topic, context).map(message -> {
+			try {
+				return codecs.valueOf(message, type);
+			} finally {
+				message.release();
+			}
+		});
+	}
+	
+	/**
+	 * Subscribes to the given topic and delivers the messages in batches, see {@link BatchPolicy}. The stream buffers
+	 * one event per batch. Adapters collect the batches in their delivery path and acknowledge a whole batch at once,
+	 * when it is taken from the buffer. The default implementation collects the messages of {@link #subscribe(String, MessagingContext)}.
+	 * The consumer has to release the messages of a batch.
+	 * @param topic the message topic to subscribe
+	 * @param policy the batch limits
+	 * @param context the optional properties in the context
+	 * @return a {@link PushStream} of message batches
+	 * @throws Exception thrown on errors
+	 */
+	public default PushStream<List<Message>> subscribeBatched(String topic, BatchPolicy policy, MessagingContext context) throws Exception {
+		return MessageBatcher.batch(subscribe(topic, context), policy, context);
+	}
+	
 	public void publish(String topic, ByteBuffer content) throws Exception;
 	
 	public void publish(String topic, ByteBuffer content, MessagingContext context) throws Exception;
 	
+	/**
+	 * Encodes the object with the {@link MessageCodec} of the type and publishes it to the given topic
+	 * @param <T> the payload type
+	 * @param topic the topic to publish on
+	 * @param value the object to publish
+	 * @param type the payload type
+	 * @param context the optional properties in the context
+	 * @throws Exception thrown on errors, e.g. if there is no codec for the type
+	 */
+	public default <T> void publish(String topic, T value, Class<T> type, MessagingContext context) throws Exception {
+		publish(topic, MessageCodecs.getDefault().encode(value, type), context);
+	}
+	
+	/**
+	 * Publishes the content to the given topic without blocking the caller, using the default context of the implementation.
+	 * @param topic the topic to publish on
+	 * @param content the content to publish
+	 * @return the promise that resolves, when the message was acknowledged by the transport
+	 * @see #publishAsync(String, ByteBuffer, MessagingContext)
+	 */
+	public Promise<Void> publishAsync(String topic, ByteBuffer content);
+	
+	/**
+	 * Publishes the content to the given topic without blocking the caller. The returned promise resolves, 
+	 * when the transport acknowledged the message, e.g. with a PUBACK/PUBCOMP for MQTT or a publisher confirm for AMQP. 
+	 * Transports without acknowledgement resolve the promise, when the message was dispatched. 
+	 * Errors are never thrown, but reported as failed promise.
+	 * @param topic the topic to publish on
+	 * @param content the content to publish
+	 * @param context the optional properties in the context
+	 * @return the promise that resolves, when the message was acknowledged by the transport
+	 */
+	public Promise<Void> publishAsync(String topic, ByteBuffer content, MessagingContext context);
+	
+	/**
+	 * Publishes a batch of messages to the given topic, using the default context of the implementation.
+	 * @param topic the topic to publish on
+	 * @param contents the contents to publish in the given order
+	 * @return the promise that resolves, when the whole batch was handed over to the transport
+	 * @throws Exception thrown on errors
+	 * @see #publishBatch(String, Collection, MessagingContext)
+	 */
+	public Promise<Void> publishBatch(String topic, Collection<ByteBuffer> contents) throws Exception;
+	
+	/**
+	 * Publishes a batch of messages to the given topic. The context is resolved only once for the whole batch.
+	 * Implementations use the native batching capabilities of the underlying transport, like pipelined 
+	 * publishes or publisher confirm batches, instead of publishing each message on its own.
+	 * The returned promise fails, if at least one message of the batch could not be delivered.
+	 * @param topic the topic to publish on
+	 * @param contents the contents to publish in the given order
+	 * @param context the optional properties in the context
+	 * @return the promise that resolves, when the whole batch was handed over to the transport
+	 * @throws Exception thrown on errors
+	 */
+	public Promise<Void> publishBatch(String topic, Collection<ByteBuffer> contents, MessagingContext context) throws Exception;
+	
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.lang.reflect.Array;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import org.osgi.util.function.Predicate;
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushStream;
+import org.osgi.util.pushstream.PushStreamBuilder;
+import org.osgi.util.pushstream.QueuePolicyOption;
+
+/**
+ * Key partitioned, ordered dispatch for subscriptions. Each message is hashed by its key onto one
+ * of N lanes. A lane delivers one message at a time, so the order per key is preserved, while the
+ * lanes run in parallel. The lanes are merged into one {@link PushStream} again.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class PartitionedDispatch {
+
+	private static final int DEFAULT_LANE_BUFFER_SIZE = 32;
+
+	private PartitionedDispatch() {
+	}
+
+	/**
+	 * Partitions by the full message topic
+	 * @return the key extractor
+	 */
+	public static Function<Message, Object> byTopic() {
+		return Message::topic;
+	}
+
+	/**
+	 * Partitions by the last level of the message topic, e.g. the device id in <code>sensors/temp/device42</code>
+	 * @return the key extractor
+	 */
+	public static Function<Message, Object> byTopicSuffix() {
+		return m -> {
+			String topic = m.topic();
+			if (topic == null) {
+				return null;
+			}
+			int idx = topic.lastIndexOf('/');
+			return idx < 0 ? topic : topic.substring(idx + 1);
+		};
+	}
+
+	/**
+	 * Partitions by the correlation id of the message context
+	 * @return the key extractor
+	 */
+	public static Function<Message, Object> byCorrelationId() {
+		return m -> m.getContext() == null ? null : m.getContext().getCorrelationId();
+	}
+
+	/**
+	 * Builds the stream from the builder. If the context requests a partitioned dispatch, the stream is
+	 * split into the lanes and merged again. Otherwise the stream is built as it is.
+	 * @param builder the configured stream builder
+	 * @param context the messaging context, can be <code>null</code>
+	 * @return the push stream
+	 */
+	public static PushStream<Message> build(PushStreamBuilder<Message, BlockingQueue<PushEvent<? extends Message>>> builder, MessagingContext context) {
+		if (context == null || context.getPartitions() <= 1 || context.getPartitionKey() == null) {
+			return builder.build();
+		}
+		int lanes = context.getPartitions();
+		LaneSelector selector = new LaneSelector(context.getPartitionKey(), lanes);
+		// the lanes do the buffering, the upstream only fans out on the source thread
+		PushStream<Message> upstream = builder.unbuffered().build();
+		Predicate<Message>[] predicates = newPredicates(lanes);
+		for (int i = 0; i < lanes; i++) {
+			int lane = i;
+			predicates[i] = m -> selector.laneOf(m) == lane;
+		}
+		PushStream<Message>[] split = upstream.split(predicates);
+
+		ExecutorService executor = context.getExecutor();
+		ExecutorService ownExecutor = null;
+		if (executor == null && context.isVirtualThreads()) {
+			executor = MessagingExecutors.getVirtualThreadExecutor();
+		} else if (executor == null) {
+			ownExecutor = Executors.newFixedThreadPool(lanes, MessagingExecutors.newPlatformThreadFactory("messaging-lane"));
+			executor = ownExecutor;
+		}
+		int bufferSize = context.getBufferSize() > 0 ? context.getBufferSize() : DEFAULT_LANE_BUFFER_SIZE;
+		PushStream<Message> merged = null;
+		for (PushStream<Message> laneStream : split) {
+			// parallelism 1 keeps a lane sequential, even on a shared executor
+			PushStream<Message> lane = laneStream.buildBuffer()
+					.withBuffer(new ArrayBlockingQueue<PushEvent<? extends Message>>(bufferSize))
+					.withQueuePolicy(QueuePolicyOption.BLOCK)
+					.withParallelism(1)
+					.withExecutor(executor)
+					.build();
+			merged = merged == null ? lane : merged.merge(lane);
+		}
+		if (ownExecutor != null) {
+			merged = merged.onClose(ownExecutor::shutdown);
+		}
+		return merged;
+	}
+
+	/**
+	 * Creates the array for the lane predicates, the split takes them as varargs
+	 * @param lanes the number of lanes
+	 * @return the empty array
+	 */
+	@SuppressWarnings("unchecked")
+	private static Predicate<Message>[] newPredicates(int lanes) {
+		return (Predicate<Message>[]) Array.newInstance(Predicate.class, lanes);
+	}
+
+	/**
+	 * Computes the lane of a message. The split evaluates all lane predicates for the same message
+	 * one after another on the delivering thread, so the last result is cached to extract the key only once.
+	 */
+	static final class LaneSelector {
+
+		private final Function<Message, ?> keyExtractor;
+		private final int lanes;
+		private Message lastMessage;
+		private int lastLane;
+
+		LaneSelector(Function<Message, ?> keyExtractor, int lanes) {
+			this.keyExtractor = keyExtractor;
+			this.lanes = lanes;
+		}
+
+		synchronized int laneOf(Message message) {
+			if (message != lastMessage) {
+				lastLane = laneOf(keyExtractor.apply(message), lanes);
+				lastMessage = message;
+			}
+			return lastLane;
+		}
+
+		static int laneOf(Object key, int lanes) {
+			int h = Objects.hashCode(key);
+			h ^= (h >>> 16);
+			return Math.floorMod(h, lanes);
+		}
+	}
+
+}
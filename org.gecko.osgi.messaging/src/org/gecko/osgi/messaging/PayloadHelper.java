@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helper to hand over {@link ByteBuffer} payloads to transports, that expect byte arrays.
+ * Heap buffers, that wrap a whole array are passed through without copying. Direct, read-only
+ * and sliced buffers are copied exactly once. The position of the given buffer is never changed.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class PayloadHelper {
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private PayloadHelper() {
+	}
+
+	/**
+	 * Returns the remaining bytes of the buffer. If the buffer is a heap buffer, whose remaining
+	 * bytes are exactly the backing array, this array is returned without copying.
+	 * @param buffer the buffer, can be <code>null</code>
+	 * @return the payload bytes, never <code>null</code>
+	 */
+	public static byte[] toByteArray(ByteBuffer buffer) {
+		if (buffer == null) {
+			return EMPTY;
+		}
+		if (isWrappedArray(buffer)) {
+			return buffer.array();
+		}
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Returns <code>true</code>, if the remaining bytes of the buffer are exactly its backing array
+	 * @param buffer the buffer, must not be <code>null</code>
+	 * @return <code>true</code>, if the backing array can be used without copying
+	 */
+	public static boolean isWrappedArray(ByteBuffer buffer) {
+		return buffer.hasArray() &&
+				buffer.arrayOffset() == 0 &&
+				buffer.position() == 0 &&
+				buffer.remaining() == buffer.array().length;
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference counted lease of a buffer from a {@link ByteBufferPool}. The lease starts with a reference count of one.
+ * The buffer goes back to the pool, when the count drops to zero. After that the buffer must not be used anymore.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class PooledByteBuffer {
+
+	private final AtomicInteger refCount = new AtomicInteger(1);
+	private final ByteBufferPool pool;
+	private final int sizeClass;
+	private final ByteBuffer buffer;
+
+	/**
+	 * Creates a new instance.
+	 * @param pool the owning pool, <code>null</code> for unpooled buffers
+	 * @param sizeClass the size class index in the pool
+	 * @param buffer the buffer
+	 */
+	PooledByteBuffer(ByteBufferPool pool, int sizeClass, ByteBuffer buffer) {
+		this.pool = pool;
+		this.sizeClass = sizeClass;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Returns the leased buffer
+	 * @return the leased buffer
+	 */
+	public ByteBuffer buffer() {
+		return buffer;
+	}
+
+	/**
+	 * Increments the reference count, e.g. when the buffer is handed over to another consumer
+	 * @return this instance
+	 * @throws IllegalStateException, if the buffer was already released
+	 */
+	public PooledByteBuffer retain() {
+		int count;
+		do {
+			count = refCount.get();
+			if (count <= 0) {
+				throw new IllegalStateException("The buffer was already released");
+			}
+		} while (!refCount.compareAndSet(count, count + 1));
+		return this;
+	}
+
+	/**
+	 * Decrements the reference count and gives the buffer back to the pool, when it drops to zero
+	 * @return <code>true</code>, if the buffer was given back with this call
+	 */
+	public boolean release() {
+		int count = refCount.decrementAndGet();
+		if (count == 0) {
+			if (pool != null) {
+				pool.recycle(sizeClass, buffer);
+			}
+			return true;
+		}
+		if (count < 0) {
+			refCount.set(0);
+			throw new IllegalStateException("The buffer was already released");
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the current reference count
+	 * @return the reference count
+	 */
+	public int refCount() {
+		return refCount.get();
+	}
+
+}
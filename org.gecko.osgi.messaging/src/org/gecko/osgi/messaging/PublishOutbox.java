@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.gecko.osgi.messaging.metrics.MessagingMetricsRegistry;
+import org.gecko.osgi.messaging.metrics.OutboxMetrics;
+
+/**
+ * Disk backed outbox for the messages, that cannot be published, because the broker is not reachable.
+ * The messages are appended to a {@link SegmentLog} at local disk speed and published in batches by a drain thread,
+ * when the broker is reachable again. The adapter publishes into the outbox as long as it is not empty,
+ * so that the order of the messages is kept. The messages are published at least once, a message may be published
+ * again, if the adapter stops between the publish and the commit of its batch.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class PublishOutbox implements AutoCloseable {
+
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	private static final Logger logger = Logger.getLogger(PublishOutbox.class.getName());
+	private static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+	private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+	private static final long MIN_RETRY_DELAY = 100L;
+	private static final long MAX_RETRY_DELAY = 30000L;
+
+	private final SegmentLog log;
+	private final Sender sender;
+	private final OutboxMetrics metrics;
+	private final int batchSize;
+	private final Thread drainer;
+	private final Object signal = new Object();
+	private boolean appended = false;
+	private boolean woken = false;
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a new instance, recovers the messages of an existing outbox and starts draining them
+	 * @param adapter the adapter name for the metrics
+	 * @param directory the directory of the outbox
+	 * @param maxBytes the maximum size of the outbox on disk
+	 * @param sender publishes the batches
+	 * @throws IOException thrown, if the outbox cannot be opened
+	 */
+	public PublishOutbox(String adapter, Path directory, long maxBytes, Sender sender) throws IOException {
+		int segmentSize = (int) Math.min(MAX_SEGMENT_SIZE, Math.max(MIN_SEGMENT_SIZE, maxBytes / 4));
+		this.log = new SegmentLog(directory, segmentSize, Math.max(maxBytes, segmentSize));
+		this.sender = sender;
+		this.batchSize = DEFAULT_BATCH_SIZE;
+		this.metrics = MessagingMetricsRegistry.getDefault().getOutboxMetrics(adapter);
+		updateBacklog();
+		this.drainer = MessagingExecutors.newPlatformThreadFactory("messaging-outbox-" + adapter).newThread(this::drain);
+		drainer.start();
+	}
+
+	/**
+	 * Appends a message to the outbox
+	 * @param topic the topic
+	 * @param attributes the transport specific publish settings, like the QoS, can be empty
+	 * @param payload the encoded payload
+	 * @throws IOException thrown, if the message cannot be written
+	 */
+	public void append(String topic, Map<String, String> attributes, byte[] payload) throws IOException {
+		byte[] record = encode(new Entry(topic, attributes, payload));
+		long dropped = log.append(record);
+		metrics.appended(record.length);
+		if (dropped > 0) {
+			metrics.dropped(dropped);
+		}
+		updateBacklog();
+		synchronized (signal) {
+			appended = true;
+			signal.notifyAll();
+		}
+	}
+
+	/**
+	 * Checks, if the message fits into the outbox. The adapter checks a message, before it publishes it,
+	 * so that the message can be appended, if the publish fails.
+	 * @param topic the topic
+	 * @param attributes the transport specific publish settings, can be empty
+	 * @param payload the encoded payload
+	 * @throws IllegalArgumentException thrown, if the message is larger than a record of the outbox
+	 */
+	public void checkSize(String topic, Map<String, String> attributes, byte[] payload) {
+		// the size of the record written by encode
+		long size = utfLength(topic) + 2L + payload.length;
+		for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+			size += utfLength(attribute.getKey()) + utfLength(attribute.getValue());
+		}
+		if (size > log.getMaxRecordSize()) {
+			throw new IllegalArgumentException("The message to " + topic + " needs " + size + " bytes, the outbox stores at most "
+					+ log.getMaxRecordSize() + " bytes per message");
+		}
+	}
+
+	/**
+	 * Returns <code>true</code>, if all messages were published. The adapter has to use the outbox as long as
+	 * it is not empty, to keep the order of the messages.
+	 * @return <code>true</code>, if the outbox is empty
+	 */
+	public boolean isEmpty() {
+		return log.isEmpty();
+	}
+
+	/**
+	 * Retries the publishing immediately, e.g. after the adapter reconnected to the broker
+	 */
+	public void wakeUp() {
+		synchronized (signal) {
+			woken = true;
+			signal.notifyAll();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		wakeUp();
+		try {
+			drainer.join(MAX_RETRY_DELAY);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		log.close();
+	}
+
+	private void drain() {
+		long retryDelay = MIN_RETRY_DELAY;
+		while (!closed) {
+			SegmentLog.ReadBatch batch;
+			try {
+				batch = log.read(batchSize);
+			} catch (IllegalStateException e) {
+				// the log was closed
+				return;
+			}
+			if (batch.isEmpty()) {
+				awaitAppend();
+				continue;
+			}
+			long start = System.nanoTime();
+			try {
+				List<Entry> entries = new ArrayList<>(batch.getRecords().size());
+				for (byte[] record : batch.getRecords()) {
+					entries.add(decode(record));
+				}
+				sender.send(entries);
+				log.commit(batch);
+				metrics.drained(entries.size(), System.nanoTime() - start);
+				updateBacklog();
+				retryDelay = MIN_RETRY_DELAY;
+			} catch (Exception e) {
+				if (closed) {
+					return;
+				}
+				metrics.drainError();
+				long delay = retryDelay;
+				logger.log(Level.FINE, e, () -> "Cannot publish " + batch.getRecords().size() + " messages from the outbox, retrying in " + delay + " ms");
+				awaitRetry(retryDelay);
+				retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+			}
+		}
+	}
+
+	private void awaitAppend() {
+		synchronized (signal) {
+			try {
+				while (!appended && !woken && !closed) {
+					signal.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				closed = true;
+			}
+			appended = false;
+			woken = false;
+		}
+	}
+
+	/**
+	 * Waits for the retry delay, new messages do not shorten the delay, only a {@link #wakeUp()}
+	 */
+	private void awaitRetry(long delay) {
+		long deadline = System.currentTimeMillis() + delay;
+		synchronized (signal) {
+			try {
+				long remaining = delay;
+				while (!woken && !closed && remaining > 0) {
+					signal.wait(remaining);
+					remaining = deadline - System.currentTimeMillis();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				closed = true;
+			}
+			appended = false;
+			woken = false;
+		}
+	}
+
+	private void updateBacklog() {
+		metrics.backlog(log.getBacklog(), log.getBacklogBytes());
+	}
+
+	private static byte[] encode(Entry entry) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.payload.length + 64);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeUTF(entry.topic);
+			out.writeShort(entry.attributes.size());
+			for (Map.Entry<String, String> attribute : entry.attributes.entrySet()) {
+				out.writeUTF(attribute.getKey());
+				out.writeUTF(attribute.getValue());
+			}
+			out.write(entry.payload);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Returns the size of the string written by {@link DataOutputStream#writeUTF(String)}
+	 */
+	private static long utfLength(String value) {
+		long length = 2;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+		}
+		return length;
+	}
+
+	private static Entry decode(byte[] record) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+			String topic = in.readUTF();
+			int count = in.readUnsignedShort();
+			Map<String, String> attributes = new LinkedHashMap<>();
+			for (int i = 0; i < count; i++) {
+				attributes.put(in.readUTF(), in.readUTF());
+			}
+			byte[] payload = new byte[in.available()];
+			in.readFully(payload);
+			return new Entry(topic, attributes, payload);
+		}
+	}
+
+	/**
+	 * Publishes the messages of the outbox to the broker
+	 */
+	@FunctionalInterface
+	public interface Sender {
+
+		/**
+		 * Publishes a batch in the given order. The batch is published again, if this method fails.
+		 * @param entries the messages
+		 * @throws Exception thrown, if the broker is not reachable
+		 */
+		void send(List<Entry> entries) throws Exception;
+
+	}
+
+	/**
+	 * A message in the outbox
+	 */
+	public static final class Entry {
+
+		private final String topic;
+		private final Map<String, String> attributes;
+		private final byte[] payload;
+
+		private Entry(String topic, Map<String, String> attributes, byte[] payload) {
+			this.topic = topic;
+			this.attributes = attributes == null ? Collections.emptyMap() : attributes;
+			this.payload = payload;
+		}
+
+		/**
+		 * Returns the topic
+		 * @return the topic
+		 */
+		public String getTopic() {
+			return topic;
+		}
+
+		/**
+		 * Returns the transport specific publish settings
+		 * @return the attributes, never <code>null</code>
+		 */
+		public Map<String, String> getAttributes() {
+			return attributes;
+		}
+
+		/**
+		 * Returns the encoded payload
+		 * @return the payload
+		 */
+		public byte[] getPayload() {
+			return payload;
+		}
+
+	}
+
+}
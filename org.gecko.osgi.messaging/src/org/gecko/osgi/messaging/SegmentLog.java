@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of records in memory mapped segment files of a fixed size. A record is written as length,
+ * CRC32 and data, the length is written last, so that a torn record is detected by the recovery.
+ * The read position is kept in a checkpoint file, so that the records, that were not committed, survive a restart.
+ * Fully read segments are deleted. If the segments exceed the maximum size, the oldest segment is deleted,
+ * regardless if it was read.
+ * <p>
+ * The writes go to the page cache, the segments are only forced to the disk, when they are full or the log is closed.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class SegmentLog implements Closeable {
+
+	private static final Logger logger = Logger.getLogger(SegmentLog.class.getName());
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String CHECKPOINT = "checkpoint";
+	// length and CRC32 of a record
+	private static final int HEADER_SIZE = 8;
+	private static final int MIN_SEGMENT_SIZE = 1024;
+
+	private final Path directory;
+	private final int segmentSize;
+	private final long maxBytes;
+	private final Deque<Segment> segments = new ArrayDeque<>();
+	private final FileChannel checkpointChannel;
+	private final MappedByteBuffer checkpoint;
+	private final CRC32 crc = new CRC32();
+	private int readOffset = 0;
+	private int readRecords = 0;
+	private boolean closed = false;
+
+	/**
+	 * Creates a new instance and recovers the records of an existing log in the directory.
+	 * @param directory the directory of the segment files
+	 * @param segmentSize the size of a segment file in bytes
+	 * @param maxBytes the maximum size of all segment files in bytes, at least one segment
+	 * @throws IOException thrown, if the segments cannot be opened
+	 */
+	public SegmentLog(Path directory, int segmentSize, long maxBytes) throws IOException {
+		if (segmentSize < MIN_SEGMENT_SIZE) {
+			throw new IllegalArgumentException("The segment size must be at least " + MIN_SEGMENT_SIZE + " bytes");
+		}
+		if (maxBytes < segmentSize) {
+			throw new IllegalArgumentException("The maximum size must be at least one segment");
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxBytes = maxBytes;
+		Files.createDirectories(directory);
+		checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		checkpoint = checkpointChannel.map(MapMode.READ_WRITE, 0, 16);
+		recover(checkpoint.getLong(0), checkpoint.getInt(8));
+	}
+
+	/**
+	 * Appends a record. If the segments exceed the maximum size afterwards, the oldest segment is deleted.
+	 * @param record the record, not empty and at most the segment size minus 8 bytes
+	 * @return the number of unread records, that were deleted to keep the maximum size
+	 * @throws IOException thrown, if a new segment cannot be created
+	 */
+	public synchronized long append(byte[] record) throws IOException {
+		ensureOpen();
+		if (record.length == 0 || record.length > segmentSize - HEADER_SIZE) {
+			throw new IllegalArgumentException("The record size must be between 1 and " + (segmentSize - HEADER_SIZE) + " bytes");
+		}
+		Segment tail = segments.getLast();
+		if (tail.writeOffset + HEADER_SIZE + record.length > segmentSize) {
+			tail.buffer.force();
+			tail = createSegment(tail.index + 1);
+			segments.addLast(tail);
+		}
+		int offset = tail.writeOffset;
+		crc.reset();
+		crc.update(record);
+		tail.buffer.putInt(offset + 4, (int) crc.getValue());
+		ByteBuffer data = tail.buffer.duplicate();
+		data.position(offset + HEADER_SIZE);
+		data.put(record);
+		// the length marks the record as complete
+		tail.buffer.putInt(offset, record.length);
+		tail.writeOffset = offset + HEADER_SIZE + record.length;
+		tail.records++;
+		if (tail.writeOffset + HEADER_SIZE <= segmentSize) {
+			// a torn record of the last run may follow
+			tail.buffer.putInt(tail.writeOffset, 0);
+		}
+		return enforceMaxSize();
+	}
+
+	/**
+	 * Returns the maximum size of a record
+	 * @return the segment size minus the record header
+	 */
+	public int getMaxRecordSize() {
+		return segmentSize - HEADER_SIZE;
+	}
+
+	/**
+	 * Returns the next unread records, without moving the read position
+	 * @param maxRecords the maximum number of records
+	 * @return the records, that have to be committed with {@link #commit(ReadBatch)}
+	 */
+	public synchronized ReadBatch read(int maxRecords) {
+		ensureOpen();
+		Iterator<Segment> iterator = segments.iterator();
+		Segment segment = iterator.next();
+		ReadBatch batch = new ReadBatch(segment.index, readOffset);
+		int offset = readOffset;
+		while (batch.records.size() < maxRecords) {
+			if (offset >= segment.writeOffset) {
+				if (!iterator.hasNext()) {
+					break;
+				}
+				segment = iterator.next();
+				offset = 0;
+				continue;
+			}
+			int length = segment.buffer.getInt(offset);
+			byte[] record = new byte[length];
+			ByteBuffer data = segment.buffer.duplicate();
+			data.position(offset + HEADER_SIZE);
+			data.get(record);
+			batch.records.add(record);
+			offset += HEADER_SIZE + length;
+		}
+		return batch;
+	}
+
+	/**
+	 * Moves the read position behind the records of the batch. Fully read segments are deleted.
+	 * @param batch the batch, that was read
+	 * @return <code>false</code>, if the read position was moved in between, because the oldest segment was deleted
+	 */
+	public synchronized boolean commit(ReadBatch batch) {
+		ensureOpen();
+		Segment head = segments.getFirst();
+		if (head.index != batch.segment || readOffset != batch.offset) {
+			return false;
+		}
+		int remaining = batch.records.size();
+		while (remaining > 0) {
+			head = segments.getFirst();
+			if (readOffset >= head.writeOffset) {
+				// cannot be the tail, the batch was read from the following segments
+				deleteHead();
+				continue;
+			}
+			readOffset += HEADER_SIZE + head.buffer.getInt(readOffset);
+			readRecords++;
+			remaining--;
+		}
+		head = segments.getFirst();
+		if (readOffset >= head.writeOffset && segments.size() > 1) {
+			deleteHead();
+		}
+		writeCheckpoint();
+		return true;
+	}
+
+	/**
+	 * Returns the number of unread records
+	 * @return the number of unread records
+	 */
+	public synchronized long getBacklog() {
+		long records = 0;
+		for (Segment segment : segments) {
+			records += segment.records;
+		}
+		return records - readRecords;
+	}
+
+	/**
+	 * Returns the size of the unread records
+	 * @return the size in bytes, including the record headers
+	 */
+	public synchronized long getBacklogBytes() {
+		long bytes = 0;
+		for (Segment segment : segments) {
+			bytes += segment.writeOffset;
+		}
+		return bytes - readOffset;
+	}
+
+	/**
+	 * Returns <code>true</code>, if all records were read
+	 * @return <code>true</code>, if there is no unread record
+	 */
+	public synchronized boolean isEmpty() {
+		return segments.size() == 1 && readOffset >= segments.getFirst().writeOffset;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		writeCheckpoint();
+		checkpoint.force();
+		checkpointChannel.close();
+		for (Segment segment : segments) {
+			segment.buffer.force();
+			segment.channel.close();
+		}
+		segments.clear();
+	}
+
+	private void recover(long checkpointSegment, int checkpointOffset) throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			stream.forEach(files::add);
+		}
+		// the names have a fixed width, so that they sort by index
+		Collections.sort(files);
+		for (Path file : files) {
+			long index = Long.parseLong(file.getFileName().toString().replace(SEGMENT_SUFFIX, ""));
+			if (index < checkpointSegment) {
+				Files.deleteIfExists(file);
+				continue;
+			}
+			segments.addLast(createSegment(index));
+		}
+		if (segments.isEmpty()) {
+			segments.addLast(createSegment(checkpointSegment));
+		}
+		Segment head = segments.getFirst();
+		if (head.index == checkpointSegment) {
+			while (readOffset < Math.min(checkpointOffset, head.writeOffset)) {
+				readOffset += HEADER_SIZE + head.buffer.getInt(readOffset);
+				readRecords++;
+			}
+		}
+		logger.log(Level.FINE, () -> "Recovered " + getBacklog() + " unread records from " + directory);
+	}
+
+	private Segment createSegment(long index) throws IOException {
+		Path file = directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		Segment segment = new Segment(index, file, channel, channel.map(MapMode.READ_WRITE, 0, segmentSize));
+		// find the end of the complete records
+		int offset = 0;
+		while (offset + HEADER_SIZE <= segmentSize) {
+			int length = segment.buffer.getInt(offset);
+			if (length <= 0 || offset + HEADER_SIZE + length > segmentSize || !isValid(segment.buffer, offset, length)) {
+				break;
+			}
+			offset += HEADER_SIZE + length;
+			segment.records++;
+		}
+		segment.writeOffset = offset;
+		return segment;
+	}
+
+	private boolean isValid(MappedByteBuffer buffer, int offset, int length) {
+		ByteBuffer data = buffer.duplicate();
+		data.position(offset + HEADER_SIZE);
+		data.limit(offset + HEADER_SIZE + length);
+		crc.reset();
+		crc.update(data);
+		return (int) crc.getValue() == buffer.getInt(offset + 4);
+	}
+
+	private long enforceMaxSize() {
+		long dropped = 0;
+		while (segments.size() > 1 && (long) segments.size() * segmentSize > maxBytes) {
+			dropped += segments.getFirst().records - readRecords;
+			deleteHead();
+		}
+		if (dropped > 0) {
+			long count = dropped;
+			logger.log(Level.WARNING, () -> "Deleted " + count + " unread records, because the log in " + directory + " exceeded " + maxBytes + " bytes");
+			writeCheckpoint();
+		}
+		return dropped;
+	}
+
+	private void deleteHead() {
+		Segment head = segments.removeFirst();
+		readOffset = 0;
+		readRecords = 0;
+		try {
+			head.channel.close();
+			Files.deleteIfExists(head.file);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, e, () -> "Cannot delete the segment " + head.file);
+		}
+	}
+
+	private void writeCheckpoint() {
+		checkpoint.putLong(0, segments.getFirst().index);
+		checkpoint.putInt(8, readOffset);
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new IllegalStateException("The log in " + directory + " is closed");
+		}
+	}
+
+	/**
+	 * Records, that were read, but not committed yet
+	 */
+	public static final class ReadBatch {
+
+		private final long segment;
+		private final int offset;
+		private final List<byte[]> records = new ArrayList<>();
+
+		private ReadBatch(long segment, int offset) {
+			this.segment = segment;
+			this.offset = offset;
+		}
+
+		/**
+		 * Returns the records
+		 * @return the records in append order
+		 */
+		public List<byte[]> getRecords() {
+			return records;
+		}
+
+		/**
+		 * Returns <code>true</code>, if no record was read
+		 * @return <code>true</code>, if the batch is empty
+		 */
+		public boolean isEmpty() {
+			return records.isEmpty();
+		}
+
+	}
+
+	private static final class Segment {
+
+		private final long index;
+		private final Path file;
+		private final FileChannel channel;
+		private final MappedByteBuffer buffer;
+		private int writeOffset = 0;
+		private int records = 0;
+
+		private Segment(long index, Path file, FileChannel channel, MappedByteBuffer buffer) {
+			this.index = index;
+			this.file = file;
+			this.channel = channel;
+			this.buffer = buffer;
+		}
+
+	}
+
+}
@@ -14,6 +14,8 @@
 package org.gecko.osgi.messaging;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Simple Message implementation
@@ -25,15 +27,56 @@ public class SimpleMessage implements Message {
 	private final String topic;
 	private final ByteBuffer payload;
 	private final MessagingContext context;
+	private final PooledByteBuffer pooledPayload;
+	private final AtomicBoolean released = new AtomicBoolean();
+	// shared by all instances of the message
+	private final AtomicReference<Runnable> onConsumed;
+	private long receiveTime;
+	private String messageId;
 
 	public SimpleMessage(String topic, ByteBuffer payload) {
-		this(topic, payload, SimpleMessagingContextBuilder.builder().build());
+		this(topic, payload, SimpleMessagingContext.getDefault());
 	}
 	
 	public SimpleMessage(String topic, ByteBuffer payload, MessagingContext context) {
 		this.topic = topic;
 		this.payload = payload;
 		this.context = context;
+		this.pooledPayload = null;
+		this.onConsumed = new AtomicReference<>();
+	}
+	
+	/**
+	 * Creates a message, whose payload is leased from a {@link ByteBufferPool}. 
+	 * The lease is given back to the pool with {@link #release()}. The payload is a slice of the 
+	 * leased buffer, so that it has an own position and limit. The backing array of pooled heap buffers 
+	 * can be larger than the payload, so array access has to respect the array offset and the remaining bytes.
+	 * @param topic the topic
+	 * @param pooledPayload the leased payload
+	 * @param context the context
+	 */
+	public SimpleMessage(String topic, PooledByteBuffer pooledPayload, MessagingContext context) {
+		this.topic = topic;
+		this.payload = pooledPayload.buffer().slice();
+		this.context = context;
+		this.pooledPayload = pooledPayload;
+		this.onConsumed = new AtomicReference<>();
+	}
+	
+	/**
+	 * Creates another instance of the given message for an additional consumer, see {@link #retain()}. 
+	 * A pooled payload is retained once more.
+	 * @param message the message to share the payload with
+	 * @throws IllegalStateException, if the pooled payload was already released
+	 */
+	protected SimpleMessage(SimpleMessage message) {
+		this.topic = message.topic;
+		this.context = message.context;
+		this.pooledPayload = message.pooledPayload == null ? null : message.pooledPayload.retain();
+		this.payload = message.payload.duplicate();
+		this.receiveTime = message.receiveTime;
+		this.messageId = message.messageId;
+		this.onConsumed = message.onConsumed;
 	}
 
 	/* 
@@ -59,4 +102,79 @@ public class SimpleMessage implements Message {
 		return context;
 	}
 
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#getReceiveTime()
+	 */
+	@Override
+	public long getReceiveTime() {
+		return receiveTime;
+	}
+
+	/**
+	 * Sets the receive time of the message
+	 * @param receiveTime the receive time in nanoseconds of {@link System#nanoTime()}
+	 */
+	public void setReceiveTime(long receiveTime) {
+		this.receiveTime = receiveTime;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#getMessageId()
+	 */
+	@Override
+	public String getMessageId() {
+		return messageId;
+	}
+
+	/**
+	 * Sets the id of the message
+	 * @param messageId the message id to set
+	 */
+	public void setMessageId(String messageId) {
+		this.messageId = messageId;
+	}
+
+	/**
+	 * Sets the callback, that acknowledges the message or returns its credit, when it is consumed, see {@link #consumed()}.
+	 * It is shared with all instances of the message.
+	 * @param onConsumed the callback, can be <code>null</code>
+	 */
+	public void setOnConsumed(Runnable onConsumed) {
+		this.onConsumed.set(onConsumed);
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#consumed()
+	 */
+	@Override
+	public void consumed() {
+		Runnable callback = onConsumed.getAndSet(null);
+		if (callback != null) {
+			callback.run();
+		}
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#release()
+	 */
+	@Override
+	public void release() {
+		if (pooledPayload != null && released.compareAndSet(false, true)) {
+			pooledPayload.release();
+		}
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#retain()
+	 */
+	@Override
+	public Message retain() {
+		return new SimpleMessage(this);
+	}
+
 }
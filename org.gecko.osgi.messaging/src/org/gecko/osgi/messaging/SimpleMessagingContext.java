@@ -20,6 +20,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.osgi.util.function.Consumer;
 import org.osgi.util.function.Predicate;
@@ -36,6 +37,9 @@ import org.osgi.util.pushstream.QueuePolicyOption;
  */
 public class SimpleMessagingContext implements MessagingContext {
 	
+	private static final SimpleMessagingContext DEFAULT = new SimpleMessagingContext().freeze();
+	
+	private boolean immutable = false;
 	private String id;
 	private String source;
 	private String queueName;
@@ -47,6 +51,17 @@ public class SimpleMessagingContext implements MessagingContext {
 	private String correlationId = null;
 	private int bufferSize = -1;
 	private int parallelism = 1;
+	private boolean virtualThreads = false;
+	private int partitions = 0;
+	private Function<Message, ?> partitionKey = null;
+	private Function<Message, ?> deduplicationKey = null;
+	private int deduplicationSize = 0;
+	private long deduplicationTtl = 0L;
+	private Function<Message, ?> conflationKey = null;
+	private int conflationSize = 0;
+	private boolean latencyStamping = false;
+	private Class<?> payloadType = null;
+	private int credits = 0;
 	private ExecutorService executor = null;
 	private ScheduledExecutorService scheduler = null;
 	private BlockingQueue<PushEvent<? extends Message>> bufferQueue = null;
@@ -60,6 +75,42 @@ public class SimpleMessagingContext implements MessagingContext {
 	private Consumer<Message> ackFunction;
 	private Consumer<Message> nackFunction;
 
+	/**
+	 * Returns the shared, immutable default context. It can be used for all messages, that
+	 * do not carry any context information, instead of creating a new context per message.
+	 * @return the shared default context
+	 */
+	public static MessagingContext getDefault() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * Returns <code>true</code>, if this context is shared and cannot be modified anymore
+	 * @return <code>true</code>, if this context is immutable
+	 */
+	public boolean isImmutable() {
+		return immutable;
+	}
+	
+	/**
+	 * Makes this context immutable, so that it can safely be shared between messages and threads.
+	 * Calling a public setter afterwards results in an {@link UnsupportedOperationException}.
+	 * @return this context instance
+	 */
+	protected SimpleMessagingContext freeze() {
+		immutable = true;
+		return this;
+	}
+	
+	/**
+	 * Throws an {@link UnsupportedOperationException}, if the context is immutable
+	 */
+	protected void checkMutable() {
+		if (immutable) {
+			throw new UnsupportedOperationException("This context is shared and cannot be modified");
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.gecko.osgi.messaging.MessagingContext#getBufferSize()
 	 */
@@ -88,6 +139,126 @@ public class SimpleMessagingContext implements MessagingContext {
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContext#isVirtualThreads()
+	 */
+	@Override
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+	
+	void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContext#getPartitions()
+	 */
+	@Override
+	public int getPartitions() {
+		return partitions;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContext#getPartitionKey()
+	 */
+	@Override
+	public Function<Message, ?> getPartitionKey() {
+		return partitionKey;
+	}
+	
+	void setPartitioning(int partitions, Function<Message, ?> partitionKey) {
+		this.partitions = partitions;
+		this.partitionKey = partitionKey;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContext#getDeduplicationKey()
+	 */
+	@Override
+	public Function<Message, ?> getDeduplicationKey() {
+		return deduplicationKey;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContext#getDeduplicationSize()
+	 */
+	@Override
+	public int getDeduplicationSize() {
+		return deduplicationSize;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContext#getDeduplicationTtl()
+	 */
+	@Override
+	public long getDeduplicationTtl() {
+		return deduplicationTtl;
+	}
+	
+	void setDeduplication(Function<Message, ?> deduplicationKey, int deduplicationSize, long deduplicationTtl) {
+		this.deduplicationKey = deduplicationKey;
+		this.deduplicationSize = deduplicationSize;
+		this.deduplicationTtl = deduplicationTtl;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContext#getConflationKey()
+	 */
+	@Override
+	public Function<Message, ?> getConflationKey() {
+		return conflationKey;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContext#getConflationSize()
+	 */
+	@Override
+	public int getConflationSize() {
+		return conflationSize;
+	}
+	
+	void setConflation(Function<Message, ?> conflationKey, int conflationSize) {
+		this.conflationKey = conflationKey;
+		this.conflationSize = conflationSize;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContext#isLatencyStamping()
+	 */
+	@Override
+	public boolean isLatencyStamping() {
+		return latencyStamping;
+	}
+	
+	void setLatencyStamping(boolean latencyStamping) {
+		this.latencyStamping = latencyStamping;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContext#getCredits()
+	 */
+	@Override
+	public int getCredits() {
+		return credits;
+	}
+	
+	void setCredits(int credits) {
+		this.credits = credits;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContext#getPayloadType()
+	 */
+	@Override
+	public Class<?> getPayloadType() {
+		return payloadType;
+	}
+	
+	void setPayloadType(Class<?> payloadType) {
+		this.payloadType = payloadType;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.gecko.osgi.messaging.MessagingContext#getExecutor()
 	 */
@@ -212,6 +383,7 @@ public class SimpleMessagingContext implements MessagingContext {
 	 * @param contentType the contentType to set
 	 */
 	public void setContentType(String contentType) {
+		checkMutable();
 		this.contentType = contentType;
 	}
 
@@ -227,6 +399,7 @@ public class SimpleMessagingContext implements MessagingContext {
 	 * @param replyTo the replyTo to set
 	 */
 	public void setReplyAddress(String replyTo) {
+		checkMutable();
 		this.replyTo = replyTo;
 	}
 
@@ -242,6 +415,7 @@ public class SimpleMessagingContext implements MessagingContext {
 	 * @param correlationId the correlationId to set
 	 */
 	public void setCorrelationId(String correlationId) {
+		checkMutable();
 		this.correlationId = correlationId;
 	}
 	
@@ -257,6 +431,7 @@ public class SimpleMessagingContext implements MessagingContext {
 	 * @param queueName the queueName to set
 	 */
 	public void setQueueName(String queueName) {
+		checkMutable();
 		this.queueName = queueName;
 	}
 	
@@ -272,6 +447,7 @@ public class SimpleMessagingContext implements MessagingContext {
 	 * @param routingKey the routingKey to set
 	 */
 	public void setRoutingKey(String routingKey) {
+		checkMutable();
 		this.routingKey = routingKey;
 	}
 	
@@ -287,6 +463,7 @@ public class SimpleMessagingContext implements MessagingContext {
 	 * @param contentEncoding the contentEncoding to set
 	 */
 	public void setContentEncoding(String contentEncoding) {
+		checkMutable();
 		this.contentEncoding = contentEncoding;
 	}
 	
@@ -364,6 +541,7 @@ public class SimpleMessagingContext implements MessagingContext {
 	}
 	
 	public void setReplyToPolicy(ReplyToPolicy replyToPolicy) {
+		checkMutable();
 		this.replyToPolicy = replyToPolicy;
 	}
 
@@ -20,6 +20,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.gecko.util.pushstream.PushStreamContext;
 import org.osgi.util.function.Consumer;
@@ -44,6 +45,17 @@ public class SimpleMessagingContextBuilder implements MessagingContextBuilder {
 	private String correlationId = null;
 	private int bufferSize = 0;
 	private int parallelism = 1;
+	private boolean virtualThreads = false;
+	private int partitions = 0;
+	private Function<Message, ?> partitionKey = null;
+	private Function<Message, ?> deduplicationKey = null;
+	private int deduplicationSize = 0;
+	private long deduplicationTtl = 0L;
+	private Function<Message, ?> conflationKey = null;
+	private int conflationSize = 0;
+	private boolean latencyStamping = false;
+	private Class<?> payloadType = null;
+	private int credits = 0;
 	private ExecutorService executor = null;
 	private ScheduledExecutorService scheduler = null;
 	private BlockingQueue<PushEvent<? extends Message>> bufferQueue = null;
@@ -132,6 +144,30 @@ public class SimpleMessagingContextBuilder implements MessagingContextBuilder {
 		if (source != null) {
 			ctx.setSource(source);
 		}
+		if (partitions > 1 && partitionKey != null) {
+			ctx.setPartitioning(partitions, partitionKey);
+		}
+		if (deduplicationKey != null) {
+			ctx.setDeduplication(deduplicationKey, deduplicationSize, deduplicationTtl);
+		}
+		if (conflationKey != null) {
+			ctx.setConflation(conflationKey, conflationSize);
+		}
+		if (latencyStamping) {
+			ctx.setLatencyStamping(true);
+		}
+		if (payloadType != null) {
+			ctx.setPayloadType(payloadType);
+		}
+		if (credits > 0) {
+			ctx.setCredits(credits);
+		}
+		if (virtualThreads) {
+			ctx.setVirtualThreads(true);
+			if (ctx.getExecutor() == null) {
+				ctx.setExecutor(MessagingExecutors.getVirtualThreadExecutor());
+			}
+		}
 		return ctx;
 	}
 
@@ -201,6 +237,79 @@ public class SimpleMessagingContextBuilder implements MessagingContextBuilder {
 		return this;
 	}
 
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContextBuilder#withVirtualThreads()
+	 */
+	@Override
+	public MessagingContextBuilder withVirtualThreads() {
+		this.virtualThreads = true;
+		return this;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContextBuilder#withPartitioning(int, java.util.function.Function)
+	 */
+	@Override
+	public MessagingContextBuilder withPartitioning(int lanes, Function<Message, ?> keyExtractor) {
+		if (lanes > 1 && keyExtractor != null) {
+			this.partitions = lanes;
+			this.partitionKey = keyExtractor;
+		}
+		return this;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContextBuilder#withDeduplication(java.util.function.Function, int, long)
+	 */
+	@Override
+	public MessagingContextBuilder withDeduplication(Function<Message, ?> keyExtractor, int maxSize, long ttl) {
+		if (keyExtractor != null) {
+			this.deduplicationKey = keyExtractor;
+			this.deduplicationSize = maxSize;
+			this.deduplicationTtl = ttl;
+		}
+		return this;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContextBuilder#withConflation(java.util.function.Function, int)
+	 */
+	@Override
+	public MessagingContextBuilder withConflation(Function<Message, ?> keyExtractor, int maxKeys) {
+		if (keyExtractor != null) {
+			this.conflationKey = keyExtractor;
+			this.conflationSize = maxKeys;
+		}
+		return this;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContextBuilder#withLatencyStamping()
+	 */
+	@Override
+	public MessagingContextBuilder withLatencyStamping() {
+		this.latencyStamping = true;
+		return this;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContextBuilder#withCredits(int)
+	 */
+	@Override
+	public MessagingContextBuilder withCredits(int credits) {
+		this.credits = credits;
+		return this;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.MessagingContextBuilder#withPayloadType(java.lang.Class)
+	 */
+	@Override
+	public MessagingContextBuilder withPayloadType(Class<?> type) {
+		this.payloadType = type;
+		return this;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.gecko.osgi.messaging.MessagingContextBuilder#queue(java.lang.String)
 	 */
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.util.pushstream.PushStream;
+
+/**
+ * Reference counted registry of the broker side subscriptions of an adapter. There is one subscription per key,
+ * e.g. the topic filter and the QoS or acknowledge mode, that fans out in process to many push streams. Every
+ * stream has its own buffer and backpressure. When the last stream of a subscription is closed, the subscription
+ * is removed and closed, so that the broker stops delivering.
+ * @param <K> the key type
+ * @param <S> the subscription type
+ * @author agent
+ * @since 3.2.1
+ */
+public final class SubscriptionRegistry<K, S> {
+
+	private static final Logger logger = Logger.getLogger(SubscriptionRegistry.class.getName());
+
+	private final Map<K, Entry<S>> entries = new HashMap<>();
+	private final Consumer<? super S> closer;
+
+	/**
+	 * Creates a new instance.
+	 * @param closer the callback, that closes a subscription, that is not referenced anymore
+	 */
+	public SubscriptionRegistry(Consumer<? super S> closer) {
+		this.closer = closer;
+	}
+
+	/**
+	 * Returns the subscription for the key and takes a reference. A new subscription is created, if there is none.
+	 * The subscription is created outside of the registry lock, because it can take a broker round trip. Concurrent
+	 * callers for the same key wait for it, the callers for other keys are not blocked.
+	 * Every reference has to be given back with {@link #release(Object, Object)}.
+	 * @param key the key
+	 * @param factory creates the subscription for the key
+	 * @return the subscription
+	 * @throws RuntimeException the exception of the factory, if the subscription cannot be created
+	 */
+	public S acquire(K key, Function<? super K, ? extends S> factory) {
+		Entry<S> entry;
+		boolean create = false;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry<>();
+				entries.put(key, entry);
+				create = true;
+			}
+			entry.references++;
+		}
+		if (create) {
+			try {
+				entry.subscription.complete(factory.apply(key));
+				logger.log(Level.FINE, () -> "Created the subscription " + key);
+			} catch (RuntimeException | Error e) {
+				synchronized (this) {
+					entries.remove(key, entry);
+				}
+				entry.subscription.completeExceptionally(e);
+				throw e;
+			}
+		}
+		try {
+			return entry.subscription.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Gives a reference back. The subscription is closed, when the last reference is given back.
+	 * @param key the key
+	 * @param subscription the subscription, the reference was taken for
+	 */
+	public void release(K key, S subscription) {
+		synchronized (this) {
+			Entry<S> entry = entries.get(key);
+			// the subscription may have been replaced after it was closed
+			if (entry == null || entry.subscription.getNow(null) != subscription || --entry.references > 0) {
+				return;
+			}
+			entries.remove(key);
+		}
+		logger.log(Level.FINE, () -> "Closing the subscription " + key + ", because its last stream was closed");
+		close(subscription);
+	}
+
+	/**
+	 * Takes a reference for the stream, that is given back, when the stream is closed
+	 * @param key the key
+	 * @param factory creates the subscription for the key
+	 * @param streamFactory creates the stream of the subscription
+	 * @return the stream
+	 * @throws Exception thrown, if the stream cannot be created. The reference is given back then.
+	 */
+	public PushStream<Message> open(K key, Function<? super K, ? extends S> factory, StreamFactory<S> streamFactory) throws Exception {
+		S subscription = acquire(key, factory);
+		try {
+			return streamFactory.createStream(subscription).onClose(() -> release(key, subscription));
+		} catch (Exception e) {
+			release(key, subscription);
+			throw e;
+		}
+	}
+
+	/**
+	 * Removes the subscription, regardless of its references, e.g. if its connection is broken
+	 * @param key the key
+	 * @return the removed subscription or <code>null</code>
+	 */
+	public S remove(K key) {
+		Entry<S> entry;
+		synchronized (this) {
+			entry = entries.remove(key);
+		}
+		return entry == null ? null : entry.subscription.getNow(null);
+	}
+
+	/**
+	 * Returns the number of streams, that reference the subscription
+	 * @param key the key
+	 * @return the number of references
+	 */
+	public synchronized int getReferences(K key) {
+		Entry<S> entry = entries.get(key);
+		return entry == null ? 0 : entry.references;
+	}
+
+	/**
+	 * Returns the number of subscriptions
+	 * @return the number of subscriptions
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Closes all subscriptions
+	 */
+	public void closeAll() {
+		List<Entry<S>> closed;
+		synchronized (this) {
+			closed = new ArrayList<>(entries.values());
+			entries.clear();
+		}
+		// a subscription, that is still created, is closed, when it is done
+		closed.forEach(e -> e.subscription.thenAccept(this::close));
+	}
+
+	private void close(S subscription) {
+		try {
+			closer.accept(subscription);
+		} catch (Exception e) {
+			logger.log(Level.WARNING, e, () -> "Error closing the subscription " + subscription);
+		}
+	}
+
+	/**
+	 * Creates the stream of a subscription
+	 * @param <S> the subscription type
+	 */
+	@FunctionalInterface
+	public interface StreamFactory<S> {
+
+		/**
+		 * Creates the stream
+		 * @param subscription the subscription
+		 * @return the stream
+		 * @throws Exception thrown, if the stream cannot be created
+		 */
+		PushStream<Message> createStream(S subscription) throws Exception;
+
+	}
+
+	private static final class Entry<S> {
+
+		private final CompletableFuture<S> subscription = new CompletableFuture<>();
+		private int references = 0;
+
+	}
+
+}
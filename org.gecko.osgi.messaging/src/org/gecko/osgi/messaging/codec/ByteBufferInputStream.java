@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.codec;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream, that reads the remaining bytes of a {@link ByteBuffer} without copying them first.
+ * The position of the given buffer is not changed.
+ * @author agent
+ * @since 3.2.1
+ */
+final class ByteBufferInputStream extends InputStream {
+
+	private final ByteBuffer buffer;
+
+	ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer.duplicate();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.InputStream#read()
+	 */
+	@Override
+	public int read() {
+		return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		int count = Math.min(len, buffer.remaining());
+		buffer.get(b, off, count);
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.InputStream#available()
+	 */
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+}
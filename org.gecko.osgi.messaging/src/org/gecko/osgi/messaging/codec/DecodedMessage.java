@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.codec;
+
+import java.nio.ByteBuffer;
+
+import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.MessagingContext;
+
+/**
+ * Message, whose payload was already decoded by the adapter on its delivery thread, before the message
+ * was buffered. All other calls are delegated to the received message.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class DecodedMessage implements Message {
+
+	private final Message message;
+	private final Object value;
+
+	/**
+	 * Creates a new instance.
+	 * @param message the received message
+	 * @param value the decoded payload
+	 */
+	public DecodedMessage(Message message, Object value) {
+		this.message = message;
+		this.value = value;
+	}
+
+	/**
+	 * Returns the decoded payload
+	 * @return the decoded payload
+	 */
+	public Object getValue() {
+		return value;
+	}
+
+	/**
+	 * Returns the received message
+	 * @return the received message
+	 */
+	public Message getMessage() {
+		return message;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#topic()
+	 */
+	@Override
+	public String topic() {
+		return message.topic();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#payload()
+	 */
+	@Override
+	public ByteBuffer payload() {
+		return message.payload();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#getContext()
+	 */
+	@Override
+	public MessagingContext getContext() {
+		return message.getContext();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#getReceiveTime()
+	 */
+	@Override
+	public long getReceiveTime() {
+		return message.getReceiveTime();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#getMessageId()
+	 */
+	@Override
+	public String getMessageId() {
+		return message.getMessageId();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#consumed()
+	 */
+	@Override
+	public void consumed() {
+		message.consumed();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#release()
+	 */
+	@Override
+	public void release() {
+		message.release();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.Message#retain()
+	 */
+	@Override
+	public Message retain() {
+		return new DecodedMessage(message.retain(), value);
+	}
+
+}
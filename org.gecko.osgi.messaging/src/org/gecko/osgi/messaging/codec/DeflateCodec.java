@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Codec for the <code>deflate</code> content encoding (zlib format). The deflater and inflater are
+ * released, when the streams are closed.
+ * @author agent
+ * @since 3.2.1
+ */
+public class DeflateCodec implements PayloadCodec {
+
+	public static final String ENCODING = "deflate";
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final int level;
+
+	/**
+	 * Creates a new instance with the fastest compression level, that fits messaging best
+	 */
+	public DeflateCodec() {
+		this(Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * Creates a new instance.
+	 * @param level the compression level, see {@link Deflater}
+	 */
+	public DeflateCodec(int level) {
+		this.level = level;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.codec.PayloadCodec#getEncoding()
+	 */
+	@Override
+	public String getEncoding() {
+		return ENCODING;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.codec.PayloadCodec#encode(java.io.OutputStream)
+	 */
+	@Override
+	public OutputStream encode(OutputStream out) throws IOException {
+		Deflater deflater = new Deflater(level);
+		return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					deflater.end();
+				}
+			}
+
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.codec.PayloadCodec#decode(java.io.InputStream)
+	 */
+	@Override
+	public InputStream decode(InputStream in) throws IOException {
+		Inflater inflater = new Inflater();
+		return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					inflater.end();
+				}
+			}
+
+		};
+	}
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Codec for the <code>gzip</code> content encoding
+ * @author agent
+ * @since 3.2.1
+ */
+public class GzipCodec implements PayloadCodec {
+
+	public static final String ENCODING = "gzip";
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.codec.PayloadCodec#getEncoding()
+	 */
+	@Override
+	public String getEncoding() {
+		return ENCODING;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.codec.PayloadCodec#encode(java.io.OutputStream)
+	 */
+	@Override
+	public OutputStream encode(OutputStream out) throws IOException {
+		return new GZIPOutputStream(out, BUFFER_SIZE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.codec.PayloadCodec#decode(java.io.InputStream)
+	 */
+	@Override
+	public InputStream decode(InputStream in) throws IOException {
+		return new GZIPInputStream(in, BUFFER_SIZE);
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.codec;
+
+import java.nio.ByteBuffer;
+
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Converts message payloads into objects of a type and back. Codecs are used by the typed
+ * <code>subscribe</code> and <code>publish</code> methods of the {@link org.gecko.osgi.messaging.MessagingService}.
+ * They can be registered as OSGi services. Implementations must be thread safe, because one instance is
+ * cached and shared per type.
+ * @param <T> the type of the objects
+ * @author agent
+ * @since 3.2.1
+ */
+@ConsumerType
+public interface MessageCodec<T> {
+
+	/**
+	 * Returns the type, this codec converts
+	 * @return the type, never <code>null</code>
+	 */
+	public Class<T> getType();
+
+	/**
+	 * Decodes the object directly from the remaining bytes of the payload. The position of the
+	 * buffer must not be changed, use {@link ByteBuffer#duplicate()} to read it.
+	 * @param payload the payload
+	 * @return the decoded object
+	 * @throws Exception thrown on decoding errors
+	 */
+	public T decode(ByteBuffer payload) throws Exception;
+
+	/**
+	 * Encodes the object into a payload, that is ready to be read
+	 * @param value the object
+	 * @return the payload
+	 * @throws Exception thrown on encoding errors
+	 */
+	public ByteBuffer encode(T value) throws Exception;
+
+}
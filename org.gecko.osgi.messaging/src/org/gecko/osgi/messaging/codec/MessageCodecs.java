@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.gecko.osgi.messaging.Message;
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushEventSource;
+
+/**
+ * Registry of the {@link MessageCodec}s by type. A codec is looked up once per type and then cached, so that
+ * the typed subscriptions do not search the registered codecs for every message. A codec for a super type
+ * is used, if there is no codec for the type itself. <code>String</code> (UTF-8) and <code>byte[]</code> are
+ * supported out of the box.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class MessageCodecs {
+
+	private static final Logger logger = Logger.getLogger(MessageCodecs.class.getName());
+	private static final MessageCodecs DEFAULT = new MessageCodecs();
+
+	private final CopyOnWriteArrayList<MessageCodec<?>> codecs = new CopyOnWriteArrayList<>();
+	private final Map<Class<?>, MessageCodec<?>> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a new instance with the <code>String</code> and <code>byte[]</code> codecs
+	 */
+	public MessageCodecs() {
+		codecs.add(new StringCodec());
+		codecs.add(new ByteArrayCodec());
+	}
+
+	/**
+	 * Returns the registry, that is used by the adapters
+	 * @return the default registry
+	 */
+	public static MessageCodecs getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Registers a codec. It takes precedence over the codecs registered before for the same type.
+	 * @param codec the codec
+	 */
+	public void register(MessageCodec<?> codec) {
+		codecs.add(0, codec);
+		cache.clear();
+	}
+
+	/**
+	 * Removes a codec
+	 * @param codec the codec
+	 */
+	public void unregister(MessageCodec<?> codec) {
+		if (codecs.remove(codec)) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Returns the codec for the type
+	 * @param <T> the type
+	 * @param type the type
+	 * @return the codec
+	 * @throws IllegalArgumentException, if there is no codec for the type
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> MessageCodec<T> getCodec(Class<T> type) {
+		MessageCodec<?> codec = cache.get(type);
+		if (codec == null) {
+			codec = findCodec(type);
+			if (codec == null) {
+				throw new IllegalArgumentException("There is no message codec for the type " + type.getName());
+			}
+			cache.put(type, codec);
+		}
+		return (MessageCodec<T>) codec;
+	}
+
+	/**
+	 * Returns the payload of the message as object of the type. A payload, that was already decoded on the
+	 * delivery thread of the adapter, is returned without decoding it again.
+	 * @param <T> the type
+	 * @param message the message
+	 * @param type the type
+	 * @return the decoded payload
+	 * @throws Exception thrown on decoding errors
+	 */
+	public <T> T valueOf(Message message, Class<T> type) throws Exception {
+		if (message instanceof DecodedMessage) {
+			Object value = ((DecodedMessage) message).getValue();
+			if (value == null || type.isInstance(value)) {
+				return type.cast(value);
+			}
+		}
+		return getCodec(type).decode(message.payload());
+	}
+
+	/**
+	 * Decodes the message for a subscription with a payload type. The adapters call this method on their
+	 * delivery thread, before the message is buffered. If the message cannot be decoded, it is returned as it is
+	 * and the typed subscription decodes it again, to report the error in the stream.
+	 * @param message the received message
+	 * @param type the payload type, can be <code>null</code>
+	 * @return the decoded message or the given message, if no type is given
+	 */
+	public Message decode(Message message, Class<?> type) {
+		if (type == null || message.payload() == null) {
+			return message;
+		}
+		try {
+			return new DecodedMessage(message, getCodec(type).decode(message.payload()));
+		} catch (Exception e) {
+			logger.log(Level.FINE, e, () -> "Cannot decode a message on " + message.topic() + " into " + type.getName());
+			return message;
+		}
+	}
+
+	/**
+	 * Returns a source, that decodes the messages of the given source for a subscription with a payload type,
+	 * see {@link #decode(Message, Class)}. The messages are decoded on the delivery thread, before they are buffered.
+	 * Every stream of a shared source is opened with an own decoding source, so that the streams can use
+	 * different payload types and do not share the decoded objects.
+	 * @param source the source of the stream
+	 * @param type the payload type of the stream, can be <code>null</code>
+	 * @return the decoding source or the given source, if no type is given
+	 */
+	public PushEventSource<Message> decoding(PushEventSource<Message> source, Class<?> type) {
+		if (type == null) {
+			return source;
+		}
+		return consumer -> source.open(event -> {
+			if (event.isTerminal()) {
+				return consumer.accept(event);
+			}
+			return consumer.accept(PushEvent.data(decode(event.getData(), type)));
+		});
+	}
+
+	/**
+	 * Encodes the object into a payload
+	 * @param <T> the type
+	 * @param value the object
+	 * @param type the type
+	 * @return the payload
+	 * @throws Exception thrown on encoding errors
+	 */
+	public <T> ByteBuffer encode(T value, Class<T> type) throws Exception {
+		return getCodec(type).encode(value);
+	}
+
+	private MessageCodec<?> findCodec(Class<?> type) {
+		for (MessageCodec<?> codec : codecs) {
+			if (codec.getType().equals(type)) {
+				return codec;
+			}
+		}
+		for (MessageCodec<?> codec : codecs) {
+			if (codec.getType().isAssignableFrom(type)) {
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Decodes UTF-8 text directly from the payload buffer
+	 */
+	private static final class StringCodec implements MessageCodec<String> {
+
+		@Override
+		public Class<String> getType() {
+			return String.class;
+		}
+
+		@Override
+		public String decode(ByteBuffer payload) {
+			if (payload.hasArray()) {
+				return new String(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(), StandardCharsets.UTF_8);
+			}
+			return StandardCharsets.UTF_8.decode(payload.duplicate()).toString();
+		}
+
+		@Override
+		public ByteBuffer encode(String value) {
+			return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+		}
+
+	}
+
+	/**
+	 * Copies the payload bytes. The backing array is never handed out, because a pooled payload is reused after the release.
+	 */
+	private static final class ByteArrayCodec implements MessageCodec<byte[]> {
+
+		@Override
+		public Class<byte[]> getType() {
+			return byte[].class;
+		}
+
+		@Override
+		public byte[] decode(ByteBuffer payload) {
+			byte[] bytes = new byte[payload.remaining()];
+			payload.duplicate().get(bytes);
+			return bytes;
+		}
+
+		@Override
+		public ByteBuffer encode(byte[] value) {
+			return ByteBuffer.wrap(value);
+		}
+
+	}
+
+}
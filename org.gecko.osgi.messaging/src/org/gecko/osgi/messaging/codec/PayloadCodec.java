@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Streaming codec for message payloads, e.g. a compression. The codec is selected by the content encoding
+ * of the {@link org.gecko.osgi.messaging.MessagingContext}. Additional codecs, like LZ4 or Zstd, can be
+ * registered as OSGi services.
+ * @author agent
+ * @since 3.2.1
+ */
+@ConsumerType
+public interface PayloadCodec {
+
+	/** Service property, that holds the content encoding of a codec service */
+	public static final String PROP_ENCODING = "messaging.codec.encoding";
+
+	/**
+	 * Returns the content encoding, e.g. <code>gzip</code> or <code>lz4</code>
+	 * @return the content encoding, never <code>null</code>
+	 */
+	public String getEncoding();
+
+	/**
+	 * Wraps the output stream, so that all written bytes are encoded. Closing the returned stream must
+	 * finish the encoding and close the given stream.
+	 * @param out the stream for the encoded bytes
+	 * @return the encoding stream
+	 * @throws IOException thrown on errors creating the stream
+	 */
+	public OutputStream encode(OutputStream out) throws IOException;
+
+	/**
+	 * Wraps the input stream, so that the decoded bytes are read from it
+	 * @param in the stream of the encoded bytes
+	 * @return the decoding stream
+	 * @throws IOException thrown on errors creating the stream
+	 */
+	public InputStream decode(InputStream in) throws IOException;
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.gecko.osgi.messaging.ByteBufferPool;
+import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.PayloadHelper;
+import org.gecko.osgi.messaging.PooledByteBuffer;
+import org.gecko.osgi.messaging.SimpleMessage;
+import org.osgi.util.pushstream.PushStream;
+
+/**
+ * Registry of the {@link PayloadCodec}s by content encoding. The adapters encode the payload on publish and
+ * decode it on subscribe, if a codec is registered for the content encoding of the context. Unknown encodings
+ * and <code>identity</code> leave the payload untouched.
+ * <p>
+ * The payload is streamed from the source buffer through the codec into a buffer leased from the
+ * {@link ByteBufferPool}, so that no intermediate full size copy is made. The decoded size is limited by
+ * {@link #getMaxDecodedSize()}, so that a small compressed payload cannot exhaust the memory.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class PayloadCodecs {
+
+	public static final String IDENTITY = "identity";
+	/** The default maximum size of a decoded payload */
+	public static final int DEFAULT_MAX_DECODED_SIZE = 16 * 1024 * 1024;
+
+	private static final Logger logger = Logger.getLogger(PayloadCodecs.class.getName());
+	private static final int DECODE_SIZE_FACTOR = 4;
+	private static final int TRANSFER_BUFFER_SIZE = 8192;
+	private static final PayloadCodecs DEFAULT = new PayloadCodecs(ByteBufferPool.getDefault());
+
+	private final Map<String, PayloadCodec> builtInCodecs = new ConcurrentHashMap<>();
+	private final Map<String, PayloadCodec> codecs = new ConcurrentHashMap<>();
+	private final ByteBufferPool pool;
+	private volatile int maxDecodedSize = DEFAULT_MAX_DECODED_SIZE;
+
+	/**
+	 * Creates a new instance with the <code>deflate</code> and <code>gzip</code> codecs.
+	 * @param pool the pool for the encoded and decoded payloads
+	 */
+	public PayloadCodecs(ByteBufferPool pool) {
+		this.pool = pool;
+		builtInCodecs.put(DeflateCodec.ENCODING, new DeflateCodec());
+		builtInCodecs.put(GzipCodec.ENCODING, new GzipCodec());
+	}
+
+	/**
+	 * Returns the registry, that is used by the adapters
+	 * @return the default registry
+	 */
+	public static PayloadCodecs getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns the maximum size of a decoded payload
+	 * @return the maximum size in bytes
+	 */
+	public int getMaxDecodedSize() {
+		return maxDecodedSize;
+	}
+
+	/**
+	 * Sets the maximum size of a decoded payload. Payloads, that decode to more bytes, fail with a {@link PayloadTooLargeException}.
+	 * @param maxDecodedSize the maximum size in bytes
+	 */
+	public void setMaxDecodedSize(int maxDecodedSize) {
+		if (maxDecodedSize < 1) {
+			throw new IllegalArgumentException("The maximum decoded size must be at least one byte");
+		}
+		this.maxDecodedSize = maxDecodedSize;
+	}
+
+	/**
+	 * Registers a codec. It takes precedence over a built-in codec for the same encoding.
+	 * @param codec the codec
+	 */
+	public void register(PayloadCodec codec) {
+		codecs.put(normalize(codec.getEncoding()), codec);
+	}
+
+	/**
+	 * Removes the codec, if it is still registered for its encoding
+	 * @param codec the codec
+	 */
+	public void unregister(PayloadCodec codec) {
+		codecs.remove(normalize(codec.getEncoding()), codec);
+	}
+
+	/**
+	 * Returns the codec for the content encoding
+	 * @param encoding the content encoding, can be <code>null</code>
+	 * @return the codec or <code>null</code>, if the payload is not encoded or no codec is registered
+	 */
+	public PayloadCodec getCodec(String encoding) {
+		if (encoding == null || encoding.isEmpty()) {
+			return null;
+		}
+		String key = normalize(encoding);
+		PayloadCodec codec = codecs.get(key);
+		return codec == null ? builtInCodecs.get(key) : codec;
+	}
+
+	/**
+	 * Encodes the payload for a transport, that expects a byte array. Without a codec for the encoding, the
+	 * payload is returned as it is, see {@link PayloadHelper#toByteArray(ByteBuffer)}.
+	 * @param content the payload, can be <code>null</code>
+	 * @param encoding the content encoding, can be <code>null</code>
+	 * @return the encoded payload
+	 * @throws IOException thrown on encoding errors
+	 */
+	public byte[] encode(ByteBuffer content, String encoding) throws IOException {
+		PayloadCodec codec = getCodec(encoding);
+		if (codec == null || content == null) {
+			return PayloadHelper.toByteArray(content);
+		}
+		PooledOutputStream target = new PooledOutputStream(pool, content.remaining());
+		try {
+			try (OutputStream out = codec.encode(target)) {
+				if (content.hasArray()) {
+					out.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+				} else {
+					transfer(new ByteBufferInputStream(content), out);
+				}
+			}
+			return target.toByteArray();
+		} catch (IOException | RuntimeException e) {
+			target.discard();
+			throw e;
+		}
+	}
+
+	/**
+	 * Decodes the payload into a buffer leased from the pool. The caller has to release the buffer.
+	 * @param content the encoded payload
+	 * @param encoding the content encoding, can be <code>null</code>
+	 * @return the decoded payload or <code>null</code>, if there is no codec for the encoding
+	 * @throws PayloadTooLargeException thrown, if the decoded payload exceeds the maximum decoded size
+	 * @throws IOException thrown on decoding errors
+	 */
+	public PooledByteBuffer decode(ByteBuffer content, String encoding) throws IOException {
+		PayloadCodec codec = getCodec(encoding);
+		if (codec == null || content == null) {
+			return null;
+		}
+		int maxSize = maxDecodedSize;
+		PooledOutputStream target = new PooledOutputStream(pool, (int) Math.min((long) content.remaining() * DECODE_SIZE_FACTOR, maxSize), maxSize);
+		try (InputStream in = codec.decode(new ByteBufferInputStream(content))) {
+			transfer(in, target);
+			return target.toPooledBuffer();
+		} catch (IOException | RuntimeException e) {
+			target.discard();
+			throw e;
+		}
+	}
+
+	/**
+	 * Decodes the payload of the message. The decoded message leases its payload from the pool, the given
+	 * message is released. If the payload cannot be decoded, the message is returned as it is. If the decoded 
+	 * payload exceeds the maximum decoded size, the message is released and dropped.
+	 * @param message the message
+	 * @param encoding the content encoding, can be <code>null</code>
+	 * @return the decoded message or <code>null</code>, if the message was dropped
+	 */
+	public Message decode(Message message, String encoding) {
+		try {
+			PooledByteBuffer decoded = decode(message.payload(), encoding);
+			if (decoded == null) {
+				return message;
+			}
+			SimpleMessage result = new SimpleMessage(message.topic(), decoded, message.getContext());
+			result.setReceiveTime(message.getReceiveTime());
+			result.setMessageId(message.getMessageId());
+			message.release();
+			return result;
+		} catch (PayloadTooLargeException e) {
+			logger.log(Level.WARNING, e, () -> "Dropping a " + encoding + " message on " + message.topic() + ", its payload is too large");
+			message.release();
+			return null;
+		} catch (IOException e) {
+			logger.log(Level.WARNING, e, () -> "Cannot decode the " + encoding + " payload of a message on " + message.topic());
+			return message;
+		}
+	}
+
+	/**
+	 * Appends a stage, that decodes the message payloads. The stage runs on the thread, that takes the
+	 * message from the buffer, so that the transport threads do not pay for the decoding. Messages, whose decoded
+	 * payload is too large, are dropped.
+	 * @param stream the stream
+	 * @param encoding the content encoding, can be <code>null</code>
+	 * @return the decoding stream or the given stream, if there is no codec for the encoding
+	 */
+	public PushStream<Message> decoding(PushStream<Message> stream, String encoding) {
+		if (getCodec(encoding) == null) {
+			return stream;
+		}
+		return stream.map(message -> decode(message, encoding)).filter(Objects::nonNull);
+	}
+
+	/**
+	 * Appends a stage, that decodes the message payloads of batches, see {@link #decoding(PushStream, String)}
+	 * @param stream the stream of batches
+	 * @param encoding the content encoding, can be <code>null</code>
+	 * @return the decoding stream or the given stream, if there is no codec for the encoding
+	 */
+	public PushStream<List<Message>> decodingBatches(PushStream<List<Message>> stream, String encoding) {
+		if (getCodec(encoding) == null) {
+			return stream;
+		}
+		return stream.map(batch -> {
+			batch.replaceAll(message -> decode(message, encoding));
+			batch.removeIf(Objects::isNull);
+			return batch;
+		}).filter(batch -> !batch.isEmpty());
+	}
+
+	private static void transfer(InputStream in, OutputStream out) throws IOException {
+		byte[] chunk = new byte[TRANSFER_BUFFER_SIZE];
+		int read;
+		while ((read = in.read(chunk)) != -1) {
+			out.write(chunk, 0, read);
+		}
+	}
+
+	private static String normalize(String encoding) {
+		return encoding.trim().toLowerCase(Locale.ROOT);
+	}
+
+}
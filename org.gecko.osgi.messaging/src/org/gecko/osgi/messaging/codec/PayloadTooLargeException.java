@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.codec;
+
+import java.io.IOException;
+
+/**
+ * Thrown, if a decoded payload exceeds the maximum decoded size of the {@link PayloadCodecs}
+ * @author agent
+ * @since 3.2.1
+ */
+public class PayloadTooLargeException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Creates a new instance.
+	 * @param maxSize the maximum size in bytes
+	 */
+	public PayloadTooLargeException(int maxSize) {
+		super("The decoded payload exceeds the maximum size of " + maxSize + " bytes");
+	}
+
+}
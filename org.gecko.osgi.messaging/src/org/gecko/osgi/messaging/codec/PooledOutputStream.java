@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.gecko.osgi.messaging.ByteBufferPool;
+import org.gecko.osgi.messaging.PooledByteBuffer;
+
+/**
+ * Output stream, that writes into a buffer leased from a {@link ByteBufferPool}. When the buffer is full,
+ * a buffer of twice the size is leased and the old one is given back.
+ * @author agent
+ * @since 3.2.1
+ */
+final class PooledOutputStream extends OutputStream {
+
+	private final ByteBufferPool pool;
+	private final int maxSize;
+	private PooledByteBuffer pooled;
+	private ByteBuffer buffer;
+
+	PooledOutputStream(ByteBufferPool pool, int initialSize) {
+		this(pool, initialSize, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a stream, that fails, when more than the maximum size is written
+	 * @param pool the pool to lease the buffers from
+	 * @param initialSize the initial buffer size
+	 * @param maxSize the maximum number of bytes
+	 */
+	PooledOutputStream(ByteBufferPool pool, int initialSize, int maxSize) {
+		this.pool = pool;
+		this.maxSize = maxSize;
+		this.pooled = pool.acquire(Math.max(ByteBufferPool.MIN_BUFFER_SIZE, Math.min(initialSize, maxSize)));
+		this.buffer = pooled.buffer();
+		buffer.clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.OutputStream#write(int)
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		ensureRemaining(1);
+		buffer.put((byte) b);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureRemaining(len);
+		buffer.put(b, off, len);
+	}
+
+	/**
+	 * Returns the written bytes as leased buffer, that is ready to be read. The stream must not be used afterwards.
+	 * @return the leased buffer
+	 */
+	PooledByteBuffer toPooledBuffer() {
+		buffer.flip();
+		PooledByteBuffer result = pooled;
+		pooled = null;
+		buffer = null;
+		return result;
+	}
+
+	/**
+	 * Returns a copy of the written bytes and gives the buffer back to the pool. The stream must not be used afterwards.
+	 * @return the written bytes
+	 */
+	byte[] toByteArray() {
+		byte[] bytes = new byte[buffer.position()];
+		buffer.flip();
+		buffer.get(bytes);
+		pooled.release();
+		pooled = null;
+		buffer = null;
+		return bytes;
+	}
+
+	/**
+	 * Gives the buffer back to the pool, if it was not handed out
+	 */
+	void discard() {
+		if (pooled != null) {
+			pooled.release();
+			pooled = null;
+			buffer = null;
+		}
+	}
+
+	private void ensureRemaining(int length) throws PayloadTooLargeException {
+		if (buffer.position() + (long) length > maxSize) {
+			throw new PayloadTooLargeException(maxSize);
+		}
+		if (buffer.remaining() >= length) {
+			return;
+		}
+		int required = buffer.position() + length;
+		int size = (int) Math.min(Math.max(required, (long) buffer.capacity() << 1), maxSize);
+		PooledByteBuffer grown = pool.acquire(size);
+		ByteBuffer target = grown.buffer();
+		target.clear();
+		buffer.flip();
+		target.put(buffer);
+		pooled.release();
+		pooled = grown;
+		buffer = target;
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.codec.provider;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.gecko.osgi.messaging.codec.MessageCodec;
+import org.gecko.osgi.messaging.codec.MessageCodecs;
+import org.gecko.osgi.messaging.codec.PayloadCodec;
+import org.gecko.osgi.messaging.codec.PayloadCodecs;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Adds the {@link PayloadCodec} and {@link MessageCodec} services to the default {@link PayloadCodecs} and
+ * {@link MessageCodecs} registries, that are used by the adapters, and configures the maximum decoded payload size
+ * @author agent
+ * @since 3.2.1
+ */
+@Designate(ocd = PayloadCodecComponent.CodecConfig.class)
+@Component(service = {}, name = "PayloadCodecs", immediate = true)
+public class PayloadCodecComponent {
+
+	private static final Logger logger = Logger.getLogger(PayloadCodecComponent.class.getName());
+
+	@ObjectClassDefinition
+	@interface CodecConfig {
+
+		@AttributeDefinition(description = "Maximum size of a decoded payload in bytes. Larger messages are dropped.")
+		int maxDecodedSize() default PayloadCodecs.DEFAULT_MAX_DECODED_SIZE;
+
+	}
+
+	private final PayloadCodecs codecs = PayloadCodecs.getDefault();
+	private final MessageCodecs messageCodecs = MessageCodecs.getDefault();
+
+	@Activate
+	@Modified
+	public void activate(CodecConfig config) {
+		codecs.setMaxDecodedSize(config.maxDecodedSize());
+	}
+
+	@Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+	public void addCodec(PayloadCodec codec) {
+		logger.log(Level.FINE, () -> "Registering payload codec for content encoding " + codec.getEncoding());
+		codecs.register(codec);
+	}
+
+	public void removeCodec(PayloadCodec codec) {
+		logger.log(Level.FINE, () -> "Unregistering payload codec for content encoding " + codec.getEncoding());
+		codecs.unregister(codec);
+	}
+
+	@Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+	public void addMessageCodec(MessageCodec<?> codec) {
+		logger.log(Level.FINE, () -> "Registering message codec for type " + codec.getType().getName());
+		messageCodecs.register(codec);
+	}
+
+	public void removeMessageCodec(MessageCodec<?> codec) {
+		logger.log(Level.FINE, () -> "Unregistering message codec for type " + codec.getType().getName());
+		messageCodecs.unregister(codec);
+	}
+
+}
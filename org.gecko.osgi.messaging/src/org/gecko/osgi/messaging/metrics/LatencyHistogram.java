@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram with a fixed relative precision, in the style of a HDR histogram. The first 128 values
+ * get a bucket each, above that every power of two is split into 64 buckets. So the error of a recorded value is
+ * below 1.6%, for values up to 2^47 (about 39 hours in nanoseconds). Larger values are counted in the last bucket.
+ * @author agent
+ * @since 3.2.1
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT >> 1;
+	private static final int MAX_SHIFT = 40;
+	static final int BUCKET_COUNT = SUB_BUCKET_COUNT + MAX_SHIFT * HALF_SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 * @param value the value, e.g. a latency in nanoseconds
+	 */
+	public void record(long value) {
+		long v = Math.max(0, value);
+		counts.incrementAndGet(indexOf(v));
+		count.increment();
+		sum.add(v);
+		max.accumulate(v);
+	}
+
+	/**
+	 * Returns the number of recorded values
+	 * @return the count
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the largest recorded value
+	 * @return the maximum or 0, if nothing was recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the mean of the recorded values
+	 * @return the mean or 0, if nothing was recorded
+	 */
+	public double getMean() {
+		long c = count.sum();
+		return c == 0 ? 0 : (double) sum.sum() / c;
+	}
+
+	/**
+	 * Returns the value, that is larger or equal than the given percentage of all recorded values.
+	 * The result is the upper bound of the bucket, the value was counted in.
+	 * @param percentile the percentile between 0 and 100
+	 * @return the value at the percentile or 0, if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		double p = Math.min(100.0, Math.max(0.0, percentile));
+		long target = Math.max(1, (long) Math.ceil(p / 100.0 * total));
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulative += snapshot[i];
+			if (cumulative >= target) {
+				return Math.min(highestValueOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Clears all recorded values
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+		if (shift > MAX_SHIFT) {
+			return BUCKET_COUNT - 1;
+		}
+		int subBucket = (int) (value >>> shift);
+		return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (subBucket - HALF_SUB_BUCKET_COUNT);
+	}
+
+	static long highestValueOf(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int offset = index - SUB_BUCKET_COUNT;
+		int shift = offset / HALF_SUB_BUCKET_COUNT + 1;
+		long subBucket = offset % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+		return (subBucket << shift) + (1L << shift) - 1;
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.metrics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import org.gecko.osgi.messaging.LazyContextMessage;
+import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.SimpleMessage;
+
+/**
+ * Helper for the end-to-end latency measurement. The publishing adapter puts the send time and the
+ * origin of the message into the transport metadata, e.g. a MQTT v5 user property, an AMQP header or an
+ * event property. The receiving adapter records the difference to its own clock into the latency histogram
+ * of the {@link TopicMetrics}.
+ * <p>
+ * The send time is a monotonic clock in epoch nanoseconds. It is anchored once at the wall clock and then
+ * advanced with {@link System#nanoTime()}. Within one origin the latency is exact. Between different origins
+ * it is only as accurate as the clock synchronization of the hosts. Negative latencies are ignored.
+ * @author agent
+ * @since 3.2.1
+ */
+public final class LatencyStamp {
+
+	/** Name of the metadata property, that holds the send time */
+	public static final String SEND_TIME = "gecko.sendTime";
+	/** Name of the metadata property, that holds the origin id */
+	public static final String ORIGIN = "gecko.origin";
+
+	private static final String LOCAL_ORIGIN = UUID.randomUUID().toString();
+	private static final long EPOCH_OFFSET = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+
+	private LatencyStamp() {
+	}
+
+	/**
+	 * Returns the current time of the monotonic clock in epoch nanoseconds
+	 * @return the current time
+	 */
+	public static long now() {
+		return EPOCH_OFFSET + System.nanoTime();
+	}
+
+	/**
+	 * Returns the origin id of this runtime
+	 * @return the origin id
+	 */
+	public static String getOrigin() {
+		return LOCAL_ORIGIN;
+	}
+
+	/**
+	 * Returns <code>true</code>, if the origin is this runtime
+	 * @param origin the origin id of a message, can be <code>null</code>
+	 * @return <code>true</code>, if the message was sent from this runtime
+	 */
+	public static boolean isLocal(Object origin) {
+		return LOCAL_ORIGIN.equals(toString(origin));
+	}
+
+	/**
+	 * Parses the send time from a metadata value. Numbers, strings and UTF-8 byte arrays are supported.
+	 * @param value the metadata value, can be <code>null</code>
+	 * @return the send time or <code>0</code>, if the value is missing or invalid
+	 */
+	public static long parseSendTime(Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		String string = toString(value);
+		if (string == null) {
+			return 0L;
+		}
+		try {
+			return Long.parseLong(string);
+		} catch (NumberFormatException e) {
+			return 0L;
+		}
+	}
+
+	/**
+	 * Records the latency between the send time and now into the latency histogram
+	 * @param metrics the topic metrics
+	 * @param sendTime the send time in epoch nanoseconds, values less or equal to <code>0</code> are ignored
+	 */
+	public static void recordLatency(TopicMetrics metrics, long sendTime) {
+		if (metrics == null || sendTime <= 0) {
+			return;
+		}
+		long latency = now() - sendTime;
+		if (latency >= 0) {
+			metrics.getLatencyHistogram().record(latency);
+		}
+	}
+
+	/**
+	 * Stamps the receive time into the message, to measure the time it waits in the push stream buffer
+	 * @param message the received message
+	 * @return the message
+	 * @see StreamMetrics#measureQueueTime(org.osgi.util.pushstream.PushStream, TopicMetrics)
+	 */
+	public static Message markReceived(Message message) {
+		if (message instanceof SimpleMessage) {
+			((SimpleMessage) message).setReceiveTime(System.nanoTime());
+		} else if (message instanceof LazyContextMessage) {
+			((LazyContextMessage) message).setReceiveTime(System.nanoTime());
+		}
+		return message;
+	}
+
+	private static String toString(Object value) {
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof byte[]) {
+			return new String((byte[]) value, StandardCharsets.UTF_8);
+		}
+		return value.toString();
+	}
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.metrics;
+
+import java.util.Collection;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Metrics SPI of the messaging adapters. The adapters report into the {@link TopicMetrics} of their
+ * topics, consumers read them from this service or via JMX.
+ * @author agent
+ * @since 3.2.1
+ */
+@ProviderType
+public interface MessagingMetrics {
+
+	public static final String ADAPTER_MQTT = "mqtt";
+	public static final String ADAPTER_AMQP = "amqp";
+	public static final String ADAPTER_EVENTADMIN = "eventadmin";
+	public static final String ADAPTER_INPROCESS = "inprocess";
+
+	/**
+	 * Returns the metrics for a topic of an adapter and creates them, if needed
+	 * @param adapter the adapter name
+	 * @param topic the topic
+	 * @return the topic metrics, never <code>null</code>
+	 */
+	public TopicMetrics getTopicMetrics(String adapter, String topic);
+
+	/**
+	 * Returns the metrics of all topics
+	 * @return the topic metrics
+	 */
+	public Collection<TopicMetrics> getAllTopicMetrics();
+
+	/**
+	 * Returns the metrics for the publish outbox of an adapter and creates them, if needed
+	 * @param adapter the adapter name
+	 * @return the outbox metrics, never <code>null</code>
+	 */
+	public OutboxMetrics getOutboxMetrics(String adapter);
+
+	/**
+	 * Returns the reconnect metrics of the connections of an adapter and creates them, if needed
+	 * @param adapter the adapter name
+	 * @return the reconnect metrics, never <code>null</code>
+	 */
+	public ReconnectMetrics getReconnectMetrics(String adapter);
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Default {@link MessagingMetrics} implementation, that is shared by all adapters in the runtime.
+ * To limit the memory for topics with ids in their names, only the first {@value #DEFAULT_MAX_TOPICS} topics
+ * get own metrics. All further topics of an adapter are aggregated into the {@value #OTHER_TOPICS} metrics.
+ * @author agent
+ * @since 3.2.1
+ */
+public class MessagingMetricsRegistry implements MessagingMetrics {
+
+	public static final String OTHER_TOPICS = "<other>";
+	public static final int DEFAULT_MAX_TOPICS = 1024;
+
+	private static final MessagingMetricsRegistry DEFAULT = new MessagingMetricsRegistry(DEFAULT_MAX_TOPICS);
+
+	private final Map<String, Map<String, TopicMetrics>> adapters = new ConcurrentHashMap<>();
+	private final Map<String, OutboxMetrics> outboxes = new ConcurrentHashMap<>();
+	private final Map<String, ReconnectMetrics> reconnects = new ConcurrentHashMap<>();
+	private final List<Consumer<TopicMetrics>> listeners = new CopyOnWriteArrayList<>();
+	private final List<Consumer<OutboxMetrics>> outboxListeners = new CopyOnWriteArrayList<>();
+	private final List<Consumer<ReconnectMetrics>> reconnectListeners = new CopyOnWriteArrayList<>();
+	private final AtomicInteger topicCount = new AtomicInteger();
+	private final int maxTopics;
+
+	/**
+	 * Creates a new instance.
+	 * @param maxTopics the maximum number of topics with own metrics
+	 */
+	public MessagingMetricsRegistry(int maxTopics) {
+		this.maxTopics = maxTopics;
+	}
+
+	/**
+	 * Returns the registry, the adapters report into
+	 * @return the default registry
+	 */
+	public static MessagingMetricsRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.MessagingMetrics#getTopicMetrics(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public TopicMetrics getTopicMetrics(String adapter, String topic) {
+		Map<String, TopicMetrics> topics = adapters.computeIfAbsent(adapter, a -> new ConcurrentHashMap<>());
+		String key = topic == null ? OTHER_TOPICS : topic;
+		TopicMetrics metrics = topics.get(key);
+		if (metrics != null) {
+			return metrics;
+		}
+		if (topicCount.get() >= maxTopics) {
+			key = OTHER_TOPICS;
+		}
+		String topicKey = key;
+		boolean[] created = new boolean[1];
+		metrics = topics.computeIfAbsent(topicKey, t -> {
+			created[0] = true;
+			topicCount.incrementAndGet();
+			return new TopicMetrics(adapter, t);
+		});
+		if (created[0]) {
+			TopicMetrics m = metrics;
+			listeners.forEach(l -> l.accept(m));
+		}
+		return metrics;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.MessagingMetrics#getAllTopicMetrics()
+	 */
+	@Override
+	public Collection<TopicMetrics> getAllTopicMetrics() {
+		List<TopicMetrics> result = new ArrayList<>();
+		adapters.values().forEach(topics -> result.addAll(topics.values()));
+		return result;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.MessagingMetrics#getOutboxMetrics(java.lang.String)
+	 */
+	@Override
+	public OutboxMetrics getOutboxMetrics(String adapter) {
+		OutboxMetrics metrics = outboxes.get(adapter);
+		if (metrics != null) {
+			return metrics;
+		}
+		boolean[] created = new boolean[1];
+		metrics = outboxes.computeIfAbsent(adapter, a -> {
+			created[0] = true;
+			return new OutboxMetrics(a);
+		});
+		if (created[0]) {
+			OutboxMetrics m = metrics;
+			outboxListeners.forEach(l -> l.accept(m));
+		}
+		return metrics;
+	}
+
+	/**
+	 * Returns the metrics of all outboxes
+	 * @return the outbox metrics
+	 */
+	public Collection<OutboxMetrics> getAllOutboxMetrics() {
+		return new ArrayList<>(outboxes.values());
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.MessagingMetrics#getReconnectMetrics(java.lang.String)
+	 */
+	@Override
+	public ReconnectMetrics getReconnectMetrics(String adapter) {
+		ReconnectMetrics metrics = reconnects.get(adapter);
+		if (metrics != null) {
+			return metrics;
+		}
+		boolean[] created = new boolean[1];
+		metrics = reconnects.computeIfAbsent(adapter, a -> {
+			created[0] = true;
+			return new ReconnectMetrics(a);
+		});
+		if (created[0]) {
+			ReconnectMetrics m = metrics;
+			reconnectListeners.forEach(l -> l.accept(m));
+		}
+		return metrics;
+	}
+
+	/**
+	 * Returns the reconnect metrics of all adapters
+	 * @return the reconnect metrics
+	 */
+	public Collection<ReconnectMetrics> getAllReconnectMetrics() {
+		return new ArrayList<>(reconnects.values());
+	}
+
+	/**
+	 * Adds a listener, that is called for each newly created topic metrics
+	 * @param listener the listener
+	 */
+	public void addListener(Consumer<TopicMetrics> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener
+	 * @param listener the listener
+	 */
+	public void removeListener(Consumer<TopicMetrics> listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Adds a listener, that is called for each newly created outbox metrics
+	 * @param listener the listener
+	 */
+	public void addOutboxListener(Consumer<OutboxMetrics> listener) {
+		outboxListeners.add(listener);
+	}
+
+	/**
+	 * Removes an outbox listener
+	 * @param listener the listener
+	 */
+	public void removeOutboxListener(Consumer<OutboxMetrics> listener) {
+		outboxListeners.remove(listener);
+	}
+
+	/**
+	 * Adds a listener, that is called for each newly created reconnect metrics
+	 * @param listener the listener
+	 */
+	public void addReconnectListener(Consumer<ReconnectMetrics> listener) {
+		reconnectListeners.add(listener);
+	}
+
+	/**
+	 * Removes a reconnect listener
+	 * @param listener the listener
+	 */
+	public void removeReconnectListener(Consumer<ReconnectMetrics> listener) {
+		reconnectListeners.remove(listener);
+	}
+
+}
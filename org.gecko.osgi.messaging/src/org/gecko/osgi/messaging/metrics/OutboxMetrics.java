@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the publish outbox of an adapter, that buffers the messages on disk while the broker is not reachable
+ * @author agent
+ * @since 3.2.1
+ */
+public class OutboxMetrics implements OutboxMetricsMBean {
+
+	// weight of the latest batch in the drain rate
+	private static final double ALPHA = 0.2;
+
+	private final String adapter;
+	private final LongAdder appendCount = new LongAdder();
+	private final LongAdder appendBytes = new LongAdder();
+	private final LongAdder drainCount = new LongAdder();
+	private final LongAdder drainErrorCount = new LongAdder();
+	private final LongAdder dropCount = new LongAdder();
+	private volatile long backlog;
+	private volatile long backlogBytes;
+	private volatile double drainRate;
+
+	/**
+	 * Creates a new instance.
+	 * @param adapter the adapter name
+	 */
+	public OutboxMetrics(String adapter) {
+		this.adapter = adapter;
+	}
+
+	/**
+	 * Records a message, that was written to the outbox
+	 * @param bytes the record size
+	 */
+	public void appended(int bytes) {
+		appendCount.increment();
+		appendBytes.add(bytes);
+	}
+
+	/**
+	 * Records a batch, that was published from the outbox
+	 * @param count the number of messages
+	 * @param time the time to publish the batch in nanoseconds
+	 */
+	public synchronized void drained(int count, long time) {
+		drainCount.add(count);
+		double rate = count * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(time, 1L);
+		drainRate = drainRate == 0.0 ? rate : drainRate + ALPHA * (rate - drainRate);
+	}
+
+	/**
+	 * Records a batch, that could not be published from the outbox and is retried
+	 */
+	public void drainError() {
+		drainErrorCount.increment();
+	}
+
+	/**
+	 * Records messages, that were deleted unpublished, because the outbox exceeded its maximum size
+	 * @param count the number of messages
+	 */
+	public void dropped(long count) {
+		dropCount.add(count);
+	}
+
+	/**
+	 * Records the messages in the outbox
+	 * @param count the number of messages
+	 * @param bytes the size of the messages
+	 */
+	public void backlog(long count, long bytes) {
+		backlog = count;
+		backlogBytes = bytes;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.OutboxMetricsMBean#getAdapter()
+	 */
+	@Override
+	public String getAdapter() {
+		return adapter;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.OutboxMetricsMBean#getAppendCount()
+	 */
+	@Override
+	public long getAppendCount() {
+		return appendCount.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.OutboxMetricsMBean#getAppendBytes()
+	 */
+	@Override
+	public long getAppendBytes() {
+		return appendBytes.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.OutboxMetricsMBean#getDrainCount()
+	 */
+	@Override
+	public long getDrainCount() {
+		return drainCount.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.OutboxMetricsMBean#getDrainErrorCount()
+	 */
+	@Override
+	public long getDrainErrorCount() {
+		return drainErrorCount.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.OutboxMetricsMBean#getDropCount()
+	 */
+	@Override
+	public long getDropCount() {
+		return dropCount.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.OutboxMetricsMBean#getBacklog()
+	 */
+	@Override
+	public long getBacklog() {
+		return backlog;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.OutboxMetricsMBean#getBacklogBytes()
+	 */
+	@Override
+	public long getBacklogBytes() {
+		return backlogBytes;
+	}
+
+	/**
+	 * Returns the drain rate, measured over the time to publish the batches
+	 * @return the messages per second
+	 */
+	@Override
+	public double getDrainRate() {
+		return drainRate;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.OutboxMetricsMBean#reset()
+	 */
+	@Override
+	public synchronized void reset() {
+		appendCount.reset();
+		appendBytes.reset();
+		drainCount.reset();
+		drainErrorCount.reset();
+		dropCount.reset();
+		drainRate = 0.0;
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.metrics;
+
+/**
+ * JMX view on the {@link OutboxMetrics}
+ * @author agent
+ * @since 3.2.1
+ */
+public interface OutboxMetricsMBean {
+
+	String getAdapter();
+
+	long getAppendCount();
+
+	long getAppendBytes();
+
+	long getDrainCount();
+
+	long getDrainErrorCount();
+
+	long getDropCount();
+
+	long getBacklog();
+
+	long getBacklogBytes();
+
+	double getDrainRate();
+
+	void reset();
+
+}
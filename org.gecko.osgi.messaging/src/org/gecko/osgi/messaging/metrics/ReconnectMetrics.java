@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reconnect metrics of the connections of an adapter. The time to recover is measured from the connection loss
+ * to the first successful reconnect attempt.
+ * @author agent
+ * @since 3.2.1
+ */
+public class ReconnectMetrics implements ReconnectMetricsMBean {
+
+	private final String adapter;
+	private final LongAdder lostCount = new LongAdder();
+	private final LongAdder attemptCount = new LongAdder();
+	private final LongAdder failureCount = new LongAdder();
+	private final LongAdder recoveryCount = new LongAdder();
+	private final LongAdder disconnected = new LongAdder();
+	private volatile long lastBackoff;
+	private volatile long lastRecoveryTime;
+	private volatile long maxRecoveryTime;
+
+	/**
+	 * Creates a new instance.
+	 * @param adapter the adapter name
+	 */
+	public ReconnectMetrics(String adapter) {
+		this.adapter = adapter;
+	}
+
+	/**
+	 * Records a connection, that was lost and waits for its reconnect
+	 */
+	public void connectionLost() {
+		lostCount.increment();
+		disconnected.increment();
+	}
+
+	/**
+	 * Records the delay of a scheduled reconnect attempt
+	 * @param delay the backoff delay in milliseconds
+	 */
+	public void scheduled(long delay) {
+		lastBackoff = delay;
+	}
+
+	/**
+	 * Records a reconnect attempt
+	 */
+	public void attempt() {
+		attemptCount.increment();
+	}
+
+	/**
+	 * Records a failed reconnect attempt, that is retried with a longer backoff
+	 */
+	public void failed() {
+		failureCount.increment();
+	}
+
+	/**
+	 * Records a connection, that was reconnected
+	 * @param time the time since the connection loss in nanoseconds
+	 */
+	public synchronized void recovered(long time) {
+		recoveryCount.increment();
+		disconnected.decrement();
+		lastRecoveryTime = TimeUnit.NANOSECONDS.toMillis(time);
+		maxRecoveryTime = Math.max(maxRecoveryTime, lastRecoveryTime);
+	}
+
+	/**
+	 * Records a lost connection, that was closed before it was reconnected
+	 */
+	public void abandoned() {
+		disconnected.decrement();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.ReconnectMetricsMBean#getAdapter()
+	 */
+	@Override
+	public String getAdapter() {
+		return adapter;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.ReconnectMetricsMBean#getConnectionLostCount()
+	 */
+	@Override
+	public long getConnectionLostCount() {
+		return lostCount.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.ReconnectMetricsMBean#getAttemptCount()
+	 */
+	@Override
+	public long getAttemptCount() {
+		return attemptCount.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.ReconnectMetricsMBean#getFailureCount()
+	 */
+	@Override
+	public long getFailureCount() {
+		return failureCount.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.ReconnectMetricsMBean#getRecoveryCount()
+	 */
+	@Override
+	public long getRecoveryCount() {
+		return recoveryCount.sum();
+	}
+
+	/**
+	 * Returns the number of connections, that wait for their reconnect
+	 * @return the disconnected connections
+	 */
+	@Override
+	public long getDisconnected() {
+		return disconnected.sum();
+	}
+
+	/**
+	 * Returns the backoff delay of the latest scheduled reconnect attempt
+	 * @return the delay in milliseconds
+	 */
+	@Override
+	public long getLastBackoff() {
+		return lastBackoff;
+	}
+
+	/**
+	 * Returns the time from the connection loss to the reconnect of the latest recovered connection
+	 * @return the time to recover in milliseconds
+	 */
+	@Override
+	public long getLastRecoveryTime() {
+		return lastRecoveryTime;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.ReconnectMetricsMBean#getMaxRecoveryTime()
+	 */
+	@Override
+	public long getMaxRecoveryTime() {
+		return maxRecoveryTime;
+	}
+
+	/**
+	 * Resets the counters, the number of disconnected connections is kept
+	 * @see org.gecko.osgi.messaging.metrics.ReconnectMetricsMBean#reset()
+	 */
+	@Override
+	public synchronized void reset() {
+		lostCount.reset();
+		attemptCount.reset();
+		failureCount.reset();
+		recoveryCount.reset();
+		lastBackoff = 0L;
+		lastRecoveryTime = 0L;
+		maxRecoveryTime = 0L;
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.metrics;
+
+import java.util.concurrent.BlockingQueue;
+
+import org.gecko.osgi.messaging.AdaptivePushbackPolicy;
+import org.gecko.osgi.messaging.Message;
+import org.gecko.util.pushstream.PushStreamContext;
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushStream;
+import org.osgi.util.pushstream.PushStreamBuilder;
+import org.osgi.util.pushstream.PushbackPolicy;
+
+/**
+ * Helper to report the buffer depth and pushback of subscription streams into the {@link TopicMetrics}
+ * @author agent
+ * @since 3.2.1
+ */
+public final class StreamMetrics {
+
+	private StreamMetrics() {
+	}
+
+	/**
+	 * Returns the pushback policy, that the context configures for the stream. An {@link AdaptivePushbackPolicy} 
+	 * is copied, so that every stream adapts to its own consumer.
+	 * @param context the push stream context, can be <code>null</code>
+	 * @return the pushback policy or <code>null</code>, if the context has none
+	 */
+	public static PushbackPolicy<Message, BlockingQueue<PushEvent<? extends Message>>> getPushbackPolicy(PushStreamContext<Message> context) {
+		if (context == null) {
+			return null;
+		}
+		if (context.getPushbackPolicy() instanceof AdaptivePushbackPolicy) {
+			return ((AdaptivePushbackPolicy) context.getPushbackPolicy()).copy();
+		}
+		if (context.getPushbackPolicy() != null) {
+			return context.getPushbackPolicy();
+		}
+		if (context.getPushbackPolicyOption() != null) {
+			Long time = context.getPushbackPolicyOptionTime();
+			return context.getPushbackPolicyOption().getPolicy(time == null ? 0L : time.longValue());
+		}
+		return null;
+	}
+
+	/**
+	 * Wraps the pushback policy of the builder, to sample the buffer depth, the chosen delay and count the pushbacks of every event.
+	 * The given policy must be the one, the builder is configured with, because it is replaced. Without topic metrics the 
+	 * builder is not touched, so the adapters pass them only for streams, that enabled the latency measurement.
+	 * @param builder the stream builder
+	 * @param pushbackPolicy the effective pushback policy, can be <code>null</code>
+	 * @param metrics the topic metrics, can be <code>null</code>
+	 * @return the builder
+	 */
+	public static PushStreamBuilder<Message, BlockingQueue<PushEvent<? extends Message>>> instrument(
+			PushStreamBuilder<Message, BlockingQueue<PushEvent<? extends Message>>> builder,
+			PushbackPolicy<Message, BlockingQueue<PushEvent<? extends Message>>> pushbackPolicy,
+			TopicMetrics metrics) {
+		if (metrics == null) {
+			return builder;
+		}
+		return builder.withPushbackPolicy(queue -> {
+			metrics.bufferDepth(queue.size());
+			long pushback = pushbackPolicy == null ? 0 : pushbackPolicy.pushback(queue);
+			metrics.pushbackDelay(pushback);
+			if (pushback > 0) {
+				metrics.pushback(pushback);
+			}
+			return pushback;
+		});
+	}
+
+	/**
+	 * Records the time, the messages waited in the buffer of the stream. The messages must have been marked with
+	 * {@link LatencyStamp#markReceived(Message)}, before they were published into the stream. The measurement 
+	 * is appended to the stream, so that it runs on the thread, that took the message from the buffer.
+	 * @param stream the buffered stream
+	 * @param metrics the topic metrics
+	 * @return the measured stream
+	 */
+	public static PushStream<Message> measureQueueTime(PushStream<Message> stream, TopicMetrics metrics) {
+		if (metrics == null) {
+			return stream;
+		}
+		return stream.map(message -> {
+			long receiveTime = message.getReceiveTime();
+			if (receiveTime != 0L) {
+				metrics.getQueueTimeHistogram().record(System.nanoTime() - receiveTime);
+			}
+			return message;
+		});
+	}
+
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of one topic of an adapter. The counters are striped, so that concurrent publishers and
+ * deliveries do not contend on one memory location.
+ * @author agent
+ * @since 3.2.1
+ */
+public class TopicMetrics implements TopicMetricsMBean {
+
+	private static final double NANOS_PER_MICRO = 1000.0;
+
+	private final String adapter;
+	private final String topic;
+	private final LongAdder publishCount = new LongAdder();
+	private final LongAdder publishBytes = new LongAdder();
+	private final LongAdder deliverCount = new LongAdder();
+	private final LongAdder deliverBytes = new LongAdder();
+	private final LongAdder errorCount = new LongAdder();
+	private final LongAdder pushbackCount = new LongAdder();
+	private final LongAdder pushbackTime = new LongAdder();
+	private final LongAdder deduplicationHits = new LongAdder();
+	private final LongAdder deduplicationMisses = new LongAdder();
+	private final LongAccumulator maxBufferDepth = new LongAccumulator(Math::max, 0);
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LatencyHistogram queueTime = new LatencyHistogram();
+	private volatile int bufferDepth;
+	private volatile long pushbackDelay;
+
+	/**
+	 * Creates a new instance.
+	 * @param adapter the adapter name
+	 * @param topic the topic
+	 */
+	public TopicMetrics(String adapter, String topic) {
+		this.adapter = adapter;
+		this.topic = topic;
+	}
+
+	/**
+	 * Records a published message
+	 * @param bytes the payload size
+	 */
+	public void published(int bytes) {
+		publishCount.increment();
+		publishBytes.add(bytes);
+	}
+
+	/**
+	 * Records a message, that was handed to the subscribers
+	 * @param bytes the payload size
+	 */
+	public void delivered(int bytes) {
+		deliverCount.increment();
+		deliverBytes.add(bytes);
+	}
+
+	/**
+	 * Records a failed publish or delivery
+	 */
+	public void error() {
+		errorCount.increment();
+	}
+
+	/**
+	 * Records a pushback of the subscription buffer
+	 * @param time the pushback time in milliseconds
+	 */
+	public void pushback(long time) {
+		pushbackCount.increment();
+		pushbackTime.add(time);
+	}
+
+	/**
+	 * Records the pushback delay, the policy has chosen for the last buffered message
+	 * @param delay the delay in milliseconds, <code>0</code> for no pushback
+	 */
+	public void pushbackDelay(long delay) {
+		pushbackDelay = delay;
+	}
+
+	/**
+	 * Records a duplicate, that was dropped
+	 */
+	public void deduplicationHit() {
+		deduplicationHits.increment();
+	}
+
+	/**
+	 * Records a message, that was not seen before
+	 */
+	public void deduplicationMiss() {
+		deduplicationMisses.increment();
+	}
+
+	/**
+	 * Records the current number of messages in the subscription buffer
+	 * @param depth the buffer depth
+	 */
+	public void bufferDepth(int depth) {
+		bufferDepth = depth;
+		maxBufferDepth.accumulate(depth);
+	}
+
+	/**
+	 * Returns the delivery latency histogram in nanoseconds
+	 * @return the latency histogram
+	 */
+	public LatencyHistogram getLatencyHistogram() {
+		return latency;
+	}
+
+	/**
+	 * Returns the histogram of the time, the messages waited in the subscription buffer, in nanoseconds
+	 * @return the queue time histogram
+	 */
+	public LatencyHistogram getQueueTimeHistogram() {
+		return queueTime;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getAdapter()
+	 */
+	@Override
+	public String getAdapter() {
+		return adapter;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getTopic()
+	 */
+	@Override
+	public String getTopic() {
+		return topic;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getPublishCount()
+	 */
+	@Override
+	public long getPublishCount() {
+		return publishCount.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getPublishBytes()
+	 */
+	@Override
+	public long getPublishBytes() {
+		return publishBytes.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getDeliverCount()
+	 */
+	@Override
+	public long getDeliverCount() {
+		return deliverCount.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getDeliverBytes()
+	 */
+	@Override
+	public long getDeliverBytes() {
+		return deliverBytes.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getErrorCount()
+	 */
+	@Override
+	public long getErrorCount() {
+		return errorCount.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getPushbackCount()
+	 */
+	@Override
+	public long getPushbackCount() {
+		return pushbackCount.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getPushbackTime()
+	 */
+	@Override
+	public long getPushbackTime() {
+		return pushbackTime.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getPushbackDelay()
+	 */
+	@Override
+	public long getPushbackDelay() {
+		return pushbackDelay;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getDeduplicationHits()
+	 */
+	@Override
+	public long getDeduplicationHits() {
+		return deduplicationHits.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getDeduplicationMisses()
+	 */
+	@Override
+	public long getDeduplicationMisses() {
+		return deduplicationMisses.sum();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getBufferDepth()
+	 */
+	@Override
+	public int getBufferDepth() {
+		return bufferDepth;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getMaxBufferDepth()
+	 */
+	@Override
+	public long getMaxBufferDepth() {
+		return maxBufferDepth.get();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getLatencyCount()
+	 */
+	@Override
+	public long getLatencyCount() {
+		return latency.getCount();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getLatencyMeanMicros()
+	 */
+	@Override
+	public double getLatencyMeanMicros() {
+		return latency.getMean() / NANOS_PER_MICRO;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getLatencyP50Micros()
+	 */
+	@Override
+	public double getLatencyP50Micros() {
+		return latency.getValueAtPercentile(50.0) / NANOS_PER_MICRO;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getLatencyP99Micros()
+	 */
+	@Override
+	public double getLatencyP99Micros() {
+		return latency.getValueAtPercentile(99.0) / NANOS_PER_MICRO;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getLatencyP999Micros()
+	 */
+	@Override
+	public double getLatencyP999Micros() {
+		return latency.getValueAtPercentile(99.9) / NANOS_PER_MICRO;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getLatencyMaxMicros()
+	 */
+	@Override
+	public double getLatencyMaxMicros() {
+		return latency.getMax() / NANOS_PER_MICRO;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getQueueTimeMeanMicros()
+	 */
+	@Override
+	public double getQueueTimeMeanMicros() {
+		return queueTime.getMean() / NANOS_PER_MICRO;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getQueueTimeP99Micros()
+	 */
+	@Override
+	public double getQueueTimeP99Micros() {
+		return queueTime.getValueAtPercentile(99.0) / NANOS_PER_MICRO;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#getQueueTimeMaxMicros()
+	 */
+	@Override
+	public double getQueueTimeMaxMicros() {
+		return queueTime.getMax() / NANOS_PER_MICRO;
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.TopicMetricsMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		publishCount.reset();
+		publishBytes.reset();
+		deliverCount.reset();
+		deliverBytes.reset();
+		errorCount.reset();
+		pushbackCount.reset();
+		pushbackTime.reset();
+		deduplicationHits.reset();
+		deduplicationMisses.reset();
+		maxBufferDepth.reset();
+		latency.reset();
+		queueTime.reset();
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.metrics;
+
+/**
+ * JMX view on the {@link TopicMetrics}
+ * @author agent
+ * @since 3.2.1
+ */
+public interface TopicMetricsMBean {
+
+	String getAdapter();
+
+	String getTopic();
+
+	long getPublishCount();
+
+	long getPublishBytes();
+
+	long getDeliverCount();
+
+	long getDeliverBytes();
+
+	long getErrorCount();
+
+	long getPushbackCount();
+
+	long getPushbackTime();
+
+	long getPushbackDelay();
+
+	long getDeduplicationHits();
+
+	long getDeduplicationMisses();
+
+	int getBufferDepth();
+
+	long getMaxBufferDepth();
+
+	long getLatencyCount();
+
+	double getLatencyMeanMicros();
+
+	double getLatencyP50Micros();
+
+	double getLatencyP99Micros();
+
+	double getLatencyP999Micros();
+
+	double getLatencyMaxMicros();
+
+	double getQueueTimeMeanMicros();
+
+	double getQueueTimeP99Micros();
+
+	double getQueueTimeMaxMicros();
+
+	void reset();
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.metrics.provider;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.gecko.osgi.messaging.metrics.MessagingMetrics;
+import org.gecko.osgi.messaging.metrics.MessagingMetricsRegistry;
+import org.gecko.osgi.messaging.metrics.OutboxMetrics;
+import org.gecko.osgi.messaging.metrics.ReconnectMetrics;
+import org.gecko.osgi.messaging.metrics.TopicMetrics;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Registers the default {@link MessagingMetricsRegistry} as {@link MessagingMetrics} service and
+ * exposes every {@link TopicMetrics} as MBean <code>Messaging:type=TopicMetrics,adapter=..,topic=..</code>,
+ * every {@link OutboxMetrics} as MBean <code>Messaging:type=OutboxMetrics,adapter=..</code>
+ * and every {@link ReconnectMetrics} as MBean <code>Messaging:type=ReconnectMetrics,adapter=..</code>
+ * @author agent
+ * @since 3.2.1
+ */
+@Designate(ocd = MessagingMetricsComponent.MetricsConfig.class)
+@Component(service = MessagingMetrics.class, name = "MessagingMetrics", immediate = true)
+public class MessagingMetricsComponent implements MessagingMetrics {
+
+	private static final Logger logger = Logger.getLogger(MessagingMetricsComponent.class.getName());
+
+	@ObjectClassDefinition
+	@interface MetricsConfig {
+
+		@AttributeDefinition(description = "Register the topic metrics as MBeans in the platform MBean server")
+		boolean jmx() default true;
+
+	}
+
+	private final MessagingMetricsRegistry registry = MessagingMetricsRegistry.getDefault();
+	private final Map<ObjectName, Object> registeredBeans = new ConcurrentHashMap<>();
+	private final Consumer<TopicMetrics> jmxListener = this::registerMBean;
+	private final Consumer<OutboxMetrics> outboxJmxListener = this::registerOutboxMBean;
+	private final Consumer<ReconnectMetrics> reconnectJmxListener = this::registerReconnectMBean;
+	private MBeanServer mbeanServer;
+
+	@Activate
+	public void activate(MetricsConfig config) {
+		if (config.jmx()) {
+			mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			registry.addListener(jmxListener);
+			registry.getAllTopicMetrics().forEach(this::registerMBean);
+			registry.addOutboxListener(outboxJmxListener);
+			registry.getAllOutboxMetrics().forEach(this::registerOutboxMBean);
+			registry.addReconnectListener(reconnectJmxListener);
+			registry.getAllReconnectMetrics().forEach(this::registerReconnectMBean);
+		}
+	}
+
+	@Deactivate
+	public void deactivate() {
+		registry.removeListener(jmxListener);
+		registry.removeOutboxListener(outboxJmxListener);
+		registry.removeReconnectListener(reconnectJmxListener);
+		if (mbeanServer != null) {
+			registeredBeans.keySet().forEach(name -> {
+				try {
+					mbeanServer.unregisterMBean(name);
+				} catch (Exception e) {
+					logger.log(Level.FINE, e, () -> "Cannot unregister metrics MBean " + name);
+				}
+			});
+			registeredBeans.clear();
+		}
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.MessagingMetrics#getTopicMetrics(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public TopicMetrics getTopicMetrics(String adapter, String topic) {
+		return registry.getTopicMetrics(adapter, topic);
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.MessagingMetrics#getAllTopicMetrics()
+	 */
+	@Override
+	public Collection<TopicMetrics> getAllTopicMetrics() {
+		return registry.getAllTopicMetrics();
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.MessagingMetrics#getOutboxMetrics(java.lang.String)
+	 */
+	@Override
+	public OutboxMetrics getOutboxMetrics(String adapter) {
+		return registry.getOutboxMetrics(adapter);
+	}
+
+	/* 
+	 * (non-Javadoc)
+	 * @see org.gecko.osgi.messaging.metrics.MessagingMetrics#getReconnectMetrics(java.lang.String)
+	 */
+	@Override
+	public ReconnectMetrics getReconnectMetrics(String adapter) {
+		return registry.getReconnectMetrics(adapter);
+	}
+
+	private void registerOutboxMBean(OutboxMetrics metrics) {
+		try {
+			ObjectName name = new ObjectName("Messaging:type=OutboxMetrics,adapter=" + ObjectName.quote(metrics.getAdapter()));
+			if (registeredBeans.putIfAbsent(name, metrics) == null && !mbeanServer.isRegistered(name)) {
+				mbeanServer.registerMBean(metrics, name);
+			}
+		} catch (Exception e) {
+			logger.log(Level.WARNING, e, () -> "Cannot register the outbox metrics MBean for adapter " + metrics.getAdapter());
+		}
+	}
+
+	private void registerReconnectMBean(ReconnectMetrics metrics) {
+		try {
+			ObjectName name = new ObjectName("Messaging:type=ReconnectMetrics,adapter=" + ObjectName.quote(metrics.getAdapter()));
+			if (registeredBeans.putIfAbsent(name, metrics) == null && !mbeanServer.isRegistered(name)) {
+				mbeanServer.registerMBean(metrics, name);
+			}
+		} catch (Exception e) {
+			logger.log(Level.WARNING, e, () -> "Cannot register the reconnect metrics MBean for adapter " + metrics.getAdapter());
+		}
+	}
+
+	private void registerMBean(TopicMetrics metrics) {
+		try {
+			ObjectName name = new ObjectName("Messaging:type=TopicMetrics,adapter=" + ObjectName.quote(metrics.getAdapter()) + ",topic=" + ObjectName.quote(metrics.getTopic()));
+			if (registeredBeans.putIfAbsent(name, metrics) == null && !mbeanServer.isRegistered(name)) {
+				mbeanServer.registerMBean(metrics, name);
+			}
+		} catch (MalformedObjectNameException e) {
+			logger.log(Level.WARNING, e, () -> "Cannot create the MBean name for topic " + metrics.getTopic());
+		} catch (Exception e) {
+			logger.log(Level.WARNING, e, () -> "Cannot register the metrics MBean for topic " + metrics.getTopic());
+		}
+	}
+
+}
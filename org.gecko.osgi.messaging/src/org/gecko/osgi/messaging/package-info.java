@@ -1,3 +1,3 @@
-@org.osgi.annotation.versioning.Version("3.1.0")
+@org.osgi.annotation.versioning.Version("3.2.0")
 @org.osgi.annotation.bundle.Export
 package org.gecko.osgi.messaging;
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public class ByteBufferPoolTest {
+
+	@Test
+	public void testSizeClasses() {
+		assertEquals(0, ByteBufferPool.sizeClass(0));
+		assertEquals(0, ByteBufferPool.sizeClass(64));
+		assertEquals(1, ByteBufferPool.sizeClass(65));
+		assertEquals(1, ByteBufferPool.sizeClass(128));
+		assertEquals(4, ByteBufferPool.sizeClass(1024));
+
+		ByteBufferPool pool = new ByteBufferPool(1000, 2);
+		PooledByteBuffer pooled = pool.acquire(100);
+		assertEquals(128, pooled.buffer().capacity());
+		assertEquals(100, pooled.buffer().limit());
+		// the maximum is rounded up to the next power of two
+		assertEquals(1024, pool.acquire(1024).buffer().capacity());
+	}
+
+	@Test
+	public void testReleasedBufferIsReused() {
+		ByteBufferPool pool = new ByteBufferPool(1024, 2);
+		PooledByteBuffer first = pool.acquire(100);
+		ByteBuffer buffer = first.buffer();
+		assertTrue(first.release());
+		assertEquals(1, pool.getFreeCount());
+
+		PooledByteBuffer second = pool.acquire(70);
+		assertSame(buffer, second.buffer());
+		// the recycled buffer is cleared
+		assertEquals(0, second.buffer().position());
+		assertEquals(70, second.buffer().limit());
+		assertEquals(0, pool.getFreeCount());
+		// another size class gets a new buffer
+		assertNotSame(buffer, pool.acquire(10).buffer());
+	}
+
+	@Test
+	public void testReferenceCount() {
+		ByteBufferPool pool = new ByteBufferPool(1024, 2);
+		PooledByteBuffer pooled = pool.copyOf(new byte[] { 1, 2, 3 });
+		assertEquals(3, pooled.buffer().remaining());
+		pooled.retain();
+		assertEquals(2, pooled.refCount());
+		assertFalse(pooled.release());
+		assertEquals(0, pool.getFreeCount());
+		assertTrue(pooled.release());
+		assertEquals(1, pool.getFreeCount());
+		assertThrows(IllegalStateException.class, pooled::release);
+		assertThrows(IllegalStateException.class, pooled::retain);
+		// the buffer is not given back twice
+		assertEquals(1, pool.getFreeCount());
+	}
+
+	@Test
+	public void testPoolIsBounded() {
+		ByteBufferPool pool = new ByteBufferPool(1024, 2);
+		PooledByteBuffer[] buffers = new PooledByteBuffer[3];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = pool.acquire(100);
+		}
+		for (PooledByteBuffer buffer : buffers) {
+			buffer.release();
+		}
+		assertEquals(2, pool.getFreeCount());
+
+		// larger buffers are not pooled
+		PooledByteBuffer large = pool.acquire(2048);
+		assertEquals(2048, large.buffer().capacity());
+		assertTrue(large.release());
+		assertEquals(2, pool.getFreeCount());
+		assertThrows(IllegalArgumentException.class, () -> pool.acquire(-1));
+		assertThrows(IllegalArgumentException.class, () -> new ByteBufferPool(32, 2));
+		assertThrows(IllegalArgumentException.class, () -> new ByteBufferPool(1024, 0));
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved. 
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.util.pushstream.PushEvent;
+
+/**
+ * 
+ * @author agent
+ * @since 3.2.1
+ */
+public class ConflatingBlockingQueueTest {
+
+	private static PushEvent<Message> event(String topic, String value) {
+		return PushEvent.data(new SimpleMessage(topic, ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	private static String value(PushEvent<? extends Message> event) {
+		return StandardCharsets.UTF_8.decode(event.getData().payload().duplicate()).toString();
+	}
+
+	@Test
+	public void testInvalidSize() {
+		assertThrows(IllegalArgumentException.class, () -> new ConflatingBlockingQueue(Message::topic, 0));
+	}
+
+	@Test
+	public void testNewerReplacesOlderInPlace() {
+		ConflatingBlockingQueue queue = new ConflatingBlockingQueue(Message::topic, 10);
+		assertTrue(queue.offer(event("a", "a1")));
+		assertTrue(queue.offer(event("b", "b1")));
+		assertTrue(queue.offer(event("a", "a2")));
+		assertTrue(queue.offer(event("c", "c1")));
+		assertTrue(queue.offer(event("a", "a3")));
+
+		assertEquals(3, queue.size());
+		assertEquals(2, queue.getConflatedCount());
+		assertEquals("a3", value(queue.poll()));
+		assertEquals("b1", value(queue.poll()));
+		assertEquals("c1", value(queue.poll()));
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void testDeliveredKeyIsQueuedAgain() {
+		ConflatingBlockingQueue queue = new ConflatingBlockingQueue(Message::topic, 10);
+		queue.offer(event("a", "a1"));
+		queue.offer(event("b", "b1"));
+		assertEquals("a1", value(queue.poll()));
+		queue.offer(event("a", "a2"));
+
+		assertEquals("b1", value(queue.poll()));
+		assertEquals("a2", value(queue.poll()));
+	}
+
+	@Test
+	public void testCapacityByDistinctKeys() {
+		ConflatingBlockingQueue queue = new ConflatingBlockingQueue(Message::topic, 2);
+		assertTrue(queue.offer(event("a", "a1")));
+		assertTrue(queue.offer(event("b", "b1")));
+		assertEquals(0, queue.remainingCapacity());
+		assertFalse(queue.offer(event("c", "c1")));
+		// known keys are replaced, even if the queue is full
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(queue.offer(event("a", "a" + i)));
+		}
+		assertEquals(2, queue.size());
+		assertEquals("a999", value(queue.peek()));
+	}
+
+	@Test
+	public void testNullKeyAndTerminalEventsAreNotConflated() {
+		ConflatingBlockingQueue queue = new ConflatingBlockingQueue(m -> null, 10);
+		queue.offer(event("a", "a1"));
+		queue.offer(event("a", "a2"));
+		queue.offer(PushEvent.close());
+		queue.offer(PushEvent.close());
+
+		List<PushEvent<? extends Message>> events = new ArrayList<>();
+		assertEquals(4, queue.drainTo(events));
+		assertEquals("a1", value(events.get(0)));
+		assertEquals("a2", value(events.get(1)));
+		assertTrue(events.get(2).isTerminal());
+		assertTrue(events.get(3).isTerminal());
+	}
+
+	@Test
+	public void testPutBlocksUntilKeyIsTaken() throws InterruptedException {
+		ConflatingBlockingQueue queue = new ConflatingBlockingQueue(Message::topic, 1);
+		queue.put(event("a", "a1"));
+		CountDownLatch inserted = new CountDownLatch(1);
+		Thread producer = new Thread(() -> {
+			try {
+				queue.put(event("b", "b1"));
+				inserted.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		producer.start();
+		assertFalse(inserted.await(100, TimeUnit.MILLISECONDS));
+		assertEquals("a1", value(queue.take()));
+		assertTrue(inserted.await(5, TimeUnit.SECONDS));
+		assertEquals("b1", value(queue.poll(1, TimeUnit.SECONDS)));
+		producer.join();
+	}
+
+	@Test
+	public void testDroppedMessagesAreConsumedAndReleased() {
+		ByteBufferPool pool = new ByteBufferPool(1024, 4);
+		AtomicInteger consumed = new AtomicInteger();
+		ConflatingBlockingQueue queue = new ConflatingBlockingQueue(Message::topic, 10);
+		List<PooledByteBuffer> buffers = new ArrayList<>();
+		for (String topic : List.of("a", "a", "b")) {
+			PooledByteBuffer buffer = pool.copyOf(topic.getBytes(StandardCharsets.UTF_8));
+			SimpleMessage message = new SimpleMessage(topic, buffer, SimpleMessagingContext.getDefault());
+			message.setOnConsumed(consumed::incrementAndGet);
+			buffers.add(buffer);
+			queue.offer(PushEvent.data(message));
+		}
+		assertEquals(1, consumed.get());
+		assertEquals(0, buffers.get(0).refCount());
+
+		queue.offer(PushEvent.close());
+		queue.clear();
+		assertEquals(3, consumed.get());
+		assertEquals(0, buffers.get(1).refCount());
+		assertEquals(0, buffers.get(2).refCount());
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testConfigureFromContext() {
+		MessagingContext context = new SimpleMessagingContextBuilder().withConflation().build();
+		assertTrue(context.getConflationKey() != null);
+		assertEquals(0, context.getConflationSize());
+		assertNull(new SimpleMessagingContextBuilder().build().getConflationKey());
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.util.pushstream.PushStream;
+import org.osgi.util.pushstream.PushStreamProvider;
+import org.osgi.util.pushstream.SimplePushEventSource;
+
+/**
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public class CreditFlowTest {
+
+	@Test
+	public void testPauseAndResume() {
+		AtomicInteger paused = new AtomicInteger();
+		AtomicInteger resumed = new AtomicInteger();
+		CreditFlow flow = new CreditFlow(4, paused::incrementAndGet, resumed::incrementAndGet);
+		for (int i = 0; i < 3; i++) {
+			flow.received();
+		}
+		assertFalse(flow.isPaused());
+		flow.received();
+		assertTrue(flow.isPaused());
+		assertEquals(1, paused.get());
+		flow.received();
+		assertEquals(1, paused.get());
+
+		// resumed, when half of the credits are back
+		flow.consumed();
+		flow.consumed();
+		assertTrue(flow.isPaused());
+		flow.consumed();
+		assertFalse(flow.isPaused());
+		assertEquals(1, resumed.get());
+		assertEquals(2, flow.getOutstanding());
+
+		flow.received();
+		flow.received();
+		assertTrue(flow.isPaused());
+		flow.reset();
+		assertFalse(flow.isPaused());
+		assertEquals(0, flow.getOutstanding());
+		assertEquals(2, resumed.get());
+	}
+
+	@Test
+	public void testInvalidCredits() {
+		assertThrows(IllegalArgumentException.class, () -> new CreditFlow(0, null, null));
+	}
+
+	@Test
+	public void testMessageIsConsumedOnceForAllInstances() {
+		CreditFlow flow = new CreditFlow(10, null, null);
+		SimpleMessage message = new SimpleMessage("a", ByteBuffer.allocate(0));
+		flow.received();
+		message.setOnConsumed(flow::consumed);
+		Message retained = message.retain();
+
+		retained.consumed();
+		assertEquals(0, flow.getOutstanding());
+		message.consumed();
+		retained.consumed();
+		assertEquals(0, flow.getOutstanding());
+	}
+
+	@Test
+	public void testEveryStreamTracks() throws Exception {
+		PushStreamProvider provider = new PushStreamProvider();
+		SimplePushEventSource<Message> source = provider.buildSimpleEventSource(Message.class).build();
+		MessageFanOut fanOut = new MessageFanOut(source);
+		CreditFlow flow = new CreditFlow(10, null, null);
+		CountDownLatch received = new CountDownLatch(4);
+		PushStream<Message> first = CreditFlow.tracking(provider.buildStream(fanOut).unbuffered().build());
+		PushStream<List<Message>> second = CreditFlow.trackingBatches(provider.buildStream(fanOut).unbuffered().build().map(List::of));
+		first.forEach(m -> received.countDown());
+		second.forEach(b -> received.countDown());
+		source.connectPromise().getValue();
+
+		for (int i = 0; i < 2; i++) {
+			SimpleMessage message = new SimpleMessage("a", ByteBuffer.allocate(0));
+			flow.received();
+			message.setOnConsumed(flow::consumed);
+			source.publish(message);
+		}
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		assertEquals(0, flow.getOutstanding());
+		// the remaining stream returns the credits alone
+		first.close();
+		CountDownLatch consumed = new CountDownLatch(1);
+		SimpleMessage message = new SimpleMessage("a", ByteBuffer.allocate(0));
+		flow.received();
+		message.setOnConsumed(() -> {
+			flow.consumed();
+			consumed.countDown();
+		});
+		source.publish(message);
+		assertTrue(consumed.await(5, TimeUnit.SECONDS));
+		assertEquals(0, flow.getOutstanding());
+		second.close();
+	}
+
+}
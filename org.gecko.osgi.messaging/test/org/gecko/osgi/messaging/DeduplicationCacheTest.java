@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public class DeduplicationCacheTest {
+
+	@Test
+	public void testDuplicatesAreRejected() {
+		DeduplicationCache cache = new DeduplicationCache(4, 0);
+		assertTrue(cache.add(1L));
+		assertFalse(cache.add(1L));
+		// 0 marks a free slot internally, but is a valid key
+		assertTrue(cache.add(0L));
+		assertFalse(cache.add(0L));
+		assertTrue(cache.contains(0L));
+		assertEquals(2, cache.size());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertFalse(cache.contains(1L));
+		assertTrue(cache.add(1L));
+	}
+
+	@Test
+	public void testOldestKeyIsEvicted() {
+		DeduplicationCache cache = new DeduplicationCache(3, 0);
+		cache.add(1L);
+		cache.add(2L);
+		cache.add(3L);
+		cache.add(4L);
+		assertEquals(3, cache.size());
+		assertFalse(cache.contains(1L));
+		assertTrue(cache.contains(2L));
+		assertTrue(cache.contains(4L));
+		// a duplicate does not refresh the key
+		assertFalse(cache.add(2L));
+		cache.add(5L);
+		assertFalse(cache.contains(2L));
+	}
+
+	@Test
+	public void testExpiredKeysAreEvicted() {
+		DeduplicationCache cache = new DeduplicationCache(10, 100);
+		long start = 0L;
+		cache.add(1L, start);
+		cache.add(2L, start + TimeUnit.MILLISECONDS.toNanos(60));
+		assertFalse(cache.add(1L, start + TimeUnit.MILLISECONDS.toNanos(100)));
+		// the first key expired, the second one not
+		assertTrue(cache.add(1L, start + TimeUnit.MILLISECONDS.toNanos(101)));
+		assertFalse(cache.add(2L, start + TimeUnit.MILLISECONDS.toNanos(101)));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testBehavesLikeABoundedSet() {
+		int maxSize = 37;
+		DeduplicationCache cache = new DeduplicationCache(maxSize, 0);
+		Deque<Long> order = new ArrayDeque<>();
+		Set<Long> keys = new HashSet<>();
+		Random random = new Random(4711);
+		for (int i = 0; i < 100_000; i++) {
+			// a small key range gives many duplicates and long probe sequences
+			long key = random.nextInt(200) * 1024L;
+			boolean added = keys.add(key);
+			assertEquals(added, cache.add(key), "key " + key + " at " + i);
+			if (added) {
+				order.addLast(key);
+				if (order.size() > maxSize) {
+					keys.remove(order.removeFirst());
+				}
+			}
+			assertEquals(keys.size(), cache.size());
+		}
+		for (long key : keys) {
+			assertTrue(cache.contains(key));
+		}
+	}
+
+	@Test
+	public void testInvalidSize() {
+		assertThrows(IllegalArgumentException.class, () -> new DeduplicationCache(0, 0));
+		assertThrows(IllegalArgumentException.class, () -> new DeduplicationCache((1 << 29) + 1, 0));
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.util.pushstream.PushStreamProvider;
+import org.osgi.util.pushstream.SimplePushEventSource;
+
+/**
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public class MessageBatcherTest {
+
+	private final PushStreamProvider provider = new PushStreamProvider();
+
+	private static Message message(String topic, int size) {
+		return new SimpleMessage(topic, ByteBuffer.allocate(size));
+	}
+
+	@Test
+	public void testBatchLimits() throws Exception {
+		SimplePushEventSource<Message> source = provider.buildSimpleEventSource(Message.class).build();
+		BlockingQueue<List<Message>> batches = new LinkedBlockingQueue<>();
+		AutoCloseable closeable = new MessageBatcher(source, BatchPolicy.of(2, 100, 100)).open(event -> {
+			if (!event.isTerminal()) {
+				batches.add(event.getData());
+			}
+			return 0;
+		});
+		source.connectPromise().getValue();
+
+		source.publish(message("a", 1));
+		source.publish(message("b", 1));
+		assertEquals(2, batches.poll(5, TimeUnit.SECONDS).size());
+		// the bytes limit
+		source.publish(message("c", 100));
+		assertEquals(1, batches.poll(5, TimeUnit.SECONDS).size());
+		// the delay limit
+		long start = System.nanoTime();
+		source.publish(message("d", 1));
+		assertEquals("d", batches.poll(5, TimeUnit.SECONDS).get(0).topic());
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+		closeable.close();
+	}
+
+	@Test
+	public void testSlowConsumerDoesNotDelayOtherTimeouts() throws Exception {
+		CountDownLatch slowCalled = new CountDownLatch(1);
+		CountDownLatch slowRelease = new CountDownLatch(1);
+		SimplePushEventSource<Message> slowSource = provider.buildSimpleEventSource(Message.class).build();
+		AutoCloseable slow = new MessageBatcher(slowSource, BatchPolicy.of(10, 0, 10)).open(event -> {
+			slowCalled.countDown();
+			slowRelease.await(10, TimeUnit.SECONDS);
+			return 0;
+		});
+		BlockingQueue<List<Message>> batches = new LinkedBlockingQueue<>();
+		SimplePushEventSource<Message> fastSource = provider.buildSimpleEventSource(Message.class).build();
+		AutoCloseable fast = new MessageBatcher(fastSource, BatchPolicy.of(10, 0, 20)).open(event -> {
+			if (!event.isTerminal()) {
+				batches.add(event.getData());
+			}
+			return 0;
+		});
+		slowSource.connectPromise().getValue();
+		fastSource.connectPromise().getValue();
+
+		slowSource.publish(message("slow", 1));
+		assertTrue(slowCalled.await(5, TimeUnit.SECONDS));
+		fastSource.publish(message("fast", 1));
+		assertEquals("fast", batches.poll(5, TimeUnit.SECONDS).get(0).topic());
+		slowRelease.countDown();
+		slow.close();
+		fast.close();
+	}
+
+}
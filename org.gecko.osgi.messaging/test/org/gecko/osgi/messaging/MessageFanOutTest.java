@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.util.pushstream.PushStream;
+import org.osgi.util.pushstream.PushStreamProvider;
+import org.osgi.util.pushstream.SimplePushEventSource;
+
+/**
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public class MessageFanOutTest {
+
+	private final PushStreamProvider provider = new PushStreamProvider();
+
+	@Test
+	public void testEveryStreamReleasesItsOwnInstance() throws Exception {
+		ByteBufferPool pool = new ByteBufferPool(1024, 4);
+		SimplePushEventSource<Message> source = provider.buildSimpleEventSource(Message.class).build();
+		MessageFanOut fanOut = new MessageFanOut(source);
+		List<String> values = new CopyOnWriteArrayList<>();
+		CountDownLatch released = new CountDownLatch(4);
+		PushStream<Message> first = provider.buildStream(fanOut).unbuffered().build();
+		PushStream<Message> second = provider.buildStream(fanOut).unbuffered().build();
+		for (PushStream<Message> stream : List.of(first, second)) {
+			stream.forEach(message -> {
+				values.add(StandardCharsets.UTF_8.decode(message.payload()).toString());
+				message.release();
+				released.countDown();
+			});
+		}
+		assertEquals(2, fanOut.getStreamCount());
+		source.connectPromise().getValue();
+
+		PooledByteBuffer hello = pool.copyOf("hello".getBytes(StandardCharsets.UTF_8));
+		PooledByteBuffer world = pool.copyOf("world".getBytes(StandardCharsets.UTF_8));
+		source.publish(new SimpleMessage("a", hello, SimpleMessagingContext.getDefault()));
+		source.publish(new SimpleMessage("a", world, SimpleMessagingContext.getDefault()));
+
+		assertTrue(released.await(5, TimeUnit.SECONDS));
+		// every stream read the whole payload, before it was given back to the pool
+		assertEquals(List.of("hello", "hello", "world", "world"), values);
+		assertEquals(0, hello.refCount());
+		assertEquals(0, world.refCount());
+		assertEquals(2, pool.getFreeCount());
+		first.close();
+		second.close();
+	}
+
+	@Test
+	public void testLastStreamClosesTheSubscription() throws Exception {
+		SimplePushEventSource<Message> source = provider.buildSimpleEventSource(Message.class).build();
+		MessageFanOut fanOut = new MessageFanOut(source);
+		PushStream<Message> first = provider.buildStream(fanOut).unbuffered().build();
+		PushStream<Message> second = provider.buildStream(fanOut).unbuffered().build();
+		CountDownLatch closed = new CountDownLatch(2);
+		first.onClose(closed::countDown).forEach(m -> {});
+		second.onClose(closed::countDown).forEach(m -> {});
+		assertTrue(source.isConnected());
+
+		first.close();
+		assertEquals(1, fanOut.getStreamCount());
+		assertTrue(source.isConnected());
+		second.close();
+		assertEquals(0, fanOut.getStreamCount());
+		assertFalse(source.isConnected());
+		assertTrue(closed.await(5, TimeUnit.SECONDS));
+
+		// a new stream subscribes again
+		CountDownLatch received = new CountDownLatch(1);
+		PushStream<Message> third = provider.buildStream(fanOut).unbuffered().build();
+		third.forEach(m -> received.countDown());
+		assertTrue(source.isConnected());
+		source.publish(new SimpleMessage("a", ByteBuffer.allocate(0)));
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		third.close();
+	}
+
+	@Test
+	public void testSourceCloseClosesAllStreams() throws Exception {
+		SimplePushEventSource<Message> source = provider.buildSimpleEventSource(Message.class).build();
+		MessageFanOut fanOut = new MessageFanOut(source);
+		CountDownLatch closed = new CountDownLatch(2);
+		provider.buildStream(fanOut).unbuffered().build().onClose(closed::countDown).forEach(m -> {});
+		provider.buildStream(fanOut).unbuffered().build().onClose(closed::countDown).forEach(m -> {});
+
+		source.close();
+		assertTrue(closed.await(5, TimeUnit.SECONDS));
+		assertEquals(0, fanOut.getStreamCount());
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public class PayloadHelperTest {
+
+	private static final byte[] DATA = { 1, 2, 3, 4, 5 };
+
+	@Test
+	public void testWrappedArrayIsNotCopied() {
+		ByteBuffer buffer = ByteBuffer.wrap(DATA);
+		assertTrue(PayloadHelper.isWrappedArray(buffer));
+		assertSame(DATA, PayloadHelper.toByteArray(buffer));
+		assertEquals(0, PayloadHelper.toByteArray(null).length);
+	}
+
+	@Test
+	public void testOtherBuffersAreCopied() {
+		ByteBuffer direct = ByteBuffer.allocateDirect(DATA.length);
+		direct.put(DATA).flip();
+		ByteBuffer readOnly = ByteBuffer.wrap(DATA).asReadOnlyBuffer();
+		ByteBuffer slice = ByteBuffer.wrap(DATA, 1, 3).slice();
+		ByteBuffer positioned = ByteBuffer.wrap(DATA);
+		positioned.position(2);
+
+		for (ByteBuffer buffer : new ByteBuffer[] { direct, readOnly }) {
+			assertFalse(PayloadHelper.isWrappedArray(buffer));
+			byte[] bytes = PayloadHelper.toByteArray(buffer);
+			assertNotSame(DATA, bytes);
+			assertArrayEquals(DATA, bytes);
+			assertEquals(0, buffer.position());
+		}
+		assertFalse(PayloadHelper.isWrappedArray(slice));
+		assertArrayEquals(new byte[] { 2, 3, 4 }, PayloadHelper.toByteArray(slice));
+		assertFalse(PayloadHelper.isWrappedArray(positioned));
+		assertArrayEquals(new byte[] { 3, 4, 5 }, PayloadHelper.toByteArray(positioned));
+		// the position of the given buffer is kept
+		assertEquals(2, positioned.position());
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public class PublishOutboxTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void testMessagesAreDrainedInOrder() throws Exception {
+		List<String> sent = new CopyOnWriteArrayList<>();
+		AtomicInteger attempts = new AtomicInteger();
+		CountDownLatch drained = new CountDownLatch(3);
+		PublishOutbox outbox = new PublishOutbox("test", directory, 1024 * 1024, entries -> {
+			if (attempts.getAndIncrement() == 0) {
+				throw new IOException("The broker is not reachable");
+			}
+			for (PublishOutbox.Entry entry : entries) {
+				sent.add(entry.getTopic() + "=" + new String(entry.getPayload(), StandardCharsets.UTF_8));
+				drained.countDown();
+			}
+		});
+		try {
+			outbox.append("a", Collections.singletonMap("qos", "1"), "1".getBytes(StandardCharsets.UTF_8));
+			outbox.append("b", Collections.emptyMap(), "2".getBytes(StandardCharsets.UTF_8));
+			outbox.append("a", Collections.emptyMap(), "3".getBytes(StandardCharsets.UTF_8));
+			outbox.wakeUp();
+			assertTrue(drained.await(5, TimeUnit.SECONDS));
+			assertEquals(List.of("a=1", "b=2", "a=3"), sent);
+			assertTrue(attempts.get() > 1);
+		} finally {
+			outbox.close();
+		}
+	}
+
+	@Test
+	public void testMessagesSurviveARestart() throws Exception {
+		PublishOutbox outbox = new PublishOutbox("test", directory, 1024 * 1024, entries -> {
+			throw new IOException("The broker is not reachable");
+		});
+		outbox.append("a", Map.of("qos", "2"), new byte[] { 1, 2, 3 });
+		outbox.close();
+
+		List<PublishOutbox.Entry> sent = new CopyOnWriteArrayList<>();
+		CountDownLatch drained = new CountDownLatch(1);
+		outbox = new PublishOutbox("test", directory, 1024 * 1024, entries -> {
+			sent.addAll(entries);
+			drained.countDown();
+		});
+		try {
+			assertTrue(drained.await(5, TimeUnit.SECONDS));
+			assertEquals("a", sent.get(0).getTopic());
+			assertEquals(Map.of("qos", "2"), sent.get(0).getAttributes());
+			assertArrayEquals(new byte[] { 1, 2, 3 }, sent.get(0).getPayload());
+		} finally {
+			outbox.close();
+		}
+	}
+
+	@Test
+	public void testMessageSizeIsChecked() throws Exception {
+		PublishOutbox outbox = new PublishOutbox("test", directory, 1024, entries -> {
+			throw new IOException("The broker is not reachable");
+		});
+		try {
+			// the smallest segment has 64 KB, a record has an 8 byte header
+			Map<String, String> attributes = Map.of("qos", "1");
+			int maxPayload = 64 * 1024 - 8 - (2 + 1) - 2 - (2 + 3) - (2 + 1);
+			outbox.checkSize("a", attributes, new byte[maxPayload]);
+			outbox.append("a", attributes, new byte[maxPayload]);
+			assertThrows(IllegalArgumentException.class, () -> outbox.checkSize("a", attributes, new byte[maxPayload + 1]));
+			assertThrows(IllegalArgumentException.class, () -> outbox.append("a", attributes, new byte[maxPayload + 1]));
+			// non ASCII characters take more than one byte
+			assertThrows(IllegalArgumentException.class, () -> outbox.checkSize("ä", attributes, new byte[maxPayload]));
+		} finally {
+			outbox.close();
+		}
+	}
+
+}
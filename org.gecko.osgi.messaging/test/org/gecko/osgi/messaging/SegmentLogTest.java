@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public class SegmentLogTest {
+
+	@TempDir
+	Path directory;
+
+	private static byte[] record(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static List<String> values(SegmentLog.ReadBatch batch) {
+		List<String> values = new ArrayList<>();
+		batch.getRecords().forEach(r -> values.add(new String(r, StandardCharsets.UTF_8)));
+		return values;
+	}
+
+	private long segmentCount() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(f -> f.toString().endsWith(".log")).count();
+		}
+	}
+
+	@Test
+	public void testUnreadRecordsAreRecovered() throws IOException {
+		try (SegmentLog log = new SegmentLog(directory, 1024, 4096)) {
+			log.append(record("a"));
+			log.append(record("b"));
+			log.append(record("c"));
+			SegmentLog.ReadBatch batch = log.read(2);
+			assertEquals(Arrays.asList("a", "b"), values(batch));
+			assertTrue(log.commit(batch));
+			// read, but not committed
+			log.read(10);
+		}
+		try (SegmentLog log = new SegmentLog(directory, 1024, 4096)) {
+			assertEquals(1, log.getBacklog());
+			assertEquals(Arrays.asList("c"), values(log.read(10)));
+			log.append(record("d"));
+			assertEquals(Arrays.asList("c", "d"), values(log.read(10)));
+		}
+	}
+
+	@Test
+	public void testTornTrailingRecordIsDropped() throws IOException {
+		try (SegmentLog log = new SegmentLog(directory, 1024, 4096)) {
+			log.append(record("aaaa"));
+			log.append(record("bbbb"));
+		}
+		// a crash while the data of the second record was written, it starts behind the 8 byte header and 4 bytes of the first one
+		Path segment = directory.resolve(String.format("%020d.log", 0));
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(record("x")), 12 + 8);
+		}
+		try (SegmentLog log = new SegmentLog(directory, 1024, 4096)) {
+			assertEquals(1, log.getBacklog());
+			// the torn record is overwritten
+			log.append(record("cccc"));
+			assertEquals(Arrays.asList("aaaa", "cccc"), values(log.read(10)));
+		}
+		try (SegmentLog log = new SegmentLog(directory, 1024, 4096)) {
+			assertEquals(Arrays.asList("aaaa", "cccc"), values(log.read(10)));
+		}
+	}
+
+	@Test
+	public void testReadSegmentsAreDeleted() throws IOException {
+		try (SegmentLog log = new SegmentLog(directory, 1024, 8192)) {
+			byte[] data = new byte[500];
+			// two records fit into a segment
+			for (int i = 0; i < 5; i++) {
+				log.append(data);
+			}
+			assertEquals(3, segmentCount());
+			assertTrue(log.commit(log.read(3)));
+			assertEquals(2, segmentCount());
+			assertFalse(log.isEmpty());
+			assertTrue(log.commit(log.read(10)));
+			assertEquals(1, segmentCount());
+			assertTrue(log.isEmpty());
+			assertEquals(0, log.getBacklog());
+			assertEquals(0, log.getBacklogBytes());
+		}
+	}
+
+	@Test
+	public void testOldestSegmentIsDeletedAtMaximumSize() throws IOException {
+		try (SegmentLog log = new SegmentLog(directory, 1024, 2048)) {
+			byte[] data = new byte[500];
+			for (int i = 0; i < 4; i++) {
+				assertEquals(0, log.append(data));
+			}
+			SegmentLog.ReadBatch batch = log.read(1);
+			// the third segment exceeds the maximum size, the unread records of the first one are dropped
+			assertEquals(2, log.append(data));
+			assertEquals(2, segmentCount());
+			assertEquals(3, log.getBacklog());
+			// the batch was read from the deleted segment
+			assertFalse(log.commit(batch));
+			assertEquals(3, log.read(10).getRecords().size());
+		}
+	}
+
+	@Test
+	public void testRecordSize() throws IOException {
+		try (SegmentLog log = new SegmentLog(directory, 1024, 4096)) {
+			assertEquals(1016, log.getMaxRecordSize());
+			log.append(new byte[1016]);
+			assertThrows(IllegalArgumentException.class, () -> log.append(new byte[1017]));
+			assertThrows(IllegalArgumentException.class, () -> log.append(new byte[0]));
+			assertEquals(1, log.getBacklog());
+		}
+		assertThrows(IllegalArgumentException.class, () -> new SegmentLog(directory, 512, 4096));
+		assertThrows(IllegalArgumentException.class, () -> new SegmentLog(directory, 1024, 1000));
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.gecko.osgi.messaging.codec.DecodedMessage;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public class SimpleMessageTest {
+
+	private static String value(Message message) {
+		return StandardCharsets.UTF_8.decode(message.payload().duplicate()).toString();
+	}
+
+	@Test
+	public void testPooledPayloadIsSlice() {
+		ByteBufferPool pool = new ByteBufferPool(1024, 4);
+		PooledByteBuffer pooled = pool.copyOf("hello".getBytes(StandardCharsets.UTF_8));
+		SimpleMessage message = new SimpleMessage("a", pooled, SimpleMessagingContext.getDefault());
+
+		ByteBuffer payload = message.payload();
+		assertEquals(0, payload.position());
+		assertEquals(5, payload.limit());
+		assertEquals(5, payload.capacity());
+		payload.get();
+		// the leased buffer keeps its own position
+		assertEquals(0, pooled.buffer().position());
+		assertEquals("hello", StandardCharsets.UTF_8.decode(pooled.buffer().duplicate()).toString());
+	}
+
+	@Test
+	public void testRetainedMessageIsReleasedOnItsOwn() {
+		ByteBufferPool pool = new ByteBufferPool(1024, 4);
+		PooledByteBuffer pooled = pool.copyOf("hello".getBytes(StandardCharsets.UTF_8));
+		SimpleMessage message = new SimpleMessage("a", pooled, SimpleMessagingContext.getDefault());
+		message.setMessageId("id");
+		message.setReceiveTime(42L);
+
+		Message retained = message.retain();
+		assertNotSame(message, retained);
+		assertEquals(2, pooled.refCount());
+		assertEquals("a", retained.topic());
+		assertEquals("id", retained.getMessageId());
+		assertEquals(42L, retained.getReceiveTime());
+
+		retained.payload().position(3);
+		assertEquals("hello", value(message));
+
+		message.release();
+		// a second release of the same instance must not drop the reference of the retained one
+		message.release();
+		assertEquals(1, pooled.refCount());
+		assertEquals("lo", value(retained));
+		assertEquals(0, pool.getFreeCount());
+
+		retained.release();
+		assertEquals(0, pooled.refCount());
+		assertEquals(1, pool.getFreeCount());
+		assertThrows(IllegalStateException.class, message::retain);
+	}
+
+	@Test
+	public void testRetainDecodedMessage() {
+		ByteBufferPool pool = new ByteBufferPool(1024, 4);
+		PooledByteBuffer pooled = pool.copyOf("hello".getBytes(StandardCharsets.UTF_8));
+		DecodedMessage message = new DecodedMessage(new SimpleMessage("a", pooled, SimpleMessagingContext.getDefault()), "hello");
+
+		Message retained = message.retain();
+		assertTrue(retained instanceof DecodedMessage);
+		assertEquals("hello", ((DecodedMessage) retained).getValue());
+		assertEquals(2, pooled.refCount());
+		message.release();
+		retained.release();
+		assertEquals(1, pool.getFreeCount());
+	}
+
+}
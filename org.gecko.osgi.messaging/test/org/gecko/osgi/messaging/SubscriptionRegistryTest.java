@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public class SubscriptionRegistryTest {
+
+	@Test
+	public void testReferenceCounting() {
+		List<String> closed = new CopyOnWriteArrayList<>();
+		SubscriptionRegistry<String, String> registry = new SubscriptionRegistry<>(closed::add);
+		AtomicInteger created = new AtomicInteger();
+		String first = registry.acquire("a", k -> k + created.incrementAndGet());
+		String second = registry.acquire("a", k -> k + created.incrementAndGet());
+		assertSame(first, second);
+		assertEquals(1, created.get());
+		assertEquals(2, registry.getReferences("a"));
+
+		registry.release("a", first);
+		assertTrue(closed.isEmpty());
+		registry.release("a", first);
+		assertEquals(List.of("a1"), closed);
+		assertEquals(0, registry.size());
+
+		// a released subscription does not touch its successor
+		String third = registry.acquire("a", k -> k + created.incrementAndGet());
+		registry.release("a", first);
+		assertEquals(1, registry.getReferences("a"));
+		registry.closeAll();
+		assertEquals(List.of("a1", third), closed);
+	}
+
+	@Test
+	public void testFailedCreationIsNotRegistered() {
+		SubscriptionRegistry<String, String> registry = new SubscriptionRegistry<>(s -> {});
+		assertThrows(IllegalStateException.class, () -> registry.acquire("a", k -> {
+			throw new IllegalStateException("broker down");
+		}));
+		assertEquals(0, registry.size());
+		assertEquals("a", registry.acquire("a", k -> k));
+	}
+
+	@Test
+	public void testCreationDoesNotBlockOtherKeys() throws Exception {
+		SubscriptionRegistry<String, String> registry = new SubscriptionRegistry<>(s -> {});
+		CountDownLatch creating = new CountDownLatch(1);
+		CountDownLatch connected = new CountDownLatch(1);
+		CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> registry.acquire("slow", k -> {
+			creating.countDown();
+			try {
+				connected.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return k;
+		}));
+		assertTrue(creating.await(5, TimeUnit.SECONDS));
+		assertEquals("fast", registry.acquire("fast", k -> k));
+		// a second caller for the same key waits for the subscription and does not create another
+		CompletableFuture<String> waiting = CompletableFuture.supplyAsync(() -> registry.acquire("slow", k -> "other"));
+		connected.countDown();
+		assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+		assertEquals("slow", waiting.get(5, TimeUnit.SECONDS));
+		assertEquals(2, registry.getReferences("slow"));
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.MessageFanOut;
+import org.gecko.osgi.messaging.SimpleMessage;
+import org.junit.jupiter.api.Test;
+import org.osgi.util.pushstream.PushStream;
+import org.osgi.util.pushstream.PushStreamProvider;
+import org.osgi.util.pushstream.SimplePushEventSource;
+
+/**
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public class MessageCodecsTest {
+
+	private static Message message(String value) {
+		return new SimpleMessage("a", ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void testDecode() throws Exception {
+		MessageCodecs codecs = new MessageCodecs();
+		Message message = message("hello");
+		assertSame(message, codecs.decode(message, null));
+
+		Message decoded = codecs.decode(message, String.class);
+		assertTrue(decoded instanceof DecodedMessage);
+		assertSame(message, ((DecodedMessage) decoded).getMessage());
+		assertEquals("hello", codecs.valueOf(decoded, String.class));
+		// a message decoded into another type is decoded again
+		assertArrayEquals("hello".getBytes(StandardCharsets.UTF_8), codecs.valueOf(decoded, byte[].class));
+		// a message, that cannot be decoded, is delivered as it is
+		assertSame(message, codecs.decode(message, Integer.class));
+		assertThrows(IllegalArgumentException.class, () -> codecs.getCodec(Integer.class));
+	}
+
+	@Test
+	public void testRegisteredCodecTakesPrecedence() throws Exception {
+		MessageCodecs codecs = new MessageCodecs();
+		MessageCodec<CharSequence> upperCase = new MessageCodec<CharSequence>() {
+
+			@Override
+			public Class<CharSequence> getType() {
+				return CharSequence.class;
+			}
+
+			@Override
+			public CharSequence decode(ByteBuffer payload) {
+				return StandardCharsets.UTF_8.decode(payload.duplicate()).toString().toUpperCase();
+			}
+
+			@Override
+			public ByteBuffer encode(CharSequence value) {
+				return ByteBuffer.wrap(value.toString().getBytes(StandardCharsets.UTF_8));
+			}
+		};
+		// String has an exact codec, the super type codec is used for the other char sequences
+		codecs.register(upperCase);
+		assertEquals("hello", codecs.valueOf(message("hello"), String.class));
+		assertEquals("HELLO", codecs.valueOf(message("hello"), CharSequence.class));
+		codecs.unregister(upperCase);
+		assertThrows(IllegalArgumentException.class, () -> codecs.getCodec(CharSequence.class));
+	}
+
+	@Test
+	public void testEveryStreamDecodesItsOwnType() throws Exception {
+		MessageCodecs codecs = new MessageCodecs();
+		PushStreamProvider provider = new PushStreamProvider();
+		SimplePushEventSource<Message> source = provider.buildSimpleEventSource(Message.class).build();
+		MessageFanOut fanOut = new MessageFanOut(source);
+		List<Object> strings = new CopyOnWriteArrayList<>();
+		List<Object> bytes = new CopyOnWriteArrayList<>();
+		CountDownLatch delivered = new CountDownLatch(3);
+		PushStream<Message> first = provider.buildStream(codecs.decoding(fanOut, String.class)).unbuffered().build();
+		PushStream<Message> second = provider.buildStream(codecs.decoding(fanOut, byte[].class)).unbuffered().build();
+		PushStream<Message> third = provider.buildStream(codecs.decoding(fanOut, String.class)).unbuffered().build();
+		first.forEach(message -> {
+			strings.add(((DecodedMessage) message).getValue());
+			delivered.countDown();
+		});
+		second.forEach(message -> {
+			bytes.add(((DecodedMessage) message).getValue());
+			delivered.countDown();
+		});
+		third.forEach(message -> {
+			strings.add(((DecodedMessage) message).getValue());
+			delivered.countDown();
+		});
+		source.connectPromise().getValue();
+
+		source.publish(message("hello"));
+
+		assertTrue(delivered.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of("hello", "hello"), strings);
+		// the streams with the same type do not share the decoded object
+		assertNotSame(strings.get(0), strings.get(1));
+		assertArrayEquals("hello".getBytes(StandardCharsets.UTF_8), (byte[]) bytes.get(0));
+		first.close();
+		second.close();
+		third.close();
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.gecko.osgi.messaging.ByteBufferPool;
+import org.gecko.osgi.messaging.Message;
+import org.gecko.osgi.messaging.PooledByteBuffer;
+import org.gecko.osgi.messaging.SimpleMessage;
+import org.gecko.osgi.messaging.SimpleMessagingContext;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public class PayloadCodecsTest {
+
+	private static byte[] bytes(ByteBuffer buffer) {
+		byte[] result = new byte[buffer.remaining()];
+		buffer.duplicate().get(result);
+		return result;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		ByteBufferPool pool = new ByteBufferPool(1024, 4);
+		PayloadCodecs codecs = new PayloadCodecs(pool);
+		byte[] data = "hello hello hello hello hello".getBytes(StandardCharsets.UTF_8);
+		for (String encoding : Arrays.asList(GzipCodec.ENCODING, DeflateCodec.ENCODING)) {
+			byte[] encoded = codecs.encode(ByteBuffer.wrap(data), encoding);
+			PooledByteBuffer decoded = codecs.decode(ByteBuffer.wrap(encoded), encoding.toUpperCase());
+			assertArrayEquals(data, bytes(decoded.buffer()));
+			decoded.release();
+		}
+	}
+
+	@Test
+	public void testUnknownEncoding() throws IOException {
+		PayloadCodecs codecs = new PayloadCodecs(new ByteBufferPool(1024, 4));
+		byte[] data = "hello".getBytes(StandardCharsets.UTF_8);
+		assertArrayEquals(data, codecs.encode(ByteBuffer.wrap(data), PayloadCodecs.IDENTITY));
+		assertArrayEquals(data, codecs.encode(ByteBuffer.wrap(data), null));
+		assertNull(codecs.decode(ByteBuffer.wrap(data), "br"));
+		Message message = new SimpleMessage("a", ByteBuffer.wrap(data));
+		assertSame(message, codecs.decode(message, null));
+	}
+
+	@Test
+	public void testDecodedSizeIsLimited() throws IOException {
+		ByteBufferPool pool = new ByteBufferPool(1024, 4);
+		PayloadCodecs codecs = new PayloadCodecs(pool);
+		byte[] encoded = codecs.encode(ByteBuffer.wrap(new byte[100_000]), GzipCodec.ENCODING);
+		assertTrue(encoded.length < 1000);
+
+		codecs.setMaxDecodedSize(100_000);
+		PooledByteBuffer decoded = codecs.decode(ByteBuffer.wrap(encoded), GzipCodec.ENCODING);
+		assertEquals(100_000, decoded.buffer().remaining());
+
+		codecs.setMaxDecodedSize(99_999);
+		assertThrows(PayloadTooLargeException.class, () -> codecs.decode(ByteBuffer.wrap(encoded), GzipCodec.ENCODING));
+		assertThrows(IllegalArgumentException.class, () -> codecs.setMaxDecodedSize(0));
+	}
+
+	@Test
+	public void testTooLargeMessageIsDropped() throws IOException {
+		ByteBufferPool pool = new ByteBufferPool(1024, 4);
+		PayloadCodecs codecs = new PayloadCodecs(pool);
+		byte[] encoded = codecs.encode(ByteBuffer.wrap(new byte[10_000]), DeflateCodec.ENCODING);
+		codecs.setMaxDecodedSize(1_000);
+		PooledByteBuffer pooled = pool.copyOf(encoded);
+		Message message = new SimpleMessage("a", pooled, SimpleMessagingContext.getDefault());
+
+		assertNull(codecs.decode(message, DeflateCodec.ENCODING));
+		assertEquals(0, pooled.refCount());
+	}
+
+}
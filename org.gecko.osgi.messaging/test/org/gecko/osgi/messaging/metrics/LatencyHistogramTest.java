@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2012 - 2024 Data In Motion and others.
+ * All rights reserved.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Data In Motion - initial API and implementation
+ */
+package org.gecko.osgi.messaging.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author agent
+ * @since 3.2.1
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBucketPrecision() {
+		for (long value = 0; value < 128; value++) {
+			assertEquals(value, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value)));
+		}
+		Random random = new Random(4711);
+		int lastIndex = -1;
+		for (long value = 1; value < (1L << 47); value += 1 + (value >>> 3)) {
+			// the buckets are ordered by their values
+			int index = LatencyHistogram.indexOf(value);
+			assertTrue(index >= lastIndex);
+			lastIndex = index;
+			long sample = value + (long) (random.nextDouble() * (value >>> 3));
+			long highest = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(sample));
+			assertTrue(highest >= sample, "value " + sample);
+			assertTrue(highest - sample <= sample * 0.016, "value " + sample);
+		}
+		assertTrue(lastIndex < LatencyHistogram.BUCKET_COUNT);
+		assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexOf(1L << 47));
+		assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		assertEquals(0.0, histogram.getMean());
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1_000_000, histogram.getMax());
+		assertEquals(500_500.0, histogram.getMean());
+		assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 * 0.016);
+		assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 * 0.016);
+		// the result never exceeds the maximum
+		assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+		assertEquals(1000, histogram.getValueAtPercentile(0), 1000 * 0.016);
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		histogram.record(-5);
+		assertEquals(0, histogram.getValueAtPercentile(100));
+	}
+
+}